@@ -18,6 +18,9 @@
 
 package net.openhft.chronicle.hash;
 
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
+import net.openhft.chronicle.hash.locks.BackoffLockingStrategy;
+import net.openhft.chronicle.hash.locks.LockingStrategy;
 import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
 import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
 import net.openhft.chronicle.hash.replication.TimeProvider;
@@ -196,7 +199,7 @@ public interface ChronicleHashBuilder<K, H extends ChronicleHash<K>,
      * Configures the maximum number of entries, that could be inserted into the hash containers,
      * created by this builder. If you try to insert more data, {@link IllegalStateException}
      * <i>might</i> be thrown, because currently {@link ChronicleMap} and {@link ChronicleSet}
-     * don't support resizing.
+     * don't support resizing, unless {@linkplain #maxExtraTiers(long) extra tiers} are allowed.
      *
      * <p><b>You shouldn't put additional margin over the actual maximum number of entries.</b>
      * This bad practice was popularized by {@link HashMap#HashMap(int)} and {@link
@@ -256,6 +259,99 @@ public interface ChronicleHashBuilder<K, H extends ChronicleHash<K>,
      */
     B actualSegments(int actualSegments);
 
+    /**
+     * Configures how many extra tiers could be allocated, in total over all segments, in the hash
+     * containers, created by this builder. When a segment has no room for a new entry (all slots
+     * or chunks are taken, because entries are distributed between segments poorly, or more
+     * entries than {@linkplain #entries(long) configured} are inserted), the segment is chained to
+     * an extra tier, of the same size as the segment, instead of throwing {@link
+     * IllegalStateException}. The space for extra tiers is reserved beyond the segments. Persisted
+     * hash containers occupy memory and disk space for the extra tiers only when they are actually
+     * allocated, because the data file is sparse.
+     *
+     * <p>Lookups in segments chained to extra tiers become slower, so extra tiers are the backstop
+     * against rare segment overflows rather than a substitute for right {@link #entries(long)}
+     * configuration.
+     *
+     * <p>Extra tiers are not supported by replicated hash containers, this configuration is
+     * ignored for them.
+     *
+     * <p>Default maximum extra tiers is 0, i. e. hash containers are not growing.
+     *
+     * @param maxExtraTiers maximum number of extra tiers, that could be allocated by the hash
+     *                      containers, created by this builder
+     * @return this builder back
+     * @throws IllegalArgumentException if the given {@code maxExtraTiers} is negative
+     * @see #entries(long)
+     */
+    B maxExtraTiers(long maxExtraTiers);
+
+    /**
+     * Configures how long blocking operations with hash containers, created by this builder,
+     * try to acquire a segment lock, before giving up. If the lock is not acquired in time, most
+     * likely there is a dead lock, or the lock holder process died, and the operation throws a
+     * {@code RuntimeException}.
+     *
+     * <p>This configuration is not persisted, i. e. each process, accessing the same persisted
+     * hash container, could configure own lock time out. Default lock time out is 20 seconds.
+     *
+     * @param lockTimeOut the maximum time to wait for a segment lock
+     * @param unit        the time unit of the time out
+     * @return this builder back
+     * @throws IllegalArgumentException if the given {@code lockTimeOut} is not positive
+     * @see #lockingStrategy(LockingStrategy)
+     */
+    B lockTimeOut(long lockTimeOut, TimeUnit unit);
+
+    /**
+     * Configures how threads wait for segment locks of hash containers, created by this builder,
+     * between attempts to acquire them, within the {@linkplain #lockTimeOut(long, TimeUnit) lock
+     * time out}.
+     *
+     * <p>This configuration is not persisted, i. e. each process, accessing the same persisted
+     * hash container, could configure own locking strategy. Default locking strategy is {@link
+     * BackoffLockingStrategy#DEFAULT}.
+     *
+     * @param lockingStrategy the strategy of waiting for segment locks
+     * @return this builder back
+     * @see #lockTimeOut(long, TimeUnit)
+     */
+    B lockingStrategy(@NotNull LockingStrategy lockingStrategy);
+
+    /**
+     * Configures the function, used to hash serialized forms of keys of hash containers, created
+     * by this builder. {@link LongHashFunction#xx64()} and {@link LongHashFunction#wyHash()} are
+     * faster than the default {@link LongHashFunction#murmur3()}, especially on short keys of
+     * the types, which are serialized on queries anyway, e. g. {@code String}s.
+     *
+     * <p>This configuration is persisted, i. e. a persisted hash container is always accessed
+     * with the function it was created with, regardless the function configured, when
+     * the container is opened in another process.
+     *
+     * @param keyHashFunction the hash function of keys
+     * @return this builder back
+     */
+    B keyHashFunction(@NotNull LongHashFunction keyHashFunction);
+
+    /**
+     * Configures if hash containers, created by this builder, hash keys with {@linkplain
+     * LongHashFunction#sipHash24(long, long) SipHash-2-4}, keyed with a random 128-bit key,
+     * generated when the container is created, instead of the configured {@linkplain
+     * #keyHashFunction(LongHashFunction) key hash function}. Turn seeded hashing on, if keys come
+     * from untrusted sources: without a secret key, a crafted set of keys could fall into
+     * the same segment and the same hash lookup probe chain, that makes queries with these keys
+     * as slow, as a linear scan of the segment. {@linkplain LongHashFunction#seeded(long)
+     * Seeding} of non-keyed functions doesn't prevent this.
+     *
+     * <p>The key is persisted along with the key hash function. Replicated nodes and stateless
+     * clients don't need to share the key, because keys are transmitted in the serialized form
+     * and hashed by the node, which performs the query. Default is {@code false}.
+     *
+     * @param seededKeyHashing if keys should be hashed with SipHash-2-4 with a random key
+     * @return this builder back
+     */
+    B seededKeyHashing(boolean seededKeyHashing);
+
     /**
      * Configures a time provider, used by hash containers, created by this builder, for needs of
      * replication consensus protocol (conflicting data updates resolution).
@@ -51,10 +51,14 @@ public final class Hasher {
      * @return hash code for the specified bytes subsequence
      */
     public static <T> long hash(T input, Access<T> access, long offset, long length) {
+        return hash(0L, input, access, offset, length);
+    }
+
+    static <T> long hash(long seed, T input, Access<T> access, long offset, long length) {
         assert offset >= 0L && length >= 0L;
 
-        long h1 = 0L;
-        long h2 = 0L;
+        long h1 = seed;
+        long h2 = seed;
         long remaining = length;
         while (remaining >= 16L) {
             long k1 = access.getLong(input, offset);
@@ -177,16 +181,24 @@ public final class Hasher {
     }
 
     public static long hash(int value) {
+        return hash(0L, value);
+    }
+
+    static long hash(long seed, int value) {
         long k1 = Primitives.unsignedInt(value);
-        long h1 = 0L ^ mixK1(k1);
-        long h2 = 0L;
+        long h1 = seed ^ mixK1(k1);
+        long h2 = seed;
         return finalize(4L, h1, h2);
     }
 
     public static long hash(long value) {
+        return hash(0L, value);
+    }
+
+    static long hash(long seed, long value) {
         long k1 = value;
-        long h1 = 0L ^ mixK1(k1);
-        long h2 = 0L;
+        long h1 = seed ^ mixK1(k1);
+        long h2 = seed;
         return finalize(8L, h1, h2);
     }
 
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.hashing;
+
+import net.openhft.lang.io.Bytes;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static net.openhft.chronicle.hash.hashing.UnsafeAccess.BYTE_BASE;
+import static net.openhft.chronicle.hash.hashing.UnsafeAccess.CHAR_BASE;
+
+/**
+ * 64-bit hash function of byte sequences, used to hash keys of Chronicle Maps and Sets.
+ *
+ * <p>Hash functions are persisted with the map (as a part of the map header), so implementations
+ * should be serializable, and the same function should return the same hash codes for the same
+ * byte sequences in all processes, which access the map.
+ *
+ * <p>{@link #hashLong(long)} and {@link #hashInt(int)} should be consistent with hashing of
+ * the {@code long} or {@code int} value, written in the native byte order, via {@link
+ * #hash(Object, Access, long, long)}.
+ *
+ * @see net.openhft.chronicle.map.ChronicleMapBuilder#keyHashFunction(LongHashFunction)
+ */
+public abstract class LongHashFunction implements Serializable {
+    private static final long serialVersionUID = 0L;
+
+    static final boolean NATIVE_LITTLE_ENDIAN = ByteOrder.nativeOrder() == LITTLE_ENDIAN;
+
+    /**
+     * Returns the MurmurHash3-derived function, used by {@link Hasher} and {@link
+     * net.openhft.chronicle.hash.serialization.BytesInterop#hash(Object)} implementations
+     * of the library. This is the default key hash function.
+     *
+     * @return the MurmurHash3-derived hash function
+     */
+    public static LongHashFunction murmur3() {
+        return MurmurHash3.INSTANCE;
+    }
+
+    /**
+     * Returns the <a href="https://github.com/Cyan4973/xxHash">xxHash64</a> function with zero
+     * seed. It processes input by 32-byte stripes, so it is faster than {@link #murmur3()} on
+     * long inputs.
+     *
+     * @return the xxHash64 hash function
+     */
+    public static LongHashFunction xx64() {
+        return XxHash64.INSTANCE;
+    }
+
+    /**
+     * Returns the <a href="https://github.com/wangyi-fudan/wyhash">wyhash</a> (final version 3)
+     * function with zero seed. It reads inputs up to 16 bytes long with only four overlapping
+     * {@code int} reads and has very short dependency chains, so it is the fastest choice for
+     * short keys.
+     *
+     * @return the wyhash hash function
+     */
+    public static LongHashFunction wyHash() {
+        return WyHash.INSTANCE;
+    }
+
+    /**
+     * Returns the SipHash-2-4 function (by Aumasson and Bernstein) with the given 128-bit key.
+     * Unlike other functions, SipHash is a keyed pseudorandom function: if the key is random and
+     * secret, an attacker can't find colliding inputs even by observing hash codes or timing
+     * of queries. This is the key hash function of containers with {@linkplain
+     * net.openhft.chronicle.hash.ChronicleHashBuilder#seededKeyHashing(boolean) seeded key
+     * hashing}. It is several times slower than {@link #murmur3()} on short inputs.
+     *
+     * @param k0 the lower 64 bits of the key
+     * @param k1 the higher 64 bits of the key
+     * @return the SipHash-2-4 hash function with the given key
+     */
+    public static LongHashFunction sipHash24(long k0, long k1) {
+        return new SipHash24(k0, k1);
+    }
+
+    /**
+     * Returns the hash code for {@code length} continuous bytes of the given {@code input}
+     * object, starting from the given offset. The abstraction of input as ordered byte sequence
+     * and "offset within the input" is defined by the given {@code access} strategy.
+     *
+     * @param input  the object to read bytes from
+     * @param access access which defines the abstraction of the given input
+     *               as ordered byte sequence
+     * @param offset offset to the first byte of the subsequence to hash
+     * @param length length of the subsequence to hash
+     * @param <T> the type of the input
+     * @return hash code for the specified bytes subsequence
+     * @see Hasher#hash(Object, Access, long, long)
+     */
+    public abstract <T> long hash(T input, Access<T> access, long offset, long length);
+
+    /**
+     * Returns the hash code for the given {@code long} value, interpreted as 8 bytes in
+     * the native byte order.
+     *
+     * @param input the value to hash
+     * @return hash code for the given {@code long} value
+     */
+    public abstract long hashLong(long input);
+
+    /**
+     * Returns the hash code for the given {@code int} value, interpreted as 4 bytes in
+     * the native byte order.
+     *
+     * @param input the value to hash
+     * @return hash code for the given {@code int} value
+     */
+    public abstract long hashInt(int input);
+
+    /**
+     * Returns the function of the same algorithm, with the given seed mixed into all hash codes.
+     * Seeding only varies the layout of hash codes, e. g. to decorrelate hash codes of the same
+     * keys in different containers, it gives <i>no</i> security guarantee: murmur3, xxHash64
+     * and wyhash have seed-independent collisions, which could be crafted without knowing
+     * the seed. Use {@link #sipHash24(long, long)} with a secret key for resistance to hash
+     * flooding.
+     *
+     * <p>Default implementation throws {@code UnsupportedOperationException}.
+     *
+     * @param seed the seed
+     * @return the seeded hash function
+     * @throws UnsupportedOperationException if this function doesn't support seeding
+     */
+    public LongHashFunction seeded(long seed) {
+        throw new UnsupportedOperationException(this + " doesn't support seeding");
+    }
+
+    /**
+     * Shortcut for {@code hashBytes(bytes, bytes.position(), bytes.limit())}.
+     */
+    public long hashBytes(Bytes bytes) {
+        return hashBytes(bytes, bytes.position(), bytes.limit());
+    }
+
+    /**
+     * Returns the hash code for bytes of the given {@code Bytes} from the {@code offset}
+     * (inclusive) to the {@code limit} (exclusive).
+     */
+    public long hashBytes(Bytes bytes, long offset, long limit) {
+        return hash(bytes, Accesses.toBytes(), offset, limit - offset);
+    }
+
+    /**
+     * Returns the hash code for the remaining bytes of the given {@code ByteBuffer}.
+     */
+    public long hashBytes(ByteBuffer buffer) {
+        return hash(buffer, Accesses.toByteBuffer(), (long) buffer.position(),
+                (long) buffer.remaining());
+    }
+
+    /**
+     * Returns the hash code for all bytes of the given array.
+     */
+    public long hashBytes(byte[] array) {
+        return hash(array, Accesses.unsafe(), BYTE_BASE, (long) array.length);
+    }
+
+    /**
+     * Returns the hash code for all chars of the given array, as 2-byte units in the native
+     * byte order.
+     */
+    public long hashChars(char[] array) {
+        return hash(array, Accesses.unsafe(), CHAR_BASE, array.length * 2L);
+    }
+
+    /**
+     * Reads 8 bytes as a little-endian {@code long}, regardless the byte order of the access.
+     */
+    static <T> long fetch64(Access<T> access, T input, long offset, boolean littleEndian) {
+        long v = access.getLong(input, offset);
+        return littleEndian ? v : Long.reverseBytes(v);
+    }
+
+    /**
+     * Reads 4 bytes as a little-endian unsigned {@code int}, regardless the byte order
+     * of the access.
+     */
+    static <T> long fetch32(Access<T> access, T input, long offset, boolean littleEndian) {
+        if (littleEndian)
+            return access.getUnsignedInt(input, offset);
+        return Primitives.unsignedInt(Integer.reverseBytes(access.getInt(input, offset)));
+    }
+
+    /**
+     * Returns the value, that {@link #fetch64} returns for the bytes of the given value, written
+     * in the native byte order.
+     */
+    static long nativeToLittleEndian(long v) {
+        return NATIVE_LITTLE_ENDIAN ? v : Long.reverseBytes(v);
+    }
+
+    static int nativeToLittleEndian(int v) {
+        return NATIVE_LITTLE_ENDIAN ? v : Integer.reverseBytes(v);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.hashing;
+
+/**
+ * {@link LongHashFunction#murmur3()} implementation, delegating to {@link Hasher}.
+ */
+class MurmurHash3 extends LongHashFunction {
+    private static final long serialVersionUID = 0L;
+    static final MurmurHash3 INSTANCE = new MurmurHash3();
+
+    private MurmurHash3() {}
+
+    long seed() {
+        return 0L;
+    }
+
+    @Override
+    public <T> long hash(T input, Access<T> access, long offset, long length) {
+        return Hasher.hash(seed(), input, access, offset, length);
+    }
+
+    @Override
+    public long hashLong(long input) {
+        return Hasher.hash(seed(), input);
+    }
+
+    @Override
+    public long hashInt(int input) {
+        return Hasher.hash(seed(), input);
+    }
+
+    @Override
+    public LongHashFunction seeded(long seed) {
+        return new Seeded(seed);
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "LongHashFunction.murmur3()";
+    }
+
+    private static class Seeded extends MurmurHash3 {
+        private static final long serialVersionUID = 0L;
+        private final long seed;
+
+        Seeded(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        long seed() {
+            return seed;
+        }
+
+        @Override
+        public String toString() {
+            return "LongHashFunction.murmur3().seeded(" + seed + ")";
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.hashing;
+
+import java.nio.ByteOrder;
+
+/**
+ * {@link LongHashFunction#sipHash24(long, long)} implementation, the reference SipHash-2-4
+ * algorithm. Multi-byte values are read as little-endian, as the specification requires.
+ */
+class SipHash24 extends LongHashFunction {
+    private static final long serialVersionUID = 0L;
+
+    private final long k0;
+    private final long k1;
+
+    SipHash24(long k0, long k1) {
+        this.k0 = k0;
+        this.k1 = k1;
+    }
+
+    @Override
+    public <T> long hash(T input, Access<T> access, long offset, long length) {
+        boolean le = access.byteOrder(input) == ByteOrder.LITTLE_ENDIAN;
+        State state = new State(k0, k1);
+        long end = offset + (length & ~7L);
+        for (; offset < end; offset += 8L) {
+            state.compress(fetch64(access, input, offset, le));
+        }
+        long last = length << 56;
+        for (int i = 0; i < (int) (length & 7L); i++) {
+            last |= ((long) access.getUnsignedByte(input, offset + i)) << (i * 8);
+        }
+        return state.finish(last);
+    }
+
+    @Override
+    public long hashLong(long input) {
+        State state = new State(k0, k1);
+        state.compress(nativeToLittleEndian(input));
+        return state.finish(8L << 56);
+    }
+
+    @Override
+    public long hashInt(int input) {
+        return new State(k0, k1).finish(
+                (4L << 56) | Primitives.unsignedInt(nativeToLittleEndian(input)));
+    }
+
+    /**
+     * Seeding would only xor the seed into the key, use {@link LongHashFunction#sipHash24(long,
+     * long)} with another key instead.
+     */
+    @Override
+    public LongHashFunction seeded(long seed) {
+        throw new UnsupportedOperationException(this + " is seeded with the 128-bit key");
+    }
+
+    @Override
+    public String toString() {
+        // the key must not leak to logs
+        return "LongHashFunction.sipHash24(<secret key>)";
+    }
+
+    private static final class State {
+        private long v0, v1, v2, v3;
+
+        State(long k0, long k1) {
+            v0 = k0 ^ 0x736f6d6570736575L;
+            v1 = k1 ^ 0x646f72616e646f6dL;
+            v2 = k0 ^ 0x6c7967656e657261L;
+            v3 = k1 ^ 0x7465646279746573L;
+        }
+
+        void compress(long m) {
+            v3 ^= m;
+            sipRound();
+            sipRound();
+            v0 ^= m;
+        }
+
+        /**
+         * @param last the last, partial 8-byte block with the input length in the highest byte
+         */
+        long finish(long last) {
+            compress(last);
+            v2 ^= 0xFFL;
+            sipRound();
+            sipRound();
+            sipRound();
+            sipRound();
+            return v0 ^ v1 ^ v2 ^ v3;
+        }
+
+        private void sipRound() {
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13);
+            v1 ^= v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16);
+            v3 ^= v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21);
+            v3 ^= v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17);
+            v1 ^= v2;
+            v2 = Long.rotateLeft(v2, 32);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.hashing;
+
+import java.nio.ByteOrder;
+
+/**
+ * {@link LongHashFunction#wyHash()} implementation, wyhash (final version 3) algorithm with
+ * the default secret. Multi-byte values are always read as little-endian, as
+ * the reference implementation does on the most platforms.
+ */
+class WyHash extends LongHashFunction {
+    private static final long serialVersionUID = 0L;
+    static final WyHash INSTANCE = new WyHash();
+
+    private static final long S0 = 0xa0761d6478bd642fL;
+    private static final long S1 = 0xe7037ed1a0b428dbL;
+    private static final long S2 = 0x8ebc6af09c88c6e3L;
+    private static final long S3 = 0x589965cc75374cc3L;
+
+    private WyHash() {}
+
+    long seed() {
+        return 0L;
+    }
+
+    @Override
+    public LongHashFunction seeded(long seed) {
+        return new Seeded(seed);
+    }
+
+    @Override
+    public <T> long hash(T input, Access<T> access, long offset, long length) {
+        boolean le = access.byteOrder(input) == ByteOrder.LITTLE_ENDIAN;
+        long seed = seed() ^ S0;
+        long a, b;
+        if (length <= 16L) {
+            if (length >= 4L) {
+                long shift = (length >>> 3) << 2;
+                long last = offset + length - 4L;
+                a = (fetch32(access, input, offset, le) << 32) |
+                        fetch32(access, input, offset + shift, le);
+                b = (fetch32(access, input, last, le) << 32) |
+                        fetch32(access, input, last - shift, le);
+            } else if (length > 0L) {
+                a = (((long) access.getUnsignedByte(input, offset)) << 16) |
+                        (((long) access.getUnsignedByte(input, offset + (length >>> 1))) << 8) |
+                        ((long) access.getUnsignedByte(input, offset + length - 1L));
+                b = 0L;
+            } else {
+                a = b = 0L;
+            }
+        } else {
+            long remaining = length;
+            if (remaining > 48L) {
+                long see1 = seed, see2 = seed;
+                do {
+                    seed = mix(fetch64(access, input, offset, le) ^ S1,
+                            fetch64(access, input, offset + 8L, le) ^ seed);
+                    see1 = mix(fetch64(access, input, offset + 16L, le) ^ S2,
+                            fetch64(access, input, offset + 24L, le) ^ see1);
+                    see2 = mix(fetch64(access, input, offset + 32L, le) ^ S3,
+                            fetch64(access, input, offset + 40L, le) ^ see2);
+                    offset += 48L;
+                    remaining -= 48L;
+                } while (remaining > 48L);
+                seed ^= see1 ^ see2;
+            }
+            while (remaining > 16L) {
+                seed = mix(fetch64(access, input, offset, le) ^ S1,
+                        fetch64(access, input, offset + 8L, le) ^ seed);
+                offset += 16L;
+                remaining -= 16L;
+            }
+            // the last 16 bytes of the input, could overlap with the already mixed bytes
+            a = fetch64(access, input, offset + remaining - 16L, le);
+            b = fetch64(access, input, offset + remaining - 8L, le);
+        }
+        return finish(seed, a, b, length);
+    }
+
+    @Override
+    public long hashLong(long input) {
+        long v = nativeToLittleEndian(input);
+        return finish(seed() ^ S0, Long.rotateLeft(v, 32), v, 8L);
+    }
+
+    @Override
+    public long hashInt(int input) {
+        long v = Primitives.unsignedInt(nativeToLittleEndian(input));
+        long ab = (v << 32) | v;
+        return finish(seed() ^ S0, ab, ab, 4L);
+    }
+
+    private static long finish(long seed, long a, long b, long length) {
+        return mix(S1 ^ length, mix(a ^ S1, b ^ seed));
+    }
+
+    /**
+     * Folds the 128-bit product of the given values: lower 64 bits xor higher 64 bits.
+     */
+    private static long mix(long a, long b) {
+        return (a * b) ^ unsignedMultiplyHigh(a, b);
+    }
+
+    static long unsignedMultiplyHigh(long x, long y) {
+        long x1 = x >> 32, x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32, y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        long z0 = t >> 32;
+        long signedHigh = x1 * y1 + z0 + (z1 >> 32);
+        return signedHigh + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "LongHashFunction.wyHash()";
+    }
+
+    private static class Seeded extends WyHash {
+        private static final long serialVersionUID = 0L;
+        private final long seed;
+
+        Seeded(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        long seed() {
+            return seed;
+        }
+
+        @Override
+        public String toString() {
+            return "LongHashFunction.wyHash().seeded(" + seed + ")";
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.hash.hashing;
+
+import java.nio.ByteOrder;
+
+/**
+ * {@link LongHashFunction#xx64()} implementation, xxHash64 algorithm. Multi-byte values are
+ * always read as little-endian, as the reference implementation specifies.
+ */
+class XxHash64 extends LongHashFunction {
+    private static final long serialVersionUID = 0L;
+    static final XxHash64 INSTANCE = new XxHash64();
+
+    private static final long P1 = -7046029288634856825L;
+    private static final long P2 = -4417276706812531889L;
+    private static final long P3 = 1609587929392839161L;
+    private static final long P4 = -8796714831421723037L;
+    private static final long P5 = 2870177450012600261L;
+
+    private XxHash64() {}
+
+    long seed() {
+        return 0L;
+    }
+
+    @Override
+    public LongHashFunction seeded(long seed) {
+        return new Seeded(seed);
+    }
+
+    @Override
+    public <T> long hash(T input, Access<T> access, long offset, long length) {
+        boolean le = access.byteOrder(input) == ByteOrder.LITTLE_ENDIAN;
+        long seed = seed();
+        long hash;
+        long remaining = length;
+
+        if (remaining >= 32L) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+
+            do {
+                v1 = round(v1, fetch64(access, input, offset, le));
+                v2 = round(v2, fetch64(access, input, offset + 8L, le));
+                v3 = round(v3, fetch64(access, input, offset + 16L, le));
+                v4 = round(v4, fetch64(access, input, offset + 24L, le));
+                offset += 32L;
+                remaining -= 32L;
+            } while (remaining >= 32L);
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+                    Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + P5;
+        }
+
+        hash += length;
+
+        while (remaining >= 8L) {
+            hash ^= round(0L, fetch64(access, input, offset, le));
+            hash = Long.rotateLeft(hash, 27) * P1 + P4;
+            offset += 8L;
+            remaining -= 8L;
+        }
+
+        if (remaining >= 4L) {
+            hash ^= fetch32(access, input, offset, le) * P1;
+            hash = Long.rotateLeft(hash, 23) * P2 + P3;
+            offset += 4L;
+            remaining -= 4L;
+        }
+
+        while (remaining != 0L) {
+            hash ^= access.getUnsignedByte(input, offset) * P5;
+            hash = Long.rotateLeft(hash, 11) * P1;
+            offset++;
+            remaining--;
+        }
+
+        return finalize(hash);
+    }
+
+    @Override
+    public long hashLong(long input) {
+        long hash = seed() + P5 + 8L;
+        hash ^= round(0L, nativeToLittleEndian(input));
+        hash = Long.rotateLeft(hash, 27) * P1 + P4;
+        return finalize(hash);
+    }
+
+    @Override
+    public long hashInt(int input) {
+        long hash = seed() + P5 + 4L;
+        hash ^= Primitives.unsignedInt(nativeToLittleEndian(input)) * P1;
+        hash = Long.rotateLeft(hash, 23) * P2 + P3;
+        return finalize(hash);
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long mergeRound(long hash, long v) {
+        hash ^= round(0L, v);
+        return hash * P1 + P4;
+    }
+
+    private static long finalize(long hash) {
+        hash ^= hash >>> 33;
+        hash *= P2;
+        hash ^= hash >>> 29;
+        hash *= P3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "LongHashFunction.xx64()";
+    }
+
+    private static class Seeded extends XxHash64 {
+        private static final long serialVersionUID = 0L;
+        private final long seed;
+
+        Seeded(long seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        long seed() {
+            return seed;
+        }
+
+        @Override
+        public String toString() {
+            return "LongHashFunction.xx64().seeded(" + seed + ")";
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.hash.locks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Locking strategy, that busy-spins for the configured number of attempts, then yields the
+ * processor for the configured number of attempts, then parks the thread, doubling the park
+ * time on each attempt, up to the configured maximum. Spinning is the fastest way to acquire
+ * a lock, held for a short time, but on oversubscribed hosts, spinning threads starve the lock
+ * holder itself.
+ */
+public final class BackoffLockingStrategy implements LockingStrategy {
+
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1L);
+
+    /**
+     * 1000 spins, 100 yields, then parks for up to 1 millisecond.
+     */
+    public static final BackoffLockingStrategy DEFAULT =
+            new BackoffLockingStrategy(1000, 100, TimeUnit.MILLISECONDS.toNanos(1L));
+
+    private final int spins;
+    private final int yields;
+    private final long maxParkNanos;
+
+    /**
+     * @param spins        the number of attempts to acquire a lock with busy spinning between
+     * @param yields       the number of attempts to acquire a lock with {@link Thread#yield()}
+     *                     between, after spins
+     * @param maxParkNanos the maximum time, for which a thread is parked between attempts to
+     *                     acquire a lock, after spins and yields
+     * @throws IllegalArgumentException if any of the arguments is negative
+     */
+    public BackoffLockingStrategy(int spins, int yields, long maxParkNanos) {
+        if (spins < 0 || yields < 0 || maxParkNanos < 0L) {
+            throw new IllegalArgumentException("spins, yields and maxParkNanos should be " +
+                    "non-negative, " + spins + ", " + yields + ", " + maxParkNanos + " given");
+        }
+        this.spins = spins;
+        this.yields = yields;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    public void lock(InterProcessLock lock) {
+        for (int failedAttempts = 1; !lock.tryLock(); ) {
+            waitBeforeNextAttempt(failedAttempts);
+            if (failedAttempts < Integer.MAX_VALUE)
+                failedAttempts++;
+        }
+    }
+
+    @Override
+    public void waitBeforeNextAttempt(int failedAttempts) {
+        // Thread.onSpinWait() is not available before Java 9, plain spin
+        if (failedAttempts <= spins)
+            return;
+        if (failedAttempts - spins <= yields) {
+            Thread.yield();
+            return;
+        }
+        int parks = failedAttempts - spins - yields;
+        long parkNanos = MIN_PARK_NANOS << Math.min(parks - 1, 30);
+        LockSupport.parkNanos(Math.min(parkNanos, maxParkNanos));
+    }
+
+    @Override
+    public String toString() {
+        return "BackoffLockingStrategy{spins=" + spins + ", yields=" + yields +
+                ", maxParkNanos=" + maxParkNanos + "}";
+    }
+}
@@ -13,10 +13,31 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package net.openhft.chronicle.hash.locks;
 
+/**
+ * Strategy of waiting for an inter-process lock, held by another thread or process, between
+ * unsuccessful attempts to acquire it.
+ *
+ * @see BackoffLockingStrategy
+ * @see net.openhft.chronicle.hash.ChronicleHashBuilder#lockingStrategy(LockingStrategy)
+ */
 public interface LockingStrategy {
 
+    /**
+     * Acquires the given lock, waiting between unsuccessful {@link InterProcessLock#tryLock()
+     * tryLock()} attempts according to this strategy.
+     *
+     * @param lock the lock to acquire
+     */
     void lock(InterProcessLock lock);
+
+    /**
+     * Waits (spins, yields or parks the current thread) before the next attempt to acquire
+     * a lock.
+     *
+     * @param failedAttempts the number of unsuccessful attempts to acquire the lock so far,
+     *                       i. e. 1 before the second attempt
+     */
+    void waitBeforeNextAttempt(int failedAttempts);
 }
@@ -16,7 +16,7 @@
 
 package net.openhft.chronicle.hash.serialization.internal;
 
-import net.openhft.chronicle.hash.hashing.Hasher;
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
 import net.openhft.lang.io.Bytes;
 import net.openhft.lang.threadlocal.Provider;
 import net.openhft.lang.threadlocal.ThreadLocalCopies;
@@ -40,6 +40,7 @@ public abstract class BasicCopyingMetaBytesInterop<E, W> implements MetaBytesInt
     final DirectBytesBuffer buffer;
     transient long size;
     transient long hash;
+    transient LongHashFunction hashFunction;
 
     protected BasicCopyingMetaBytesInterop(DirectBytesBuffer buffer) {
         this.buffer = buffer;
@@ -56,10 +57,12 @@ public abstract class BasicCopyingMetaBytesInterop<E, W> implements MetaBytesInt
     }
 
     @Override
-    public long hash(W writer, E e) {
+    public long hash(LongHashFunction hashFunction, W writer, E e) {
         long h;
-        if ((h = hash) == 0L)
-            return hash = Hasher.hash(buffer.buffer);
+        if ((h = hash) == 0L || hashFunction != this.hashFunction) {
+            this.hashFunction = hashFunction;
+            return hash = hashFunction.hashBytes(buffer.buffer);
+        }
         return h;
     }
 
@@ -19,6 +19,7 @@
 package net.openhft.chronicle.hash.serialization.internal;
 
 import net.openhft.chronicle.hash.hashing.Hasher;
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
 import net.openhft.chronicle.hash.serialization.BytesInterop;
 import net.openhft.chronicle.hash.serialization.DeserializationFactoryConfigurableBytesReader;
 import net.openhft.chronicle.hash.serialization.SizeMarshaller;
@@ -177,8 +178,8 @@ public abstract class ByteableMarshaller<E extends Byteable>
     }
 
     @Override
-    public long hash(Object interop, E e) {
-        return hash(e);
+    public long hash(LongHashFunction hashFunction, Object interop, E e) {
+        return hashFunction.hashBytes(e.bytes(), e.offset(), e.offset() + size);
     }
 
     @Override
@@ -18,6 +18,7 @@
 
 package net.openhft.chronicle.hash.serialization.internal;
 
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
 import net.openhft.chronicle.hash.serialization.BytesInterop;
 import net.openhft.lang.io.Bytes;
 
@@ -28,6 +29,14 @@ public final class DelegatingMetaBytesInterop<E, I extends BytesInterop<E>>
     private static final long serialVersionUID = 0L;
     private static final DelegatingMetaBytesInterop INSTANCE = new DelegatingMetaBytesInterop();
 
+    private static final ThreadLocal<DirectBytesBuffer> hashingBuffer =
+            new ThreadLocal<DirectBytesBuffer>() {
+                @Override
+                protected DirectBytesBuffer initialValue() {
+                    return new DirectBytesBuffer(DelegatingMetaBytesInterop.class);
+                }
+            };
+
     public static <E, I extends BytesInterop<E>>
     DelegatingMetaBytesInterop<E, I> instance() {
         return INSTANCE;
@@ -46,8 +55,21 @@ public final class DelegatingMetaBytesInterop<E, I extends BytesInterop<E>>
     }
 
     @Override
-    public long hash(I interop, E e) {
-        return interop.hash(e);
+    public long hash(LongHashFunction hashFunction, I interop, E e) {
+        if (hashFunction == LongHashFunction.murmur3())
+            return interop.hash(e);
+        // constant-size primitives are written in the native byte order, hash them directly
+        if (interop == LongMarshaller.INSTANCE)
+            return hashFunction.hashLong((Long) e);
+        if (interop == IntegerMarshaller.INSTANCE)
+            return hashFunction.hashInt((Integer) e);
+        if (interop == DoubleMarshaller.INSTANCE)
+            return hashFunction.hashLong(Double.doubleToLongBits((Double) e));
+        // BytesInterop.hash() computes murmur3 hash, other functions hash the serialized form
+        Bytes buffer = hashingBuffer.get().obtain(interop.size(e), false);
+        interop.write(buffer, e);
+        buffer.flip();
+        return hashFunction.hashBytes(buffer);
     }
 
     @Override
@@ -18,12 +18,17 @@
 
 package net.openhft.chronicle.hash.serialization.internal;
 
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
 import net.openhft.lang.io.Bytes;
 
 public interface MetaBytesInterop<E, I> extends MetaBytesWriter<E, I> {
 
     boolean startsWith(I interop, Bytes bytes, E e);
 
-    long hash(I interop, E e);
+    /**
+     * Returns the hash code of the serialized form of the given object, computed by the given
+     * hash function.
+     */
+    long hash(LongHashFunction hashFunction, I interop, E e);
 
 }
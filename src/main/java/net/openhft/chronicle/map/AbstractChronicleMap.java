@@ -23,6 +23,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import static java.util.Collections.emptyList;
 import static net.openhft.chronicle.map.Objects.requireNonNull;
@@ -47,17 +50,21 @@ abstract class AbstractChronicleMap<K, V> extends AbstractMap<K, V>
     @Override
     public final V put(K key, V value) {
         try (MapKeyContext<V> c = context(key)) {
-            // We cannot read the previous value under read lock, because then we will need
-            // to release the read lock -> acquire write lock, the value might be updated in
-            // between, that will break ConcurrentMap.put() atomicity guarantee. So, we acquire
-            // update lock from the start:
-            c.updateLock().lock();
-            V prevValue = prevValueOnPut(c);
-            c.put(value);
-            return prevValue;
+            return put(c, value);
         }
     }
 
+    private V put(MapKeyContext<V> c, V value) {
+        // We cannot read the previous value under read lock, because then we will need
+        // to release the read lock -> acquire write lock, the value might be updated in
+        // between, that will break ConcurrentMap.put() atomicity guarantee. So, we acquire
+        // update lock from the start:
+        c.updateLock().lock();
+        V prevValue = prevValueOnPut(c);
+        c.put(value);
+        return prevValue;
+    }
+
     V prevValueOnPut(MapKeyContext<V> context) {
         return context.getUsing(null);
     }
@@ -107,29 +114,66 @@ abstract class AbstractChronicleMap<K, V> extends AbstractMap<K, V>
     @Override
     public final V acquireUsing(K key, V usingValue) {
         try (VanillaContext<K, ?, ?, V, ?, ?> c = context(key)) {
-            // acquireUsing() should just read an existing value most of the time,
-            // so try to check if the key is already present under read lock first:
-            if (c.readLock().tryLock()) {
-                V value = c.getUsing(usingValue);
-                if (value != null)
-                    return value;
-                // Key is absent
-                upgradeReadToUpdateLockWithUnlockingIfNeeded(c);
-            } else {
-                c.updateLock().lock();
-            }
-            // Entry with this key might be put into the map before we acquired
-            // update lock (exclusive) at any time, so even if we successfully upgraded
-            // to update lock, we should check if the value is still absent again
+            return acquireUsing(c, usingValue);
+        }
+    }
+
+    private V acquireUsing(VanillaContext<K, ?, ?, V, ?, ?> c, V usingValue) {
+        // acquireUsing() should just read an existing value most of the time,
+        // so try to check if the key is already present under read lock first:
+        if (c.readLock().tryLock()) {
             V value = c.getUsing(usingValue);
             if (value != null)
                 return value;
             // Key is absent
-            putDefaultValue(c);
+            upgradeReadToUpdateLockWithUnlockingIfNeeded(c);
+        } else {
+            c.updateLock().lock();
+        }
+        // Entry with this key might be put into the map before we acquired
+        // update lock (exclusive) at any time, so even if we successfully upgraded
+        // to update lock, we should check if the value is still absent again
+        V value = c.getUsing(usingValue);
+        if (value != null)
+            return value;
+        // Key is absent
+        putDefaultValue(c);
+        return c.getUsing(usingValue);
+    }
+
+    @Override
+    public KeyHandle<K> keyHandle(K key) {
+        // the hash is not precomputed, operations via the handle are the same as via the key
+        return new KeyHandle<>(this, key, 0L, -1);
+    }
+
+    @Override
+    public VanillaContext<K, ?, ?, V, ?, ?> context(KeyHandle<K> keyHandle) {
+        keyHandle.checkMap(this);
+        return context(keyHandle.key);
+    }
+
+    @Override
+    public final V getUsing(KeyHandle<K> keyHandle, V usingValue) {
+        try (MapKeyContext<V> c = context(keyHandle)) {
             return c.getUsing(usingValue);
         }
     }
 
+    @Override
+    public final V put(KeyHandle<K> keyHandle, V value) {
+        try (MapKeyContext<V> c = context(keyHandle)) {
+            return put(c, value);
+        }
+    }
+
+    @Override
+    public final V acquireUsing(KeyHandle<K> keyHandle, V usingValue) {
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = context(keyHandle)) {
+            return acquireUsing(c, usingValue);
+        }
+    }
+
     void upgradeReadToUpdateLockWithUnlockingIfNeeded(KeyContext c) {
         if (!c.updateLock().tryLock()) {
             c.readLock().unlock();
@@ -165,6 +209,149 @@ abstract class AbstractChronicleMap<K, V> extends AbstractMap<K, V>
         }
     }
 
+    @Override
+    public V computeLocked(
+            K key, @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        requireNonNull(remappingFunction);
+        try (MapKeyContext<V> c = context(key)) {
+            c.updateLock().lock();
+            V oldValue = c.getUsing(null);
+            return putOrRemoveComputed(c, oldValue, remappingFunction.apply(key, oldValue));
+        }
+    }
+
+    @Override
+    public V computeIfAbsentLocked(
+            K key, @NotNull Function<? super K, ? extends V> mappingFunction) {
+        requireNonNull(mappingFunction);
+        try (MapKeyContext<V> c = context(key)) {
+            // computeIfAbsentLocked() should find the value most of the time,
+            // so check if the key is present under read lock first, as in putIfAbsent()
+            if (c.readLock().tryLock()) {
+                V currentValue = c.getUsing(null);
+                if (currentValue != null)
+                    return currentValue;
+                upgradeReadToUpdateLockWithUnlockingIfNeeded(c);
+            } else {
+                c.updateLock().lock();
+            }
+            V currentValue = c.getUsing(null);
+            if (currentValue != null)
+                return currentValue;
+            V newValue = mappingFunction.apply(key);
+            if (newValue != null) {
+                checkValue(newValue);
+                c.put(newValue);
+            }
+            return newValue;
+        }
+    }
+
+    @Override
+    public V computeIfPresentLocked(
+            K key, @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        requireNonNull(remappingFunction);
+        try (MapKeyContext<V> c = context(key)) {
+            c.updateLock().lock();
+            V oldValue = c.getUsing(null);
+            if (oldValue == null)
+                return null;
+            return putOrRemoveComputed(c, oldValue, remappingFunction.apply(key, oldValue));
+        }
+    }
+
+    @Override
+    public V mergeLocked(K key, @NotNull V value,
+                         @NotNull BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        requireNonNull(value);
+        requireNonNull(remappingFunction);
+        checkValue(value);
+        try (MapKeyContext<V> c = context(key)) {
+            c.updateLock().lock();
+            V oldValue = c.getUsing(null);
+            V newValue = oldValue == null ? value : remappingFunction.apply(oldValue, value);
+            return putOrRemoveComputed(c, oldValue, newValue);
+        }
+    }
+
+    /**
+     * Should be called under update lock, after the key search.
+     */
+    private V putOrRemoveComputed(MapKeyContext<V> c, V oldValue, V newValue) {
+        if (newValue == null) {
+            if (oldValue != null)
+                c.remove();
+            return null;
+        }
+        checkValue(newValue);
+        c.put(newValue);
+        return newValue;
+    }
+
+    /**
+     * Acquires the entry of the key, as {@link #acquireUsing(Object, Object)} does, but
+     * leaves the context locked and positioned on the entry.
+     */
+    private void acquireEntry(VanillaContext<K, ?, ?, V, ?, ?> c) {
+        checkAtomicValueUpdatesSupported();
+        // the entry should be present most of the time, then read lock is enough for
+        // atomic field updates
+        if (c.readLock().tryLock()) {
+            if (c.containsKey())
+                return;
+            upgradeReadToUpdateLockWithUnlockingIfNeeded(c);
+        } else {
+            c.updateLock().lock();
+        }
+        if (!c.containsKey())
+            putDefaultValue(c);
+    }
+
+    void checkAtomicValueUpdatesSupported() {
+    }
+
+    @Override
+    public long addAndGetLong(K key, long fieldOffset, long delta) {
+        return getAndAddLong(key, fieldOffset, delta) + delta;
+    }
+
+    @Override
+    public long getAndAddLong(K key, long fieldOffset, long delta) {
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = context(key)) {
+            acquireEntry(c);
+            return c.getAndAddLong(fieldOffset, delta);
+        }
+    }
+
+    @Override
+    public boolean compareAndSwapLong(K key, long fieldOffset, long expected, long x) {
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = context(key)) {
+            acquireEntry(c);
+            return c.compareAndSwapLong(fieldOffset, expected, x);
+        }
+    }
+
+    @Override
+    public int addAndGetInt(K key, long fieldOffset, int delta) {
+        return getAndAddInt(key, fieldOffset, delta) + delta;
+    }
+
+    @Override
+    public int getAndAddInt(K key, long fieldOffset, int delta) {
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = context(key)) {
+            acquireEntry(c);
+            return c.getAndAddInt(fieldOffset, delta);
+        }
+    }
+
+    @Override
+    public boolean compareAndSwapInt(K key, long fieldOffset, int expected, int x) {
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = context(key)) {
+            acquireEntry(c);
+            return c.compareAndSwapInt(fieldOffset, expected, x);
+        }
+    }
+
     @Override
     public synchronized void getAll(File toFile) throws IOException {
         JsonSerializer.getAll(toFile, this, emptyList());
@@ -175,6 +362,121 @@ abstract class AbstractChronicleMap<K, V> extends AbstractMap<K, V>
         JsonSerializer.putAll(fromFile, this, emptyList());
     }
 
+    @Override
+    public void getAll(@NotNull Collection<? extends K> keys,
+                       @NotNull Map<? super K, ? super V> result) {
+        requireNonNull(result);
+        for (K key : keys) {
+            V value = getUsing(key, null);
+            if (value != null)
+                result.put(key, value);
+        }
+    }
+
+    @Override
+    public boolean removeAll(@NotNull Collection<? extends K> keys) {
+        boolean removed = false;
+        for (K key : keys) {
+            try (MapKeyContext<V> c = context(key)) {
+                if (c.remove())
+                    removed = true;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        requireNonNull(action);
+        EntryVisitor visitor = new EntryVisitor(action);
+        for (int i = 0; i < actualSegments(); i++) {
+            forEachEntryInSegment(i, visitor);
+        }
+    }
+
+    private void forEachEntryInSegment(int segmentIndex, EntryVisitor visitor) {
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = mapContext()) {
+            c.segmentIndex = segmentIndex;
+            if (c.size() == 0)
+                return;
+            c.readLock().lock();
+            visitor.context = c;
+            c.forEachTierEntry(visitor);
+        } finally {
+            visitor.context = null;
+        }
+    }
+
+    /**
+     * Shared by all maps, lazily initialized, worker threads of {@code ForkJoinPool} are daemon
+     */
+    static class ParallelIterationPoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    @Override
+    public void parallelForEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        requireNonNull(action);
+        SegmentRangeTask task = new SegmentRangeTask(action, 0, actualSegments());
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            ParallelIterationPoolHolder.POOL.invoke(task);
+        }
+    }
+
+    /**
+     * Splits the range of segments in halves, down to a single segment per task.
+     */
+    class SegmentRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+
+        private final Consumer<? super MapKeyContext<V>> action;
+        private final int fromSegment;
+        private final int toSegment;
+
+        SegmentRangeTask(Consumer<? super MapKeyContext<V>> action,
+                         int fromSegment, int toSegment) {
+            this.action = action;
+            this.fromSegment = fromSegment;
+            this.toSegment = toSegment;
+        }
+
+        @Override
+        protected void compute() {
+            if (toSegment - fromSegment == 1) {
+                // the visitor is not thread-safe, so it is created per task
+                forEachEntryInSegment(fromSegment, new EntryVisitor(action));
+            } else if (toSegment > fromSegment) {
+                int middle = (fromSegment + toSegment) >>> 1;
+                invokeAll(new SegmentRangeTask(action, fromSegment, middle),
+                        new SegmentRangeTask(action, middle, toSegment));
+            }
+        }
+    }
+
+    class EntryVisitor implements HashLookup.EntryConsumer {
+        private final Consumer<? super MapKeyContext<V>> action;
+        private VanillaContext<K, ?, ?, V, ?, ?> context;
+
+        EntryVisitor(Consumer<? super MapKeyContext<V>> action) {
+            this.action = action;
+        }
+
+        @Override
+        public void accept(long hash, long pos) {
+            context.pos = pos;
+            context.initKeyFromPos();
+            try {
+                if (!context.containsKey()) // for replicated map
+                    return;
+                action.accept(context);
+            } finally {
+                context.closeKeySearch();
+            }
+        }
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public final V remove(Object key) {
@@ -261,8 +563,8 @@ abstract class AbstractChronicleMap<K, V> extends AbstractMap<K, V>
 
     class EntryIterator implements Iterator<Entry<K, V>>, HashLookup.EntryConsumer {
         /**
-         * Very inefficient (esp. if segments are large), but CORRECT implementation
-         * TODO map.forEachEntry(Consumer<MapKeyContext<V>>)
+         * Very inefficient (esp. if segments are large), but CORRECT implementation, see
+         * {@link #forEachEntry(Consumer)} for iteration without copying entries to the heap
          */
         private final Thread ownerThread = Thread.currentThread();
         private int segmentIndex = actualSegments() - 1;
@@ -290,8 +592,7 @@ abstract class AbstractChronicleMap<K, V> extends AbstractMap<K, V>
                     if (c.size() == 0)
                         continue;
                     c.updateLock().lock();
-                    c.initSegment();
-                    c.hashLookup.forEach(this);
+                    c.forEachTierEntry(this);
                 } finally {
                     context = null;
                 }
@@ -0,0 +1,27 @@
+package net.openhft.chronicle.map;
+
+import java.io.Serializable;
+
+/**
+ * Represents a function that accepts two arguments and produces a result.
+ *
+ * <p>This is a <a href="package-summary.html">functional interface</a> whose functional method is {@link
+ * #apply(Object, Object)}.
+ *
+ * @param <T> the type of the first argument to the function
+ * @param <U> the type of the second argument to the function
+ * @param <R> the type of the result of the function
+ */
+
+public interface BiFunction<T, U, R> extends Serializable {
+
+    /**
+     * Applies this function to the given arguments.
+     *
+     * @param t the first function argument
+     * @param u the second function argument
+     * @return the function result
+     */
+    R apply(T t, U u);
+
+}
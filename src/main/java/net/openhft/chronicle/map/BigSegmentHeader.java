@@ -17,7 +17,10 @@
 package net.openhft.chronicle.map;
 
 import net.openhft.chronicle.hash.locks.IllegalInterProcessLockStateException;
+import net.openhft.chronicle.hash.locks.LockingStrategy;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.TimeUnit;
 
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
@@ -25,8 +28,8 @@ import static java.nio.ByteOrder.nativeOrder;
 import static net.openhft.lang.io.AbstractBytes.UNSIGNED_INT_MASK;
 import static net.openhft.lang.io.NativeBytes.UNSAFE;
 
-enum BigSegmentHeader implements SegmentHeader {
-    INSTANCE;
+final class BigSegmentHeader implements SegmentHeader {
+    static final long DEFAULT_LOCK_TIME_OUT_NANOS = TimeUnit.SECONDS.toNanos(20L);
 
     static final long LOCK_OFFSET = 0L; // 64-bit
     static final long COUNT_WORD_OFFSET = LOCK_OFFSET;
@@ -51,8 +54,88 @@ enum BigSegmentHeader implements SegmentHeader {
     static final long SIZE_OFFSET = LOCK_OFFSET + 8L; // 32-bit
     static final long NEXT_POS_TO_SEARCH_FROM_OFFSET = SIZE_OFFSET + 4L;
 
+    /**
+     * The id of the process, holding the exclusive (update or write) lock, in the higher 32 bits,
+     * and the id of the thread in this process, in the lower 32 bits
+     */
     static final long EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET = NEXT_POS_TO_SEARCH_FROM_OFFSET + 4L;
 
+    static final long NEXT_TIER_OFFSET = EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET + 8L; // 32-bit
+
+    /**
+     * Non-zero if the segment is migrated by {@link RehashingChronicleMap}, takes the padding
+     * after the next tier index, so fits 32-byte segment headers
+     */
+    static final long MIGRATED_OFFSET = NEXT_TIER_OFFSET + 4L; // 32-bit
+
+    static final long WRITE_VERSION_OFFSET = NEXT_TIER_OFFSET + 8L; // 64-bit
+
+    private final boolean versioned;
+    private final long lockTimeOutNanos;
+    private final LockingStrategy lockingStrategy;
+
+    /**
+     * @param versioned        whether to maintain the {@linkplain #writeVersion(long) write
+     *                         version}, requires 64-byte segment headers
+     * @param lockTimeOutNanos how long blocking lock methods try to acquire the lock, before
+     *                         throwing an exception
+     * @param lockingStrategy  how to wait between attempts to acquire the lock
+     */
+    BigSegmentHeader(boolean versioned, long lockTimeOutNanos, LockingStrategy lockingStrategy) {
+        this.versioned = versioned;
+        this.lockTimeOutNanos = lockTimeOutNanos;
+        this.lockingStrategy = lockingStrategy;
+    }
+
+    private RuntimeException deadLock(String lock, long address) {
+        return new SegmentLockTimeOutException("Dead lock: failed to acquire the segment " + lock +
+                " lock in " + TimeUnit.NANOSECONDS.toMillis(lockTimeOutNanos) + " ms, " +
+                lockState(address));
+    }
+
+    /**
+     * Describes the lock and its holders, as far as they are recorded: the holder of the
+     * exclusive (update or write) lock is recorded, but read locks and waiting writers are only
+     * counted, so if they are left by dead processes, they couldn't be recovered.
+     */
+    static String lockState(long address) {
+        long lockWord = getLockWord(address);
+        int countWord = countWord(lockWord);
+        int waitWord = waitWord(lockWord);
+        // the exclusive lock holder takes a read party as well
+        int otherReadCount = readCount(countWord) - (updateLocked(countWord) ? 1 : 0);
+        StringBuilder state = new StringBuilder();
+        if (writeLocked(countWord)) {
+            state.append("the segment is write-locked by ")
+                    .append(exclusiveLockHolderState(address));
+        } else if (updateLocked(countWord)) {
+            state.append("the segment is update-locked by ")
+                    .append(exclusiveLockHolderState(address)).append(", and read-locked ")
+                    .append(otherReadCount).append(" more times");
+        } else {
+            state.append("the segment is read-locked ").append(otherReadCount).append(" times");
+        }
+        state.append(", ").append(waitWord).append(" writers wait for the lock");
+        if ((!writeLocked(countWord) && otherReadCount > 0) || waitWord > 0) {
+            state.append(". Read locks and waits are not recorded by holder, if they are left " +
+                    "by dead processes, the segment lock couldn't be recovered, the map should " +
+                    "be closed in all processes and recreated");
+        }
+        return state.toString();
+    }
+
+    private static String exclusiveLockHolderState(long address) {
+        long holder = UNSAFE.getLongVolatile(null,
+                address + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET);
+        long holderProcessId = holder >>> 32;
+        if (holderProcessId == 0L)
+            return "an unrecorded holder";
+        if (holderProcessId == PROCESS_ID)
+            return "the thread " + (holder & UNSIGNED_INT_MASK) + " of this process";
+        return "the " + (processAlive(holderProcessId) ? "alive" : "dead") + " process " +
+                holderProcessId;
+    }
+
     @Override
     public long size(long address) {
         return UNSAFE.getInt(address + SIZE_OFFSET) & UNSIGNED_INT_MASK;
@@ -73,6 +156,46 @@ enum BigSegmentHeader implements SegmentHeader {
         UNSAFE.putInt(address + NEXT_POS_TO_SEARCH_FROM_OFFSET, (int) nextPosToSearchFrom);
     }
 
+    @Override
+    public long nextTier(long address) {
+        return UNSAFE.getIntVolatile(null, address + NEXT_TIER_OFFSET) & UNSIGNED_INT_MASK;
+    }
+
+    @Override
+    public void nextTier(long address, long nextTier) {
+        // ordered put, tier's segment data is zeroed and initialized before it is linked
+        UNSAFE.putOrderedInt(null, address + NEXT_TIER_OFFSET, (int) nextTier);
+    }
+
+    boolean migrated(long address) {
+        return UNSAFE.getIntVolatile(null, address + MIGRATED_OFFSET) != 0;
+    }
+
+    void migrated(long address, boolean migrated) {
+        UNSAFE.putIntVolatile(null, address + MIGRATED_OFFSET, migrated ? 1 : 0);
+    }
+
+    @Override
+    public long writeVersion(long address) {
+        return UNSAFE.getLongVolatile(null, address + WRITE_VERSION_OFFSET);
+    }
+
+    private void writeLockAcquired(long address) {
+        if (versioned) {
+            // volatile put, the odd version should be visible before any write under the lock
+            UNSAFE.putLongVolatile(null, address + WRITE_VERSION_OFFSET,
+                    UNSAFE.getLong(address + WRITE_VERSION_OFFSET) + 1L);
+        }
+    }
+
+    private void writeLockReleased(long address) {
+        if (versioned) {
+            // ordered put, all writes under the lock should be visible before the even version
+            UNSAFE.putOrderedLong(null, address + WRITE_VERSION_OFFSET,
+                    UNSAFE.getLong(address + WRITE_VERSION_OFFSET) + 1L);
+        }
+    }
+
     private static long getLockWord(long address) {
         return UNSAFE.getLongVolatile(null, address + LOCK_OFFSET);
     }
@@ -162,9 +285,35 @@ enum BigSegmentHeader implements SegmentHeader {
         }
     }
 
+    /**
+     * 0, if the process id couldn't be determined, then dead lock holders are not recovered
+     */
+    static final long PROCESS_ID = processId();
+
+    private static long processId() {
+        // "pid@hostname" on all known JVMs
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return Long.parseLong(name.substring(0, name.indexOf('@'))) & UNSIGNED_INT_MASK;
+        } catch (RuntimeException e) {
+            return 0L;
+        }
+    }
+
+    private static final File PROC = new File("/proc");
+
+    static boolean processAlive(long processId) {
+        // if there is no procfs, liveness couldn't be checked, assume the process is alive
+        return !PROC.isDirectory() || new File(PROC, Long.toString(processId)).exists();
+    }
+
+    private static long currentExclusiveLockHolder() {
+        return (PROCESS_ID << 32) | (Thread.currentThread().getId() & UNSIGNED_INT_MASK);
+    }
+
     private static void writeExclusiveLockHolder(long address) {
         UNSAFE.putLong(address + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET,
-                Thread.currentThread().getId());
+                currentExclusiveLockHolder());
     }
 
     private static void clearExclusiveLockHolder(long address) {
@@ -175,22 +324,50 @@ enum BigSegmentHeader implements SegmentHeader {
      * For debugging and monitoring
      */
     static Thread exclusiveLockHolder(long address) {
-        long holderId = UNSAFE.getLong(address + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET);
-        if (holderId == 0L)
+        long holder = UNSAFE.getLong(address + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET);
+        if (holder == 0L || (holder >>> 32) != PROCESS_ID)
             return null;
+        long holderId = holder & UNSIGNED_INT_MASK;
         Thread[] threads = new Thread[Thread.activeCount()];
         Thread.enumerate(threads);
         for (Thread thread : threads) {
-            if (thread.getId() == holderId)
+            if (thread != null && (thread.getId() & UNSIGNED_INT_MASK) == holderId)
                 return thread;
         }
         return null;
     }
 
+    @Override
+    public boolean tryTakeOverDeadExclusiveLock(long address) {
+        long holderAddress = address + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET;
+        long holder = UNSAFE.getLongVolatile(null, holderAddress);
+        long holderProcessId = holder >>> 32;
+        if (holderProcessId == 0L || PROCESS_ID == 0L || holderProcessId == PROCESS_ID ||
+                processAlive(holderProcessId)) {
+            return false;
+        }
+        int countWord = getCountWord(address);
+        // if not locked, the holder record is stale
+        if (!updateLocked(countWord))
+            return false;
+        // only one of contenders takes the lock over
+        if (!UNSAFE.compareAndSwapLong(null, holderAddress, holder, currentExclusiveLockHolder()))
+            return false;
+        if (!writeLocked(countWord) &&
+                !tryUpgradeUpdateToWriteLock(address, lockTimeOutNanos, TimeUnit.NANOSECONDS)) {
+            // the dead process held the update lock, but readers (maybe dead as well) don't let
+            // it be upgraded, release the update lock not to leave it held by the current thread
+            updateUnlock(address);
+            throw deadLock("write", address);
+        }
+        // if the dead process held the write lock, the write version is already odd
+        return true;
+    }
+
     @Override
     public void readLock(long address) {
-        if (!tryReadLock(address, 2, TimeUnit.SECONDS)) {
-            throw new RuntimeException("Dead lock");
+        if (!tryReadLock(address, lockTimeOutNanos, TimeUnit.NANOSECONDS)) {
+            throw deadLock("read", address);
         }
     }
 
@@ -218,7 +395,10 @@ enum BigSegmentHeader implements SegmentHeader {
 
     private boolean tryReadLock0(long address, long time, TimeUnit unit) {
         long end = System.nanoTime() + unit.toNanos(time);
+        // the first attempt is already made by the caller
+        int failedAttempts = 1;
         do {
+            lockingStrategy.waitBeforeNextAttempt(failedAttempts++);
             if (tryReadLock(address))
                 return true;
         } while (System.nanoTime() <= end);
@@ -229,22 +409,32 @@ enum BigSegmentHeader implements SegmentHeader {
     public boolean tryUpgradeReadToUpdateLock(long address) {
         int countWord = getCountWord(address);
         checkReadLocked(countWord);
-        return !updateLocked(countWord) &&
-                casCountWord(address, countWord, countWord - READ_PARTY + UPDATE_PARTY);
+        if (!updateLocked(countWord) &&
+                casCountWord(address, countWord, countWord - READ_PARTY + UPDATE_PARTY)) {
+            // the holder of the upgraded lock should be recovered, if it dies, as well
+            writeExclusiveLockHolder(address);
+            return true;
+        }
+        return false;
     }
 
     @Override
     public boolean tryUpgradeReadToWriteLock(long address) {
         int countWord = getCountWord(address);
         checkReadLocked(countWord);
-        return countWord == READ_PARTY &&
-                casCountWord(address, READ_PARTY, WRITE_LOCKED_COUNT_WORD);
+        if (countWord == READ_PARTY &&
+                casCountWord(address, READ_PARTY, WRITE_LOCKED_COUNT_WORD)) {
+            writeExclusiveLockHolder(address);
+            writeLockAcquired(address);
+            return true;
+        }
+        return false;
     }
 
     @Override
     public void updateLock(long address) {
-        if (!tryUpdateLock(address, 2, TimeUnit.SECONDS)) {
-            throw new RuntimeException("Dead lock");
+        if (!tryUpdateLock(address, lockTimeOutNanos, TimeUnit.NANOSECONDS)) {
+            throw deadLock("update", address);
         }
     }
 
@@ -274,7 +464,10 @@ enum BigSegmentHeader implements SegmentHeader {
 
     private boolean tryUpdateLock0(long address, long time, TimeUnit unit) {
         long end = System.nanoTime() + unit.toNanos(time);
+        // the first attempt is already made by the caller
+        int failedAttempts = 1;
         do {
+            lockingStrategy.waitBeforeNextAttempt(failedAttempts++);
             if (tryUpdateLock(address))
                 return true;
         } while (System.nanoTime() <= end);
@@ -283,8 +476,8 @@ enum BigSegmentHeader implements SegmentHeader {
 
     @Override
     public void writeLock(long address) {
-        if (!tryWriteLock(address, 2, TimeUnit.SECONDS)) {
-            throw new RuntimeException("Dead lock");
+        if (!tryWriteLock(address, lockTimeOutNanos, TimeUnit.NANOSECONDS)) {
+            throw deadLock("write", address);
         }
     }
 
@@ -297,6 +490,7 @@ enum BigSegmentHeader implements SegmentHeader {
     public boolean tryWriteLock(long address) {
         if (getCountWord(address) == 0 && casCountWord(address, 0, WRITE_LOCKED_COUNT_WORD)) {
             writeExclusiveLockHolder(address);
+            writeLockAcquired(address);
             return true;
         } else {
             return false;
@@ -311,7 +505,11 @@ enum BigSegmentHeader implements SegmentHeader {
     private boolean tryWriteLock0(long address, long time, TimeUnit unit) {
         long end = System.nanoTime() + unit.toNanos(time);
         registerWait(address);
+        int failedAttempts = 0;
         do {
+            if (failedAttempts > 0)
+                lockingStrategy.waitBeforeNextAttempt(failedAttempts);
+            failedAttempts++;
             long lockWord = getLockWord(address);
             int countWord = countWord(lockWord);
             if (countWord == 0) {
@@ -320,6 +518,7 @@ enum BigSegmentHeader implements SegmentHeader {
                 if (casLockWord(address, lockWord,
                         lockWord(WRITE_LOCKED_COUNT_WORD, waitWord - WAIT_PARTY))) {
                     writeExclusiveLockHolder(address);
+                    writeLockAcquired(address);
                     return true;
                 }
             }
@@ -348,8 +547,8 @@ enum BigSegmentHeader implements SegmentHeader {
 
     @Override
     public void upgradeUpdateToWriteLock(long address) {
-        if (!tryUpgradeUpdateToWriteLock(address, 2, TimeUnit.SECONDS)) {
-            throw new RuntimeException("Dead lock");
+        if (!tryUpgradeUpdateToWriteLock(address, lockTimeOutNanos, TimeUnit.NANOSECONDS)) {
+            throw deadLock("write", address);
         }
     }
 
@@ -361,8 +560,12 @@ enum BigSegmentHeader implements SegmentHeader {
     @Override
     public boolean tryUpgradeUpdateToWriteLock(long address) {
         int countWord = getCountWord(address);
-        return checkExclusiveUpdateLocked(countWord) &&
-                casCountWord(address, countWord, WRITE_LOCKED_COUNT_WORD);
+        if (checkExclusiveUpdateLocked(countWord) &&
+                casCountWord(address, countWord, WRITE_LOCKED_COUNT_WORD)) {
+            writeLockAcquired(address);
+            return true;
+        }
+        return false;
     }
 
     private static boolean checkExclusiveUpdateLocked(int countWord) {
@@ -379,7 +582,11 @@ enum BigSegmentHeader implements SegmentHeader {
     private boolean tryUpgradeUpdateToWriteLock0(long address, long time, TimeUnit unit) {
         long end = System.nanoTime() + unit.toNanos(time);
         registerWait(address);
+        int failedAttempts = 0;
         do {
+            if (failedAttempts > 0)
+                lockingStrategy.waitBeforeNextAttempt(failedAttempts);
+            failedAttempts++;
             long lockWord = getLockWord(address);
             int countWord = countWord(lockWord);
             if (checkExclusiveUpdateLocked(countWord)) {
@@ -387,6 +594,7 @@ enum BigSegmentHeader implements SegmentHeader {
                 checkWaitWordForDecrement(waitWord);
                 if (casLockWord(address, lockWord,
                         lockWord(WRITE_LOCKED_COUNT_WORD, waitWord - WAIT_PARTY))) {
+                    writeLockAcquired(address);
                     return true;
                 }
             }
@@ -407,31 +615,34 @@ enum BigSegmentHeader implements SegmentHeader {
 
     @Override
     public void updateUnlock(long address) {
+        checkUpdateLocked(getCountWord(address));
+        // clear before release, the holder record of the released lock might be seen stale
+        // by recovery of locks from dead holders, while another process acquires the lock
+        clearExclusiveLockHolder(address);
         while (true) {
             int countWord = getCountWord(address);
             checkUpdateLocked(countWord);
-            if (casCountWord(address, countWord, countWord - UPDATE_PARTY)) {
-                clearExclusiveLockHolder(address);
+            if (casCountWord(address, countWord, countWord - UPDATE_PARTY))
                 return;
-            }
         }
     }
 
     @Override
     public void downgradeUpdateToReadLock(long address) {
+        checkUpdateLocked(getCountWord(address));
+        clearExclusiveLockHolder(address);
         while (true) {
             int countWord = getCountWord(address);
             checkUpdateLocked(countWord);
-            if (casCountWord(address, countWord, countWord ^ UPDATE_BIT)) {
-                clearExclusiveLockHolder(address);
+            if (casCountWord(address, countWord, countWord ^ UPDATE_BIT))
                 return;
-            }
         }
     }
 
     @Override
     public void writeUnlock(long address) {
         checkWriteLocked(getCountWord(address));
+        writeLockReleased(address);
         clearExclusiveLockHolder(address);
         putCountWord(address, 0);
     }
@@ -439,12 +650,14 @@ enum BigSegmentHeader implements SegmentHeader {
     @Override
     public void downgradeWriteToUpdateLock(long address) {
         checkWriteLocked(getCountWord(address));
+        writeLockReleased(address);
         putCountWord(address, UPDATE_PARTY);
     }
 
     @Override
     public void downgradeWriteToReadLock(long address) {
         checkWriteLocked(getCountWord(address));
+        writeLockReleased(address);
         clearExclusiveLockHolder(address);
         putCountWord(address, READ_PARTY);
     }
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.map.AbstractChronicleMap.ParallelIterationPoolHolder;
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Binary dump and load of map entries, see {@link ChronicleMap#dumpTo(File, boolean)}.
+ *
+ * <p>Segments are dumped by parallel tasks. Each task copies serialized entries of a segment
+ * into blocks under the segment read lock, then writes the blocks to the file after the lock is
+ * released. Blocks are self-contained and written in the order they are completed. If the file
+ * is gzipped, each block is compressed by the task into a separate gzip member (concatenated
+ * gzip members are a valid gzip file). Load reads blocks sequentially and puts entries of each
+ * block in a parallel task.
+ *
+ * <p>File format: 4-byte magic, 4-byte flags ({@link #CHECKSUMS}), blocks, 4-byte {@link #END}
+ * marker, so that truncated dumps are detected. Block format: 4-byte index of the dumped
+ * segment, 8-byte number of entries, 4-byte length of the payload, payload, and 4-byte CRC32
+ * of the payload, if checksums are on. The payload is entries in the format of {@link
+ * BytesChronicleMap#putAll(Bytes, long)}.
+ */
+final class BinaryEntriesSerializer {
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryEntriesSerializer.class);
+
+    /**
+     * "CMD1"
+     */
+    private static final int MAGIC = 0x434D4431;
+    static final int CHECKSUMS = 1;
+    private static final int END = -1;
+    private static final int BLOCK_HEADER_SIZE = 16;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private BinaryEntriesSerializer() {
+    }
+
+    static boolean isGzip(File file) {
+        return file.getName().toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * @return the number of dumped entries
+     */
+    static long dump(final VanillaChronicleMap<?, ?, ?, ?, ?, ?> map, File toFile,
+                     final boolean checksums) throws IOException {
+        long startNanos = System.nanoTime();
+        final boolean gzip = isGzip(toFile);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        long entries = 0L;
+        int tasks;
+        try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(toFile),
+                IO_BUFFER_SIZE)) {
+            byte[] header = ByteBuffer.allocate(8)
+                    .putInt(MAGIC).putInt(checksums ? CHECKSUMS : 0).array();
+            writeBlock(out, header, header.length, gzip);
+            ForkJoinPool pool = ParallelIterationPoolHolder.POOL;
+            tasks = Math.min(map.actualSegments, pool.getParallelism() * 4);
+            List<ForkJoinTask<Long>> submitted = new ArrayList<>(tasks);
+            for (int i = 0; i < tasks; i++) {
+                final int fromSegment = (int) ((long) map.actualSegments * i / tasks);
+                final int toSegment = (int) ((long) map.actualSegments * (i + 1) / tasks);
+                submitted.add(pool.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        SegmentDumper dumper = new SegmentDumper(map, out, checksums, gzip);
+                        try {
+                            return dumper.dumpSegments(fromSegment, toSegment, failure);
+                        } catch (IOException e) {
+                            failure.compareAndSet(null, e);
+                            return 0L;
+                        }
+                    }
+                }));
+            }
+            for (ForkJoinTask<Long> task : submitted) {
+                entries += task.join();
+            }
+            if (failure.get() != null)
+                throw failure.get();
+            byte[] end = ByteBuffer.allocate(4).putInt(END).array();
+            writeBlock(out, end, end.length, gzip);
+        }
+        LOG.info("Dumped " + entries + " entries of " +
+                (map.file() != null ? map.file() : "in-memory map") + " to " + toFile + " in " +
+                NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms by " + tasks +
+                " parallel tasks");
+        return entries;
+    }
+
+    /**
+     * Compresses the block into a separate gzip member, if needed, and writes it to the shared
+     * output stream.
+     */
+    private static void writeBlock(OutputStream out, byte[] block, int length, boolean gzip)
+            throws IOException {
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(compressed, IO_BUFFER_SIZE)) {
+                gzipOut.write(block, 0, length);
+            }
+            block = compressed.toByteArray();
+            length = block.length;
+        }
+        synchronized (out) {
+            out.write(block, 0, length);
+        }
+    }
+
+    private static final class SegmentDumper implements HashLookup.EntryConsumer {
+        private final VanillaChronicleMap<?, ?, ?, ?, ?, ?> map;
+        private final OutputStream out;
+        private final boolean checksums;
+        private final boolean gzip;
+        private final CRC32 crc = new CRC32();
+        private final List<ByteBuffer> completedBlocks = new ArrayList<>();
+        private VanillaContext<?, ?, ?, ?, ?, ?> context;
+        private int segmentIndex;
+        private ByteBuffer buffer;
+        private ByteBufferBytes bytes;
+        private long blockEntries;
+        private long dumpedEntries = 0L;
+
+        SegmentDumper(VanillaChronicleMap<?, ?, ?, ?, ?, ?> map, OutputStream out,
+                      boolean checksums, boolean gzip) {
+            this.map = map;
+            this.out = out;
+            this.checksums = checksums;
+            this.gzip = gzip;
+        }
+
+        long dumpSegments(int fromSegment, int toSegment,
+                          AtomicReference<IOException> failure) throws IOException {
+            for (int i = fromSegment; i < toSegment && failure.get() == null; i++) {
+                try (VanillaContext<?, ?, ?, ?, ?, ?> c = map.mapContext()) {
+                    c.segmentIndex = i;
+                    if (c.size() == 0)
+                        continue;
+                    c.readLock().lock();
+                    context = c;
+                    segmentIndex = i;
+                    newBlock(BLOCK_SIZE);
+                    c.forEachTierEntry(this);
+                    completeBlock();
+                } finally {
+                    context = null;
+                }
+                // the segment lock is released, blocks are compressed and written outside it
+                for (ByteBuffer block : completedBlocks) {
+                    writeBlock(out, block.array(), block.limit(), gzip);
+                }
+                completedBlocks.clear();
+            }
+            return dumpedEntries;
+        }
+
+        @Override
+        public void accept(long hash, long pos) {
+            VanillaContext<?, ?, ?, ?, ?, ?> c = context;
+            c.pos = pos;
+            c.initKeyFromPos();
+            try {
+                if (!c.containsKey()) // for replicated map
+                    return;
+                long keySize = c.keySize;
+                long valueSize = c.valueSize;
+                long entrySize = map.keySizeMarshaller.sizeEncodingSize(keySize) + keySize +
+                        map.valueSizeMarshaller.sizeEncodingSize(valueSize) + valueSize;
+                reserve(entrySize);
+                map.keySizeMarshaller.writeSize(bytes, keySize);
+                bytes.write(c.entry, c.keyOffset, keySize);
+                map.valueSizeMarshaller.writeSize(bytes, valueSize);
+                bytes.write(c.entry, c.valueOffset, valueSize);
+                blockEntries++;
+            } finally {
+                c.closeKeySearch();
+            }
+        }
+
+        private void newBlock(long payloadCapacity) {
+            buffer = ByteBuffer.allocate(
+                    (int) (BLOCK_HEADER_SIZE + payloadCapacity + CHECKSUM_SIZE));
+            bytes = new ByteBufferBytes(buffer);
+            bytes.position(BLOCK_HEADER_SIZE);
+            blockEntries = 0L;
+        }
+
+        private void reserve(long entrySize) {
+            if (bytes.remaining() >= entrySize + CHECKSUM_SIZE)
+                return;
+            if (blockEntries > 0L)
+                completeBlock();
+            // an entry, larger than the block size, takes a separate block
+            newBlock(Math.max(entrySize, BLOCK_SIZE));
+        }
+
+        private void completeBlock() {
+            if (blockEntries == 0L)
+                return;
+            int payloadLength = (int) (bytes.position() - BLOCK_HEADER_SIZE);
+            ByteBuffer block = ByteBuffer.wrap(buffer.array());
+            block.putInt(segmentIndex).putLong(blockEntries).putInt(payloadLength);
+            block.position(BLOCK_HEADER_SIZE + payloadLength);
+            if (checksums) {
+                crc.reset();
+                crc.update(buffer.array(), BLOCK_HEADER_SIZE, payloadLength);
+                block.putInt((int) crc.getValue());
+            }
+            block.flip();
+            completedBlocks.add(block);
+            dumpedEntries += blockEntries;
+            blockEntries = 0L;
+        }
+    }
+
+    /**
+     * @return the number of loaded entries
+     */
+    static long load(VanillaChronicleMap<?, ?, ?, ?, ?, ?> map, File fromFile)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        final BytesChronicleMap bytesMap = new BytesChronicleMap(map);
+        ForkJoinPool pool = ParallelIterationPoolHolder.POOL;
+        // bounds the memory, taken by the read, but not yet put blocks
+        int maxBlocksInFlight = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<?>> inFlight = new ArrayDeque<>();
+        long entries = 0L;
+        InputStream fileIn = new FileInputStream(fromFile);
+        try {
+            if (isGzip(fromFile))
+                fileIn = new GZIPInputStream(fileIn, IO_BUFFER_SIZE);
+        } catch (IOException e) {
+            fileIn.close();
+            throw e;
+        }
+        try (DataInputStream in =
+                     new DataInputStream(new BufferedInputStream(fileIn, IO_BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(fromFile + " is not a binary dump of a ChronicleMap");
+            boolean checksums = (in.readInt() & CHECKSUMS) != 0;
+            CRC32 crc = new CRC32();
+            int segmentIndex;
+            while ((segmentIndex = in.readInt()) != END) {
+                final long blockEntries = in.readLong();
+                int payloadLength = in.readInt();
+                if (blockEntries < 0L || payloadLength < 0) {
+                    throw new IOException("Corrupt block of segment " + segmentIndex +
+                            " in " + fromFile);
+                }
+                final byte[] payload = new byte[payloadLength];
+                in.readFully(payload);
+                if (checksums) {
+                    crc.reset();
+                    crc.update(payload, 0, payloadLength);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        throw new IOException("Checksum mismatch in the block of segment " +
+                                segmentIndex + " in " + fromFile);
+                    }
+                }
+                if (inFlight.size() >= maxBlocksInFlight)
+                    inFlight.poll().join();
+                inFlight.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        bytesMap.putAll(new ByteBufferBytes(ByteBuffer.wrap(payload)),
+                                blockEntries);
+                    }
+                }));
+                entries += blockEntries;
+            }
+        } finally {
+            for (ForkJoinTask<?> task : inFlight) {
+                task.quietlyJoin();
+            }
+        }
+        for (ForkJoinTask<?> task : inFlight) {
+            task.join();
+        }
+        LOG.info("Loaded " + entries + " entries from " + fromFile + " into " +
+                (map.file() != null ? map.file() : "in-memory map") + " in " +
+                NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+        return entries;
+    }
+}
@@ -20,6 +20,7 @@ import net.openhft.lang.io.Bytes;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.IOException;
 
 public class BytesChronicleMap extends AbstractChronicleMap<Bytes, Bytes> {
 
@@ -62,6 +63,21 @@ public class BytesChronicleMap extends AbstractChronicleMap<Bytes, Bytes> {
         return delegate.longSize();
     }
 
+    @Override
+    public void checkpoint() throws IOException {
+        delegate.checkpoint();
+    }
+
+    @Override
+    public void dumpTo(File toFile, boolean checksums) throws IOException {
+        delegate.dumpTo(toFile, checksums);
+    }
+
+    @Override
+    public void loadFrom(File fromFile) throws IOException {
+        delegate.loadFrom(fromFile);
+    }
+
     @Override
     public VanillaContext<Bytes, ?, ?, Bytes, ?, ?> context(Bytes key) {
         VanillaContext context = delegate.bytesMapContext();
@@ -107,7 +123,15 @@ public class BytesChronicleMap extends AbstractChronicleMap<Bytes, Bytes> {
     }
 
     final void putAll(Bytes entries) {
-        long numberOfEntries = entries.readStopBit();
+        putAll(entries, entries.readStopBit());
+    }
+
+    /**
+     * Puts the given number of entries from the given bytes, starting from the current position.
+     * Each entry is the key and the value, both prepended with the size, in the format of the key
+     * and value size marshallers of the map.
+     */
+    final void putAll(Bytes entries, long numberOfEntries) {
         long entryPosition = entries.position();
         while (numberOfEntries-- > 0) {
             long keySize = delegate.keySizeMarshaller.readSize(entries);
@@ -19,7 +19,10 @@ package net.openhft.chronicle.map;
 
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.json.JettisonMappedXmlDriver;
+import net.openhft.xstream.StreamingJsonDriver;
+import net.openhft.xstream.StreamingJsonReader;
 import net.openhft.xstream.converters.ByteBufferConverter;
 import net.openhft.xstream.converters.DataValueConverter;
 import net.openhft.xstream.converters.StatelessChronicleMapConverter;
@@ -40,8 +43,15 @@ class JsonSerializer {
 
     private static final Logger LOG = LoggerFactory.getLogger(StatelessChronicleMap.class);
 
+    /**
+     * The number of the first bytes of the imported file, which are read to detect the layout,
+     * see {@link StreamingJsonReader#isStreamingLayout(String, boolean)}
+     */
+    private static final int LAYOUT_PROBE_SIZE = 1 << 16;
+
     static synchronized <K, V> void getAll(File toFile, Map<K, V> map, List jsonConverters) throws IOException {
-        final XStream xstream = xStream(map, jsonConverters);
+        // entries are written token by token, the document is never materialized
+        final XStream xstream = xStream(map, jsonConverters, new StreamingJsonDriver());
         OutputStream outputStream = new FileOutputStream(toFile);
         if (toFile.getName().toLowerCase().endsWith(".gz"))
             outputStream = new GZIPOutputStream(outputStream);
@@ -53,19 +63,52 @@ class JsonSerializer {
 
     static synchronized <K, V> void putAll(File fromFile, Map<K, V> map, List jsonConverters)
             throws IOException {
-        final XStream xstream = xStream(map, jsonConverters);
-
         InputStream inputStream = new FileInputStream(fromFile);
         if (fromFile.getName().toLowerCase().endsWith(".gz"))
             inputStream = new GZIPInputStream(inputStream);
-        try (InputStream out = inputStream) {
-            xstream.fromXML(out);
+        try (InputStream in = new BufferedInputStream(inputStream, LAYOUT_PROBE_SIZE)) {
+            HierarchicalStreamDriver driver = isStreamingLayout(in) ?
+                    new StreamingJsonDriver() : legacyDriver();
+            xStream(map, jsonConverters, driver).fromXML(in);
+        }
+    }
+
+    private static boolean isStreamingLayout(InputStream in) throws IOException {
+        in.mark(LAYOUT_PROBE_SIZE);
+        byte[] head = new byte[LAYOUT_PROBE_SIZE];
+        int length = 0, read;
+        while (length < head.length && (read = in.read(head, length, head.length - length)) > 0) {
+            length += read;
+        }
+        in.reset();
+        return StreamingJsonReader.isStreamingLayout(
+                new String(head, 0, length, "UTF-8"), length == head.length);
+    }
+
+    /**
+     * Files, exported by earlier versions of ChronicleMap, are in the layout of Jettison, which is
+     * an optional dependency, it is loaded only when such a file is imported
+     */
+    private static HierarchicalStreamDriver legacyDriver() {
+        try {
+            return new JettisonMappedXmlDriver();
+        } catch (NoClassDefFoundError e) {
+            LOG.error("The file is exported by an earlier version of ChronicleMap, in the JSON " +
+                    "layout of Jettison. Please add the following artifact to your project to " +
+                    "import it, or re-export the file\n" +
+                    "<dependency>\n" +
+                    " <groupId>org.codehaus.jettison</groupId>\n" +
+                    " <artifactId>jettison</artifactId>\n" +
+                    " <version>1.3.6</version>\n" +
+                    "</dependency>\n", e);
+            throw e;
         }
     }
 
-    private static <K, V> XStream xStream(Map<K, V> map, List jsonConverters) {
+    private static <K, V> XStream xStream(Map<K, V> map, List jsonConverters,
+                                          HierarchicalStreamDriver driver) {
         try {
-            final XStream xstream = new XStream(new JettisonMappedXmlDriver());
+            final XStream xstream = new XStream(driver);
             xstream.setMode(XStream.NO_REFERENCES);
             xstream.alias("cmap", map.getClass());
 
@@ -94,16 +137,11 @@ class JsonSerializer {
     static private void logErrorSuggestXStreem(Error e) {
         LOG.error("map.getAll(<file>) and map.putAll(<file>) methods require the JSON XStream serializer, " +
                 "we don't include these artifacts by default as some users don't require this functionality. " +
-                "Please add the following artifacts to your project\n" +
+                "Please add the following artifact to your project\n" +
                 "<dependency>\n" +
                 " <groupId>xstream</groupId>\n" +
                 " <artifactId>xstream</artifactId>\n" +
                 " <version>1.2.2</version>\n" +
-                "</dependency>\n" +
-                "<dependency>\n" +
-                " <groupId>org.codehaus.jettison</groupId>\n" +
-                " <artifactId>jettison</artifactId>\n" +
-                " <version>1.3.6</version>\n" +
                 "</dependency>\n", e);
     }
 
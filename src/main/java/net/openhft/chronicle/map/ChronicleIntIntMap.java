@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * {@link ChronicleMap} of {@code int} keys to {@code int} values, which stores keys and values
+ * inline in the per-segment hash tables, see {@link
+ * ChronicleMapBuilder#inlinedPrimitiveEntries(boolean)}. Primitive methods of this interface
+ * don't box keys and values.
+ *
+ * <p>Maps with inlined primitive entries don't support {@linkplain #context(Object) contexts}
+ * and operations, which are based on contexts, such as {@link #forEachEntry(Consumer)}.
+ *
+ * @see ChronicleLongLongMap
+ */
+public interface ChronicleIntIntMap extends ChronicleMap<Integer, Integer> {
+
+    /**
+     * Checks if this map contains a mapping for the given key.
+     *
+     * @param key the key to check presence of
+     * @return {@code true} if this map contains a mapping for the given key
+     */
+    boolean containsKey(int key);
+
+    /**
+     * Returns the value to which the given key is mapped, or {@code 0} if this map contains no
+     * mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the given key is mapped, or {@code 0}
+     */
+    int getInt(int key);
+
+    /**
+     * Returns the value to which the given key is mapped, or the given default value if this map
+     * contains no mapping for the key.
+     *
+     * @param key          the key whose associated value is to be returned
+     * @param defaultValue the value to return if the key is absent
+     * @return the value to which the given key is mapped, or {@code defaultValue}
+     */
+    int getInt(int key, int defaultValue);
+
+    /**
+     * Associates the given value with the given key.
+     *
+     * @param key   the key with which the given value is to be associated
+     * @param value the value to be associated with the given key
+     * @return the previous value associated with the key, or {@code 0} if there was no mapping
+     * for the key
+     */
+    int putInt(int key, int value);
+
+    /**
+     * Removes the mapping for the given key, if it is present.
+     *
+     * @param key the key whose mapping is to be removed
+     * @return the value, which was associated with the key, or {@code 0} if there was no
+     * mapping for the key
+     */
+    int removeInt(int key);
+}
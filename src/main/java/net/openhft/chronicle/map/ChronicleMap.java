@@ -30,6 +30,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.Object;
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
@@ -50,6 +51,16 @@ import java.util.concurrent.ConcurrentMap;
  * <p>Note that {@code ChronicleMap} extends {@link Closeable}, don't forget to {@linkplain #close()
  * close} map when it is no longer needed.
  *
+ * <p><b>On Java 8, {@code compute()}, {@code computeIfAbsent()}, {@code computeIfPresent()} and
+ * {@code merge()} are <i>not</i> performed under the segment lock.</b> {@code ChronicleMap} is
+ * compiled for Java 7 and doesn't override these {@code ConcurrentMap} default methods, which
+ * read the value, apply the function outside of any lock and retry with {@code putIfAbsent()},
+ * {@code replace()} or {@code remove()}, if the entry is changed concurrently. So the function
+ * could be applied several times, each time with a value, deserialized again, and the key is
+ * searched two times or more. Use {@link #computeLocked}, {@link #computeIfAbsentLocked},
+ * {@link #computeIfPresentLocked} and {@link #mergeLocked} instead: they apply the function once,
+ * under the update lock of the segment.
+ *
  * @param <K> the map key type
  * @param <V> the map value type
  */
@@ -142,6 +153,42 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>, ChronicleHash<K
     @NotNull
     MapKeyContext<V> acquireContext(@NotNull K key, @NotNull V usingValue);
 
+    /**
+     * Creates a handle of the given key, which caches the key hash, segment index and the
+     * position of the key in the hash lookup, to access the key repeatedly without rehashing
+     * and (usually) probing.
+     *
+     * @param key the key to create the handle for
+     * @return a new key handle, which could be used only with this map
+     * @see #context(KeyHandle)
+     */
+    KeyHandle<K> keyHandle(K key);
+
+    /**
+     * Same as {@link #context(Object)} for the key of the handle, but the precomputed key hash
+     * and position are used.
+     *
+     * @param keyHandle the handle, created by {@link #keyHandle(Object)} of this map
+     * @return the context of the key of the handle
+     * @throws IllegalArgumentException if the handle is created by another map
+     */
+    MapKeyContext<V> context(KeyHandle<K> keyHandle);
+
+    /**
+     * {@link #getUsing(Object, Object)} via the key handle.
+     */
+    V getUsing(KeyHandle<K> keyHandle, V usingValue);
+
+    /**
+     * {@link #put(Object, Object)} via the key handle.
+     */
+    V put(KeyHandle<K> keyHandle, V value);
+
+    /**
+     * {@link #acquireUsing(Object, Object)} via the key handle.
+     */
+    V acquireUsing(KeyHandle<K> keyHandle, V usingValue);
+
     /**
      * Apply a mapping to the value returned by a key and return a result. A read lock is assumed.
      *
@@ -162,6 +209,119 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>, ChronicleHash<K
      */
     V putMapped(K key, @NotNull UnaryOperator<V> unaryOperator);
 
+    /**
+     * Attempts to compute a mapping for the specified key and its current mapped value (or
+     * {@code null} if there is no current mapping). If the function returns {@code null}, the
+     * mapping is removed (or remains absent). The update lock of the segment is held during
+     * the whole computation, and the key is searched only once.
+     *
+     * <p>This method and {@link #computeIfAbsentLocked}, {@link #computeIfPresentLocked} and
+     * {@link #mergeLocked} are named differently from the Java 8 {@code ConcurrentMap} default
+     * methods, which take {@code java.util.function} types, so that lambdas, passed to either
+     * method, are not ambiguous. Prefer these methods to the Java 8 defaults, which are not
+     * performed under the lock, see the {@linkplain ChronicleMap class documentation}.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or null if none
+     */
+    V computeLocked(K key,
+                    @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction);
+
+    /**
+     * If the specified key is not already associated with a value, attempts to compute its value
+     * using the given mapping function and puts it into this map, unless {@code null}. The key is
+     * looked up under read lock first, the update lock is acquired only if the key is absent.
+     *
+     * @param key             key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with the specified key, or null
+     * if the computed value is null
+     */
+    V computeIfAbsentLocked(K key, @NotNull Function<? super K, ? extends V> mappingFunction);
+
+    /**
+     * If the value for the specified key is present, attempts to compute a new mapping given
+     * the key and its current mapped value. If the function returns {@code null}, the mapping is
+     * removed. Performed under the update lock of the segment, the key is searched only once.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or null if none
+     */
+    V computeIfPresentLocked(
+            K key, @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction);
+
+    /**
+     * If the specified key is not already associated with a value, associates it with the given
+     * value. Otherwise, replaces the value with the results of the given remapping function, or
+     * removes if the result is {@code null}. Performed under the update lock of the segment, the
+     * key is searched only once.
+     *
+     * @param key               key with which the resulting value is to be associated
+     * @param value             the value to be used if the key is absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with the specified key, or null if no value is associated
+     * with the key
+     */
+    V mergeLocked(K key, @NotNull V value,
+                  @NotNull BiFunction<? super V, ? super V, ? extends V> remappingFunction);
+
+    /**
+     * Atomically adds the given delta to the {@code long} field of the value for the key,
+     * directly in the value bytes, with a single CAS. If the key is absent, puts the default
+     * value first, as {@link #acquireUsing(Object, Object)} does.
+     *
+     * <p>If the key is present, only the read lock of the segment is acquired, so these
+     * operations are atomic with respect to each other and to off-heap value updates via
+     * {@code Byteable} values, but not to non-atomic writes of the same bytes.
+     *
+     * @param key         the key of the value to update
+     * @param fieldOffset the offset of the field within the value bytes, the field should be
+     *                    8-byte aligned in memory, see {@link
+     *                    ChronicleMapBuilder#entryAndValueAlignment(Alignment)}
+     * @param delta       the value to add
+     * @return the updated value of the field
+     * @throws IndexOutOfBoundsException if the field is out of the value bytes
+     * @throws IllegalArgumentException  if the field is not aligned
+     * @throws UnsupportedOperationException if the map is replicated, or {@linkplain
+     *         ChronicleMapBuilder#journal(File) journaled}
+     */
+    long addAndGetLong(K key, long fieldOffset, long delta);
+
+    /**
+     * Same as {@link #addAndGetLong(Object, long, long)}, but returns the previous value of
+     * the field.
+     *
+     * @return the previous value of the field
+     */
+    long getAndAddLong(K key, long fieldOffset, long delta);
+
+    /**
+     * Atomically sets the {@code long} field of the value for the key to the given updated value,
+     * if the current value equals to the expected value, under the same conditions as {@link
+     * #addAndGetLong(Object, long, long)}.
+     *
+     * @return {@code true} if successful
+     */
+    boolean compareAndSwapLong(K key, long fieldOffset, long expected, long x);
+
+    /**
+     * {@code int} field version of {@link #addAndGetLong(Object, long, long)}, the field should be
+     * 4-byte aligned.
+     */
+    int addAndGetInt(K key, long fieldOffset, int delta);
+
+    /**
+     * {@code int} field version of {@link #getAndAddLong(Object, long, long)}.
+     */
+    int getAndAddInt(K key, long fieldOffset, int delta);
+
+    /**
+     * {@code int} field version of {@link #compareAndSwapLong(Object, long, long, long)}.
+     */
+    boolean compareAndSwapInt(K key, long fieldOffset, int expected, int x);
+
     /**
      * Exports all the entries to a {@link File} storing them in JSON format, an attempt is
      * made where possible to use standard java serialisation and keep the data human readable, data
@@ -169,9 +329,12 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>, ChronicleHash<K
      * readable but this is only done if the Keys or Values are not {@link Serializable}.
      * This method can be used in conjunction with {@link ChronicleMap#putAll(File)} and is
      * especially useful if you wish to import/export entries from one chronicle map into another.
-     * This import and export of the entries can be performed even when the versions of ChronicleMap
-     * differ. This method is not performant and as such we recommend it is not used in performance
-     * sensitive code.
+     * The JSON is written token by token, as the entries are iterated, so the export takes
+     * a constant amount of heap memory regardless of the size of the map. The JSON layout has
+     * changed in this version of ChronicleMap, files in the new layout couldn't be imported by
+     * earlier versions. {@link #putAll(File)} still imports files, exported by earlier versions.
+     * This method is not performant and as such we recommend it is not used in performance
+     * sensitive code, see {@link #dumpTo(File, boolean)}.
      *
      * @param toFile the file to store all the entries to, the entries will be stored in JSON
      *               format
@@ -185,7 +348,11 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>, ChronicleHash<K
      * using or the same format as {@link ChronicleMap#get(Object)}, this method behaves
      * similar to {@link Map#put(Object, Object)} where existing
      * entries are overwritten. A write lock is only held while each individual entry is inserted
-     * into the map, not over all the entries in the {@link File}
+     * into the map, not over all the entries in the {@link File}. The JSON is read token by token,
+     * and each entry is put as soon as it is read, so the whole document is never held in memory.
+     * Files, exported by earlier versions of ChronicleMap, are detected by the first tokens and
+     * read in the previous JSON layout, that requires the optional {@code
+     * org.codehaus.jettison:jettison} dependency and materializes the whole document in memory.
      *
      * @param fromFile the file containing entries ( in JSON format ) which will be deserialized and
      *                 {@link Map#put(Object, Object)} into the map
@@ -194,6 +361,105 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>, ChronicleHash<K
      */
     void putAll(File fromFile) throws IOException;
 
+    /**
+     * Dumps all the entries to a {@link File} in the binary format: serialized bytes of keys and
+     * values, as they are stored in the map, prepended with their sizes. Unlike {@link
+     * #getAll(File)}, entries are not deserialized into objects. Segments are dumped in parallel
+     * (in the common {@code ForkJoinPool} of the library), each under its read lock, so the dump
+     * is not a point-in-time snapshot of the whole map, if the map is updated concurrently.
+     * If the file name ends with {@code .gz}, the dump is gzipped.
+     *
+     * <p>The dump could be {@linkplain #loadFrom(File) loaded} only into maps with the same key
+     * and value serialization.
+     *
+     * @param toFile    the file to dump the entries to
+     * @param checksums whether to write CRC32 checksums of the dumped blocks of entries, they are
+     *                  verified on load
+     * @throws IOException if it's not possible to write to {@code toFile}
+     * @see #loadFrom(File)
+     */
+    void dumpTo(File toFile, boolean checksums) throws IOException;
+
+    /**
+     * Loads the entries from a {@link File}, created by {@link #dumpTo(File, boolean)}, existing
+     * entries are overwritten. Entries are put in parallel, a lock is held only while each
+     * individual entry is put into the map.
+     *
+     * @param fromFile the file with the dumped entries
+     * @throws IOException if it's not possible to read {@code fromFile}, the file is truncated or
+     *                     a checksum doesn't match
+     * @see #dumpTo(File, boolean)
+     */
+    void loadFrom(File fromFile) throws IOException;
+
+    /**
+     * Copies the mappings for the given keys into the {@code result} map, keys which are absent
+     * in this map are skipped. Unlike {@link #get(Object)} called for each key, keys are grouped
+     * by segments, and each segment is locked once for all its keys.
+     *
+     * @param keys   the keys to look up
+     * @param result the map to put the found mappings to
+     * @see #putAll(Map)
+     * @see #removeAll(Collection)
+     */
+    void getAll(@NotNull Collection<? extends K> keys, @NotNull Map<? super K, ? super V> result);
+
+    /**
+     * Removes the mappings for the given keys. Keys are grouped by segments, and each segment is
+     * locked once for all its keys, as in {@link #getAll(Collection, Map)}.
+     *
+     * @param keys the keys to remove
+     * @return {@code true} if at least one mapping was removed
+     */
+    boolean removeAll(@NotNull Collection<? extends K> keys);
+
+    /**
+     * Performs the given action for each entry of the map, segment by segment, under the read
+     * lock of the segment. The action is given the same context instance for all the entries of
+     * the segment, positioned on the entry bytes: {@link MapKeyContext#entry()}, {@link
+     * MapKeyContext#keyOffset()}, {@link MapKeyContext#valueOffset()} etc. could be accessed
+     * without deserialization of the key and the value, so the iteration doesn't allocate
+     * objects per entry.
+     *
+     * <p>The context is valid only during the action call, and the action shouldn't update
+     * the map via the context, or lock it. Unlike iteration over {@link #entrySet()}, the whole
+     * segment is not copied to the heap, so the segment is read locked while the action
+     * is performed for all its entries.
+     *
+     * @param action the action to perform for each entry
+     */
+    void forEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action);
+
+    /**
+     * Performs the given action for each entry of the map, like {@link
+     * #forEachEntry(Consumer)}, but segments are processed in parallel, by the fork-join pool,
+     * one segment per task. If called from a fork-join task, the pool of the task is used,
+     * otherwise a pool, shared by all maps in this JVM. Returns when the action is performed for
+     * all entries.
+     *
+     * <p>The action is called concurrently from several threads, with different context
+     * instances, so it should be thread-safe.
+     *
+     * @param action the action to perform for each entry
+     */
+    void parallelForEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action);
+
+    /**
+     * Makes all updates of this map, made in the current process before this call, durable,
+     * i. e. forces to the storage device only the segments (along with their extra tiers), which
+     * have been modified via this map since the previous checkpoint, rather than the whole
+     * mapping of the map file. Segments, only read or iterated, are not forced. The first
+     * checkpoint also forces the map header. Does nothing if the map is not persisted.
+     *
+     * <p>Writes of other processes, accessing the same map file, and writes to off-heap {@code
+     * Byteable} values, obtained via {@link #acquireUsing(Object, Object)}, are not tracked.
+     *
+     * @throws IOException if forcing the map file fails, the dirty segments are forced by
+     *                     the next checkpoint then
+     * @see ChronicleMapBuilder#checkpointInterval(long, java.util.concurrent.TimeUnit)
+     */
+    void checkpoint() throws IOException;
+
     /**
      * Creates an empty value instance, which can be used with the
      * following methods :
@@ -20,6 +20,9 @@ package net.openhft.chronicle.map;
 
 import net.openhft.chronicle.hash.ChronicleHashBuilder;
 import net.openhft.chronicle.hash.ChronicleHashInstanceBuilder;
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
+import net.openhft.chronicle.hash.locks.BackoffLockingStrategy;
+import net.openhft.chronicle.hash.locks.LockingStrategy;
 import net.openhft.chronicle.hash.replication.*;
 import net.openhft.chronicle.hash.serialization.*;
 import net.openhft.chronicle.hash.serialization.internal.MetaBytesInterop;
@@ -30,6 +33,7 @@ import net.openhft.lang.Maths;
 import net.openhft.lang.io.Bytes;
 import net.openhft.lang.io.BytesStore;
 import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.io.MappedStore;
 import net.openhft.lang.io.NativeBytes;
 import net.openhft.lang.io.serialization.*;
 import net.openhft.lang.io.serialization.impl.AllocateInstanceObjectFactory;
@@ -47,6 +51,8 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -143,9 +149,26 @@ public final class ChronicleMapBuilder<K, V> implements
     private int actualChunkSize = 0;
     private int maxChunksPerEntry = -1;
     private Alignment alignment = null;
+    private HashLookupStrategy hashLookupStrategy = HashLookupStrategy.LINEAR_PROBING;
+    private LongHashFunction keyHashFunction = LongHashFunction.murmur3();
+    private boolean seededKeyHashing = false;
+    private boolean inlinedPrimitiveEntries = false;
     private long entries = -1L;
+    private long maxExtraTiers = 0L;
+    private boolean optimisticReads = false;
+    private long compactionPeriod = 0L;
+    private TimeUnit compactionPeriodUnit = TimeUnit.SECONDS;
+    private long compactionTimeSlice = 1L;
+    private TimeUnit compactionTimeSliceUnit = TimeUnit.MILLISECONDS;
+    private boolean preTouch = false;
+    private IntegrityCheck integrityCheckOnOpen = IntegrityCheck.NONE;
+    private long checkpointInterval = 0L;
+    private TimeUnit checkpointIntervalUnit = TimeUnit.SECONDS;
+    private File journalFile = null;
+    private File hugePagesDirectory = null;
     private long lockTimeOut = 20000L;
     private TimeUnit lockTimeOutUnit = TimeUnit.MILLISECONDS;
+    private LockingStrategy lockingStrategy = BackoffLockingStrategy.DEFAULT;
     private int metaDataBytes = 0;
     private boolean putReturnsNull = false;
     private boolean removeReturnsNull = false;
@@ -604,6 +627,87 @@ public final class ChronicleMapBuilder<K, V> implements
         return Alignment.NO_ALIGNMENT;
     }
 
+    /**
+     * Configures the layout and probing strategy of hash lookups in segments of ChronicleMaps,
+     * created by this builder. See {@link HashLookupStrategy} constants for details.
+     *
+     * <p>This is a low-level configuration. Default is {@link
+     * HashLookupStrategy#LINEAR_PROBING}.
+     *
+     * @param hashLookupStrategy the hash lookup strategy of the maps, created by this builder
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> hashLookupStrategy(
+            @NotNull HashLookupStrategy hashLookupStrategy) {
+        Objects.requireNonNull(hashLookupStrategy);
+        this.hashLookupStrategy = hashLookupStrategy;
+        return this;
+    }
+
+    HashLookupStrategy hashLookupStrategy() {
+        return hashLookupStrategy;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> keyHashFunction(@NotNull LongHashFunction keyHashFunction) {
+        Objects.requireNonNull(keyHashFunction);
+        this.keyHashFunction = keyHashFunction;
+        return this;
+    }
+
+    LongHashFunction keyHashFunction() {
+        return keyHashFunction;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> seededKeyHashing(boolean seededKeyHashing) {
+        this.seededKeyHashing = seededKeyHashing;
+        return this;
+    }
+
+    /**
+     * Returns the key hash function of a new map: SipHash-2-4 with a fresh random key, if seeded
+     * key hashing is configured, the configured key hash function otherwise.
+     */
+    LongHashFunction newMapKeyHashFunction() {
+        if (!seededKeyHashing)
+            return keyHashFunction;
+        SecureRandom random = new SecureRandom();
+        return LongHashFunction.sipHash24(random.nextLong(), random.nextLong());
+    }
+
+    /**
+     * Configures whether ChronicleMaps, created by this builder, should store {@code long} keys
+     * and values (if {@code ChronicleMapBuilder.of(Long.class, Long.class)}), or {@code int} keys
+     * and values (if {@code ChronicleMapBuilder.of(Integer.class, Integer.class)}) right in the
+     * slots of the per-segment hash tables. Such maps don't have entry space, free lists and
+     * size encoding, each operation reads or writes a single slot after the key is hashed.
+     * Created maps implement {@link ChronicleLongLongMap} or {@link ChronicleIntIntMap}, which
+     * primitive methods don't box keys and values.
+     *
+     * <p>Maps with inlined primitive entries don't support {@linkplain
+     * ChronicleMap#context(Object) contexts} and replication, and can't grow beyond the
+     * configured {@link #entries(long) entries()} (with some slack for poor key distribution):
+     * the hash table of each segment is allocated at the load factor of 3/4, inserting into
+     * the full segment throws {@code IllegalStateException}. Key serialization and size
+     * configurations are ignored.
+     *
+     * <p>This configuration is persisted, i. e. the map file is always opened in the mode it was
+     * created with. Default is {@code false}.
+     *
+     * @param inlinedPrimitiveEntries whether to inline primitive keys and values in the hash
+     *                                tables
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> inlinedPrimitiveEntries(boolean inlinedPrimitiveEntries) {
+        this.inlinedPrimitiveEntries = inlinedPrimitiveEntries;
+        return this;
+    }
+
+    boolean inlinedPrimitiveEntries() {
+        return inlinedPrimitiveEntries;
+    }
+
     @Override
     public ChronicleMapBuilder<K, V> entries(long entries) {
         if (entries <= 0L)
@@ -857,12 +961,265 @@ public final class ChronicleMapBuilder<K, V> implements
         return segments <= maxSegments ? segments : -segments;
     }
 
+    @Override
+    public ChronicleMapBuilder<K, V> maxExtraTiers(long maxExtraTiers) {
+        if (maxExtraTiers < 0L)
+            throw new IllegalArgumentException("Max extra tiers should be non-negative, " +
+                    maxExtraTiers + " given");
+        this.maxExtraTiers = maxExtraTiers;
+        return this;
+    }
+
+    long maxExtraTiers(boolean replicated) {
+        // replication bit sets address entries by segment index and position, not aware of tiers
+        return replicated ? 0L : maxExtraTiers;
+    }
+
+    /**
+     * Configures the period of background compaction of segments of ChronicleMaps, created by
+     * this builder. Each period, the most fragmented segment (if the fragmentation ratio, i. e.
+     * {@code 1 - largest free chunk run / free chunks}, is greater than 0.5) is compacted: live
+     * entries are moved toward the start of the entry space, under the segment write lock,
+     * which is held for at most {@linkplain #compactionTimeSlice(long, TimeUnit) the compaction
+     * time slice}. Because the entries are moved under the write lock, compaction is safe for
+     * concurrent readers in other processes, mapping the same file.
+     *
+     * <p>Compaction helps to keep multi-chunk allocations successful, when the map has a lot of
+     * variable-sized updates, which leave the free chunks scattered over segments.
+     *
+     * <p>Compaction is not performed by replicated maps. By default compaction is off.
+     *
+     * @param period the period of background compaction, 0 to turn it off
+     * @param unit   the time unit of the period
+     * @return this builder back
+     * @see #compactionTimeSlice(long, TimeUnit)
+     */
+    public ChronicleMapBuilder<K, V> compactionPeriod(long period, TimeUnit unit) {
+        if (period < 0L)
+            throw new IllegalArgumentException("Compaction period should be non-negative, " +
+                    period + " given");
+        this.compactionPeriod = period;
+        this.compactionPeriodUnit = unit;
+        return this;
+    }
+
+    long compactionPeriodNanos(boolean replicated) {
+        // replication bit sets address entries by positions, moving entries breaks them
+        return replicated ? 0L : compactionPeriodUnit.toNanos(compactionPeriod);
+    }
+
+    /**
+     * Configures the maximum time, for which background compaction holds the write lock of a
+     * segment, in a single {@linkplain #compactionPeriod(long, TimeUnit) compaction period}.
+     * Default is 1 millisecond.
+     *
+     * @param timeSlice the maximum time, for which a segment is locked by compaction
+     * @param unit      the time unit of the time slice
+     * @return this builder back
+     * @see #compactionPeriod(long, TimeUnit)
+     */
+    public ChronicleMapBuilder<K, V> compactionTimeSlice(long timeSlice, TimeUnit unit) {
+        if (timeSlice <= 0L)
+            throw new IllegalArgumentException("Compaction time slice should be positive, " +
+                    timeSlice + " given");
+        this.compactionTimeSlice = timeSlice;
+        this.compactionTimeSliceUnit = unit;
+        return this;
+    }
+
+    long compactionTimeSliceNanos() {
+        return compactionTimeSliceUnit.toNanos(compactionTimeSlice);
+    }
+
+    /**
+     * Configures whether all pages of the segments of ChronicleMaps, created by this builder,
+     * should be touched in parallel (in the common {@code ForkJoinPool} of the library) when
+     * the map is created or opened, so that page faults happen at startup, rather than on the
+     * first accesses of the pages in production. The size of pre-touched memory and the time
+     * it took are logged at {@code INFO} level.
+     *
+     * <p>Pre-touch makes all pages of the map resident and dirty, so the entries space of the
+     * persisted map (usually a sparse file) is actually allocated on disk. Extra tiers are not
+     * pre-touched. This configuration is not persisted. Default is {@code false}.
+     *
+     * @param preTouch whether to pre-touch pages of the map on open
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> preTouch(boolean preTouch) {
+        this.preTouch = preTouch;
+        return this;
+    }
+
+    /**
+     * Configures whether integrity of persisted ChronicleMaps, created by this builder, should be
+     * {@linkplain IntegrityCheck#VERIFY verified} or {@linkplain IntegrityCheck#REPAIR repaired},
+     * when the map is opened (e. g. after the process, which wrote to the map, crashed). All
+     * segments are checked in parallel (in the common {@code ForkJoinPool} of the library), under
+     * their write locks. The results and the time it took are logged.
+     *
+     * <p>Ignored by in-memory maps and maps with {@linkplain #inlinedPrimitiveEntries(boolean)
+     * inlined primitive entries}. This configuration is not persisted. Default is {@link
+     * IntegrityCheck#NONE}.
+     *
+     * @param integrityCheck the integrity check mode
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> integrityCheckOnOpen(@NotNull IntegrityCheck integrityCheck) {
+        Objects.requireNonNull(integrityCheck);
+        this.integrityCheckOnOpen = integrityCheck;
+        return this;
+    }
+
+    /**
+     * Configures the interval, with which a background thread {@linkplain
+     * ChronicleMap#checkpoint() checkpoints} persisted ChronicleMaps, created by this builder,
+     * i. e. forces only the segments, written since the previous checkpoint, to the storage
+     * device. The final checkpoint is made on {@linkplain ChronicleMap#close() close}.
+     *
+     * <p>Only writes of the current process are tracked, so if the map file is accessed from
+     * several processes, the flusher should be configured in each writing process. Ignored by
+     * in-memory maps. This configuration is not persisted. By default the background flusher is
+     * off, and only the OS flushes dirty pages of the map.
+     *
+     * @param interval the interval of background checkpoints, 0 to turn them off
+     * @param unit     the time unit of the interval
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> checkpointInterval(long interval, TimeUnit unit) {
+        if (interval < 0L)
+            throw new IllegalArgumentException("Checkpoint interval should be non-negative, " +
+                    interval + " given");
+        this.checkpointInterval = interval;
+        this.checkpointIntervalUnit = unit;
+        return this;
+    }
+
+    /**
+     * Configures the write-ahead journal of persisted ChronicleMaps, created by this builder.
+     * Puts, removes and clears are appended to the journal before they are applied to the map,
+     * a dedicated thread writes and fsyncs the appended records in batches (group commit), and
+     * the mutating operation returns when its record is durable. If the map wasn't closed cleanly
+     * (e. g. the process crashed, or the host lost power in the middle of an update), all segments
+     * are {@linkplain IntegrityCheck#REPAIR repaired}, and the journal is replayed on open.
+     * Unclean shutdown is detected by the flag in the map header, which is set while the map is
+     * open with the journal, even if the journal is empty.
+     *
+     * <p>The journal takes two files: the given one and the one with {@code .1} suffix. It is
+     * truncated on each {@linkplain ChronicleMap#checkpoint() checkpoint} (configure {@link
+     * #checkpointInterval(long, TimeUnit)} to keep it short) and on close. Only one process
+     * should write to the journaled map. Writes to off-heap {@code Byteable} values outside of
+     * contexts are not journaled. Atomic value field updates (like {@link
+     * ChronicleMap#addAndGetLong(Object, long, long)}) are not supported by journaled maps.
+     *
+     * <p>Not supported by replicated maps and maps with {@linkplain #inlinedPrimitiveEntries(
+     * boolean) inlined primitive entries}. Ignored by in-memory maps. This configuration is not
+     * persisted. By default is not configured.
+     *
+     * @param journalFile the journal file
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> journal(@NotNull File journalFile) {
+        Objects.requireNonNull(journalFile);
+        this.journalFile = journalFile;
+        return this;
+    }
+
+    /**
+     * Configures the directory on a hugetlbfs mount (e. g. {@code /dev/hugepages}), in which
+     * in-memory (not persisted) ChronicleMaps, created by this builder, are mapped, so they are
+     * backed by huge pages and don't need thousands of TLB entries. The backing file is
+     * deleted right after it is mapped, the memory is released when the map is closed. The
+     * size of the map is rounded up to the huge page size, there should be enough free huge
+     * pages in the system ({@code HugePages_Free} in {@code /proc/meminfo}).
+     *
+     * <p>Java can't {@code madvise(MADV_HUGEPAGE)} memory, so without this configuration
+     * in-memory maps are backed by huge pages only if transparent huge pages are enabled in
+     * {@code always} mode. The mode is reported along with {@linkplain #preTouch(boolean)
+     * pre-touch}. Ignored by persisted maps. By default is not configured.
+     *
+     * @param hugePagesDirectory a directory on a hugetlbfs mount
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> hugePagesDirectory(@NotNull File hugePagesDirectory) {
+        Objects.requireNonNull(hugePagesDirectory);
+        this.hugePagesDirectory = hugePagesDirectory;
+        return this;
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> lockTimeOut(long lockTimeOut, TimeUnit unit) {
+        if (lockTimeOut <= 0L)
+            throw new IllegalArgumentException("Lock time out should be positive, " +
+                    lockTimeOut + " given");
+        this.lockTimeOut = lockTimeOut;
+        this.lockTimeOutUnit = unit;
+        return this;
+    }
+
+    long lockTimeOutNanos() {
+        return lockTimeOutUnit.toNanos(lockTimeOut);
+    }
+
+    @Override
+    public ChronicleMapBuilder<K, V> lockingStrategy(@NotNull LockingStrategy lockingStrategy) {
+        Objects.requireNonNull(lockingStrategy);
+        this.lockingStrategy = lockingStrategy;
+        return this;
+    }
+
+    LockingStrategy lockingStrategy() {
+        return lockingStrategy;
+    }
+
     int segmentHeaderSize(boolean replicated) {
+        // the write version doesn't fit 32-byte segment header
+        if (optimisticReadsOn(replicated))
+            return 64;
         int segments = actualSegments(replicated);
         // reduce false sharing unless we have a lot of segments.
         return segments <= 16 * 1024 ? 64 : 32;
     }
 
+    /**
+     * Configures whether {@link ChronicleMap#get(Object) get()} and {@link
+     * ChronicleMap#getUsing(Object, Object) getUsing()} calls on ChronicleMaps, created by this
+     * builder, should try to read the value optimistically, without acquiring the segment read
+     * lock, i. e. without writing to the shared segment lock word. Segment write version is
+     * incremented on each acquisition and release of the segment write lock, the optimistic
+     * read validates that the version is even and hasn't changed while the value was read,
+     * otherwise the value is re-read under the read lock.
+     *
+     * <p>Optimistic reads reduce contention of the lock word cache line between readers of hot
+     * segments in read-mostly workloads. The price is that each acquisition of the segment write
+     * lock is a bit more expensive, and a value might be deserialized twice on conflict.
+     * Value readers should tolerate inconsistent data, they are given with while the entry is
+     * concurrently updated: exceptions, thrown by readers during an invalidated optimistic read,
+     * are ignored.
+     *
+     * <p>This configuration is persisted, i. e. processes, accessing the same persisted map, all
+     * maintain the write version, regardless their own builder configurations. Optimistic reads
+     * are not supported by replicated maps. Default is {@code false}.
+     *
+     * @param optimisticReads whether to read values optimistically
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> optimisticReads(boolean optimisticReads) {
+        this.optimisticReads = optimisticReads;
+        return this;
+    }
+
+    boolean slabEntries(boolean replicated) {
+        // replicated maps keep removed entries allocated, as tombstones, free slots are threaded
+        // through their first 4 bytes
+        return !replicated && constantlySizedEntries() && maxChunksPerEntry() == 1 &&
+                chunkSize(replicated) >= 4L;
+    }
+
+    boolean optimisticReadsOn(boolean replicated) {
+        // replicated entries have timestamps and deleted flags, read under lock
+        return !replicated && optimisticReads;
+    }
+
     @Override
     public ChronicleMapBuilder<K, V> putReturnsNull(boolean putReturnsNull) {
         this.putReturnsNull = putReturnsNull;
@@ -909,8 +1266,22 @@ public final class ChronicleMapBuilder<K, V> implements
                 ", sampleValueForConstantSizeComputation=" + pretty(sampleValue) +
                 ", actualChunkSize=" + pretty(actualChunkSize) +
                 ", valueAlignment=" + valueAlignment() +
+                ", hashLookupStrategy=" + hashLookupStrategy +
+                ", keyHashFunction=" + keyHashFunction +
+                ", seededKeyHashing=" + seededKeyHashing +
+                ", inlinedPrimitiveEntries=" + inlinedPrimitiveEntries +
                 ", entries=" + entries() +
+                ", maxExtraTiers=" + maxExtraTiers +
+                ", optimisticReads=" + optimisticReads +
+                ", compactionPeriod=" + compactionPeriod + " " + compactionPeriodUnit +
+                ", compactionTimeSlice=" + compactionTimeSlice + " " + compactionTimeSliceUnit +
+                ", preTouch=" + preTouch +
+                ", integrityCheckOnOpen=" + integrityCheckOnOpen +
+                ", checkpointInterval=" + checkpointInterval + " " + checkpointIntervalUnit +
+                ", journalFile=" + journalFile +
+                ", hugePagesDirectory=" + hugePagesDirectory +
                 ", lockTimeOut=" + lockTimeOut + " " + lockTimeOutUnit +
+                ", lockingStrategy=" + lockingStrategy +
                 ", metaDataBytes=" + metaDataBytes() +
                 ", putReturnsNull=" + putReturnsNull() +
                 ", removeReturnsNull=" + removeReturnsNull() +
@@ -1216,6 +1587,51 @@ public final class ChronicleMapBuilder<K, V> implements
         return clone().createWithFile(file, singleHashReplication, null);
     }
 
+    /**
+     * Creates a new map, persisted to the given file, with the configurations of this builder,
+     * and starts incremental migration of entries from the given map into the new one, in a
+     * background thread, segment by segment. This is the way to grow the map beyond the {@link
+     * #entries(long)} it was created for, without stopping the traffic: the returned map serves
+     * all operations during the migration from the new map, an operation with a key from a not
+     * yet migrated segment of the given map migrates this segment in the calling thread first.
+     * Iteration over the returned map (and {@code clear()}) finishes the migration in the calling
+     * thread.
+     *
+     * <p>Migration state is persisted in the segment headers of the given map. If the migration
+     * is interrupted by closing the returned map, or by a crash, calling this method again with
+     * the same file and the given map, reopened from its file, resumes the migration.
+     *
+     * <p>The given map shouldn't be accessed directly after this call, neither from this, nor
+     * from other processes. It is closed, when the returned map is closed. When the migration is
+     * complete, the given map is empty, and its file could be deleted after the returned map is
+     * closed.
+     *
+     * @param file the file to persist the new map to
+     * @param mapToRehash the map to migrate entries from, must be created by {@code
+     *                    ChronicleMapBuilder}, and not replicated
+     * @return a map, that serves operations during and after the migration
+     * @throws IOException if the new map couldn't be created
+     * @throws IllegalArgumentException if the given map is not a plain {@code ChronicleMap},
+     *         created by {@code ChronicleMapBuilder}
+     * @throws IllegalStateException if replication is configured in this builder
+     */
+    public ChronicleMap<K, V> createPersistedTo(File file, ChronicleMap<K, V> mapToRehash)
+            throws IOException {
+        if (!(mapToRehash instanceof VanillaChronicleMap) ||
+                mapToRehash instanceof ReplicatedChronicleMap) {
+            throw new IllegalArgumentException("Only plain (not replicated) maps, created by " +
+                    "ChronicleMapBuilder, could be rehashed, " + mapToRehash + " given");
+        }
+        if (singleHashReplication != null)
+            throw new IllegalStateException("Rehash into a replicated map is not supported");
+        VanillaChronicleMap<K, ?, ?, V, ?, ?> target =
+                (VanillaChronicleMap<K, ?, ?, V, ?, ?>) createPersistedTo(file);
+        RehashingChronicleMap<K, V> map = new RehashingChronicleMap<>(
+                (VanillaChronicleMap<K, ?, ?, V, ?, ?>) mapToRehash, target);
+        map.startMigration();
+        return map;
+    }
+
     @Override
     public ChronicleMap<K, V> create() {
         // clone() to make this builder instance thread-safe, because createWithoutFile() method
@@ -1253,6 +1669,13 @@ public final class ChronicleMapBuilder<K, V> implements
                         throw new IOException("Unknown map header serialization type: " +
                                 serialization);
                     }
+                    if (m instanceof PrimitiveChronicleMap) {
+                        PrimitiveChronicleMap<K, V> map = (PrimitiveChronicleMap<K, V>) m;
+                        map.headerSize = roundUpMapHeaderSize(fis.getChannel().position());
+                        map.createMappedStore(file);
+                        map.locking(lockTimeOutNanos(), lockingStrategy);
+                        return map;
+                    }
                     VanillaChronicleMap<K, ?, ?, V, ?, ?> map =
                             (VanillaChronicleMap<K, ?, ?, V, ?, ?>) m;
                     map.headerSize = roundUpMapHeaderSize(fis.getChannel().position());
@@ -1262,6 +1685,7 @@ public final class ChronicleMapBuilder<K, V> implements
                     // TODO don't use SerializationBuilders in replication, extract marshallers
                     // needed to transmit to stateless clients directly from map instance
                     preMapConstruction(singleHashReplication != null || channel != null);
+                    applyNonPersistedConfigs(map);
                     return establishReplication(map, singleHashReplication, channel);
                 }
             }
@@ -1278,6 +1702,20 @@ public final class ChronicleMapBuilder<K, V> implements
         if (!file.exists())
             throw new FileNotFoundException("Unable to create " + file);
 
+        if (inlinedPrimitiveEntries) {
+            PrimitiveChronicleMap<K, V> map = newPrimitiveMap(singleHashReplication, channel);
+            try (FileOutputStream fos = new FileOutputStream(file);
+                 ObjectOutputStream oos = new ObjectOutputStream(fos)) {
+                oos.writeByte(BINARY_SERIALIZATION);
+                oos.writeObject(map);
+                oos.flush();
+                map.headerSize = roundUpMapHeaderSize(fos.getChannel().position());
+                map.createMappedStore(file);
+            }
+            map.locking(lockTimeOutNanos(), lockingStrategy);
+            return map;
+        }
+
         VanillaChronicleMap<K, ?, ?, V, ?, ?> map = newMap(singleHashReplication, channel);
 
         try (FileOutputStream fos = new FileOutputStream(file);
@@ -1291,6 +1729,7 @@ public final class ChronicleMapBuilder<K, V> implements
             map.createMappedStoreAndSegments(file);
         }
 
+        applyNonPersistedConfigs(map);
         return establishReplication(map, singleHashReplication, channel);
     }
 
@@ -1332,19 +1771,44 @@ public final class ChronicleMapBuilder<K, V> implements
 
     ChronicleMap<K, V> createWithoutFile(
             SingleChronicleHashReplication singleHashReplication, ReplicationChannel channel) {
+        if (inlinedPrimitiveEntries) {
+            PrimitiveChronicleMap<K, V> map = newPrimitiveMap(singleHashReplication, channel);
+            map.createInMemoryStore();
+            map.locking(lockTimeOutNanos(), lockingStrategy);
+            return map;
+        }
         try {
             // pushingToMapEventListener();
             VanillaChronicleMap<K, ?, ?, V, ?, ?> map = newMap(singleHashReplication, channel);
             map.warnOnWindows();
-            BytesStore bytesStore = new DirectStore(JDKObjectSerializer.INSTANCE,
-                    map.sizeInBytes(), true);
+            BytesStore bytesStore = hugePagesDirectory != null ?
+                    hugePagesStore(map.sizeInBytes()) :
+                    new DirectStore(JDKObjectSerializer.INSTANCE, map.sizeInBytes(), true);
             map.createMappedStoreAndSegments(bytesStore);
+            applyNonPersistedConfigs(map);
             return establishReplication(map, singleHashReplication, channel);
         } catch (IOException e) {
-            // file-less version should never trigger an IOException.
+            // file-less version should never trigger an IOException, unless it is mapped
+            // on hugetlbfs
+            if (hugePagesDirectory != null)
+                throw new IllegalStateException("Unable to map the map in " +
+                        hugePagesDirectory, e);
             throw new AssertionError(e);
         }
     }
+
+    private BytesStore hugePagesStore(long size) throws IOException {
+        File file = File.createTempFile("chronicle-map-", ".hugepages", hugePagesDirectory);
+        try {
+            long hugePageSize = HugePages.hugePageSize();
+            return new MappedStore(file, FileChannel.MapMode.READ_WRITE,
+                    HugePages.roundUpToHugePage(size, hugePageSize), JDKObjectSerializer.INSTANCE);
+        } finally {
+            // the mapping stays valid
+            if (!file.delete())
+                LOG.warn("Unable to delete " + file);
+        }
+    }
 //
 //    private void pushingToMapEventListener() {
 //        if (pushToAddresses == null || pushToAddresses.length == 0) {
@@ -1393,6 +1857,33 @@ public final class ChronicleMapBuilder<K, V> implements
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private PrimitiveChronicleMap<K, V> newPrimitiveMap(
+            SingleChronicleHashReplication singleHashReplication, ReplicationChannel channel) {
+        if (singleHashReplication != null || channel != null) {
+            throw new IllegalStateException(
+                    "Maps with inlined primitive entries couldn't be replicated");
+        }
+        if (journalFile != null) {
+            throw new IllegalStateException(
+                    "Maps with inlined primitive entries couldn't be journaled");
+        }
+        preMapConstruction(false);
+        Class<K> keyClass = keyBuilder.eClass;
+        Class<V> valueClass = valueBuilder.eClass;
+        PrimitiveChronicleMap map;
+        if (keyClass == Long.class && valueClass == Long.class) {
+            map = new LongLongChronicleMap(this);
+        } else if (keyClass == Integer.class && valueClass == Integer.class) {
+            map = new IntIntChronicleMap(this);
+        } else {
+            throw new IllegalStateException("Inlined primitive entries are supported only for " +
+                    "Long keys and values, or Integer keys and values, " + keyClass +
+                    " keys and " + valueClass + " values configured");
+        }
+        return (PrimitiveChronicleMap<K, V>) map;
+    }
+
     void preMapConstruction(boolean replicated) {
         keyBuilder.objectSerializer(acquireObjectSerializer(JDKObjectSerializer.INSTANCE));
         valueBuilder.objectSerializer(acquireObjectSerializer(JDKObjectSerializer.INSTANCE));
@@ -1427,6 +1918,38 @@ public final class ChronicleMapBuilder<K, V> implements
         checkActualChunksPerSegmentGreaterOrEqualToEntries();
     }
 
+    /**
+     * Applies configurations, which are not persisted with the map, to the map created or loaded
+     * from the file by this builder
+     */
+    private void applyNonPersistedConfigs(VanillaChronicleMap<K, ?, ?, V, ?, ?> map)
+            throws IOException {
+        map.locking(lockTimeOutNanos(), lockingStrategy);
+        if (integrityCheckOnOpen != IntegrityCheck.NONE && map.file() != null) {
+            IntegrityReport report =
+                    map.checkIntegrity(integrityCheckOnOpen == IntegrityCheck.REPAIR);
+            if (integrityCheckOnOpen == IntegrityCheck.VERIFY && !report.isConsistent()) {
+                File file = map.file();
+                map.close();
+                throw new IllegalStateException(file + " is inconsistent: " + report);
+            }
+        }
+        if (journalFile != null && map.file() != null) {
+            if (map instanceof ReplicatedChronicleMap)
+                throw new IllegalStateException("Replicated maps couldn't be journaled");
+            map.openJournal(journalFile);
+        }
+        if (preTouch)
+            map.preTouch();
+        long periodNanos = compactionPeriodNanos(map instanceof ReplicatedChronicleMap);
+        // slab entries are never fragmented
+        if (periodNanos > 0L && !map.slabEntries)
+            map.startCompaction(periodNanos, compactionTimeSliceNanos());
+        long checkpointIntervalNanos = checkpointIntervalUnit.toNanos(checkpointInterval);
+        if (checkpointIntervalNanos > 0L && map.file() != null)
+            map.startCheckpoints(checkpointIntervalNanos);
+    }
+
     private ChronicleMap<K, V> establishReplication(
             VanillaChronicleMap<K, ?, ?, V, ?, ?> map,
             SingleChronicleHashReplication singleHashReplication,
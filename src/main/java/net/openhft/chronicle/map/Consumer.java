@@ -0,0 +1,21 @@
+package net.openhft.chronicle.map;
+
+/**
+ * Represents an operation that accepts a single input argument and returns no result.
+ *
+ * <p>This is a <a href="package-summary.html">functional interface</a> whose functional method is {@link
+ * #accept(Object)}.
+ *
+ * @param <T> the type of the input to the operation
+ */
+
+public interface Consumer<T> {
+
+    /**
+     * Performs this operation on the given argument.
+     *
+     * @param t the input argument
+     */
+    void accept(T t);
+
+}
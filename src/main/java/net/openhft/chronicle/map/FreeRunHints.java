@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+/**
+ * Off-heap index of free chunk runs in a segment tier, by size classes. Size class {@code c}
+ * holds the starts of free runs, presumably at least {@code 2^c} chunks long, the last class
+ * is for all longer runs. Each class remembers a bounded number of runs, the most recently
+ * freed ones, when the class is full, the oldest run is forgotten.
+ *
+ * <p>Hints are advisory: free list bits are the source of truth, each hint is validated
+ * against the free list before use, and it's fine to lose a hint. So hints don't need to be
+ * updated on every free list change, and a stale or corrupt hints area doesn't break the map,
+ * allocation just falls back to the free list scan.
+ */
+final class FreeRunHints {
+
+    static final int SIZE_CLASSES = 16;
+    /**
+     * The number of runs per size class, {@link #SIZE} is reserved for. The hints area could be
+     * larger, because it takes the free list padding up to the cache line, or smaller in maps,
+     * persisted when only one run per class was remembered, see {@link #slots(long)}.
+     */
+    static final int SLOTS = 4;
+    static final long SIZE = SIZE_CLASSES * SLOTS * 4L;
+
+    static int sizeClass(long chunks) {
+        return Math.min(63 - Long.numberOfLeadingZeros(chunks), SIZE_CLASSES - 1);
+    }
+
+    /**
+     * @return the number of runs per size class, fitting the hints area of the given size
+     */
+    static int slots(long areaSize) {
+        return (int) (areaSize / (SIZE_CLASSES * 4L));
+    }
+
+    private long address;
+    private int slots;
+
+    void reuse(long address, int slots) {
+        this.address = address;
+        this.slots = slots;
+    }
+
+    private long slotAddress(int sizeClass, int slot) {
+        return address + (sizeClass * slots + slot) * 4L;
+    }
+
+    /**
+     * Takes the most recently remembered run of the given size class out of the hints.
+     *
+     * @return the start of the free run of the given size class, or -1, if there is no run
+     */
+    long pop(int sizeClass) {
+        for (int slot = slots - 1; slot >= 0; slot--) {
+            long slotAddress = slotAddress(sizeClass, slot);
+            // 0 means no run, to make zeroed memory a valid empty hints area
+            int hint = UNSAFE.getInt(slotAddress);
+            if (hint != 0) {
+                UNSAFE.putInt(slotAddress, 0);
+                return (hint & 0xFFFFFFFFL) - 1L;
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Remembers the run in the given size class, if it is full, forgets the oldest run.
+     */
+    void push(int sizeClass, long runStart) {
+        int hint = (int) (runStart + 1L);
+        int firstFree = -1;
+        for (int slot = 0; slot < slots; slot++) {
+            int h = UNSAFE.getInt(slotAddress(sizeClass, slot));
+            if (h == hint)
+                return;
+            if (h == 0 && firstFree < 0)
+                firstFree = slot;
+        }
+        if (firstFree < 0) {
+            for (int slot = 1; slot < slots; slot++) {
+                UNSAFE.putInt(slotAddress(sizeClass, slot - 1),
+                        UNSAFE.getInt(slotAddress(sizeClass, slot)));
+            }
+            firstFree = slots - 1;
+        }
+        UNSAFE.putInt(slotAddress(sizeClass, firstFree), hint);
+    }
+
+    /**
+     * @return the number of runs, remembered in all size classes
+     */
+    int count() {
+        int count = 0;
+        for (int sizeClass = 0; sizeClass < SIZE_CLASSES; sizeClass++) {
+            for (int slot = 0; slot < slots; slot++) {
+                if (UNSAFE.getInt(slotAddress(sizeClass, slot)) != 0)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    void clear() {
+        UNSAFE.setMemory(address, SIZE_CLASSES * slots * 4L, (byte) 0);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.collection.DirectBitSet;
+
+import java.util.BitSet;
+
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+/**
+ * Allocator of single-chunk entry slots of a segment tier, used instead of the free list bitset
+ * in maps with {@linkplain VanillaChronicleMap#slabEntries slab entries}. Free slots form
+ * a stack, threaded through the first 4 bytes of the free slots themselves. Slots at and after
+ * the high water mark were never allocated, so they are not in the stack, that makes zeroed
+ * memory a valid empty tier. Both allocation and freeing are O(1), without bit scanning.
+ *
+ * <p>The 8-byte tier area, where the free list bitset is in other maps: the stack head (the
+ * index of the top free slot + 1, 0 if the stack is empty) in the lower 4 bytes, the high water
+ * mark in the upper 4 bytes. All operations should be performed under the segment write lock.
+ */
+final class FreeSlotStack {
+
+    static final long SIZE = 8L;
+    static final long NOT_FOUND = DirectBitSet.NOT_FOUND;
+
+    private static final long HEAD_OFFSET = 0L;
+    private static final long HIGH_WATER_MARK_OFFSET = 4L;
+
+    private long address;
+    private long entrySpaceAddress;
+    private long slotSize;
+    private long capacity;
+
+    void reuse(long address, long entrySpaceAddress, long slotSize, long capacity) {
+        this.address = address;
+        this.entrySpaceAddress = entrySpaceAddress;
+        this.slotSize = slotSize;
+        this.capacity = capacity;
+    }
+
+    private long head() {
+        return UNSAFE.getInt(address + HEAD_OFFSET) & 0xFFFFFFFFL;
+    }
+
+    private void head(long head) {
+        UNSAFE.putInt(address + HEAD_OFFSET, (int) head);
+    }
+
+    long highWaterMark() {
+        return UNSAFE.getInt(address + HIGH_WATER_MARK_OFFSET) & 0xFFFFFFFFL;
+    }
+
+    private void highWaterMark(long highWaterMark) {
+        UNSAFE.putInt(address + HIGH_WATER_MARK_OFFSET, (int) highWaterMark);
+    }
+
+    private long slotAddress(long slot) {
+        return entrySpaceAddress + slot * slotSize;
+    }
+
+    /**
+     * @return the allocated slot, or {@link #NOT_FOUND} if the tier is full
+     */
+    long alloc() {
+        long head = head();
+        if (head != 0L) {
+            long slot = head - 1L;
+            head(UNSAFE.getInt(slotAddress(slot)) & 0xFFFFFFFFL);
+            return slot;
+        }
+        long highWaterMark = highWaterMark();
+        if (highWaterMark >= capacity)
+            return NOT_FOUND;
+        highWaterMark(highWaterMark + 1L);
+        return highWaterMark;
+    }
+
+    void free(long slot) {
+        UNSAFE.putInt(slotAddress(slot), (int) head());
+        head(slot + 1L);
+    }
+
+    void clear() {
+        UNSAFE.putLong(address, 0L);
+    }
+
+    /**
+     * @return free slots below the high water mark, walking at most {@code highWaterMark()} slots
+     * of the stack, so that a corrupt stack doesn't loop forever
+     */
+    BitSet freeSlots() {
+        BitSet freeSlots = new BitSet();
+        long highWaterMark = highWaterMark();
+        long head = head();
+        for (long i = 0L; head != 0L && i < highWaterMark; i++) {
+            long slot = head - 1L;
+            if (slot >= highWaterMark)
+                throw new IllegalStateException("Free slot " + slot + " is beyond the high " +
+                        "water mark " + highWaterMark);
+            freeSlots.set((int) slot);
+            head = UNSAFE.getInt(slotAddress(slot)) & 0xFFFFFFFFL;
+        }
+        return freeSlots;
+    }
+
+    /**
+     * Rebuilds the stack and the high water mark from the given occupied slots, e. g. after
+     * the segment is recovered from a dead process, which was in the middle of update.
+     */
+    void rebuild(BitSet occupiedSlots) {
+        long highWaterMark = occupiedSlots.length();
+        clear();
+        highWaterMark(highWaterMark);
+        // push in descending order, so that lower slots are allocated first
+        for (long slot = highWaterMark - 1L; slot >= 0L; slot--) {
+            if (!occupiedSlots.get((int) slot))
+                free(slot);
+        }
+    }
+}
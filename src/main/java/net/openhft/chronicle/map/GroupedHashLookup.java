@@ -0,0 +1,375 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.Maths;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.ByteOrder.nativeOrder;
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+/**
+ * {@link HashLookupStrategy#GROUPED_TAGS} hash lookup.
+ *
+ * <p>Each group takes exactly one cache line: 8-byte control word, followed by 7 slots of
+ * 8 bytes. Bytes 0..6 of the control word are 8-bit tags of the slots (0 - empty slot, tags of
+ * occupied slots always have the high bit set), byte 7 is the saturating counter of entries,
+ * which home group is this group or one of the previous groups, but that are stored in one of the
+ * next groups, because this group was full on insertion. If the counter is 0, the search
+ * stops on this group.
+ */
+class GroupedHashLookup extends HashLookup {
+
+    static final int GROUP_SLOTS = 7;
+    static final int GROUP_SIZE = 64;
+    static final int ENTRY_SIZE = 8;
+
+    private static final long LOW_BITS = 0x0101010101010101L;
+    /** high bits of the 7 tag bytes, i. e. excluding the overflow counter byte */
+    private static final long TAG_HIGH_BITS = 0x0080808080808080L;
+    private static final int OVERFLOW_COUNTER_BYTE = 7;
+    private static final int MAX_OVERFLOW = 255;
+    private static final boolean LITTLE_ENDIAN_ORDER = nativeOrder() == LITTLE_ENDIAN;
+
+    private static final long UNSET_KEY = 0L;
+
+    static int keyBits(int valueBits) {
+        // slots are always 64-bit, devote all the rest bits to the key
+        return ENTRY_SIZE * 8 - valueBits;
+    }
+
+    static long capacityFor(long entriesPerSegment) {
+        if (entriesPerSegment < 0L)
+            throw new IllegalArgumentException("entriesPerSegment should be positive");
+        // at most 6 slots of 7 are taken on average
+        long groups = Maths.nextPower2((entriesPerSegment + 5L) / 6L, 1L);
+        return groups * GROUP_SLOTS;
+    }
+
+    static long innerSize(long capacity) {
+        return (capacity / GROUP_SLOTS) * GROUP_SIZE;
+    }
+
+    private static long mask(int bits) {
+        return bits == 64 ? -1L : (1L << bits) - 1L;
+    }
+
+    private long address;
+    private long groupsMask;
+
+    private int keyBits;
+    private long keyMask;
+    private long valueMask;
+
+    // search state
+    private long searchKey = UNSET_KEY;
+    private long searchTags;
+    private long homeGroup;
+    private long searchGroup = -1L;
+    private long searchMatches;
+    private long lastGroup;
+    private int lastSlot;
+    private long foundGroup = -1L;
+    private int foundSlot;
+
+    @Override
+    void reuse(long address, long capacity, int entrySize, int keyBits, int valueBits) {
+        assert entrySize == ENTRY_SIZE;
+        this.address = address;
+        this.groupsMask = capacity / GROUP_SLOTS - 1L;
+        this.keyBits = keyBits;
+        this.keyMask = mask(keyBits);
+        this.valueMask = mask(valueBits);
+    }
+
+    private long groupAddress(long group) {
+        return address + group * GROUP_SIZE;
+    }
+
+    private long slotAddress(long group, int slot) {
+        return groupAddress(group) + ENTRY_SIZE + slot * ENTRY_SIZE;
+    }
+
+    /**
+     * @return the control word, byte i of which is the tag of the slot i, regardless the native
+     * byte order
+     */
+    private long readControl(long group) {
+        long control = UNSAFE.getLongVolatile(null, groupAddress(group));
+        return LITTLE_ENDIAN_ORDER ? control : Long.reverseBytes(control);
+    }
+
+    private long matchTags(long control) {
+        long x = control ^ searchTags;
+        // high bit is set in each zero byte of x, i. e. where the tag matches. Might also set
+        // high bits in some bytes above the matched ones, that is harmless, because
+        // the rest of the key bits is compared then
+        return (x - LOW_BITS) & ~x & TAG_HIGH_BITS;
+    }
+
+    private static long emptySlots(long control) {
+        return ~control & TAG_HIGH_BITS;
+    }
+
+    private static int overflowCount(long control) {
+        return (int) (control >>> (OVERFLOW_COUNTER_BYTE * 8));
+    }
+
+    private static int lowestSlot(long slotBits) {
+        return Long.numberOfTrailingZeros(slotBits) >>> 3;
+    }
+
+    /**
+     * Takes the tag from the highest bits of the multiplicative remix of the key, rather than
+     * from the highest bits of the key itself, because the key could have fewer significant
+     * bits than {@code keyBits}: e. g. {@link HashSplitting.ForNonPowerOf2Segments} leaves only
+     * 33 bits of the hash, and the highest key bits would be always zero. All bits of the key
+     * contribute to the highest bits of the product, including those above the home group bits,
+     * which distinguish keys of the same group.
+     */
+    static long tag(long key) {
+        return 0x80L | ((key * 0x9E3779B97F4A7C15L) >>> 57);
+    }
+
+    private long key(long entry) {
+        return entry & keyMask;
+    }
+
+    private long value(long entry) {
+        return (entry >>> keyBits) & valueMask;
+    }
+
+    private long entry(long key, long value) {
+        return key | (value << keyBits);
+    }
+
+    private void addToOverflowCount(long group, int delta) {
+        long counterAddress = groupAddress(group) + OVERFLOW_COUNTER_BYTE;
+        int count = UNSAFE.getByte(counterAddress) & 0xFF;
+        // saturated counter is never decremented, because the number of entries, overflowed
+        // this group, is unknown then
+        if (count == MAX_OVERFLOW)
+            return;
+        UNSAFE.putByte(counterAddress, (byte) (count + delta));
+    }
+
+    @Override
+    public void init0(long key) {
+        key &= keyMask;
+        if (key == UNSET_KEY)
+            key = keyMask;
+        searchKey = key;
+        searchTags = tag(key) * LOW_BITS;
+        homeGroup = key & groupsMask;
+    }
+
+    @Override
+    public boolean isInit() {
+        return searchKey != UNSET_KEY;
+    }
+
+    @Override
+    public void close0() {
+        searchKey = UNSET_KEY;
+    }
+
+    @Override
+    public void initSearch0() {
+        searchGroup = homeGroup;
+        searchMatches = matchTags(readControl(homeGroup));
+        foundGroup = -1L;
+    }
+
+    @Override
+    public boolean isSearchInit() {
+        return searchGroup >= 0L;
+    }
+
+    @Override
+    public void closeSearch0() {
+        searchGroup = -1L;
+        foundGroup = -1L;
+    }
+
+    @Override
+    public long nextPos() {
+        while (true) {
+            while (searchMatches != 0L) {
+                int slot = lowestSlot(searchMatches);
+                searchMatches &= searchMatches - 1L;
+                long entry = UNSAFE.getLong(slotAddress(searchGroup, slot));
+                if (key(entry) == searchKey) {
+                    lastGroup = searchGroup;
+                    lastSlot = slot;
+                    return value(entry);
+                }
+            }
+            if (overflowCount(readControl(searchGroup)) == 0)
+                return -1L;
+            long nextGroup = (searchGroup + 1L) & groupsMask;
+            if (nextGroup == homeGroup)
+                return -1L;
+            searchGroup = nextGroup;
+            searchMatches = matchTags(readControl(nextGroup));
+        }
+    }
+
+    @Override
+    public void found() {
+        foundGroup = lastGroup;
+        foundSlot = lastSlot;
+    }
+
+    @Override
+    public long foundSlot() {
+        return foundGroup * GROUP_SLOTS + foundSlot;
+    }
+
+    @Override
+    public long tryFoundAt(long slot) {
+        if (slot < 0L)
+            return -1L;
+        long group = slot / GROUP_SLOTS;
+        int slotInGroup = (int) (slot % GROUP_SLOTS);
+        if (group > groupsMask)
+            return -1L;
+        if (((readControl(group) >>> (slotInGroup * 8)) & 0xFFL) == 0L)
+            return -1L;
+        long entry = UNSAFE.getLong(slotAddress(group, slotInGroup));
+        if (key(entry) != searchKey)
+            return -1L;
+        searchGroup = group;
+        searchMatches = 0L;
+        foundGroup = lastGroup = group;
+        foundSlot = lastSlot = slotInGroup;
+        return value(entry);
+    }
+
+    @Override
+    public void remove() {
+        if (foundGroup < 0L)
+            throw new IllegalStateException("Entry to remove is not found");
+        // clear the tag first, concurrent readers shouldn't see the slot with the tag but
+        // without the entry
+        UNSAFE.putByte(groupAddress(foundGroup) + foundSlot, (byte) 0);
+        UNSAFE.putLong(slotAddress(foundGroup, foundSlot), 0L);
+        for (long group = homeGroup; group != foundGroup; group = (group + 1L) & groupsMask) {
+            addToOverflowCount(group, -1);
+        }
+        // for support of patterns like context.remove().put(), the next put inserts
+        foundGroup = -1L;
+    }
+
+    @Override
+    public void put(long value) {
+        put(value, false);
+    }
+
+    @Override
+    public void putVolatile(long value) {
+        put(value, true);
+    }
+
+    private void put(long value, boolean volatileWrite) {
+        assert (value & ~valueMask) == 0L : "Value out of range, was " + value;
+        long entry = entry(searchKey, value);
+        if (foundGroup >= 0L) {
+            long slotAddress = slotAddress(foundGroup, foundSlot);
+            if (volatileWrite) {
+                UNSAFE.putLongVolatile(null, slotAddress, entry);
+            } else {
+                UNSAFE.putLong(slotAddress, entry);
+            }
+            return;
+        }
+        long group = homeGroup;
+        while (true) {
+            long emptySlots = emptySlots(readControl(group));
+            if (emptySlots != 0L) {
+                int slot = lowestSlot(emptySlots);
+                UNSAFE.putLong(slotAddress(group, slot), entry);
+                // write the tag after the entry, concurrent readers which see the tag
+                // should see the entry
+                long tagAddress = groupAddress(group) + slot;
+                if (volatileWrite) {
+                    UNSAFE.putByteVolatile(null, tagAddress, (byte) tag(searchKey));
+                } else {
+                    UNSAFE.putByte(tagAddress, (byte) tag(searchKey));
+                }
+                foundGroup = group;
+                foundSlot = slot;
+                return;
+            }
+            addToOverflowCount(group, 1);
+            group = (group + 1L) & groupsMask;
+            if (group == homeGroup) {
+                throw new IllegalStateException("MultiMap is full, that most likely means you " +
+                        "misconfigured entrySize/chunkSize, and entries tend to take less " +
+                        "chunks than expected");
+            }
+        }
+    }
+
+    @Override
+    public long maxProbeLength() {
+        long maxProbeLength = 0L;
+        for (long group = 0L; group <= groupsMask; group++) {
+            long control = readControl(group);
+            for (int slot = 0; slot < GROUP_SLOTS; slot++) {
+                if (((control >>> (slot * 8)) & 0xFFL) != 0L) {
+                    long key = key(UNSAFE.getLong(slotAddress(group, slot)));
+                    long groupDistance = (group - (key & groupsMask)) & groupsMask;
+                    maxProbeLength = Math.max(maxProbeLength, groupDistance + 1L);
+                }
+            }
+        }
+        return maxProbeLength;
+    }
+
+    @Override
+    public void clear() {
+        UNSAFE.setMemory(address, (groupsMask + 1L) * GROUP_SIZE, (byte) 0);
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        for (long group = 0L; group <= groupsMask; group++) {
+            long control = readControl(group);
+            for (int slot = 0; slot < GROUP_SLOTS; slot++) {
+                if (((control >>> (slot * 8)) & 0xFFL) != 0L) {
+                    long entry = UNSAFE.getLong(slotAddress(group, slot));
+                    action.accept(key(entry), value(entry));
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean forEachWhile(EntryPredicate action) {
+        for (long group = 0L; group <= groupsMask; group++) {
+            long control = readControl(group);
+            for (int slot = 0; slot < GROUP_SLOTS; slot++) {
+                if (((control >>> (slot * 8)) & 0xFFL) != 0L) {
+                    long entry = UNSAFE.getLong(slotAddress(group, slot));
+                    if (!action.accept(key(entry), value(entry)))
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+}
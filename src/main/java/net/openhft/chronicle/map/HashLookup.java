@@ -78,10 +78,20 @@ class HashLookup {
     private long valueMask;
     private long entryMask;
 
+    /**
+     * If {@code true}, entries are inserted with Robin Hood displacement, i. e. an entry
+     * takes the slot of an entry, which is closer to its home slot, and that entry continues
+     * to probe further. Removal in this mode shifts the following entries backward, until
+     * an empty slot or an entry in its home slot.
+     */
+    private boolean robinHood;
+
     // search state
     private long searchKey = UNSET_KEY;
     private long searchStartPos = -1L;
     private long searchPos = -1L;
+    private long searchDistance;
+    private boolean searchFound;
 
     void reuse(long address, long capacity, int entrySize, int keyBits, int valueBits) {
         this.address = address;
@@ -97,6 +107,10 @@ class HashLookup {
         this.entryMask = mask(keyBits + valueBits);
     }
 
+    void robinHood(boolean robinHood) {
+        this.robinHood = robinHood;
+    }
+
     private long indexToPos(long index) {
         return index * entrySize;
     }
@@ -137,6 +151,13 @@ class HashLookup {
         return (pos -= entrySize) >= 0 ? pos : capacityMask2;
     }
 
+    /**
+     * @return number of steps from the home slot of the given key to the given slot position
+     */
+    private long distance(long pos, long key) {
+        return (pos / entrySize - (key & capacityMask)) & capacityMask;
+    }
+
     private long readEntry(long pos) {
         return UNSAFE.getLong(address + pos);
     }
@@ -177,6 +198,8 @@ class HashLookup {
 
     public void initSearch0() {
         searchPos = searchStartPos;
+        searchDistance = 0L;
+        searchFound = false;
     }
 
     public boolean isSearchInit() {
@@ -189,32 +212,113 @@ class HashLookup {
 
     public long nextPos() {
         long pos = searchPos;
+        long distance = searchDistance;
         while (true) {
             long entry = readEntry(pos);
-            if (empty(entry)) {
+            if (empty(entry) ||
+                    // Robin Hood invariant: the searched key would displace this entry
+                    (robinHood && distance(pos, key(entry)) < distance)) {
                 searchPos = pos;
+                searchDistance = distance;
                 return -1L;
             }
             pos = step(pos);
+            distance++;
             if (pos == searchStartPos)
                 break;
             if (key(entry) == searchKey) {
                 searchPos = pos;
+                searchDistance = distance;
                 return value(entry);
             }
         }
-        throw new IllegalStateException("MultiMap is full, that most likely means you " +
+        throw fullException();
+    }
+
+    private static IllegalStateException fullException() {
+        return new IllegalStateException("MultiMap is full, that most likely means you " +
                 "misconfigured entrySize/chunkSize, and entries tend to take less chunks than " +
                 "expected");
     }
 
     public void found() {
         searchPos = stepBack(searchPos);
+        searchDistance--;
+        searchFound = true;
     }
 
     public void remove() {
-        // for support of patterns like context.remove().put()
-        searchPos = remove0();
+        if (robinHood) {
+            removeBackwardShift();
+            // for support of patterns like context.remove().put(), find the insertion position
+            long pos = searchStartPos;
+            long distance = 0L;
+            while (true) {
+                long entry = readEntry(pos);
+                if (empty(entry) || distance(pos, key(entry)) < distance)
+                    break;
+                pos = step(pos);
+                distance++;
+            }
+            searchPos = pos;
+            searchDistance = distance;
+        } else {
+            // for support of patterns like context.remove().put()
+            searchPos = remove0();
+        }
+        searchFound = false;
+    }
+
+    private void removeBackwardShift() {
+        long posToRemove = searchPos;
+        long entryToRemove = readEntry(posToRemove);
+        while (true) {
+            long posToShift = step(posToRemove);
+            long entryToShift = readEntry(posToShift);
+            if (empty(entryToShift) || distance(posToShift, key(entryToShift)) == 0L)
+                break;
+            writeEntry(posToRemove, entryToRemove, entryToShift);
+            posToRemove = posToShift;
+            entryToRemove = entryToShift;
+        }
+        clearEntry(posToRemove, entryToRemove);
+    }
+
+    /**
+     * Should be called after {@link #found()}.
+     *
+     * @return the slot, where the searched key is found, to try on the next search of the same
+     * key via {@link #tryFoundAt(long)}
+     */
+    public long foundSlot() {
+        return searchPos;
+    }
+
+    /**
+     * Checks if the given slot, returned from {@link #foundSlot()} on a previous search, still
+     * holds the searched key. If so, the search state is the same as if the entry is found by
+     * {@link #nextPos()} and {@link #found()}, i. e. probing is skipped.
+     *
+     * @return the value of the entry in the slot, or -1 if the slot holds another entry or empty
+     */
+    public long tryFoundAt(long slot) {
+        if (slot < 0L || slot > capacityMask2 || slot % entrySize != 0L)
+            return -1L;
+        long entry = readEntry(slot);
+        if (empty(entry) || key(entry) != searchKey)
+            return -1L;
+        searchPos = slot;
+        searchDistance = distance(slot, searchKey);
+        searchFound = true;
+        return value(entry);
+    }
+
+    /**
+     * @return {@code true} if the following {@link #put(long)} moves other entries, i. e.
+     * concurrent readers could miss them, if they don't exclude the put
+     */
+    public boolean putDisplaces() {
+        return robinHood && !searchFound && !empty(readEntry(searchPos));
     }
 
     private long remove0() {
@@ -249,12 +353,63 @@ class HashLookup {
 
     public void put(long value) {
         checkValueForPut(value);
+        if (putDisplaces()) {
+            insertWithDisplacement(value);
+            return;
+        }
         writeEntry(searchPos, readEntry(searchPos), searchKey, value);
+        searchFound = true;
     }
 
     public void putVolatile(long value) {
         checkValueForPut(value);
+        if (putDisplaces()) {
+            insertWithDisplacement(value);
+            return;
+        }
         writeEntryVolatile(searchPos, readEntry(searchPos), searchKey, value);
+        searchFound = true;
+    }
+
+    private void insertWithDisplacement(long value) {
+        // search stopped on the slot, the new entry should take
+        long insertPos = searchPos;
+        long pos = insertPos;
+        long key = searchKey;
+        long distance = searchDistance;
+        while (true) {
+            long entry = readEntry(pos);
+            if (empty(entry)) {
+                writeEntry(pos, entry, key, value);
+                break;
+            }
+            long entryDistance = distance(pos, key(entry));
+            if (entryDistance < distance) {
+                writeEntry(pos, entry, key, value);
+                key = key(entry);
+                value = value(entry);
+                distance = entryDistance;
+            }
+            pos = step(pos);
+            distance++;
+            if (pos == insertPos)
+                throw fullException();
+        }
+        searchPos = insertPos;
+        searchFound = true;
+    }
+
+    /**
+     * @return the maximum number of slots, probed to find an entry in this hash lookup
+     */
+    public long maxProbeLength() {
+        long maxProbeLength = 0L;
+        for (long pos = 0L; pos <= capacityMask2; pos += entrySize) {
+            long entry = readEntry(pos);
+            if (!empty(entry))
+                maxProbeLength = Math.max(maxProbeLength, distance(pos, key(entry)) + 1L);
+        }
+        return maxProbeLength;
     }
 
     public void clear() {
@@ -285,4 +440,24 @@ class HashLookup {
                 action.accept(key(entry), value(entry));
         }
     }
+
+    static interface EntryPredicate {
+        /**
+         * @return {@code false} to stop the iteration
+         */
+        boolean accept(long key, long value);
+    }
+
+    /**
+     * @return {@code true} if all entries are visited, {@code false} if the iteration is stopped
+     * by the predicate
+     */
+    public boolean forEachWhile(EntryPredicate action) {
+        for (long pos = 0L; pos <= capacityMask2; pos += entrySize) {
+            long entry = readEntry(pos);
+            if (!empty(entry) && !action.accept(key(entry), value(entry)))
+                return false;
+        }
+        return true;
+    }
 }
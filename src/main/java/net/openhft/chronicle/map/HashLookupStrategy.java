@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * Layouts and probing strategies of per-segment hash lookups, that map key hashes to entry
+ * positions within segments.
+ *
+ * @see ChronicleMapBuilder#hashLookupStrategy(HashLookupStrategy)
+ */
+public enum HashLookupStrategy {
+    /**
+     * Open addressing with linear probing over slots of 3..8 bytes, each slot holds a part of
+     * the key hash and the entry position. The most compact layout.
+     */
+    LINEAR_PROBING,
+
+    /**
+     * Slots are grouped by 7 per cache line, with a control word of 8-bit hash tags of all
+     * slots in the group, compared against the searched key tag in a single {@code long}
+     * operation. Probing proceeds group by group, and stops as soon as a group is encountered,
+     * that never overflowed, so that the search (even unsuccessful) usually touches a single
+     * cache line of the hash lookup, and entries are compared with the searched key only if
+     * both the tag and the rest of the stored hash bits match.
+     *
+     * <p>Slots are always 8 bytes, so the hash lookup takes more memory than with {@link
+     * #LINEAR_PROBING}. The benefit is lower latency at high segment fill.
+     */
+    GROUPED_TAGS,
+
+    /**
+     * Same slots as {@link #LINEAR_PROBING}, but entries are inserted with Robin Hood
+     * displacement: a new entry takes the slot of an entry, which is closer to its home slot,
+     * and the displaced entry continues probing. On removal, the following entries are shifted
+     * backward. This bounds the variance of probe lengths, and they don't grow with put/remove
+     * churn, also unsuccessful searches stop early.
+     *
+     * <p>Insertions, which displace other entries, acquire the segment write lock, rather than
+     * only update lock.
+     */
+    ROBIN_HOOD
+}
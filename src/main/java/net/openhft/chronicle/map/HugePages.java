@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import static net.openhft.lang.MemoryUnit.KILOBYTES;
+import static net.openhft.lang.MemoryUnit.MEGABYTES;
+
+/**
+ * Linux huge pages configuration, read from {@code /proc} and {@code /sys}. Java can't
+ * {@code madvise()} memory, so huge pages are used either via a hugetlbfs mount (see {@link
+ * ChronicleMapBuilder#hugePagesDirectory(File)}), or transparently, if the transparent huge pages
+ * mode is {@code always}.
+ */
+final class HugePages {
+
+    static final long DEFAULT_HUGE_PAGE_SIZE = MEGABYTES.toBytes(2L);
+
+    private static final String MEMINFO = "/proc/meminfo";
+    private static final String TRANSPARENT_HUGE_PAGES_ENABLED =
+            "/sys/kernel/mm/transparent_hugepage/enabled";
+
+    private HugePages() {
+    }
+
+    /**
+     * @return the {@code Hugepagesize} from {@code /proc/meminfo}, or 2 MB if it couldn't be
+     * read
+     */
+    static long hugePageSize() {
+        String line = readLine(MEMINFO, "Hugepagesize:");
+        if (line != null) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length >= 2) {
+                try {
+                    return KILOBYTES.toBytes(Long.parseLong(parts[1]));
+                } catch (NumberFormatException e) {
+                    // fall through
+                }
+            }
+        }
+        return DEFAULT_HUGE_PAGE_SIZE;
+    }
+
+    /**
+     * @return the selected transparent huge pages mode ({@code always}, {@code madvise} or
+     * {@code never}), or {@code "unknown"} if it couldn't be read
+     */
+    static String transparentHugePagesMode() {
+        String line = readLine(TRANSPARENT_HUGE_PAGES_ENABLED, "");
+        if (line != null) {
+            int start = line.indexOf('[');
+            int end = line.indexOf(']', start + 1);
+            if (start >= 0 && end > start)
+                return line.substring(start + 1, end);
+        }
+        return "unknown";
+    }
+
+    static long roundUpToHugePage(long size, long hugePageSize) {
+        return (size + hugePageSize - 1L) / hugePageSize * hugePageSize;
+    }
+
+    private static String readLine(String path, String prefix) {
+        File file = new File(path);
+        if (!file.canRead())
+            return null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(prefix))
+                    return line;
+            }
+        } catch (IOException e) {
+            // ignore -- the configuration is only reported
+        }
+        return null;
+    }
+}
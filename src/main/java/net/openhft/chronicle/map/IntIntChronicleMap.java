@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * {@link ChronicleIntIntMap} with inlined primitive entries.
+ */
+final class IntIntChronicleMap extends PrimitiveChronicleMap<Integer, Integer>
+        implements ChronicleIntIntMap {
+    private static final long serialVersionUID = 0L;
+
+    IntIntChronicleMap(ChronicleMapBuilder<?, ?> builder) {
+        super(builder, 4);
+    }
+
+    @Override
+    long unboxKey(Object key) {
+        return (Integer) key;
+    }
+
+    @Override
+    Integer boxKey(long key) {
+        return (int) key;
+    }
+
+    @Override
+    long unboxValue(Object value) {
+        return (Integer) value;
+    }
+
+    @Override
+    Integer boxValue(long value) {
+        return (int) value;
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return containsKey0(key);
+    }
+
+    @Override
+    public int getInt(int key) {
+        return (int) get0(key, 0L);
+    }
+
+    @Override
+    public int getInt(int key, int defaultValue) {
+        return (int) get0(key, defaultValue);
+    }
+
+    @Override
+    public int putInt(int key, int value) {
+        return (int) put0(key, value);
+    }
+
+    @Override
+    public int removeInt(int key) {
+        return (int) remove0(key);
+    }
+
+    @Override
+    public Class<Integer> keyClass() {
+        return Integer.class;
+    }
+
+    @Override
+    public Class<Integer> valueClass() {
+        return Integer.class;
+    }
+}
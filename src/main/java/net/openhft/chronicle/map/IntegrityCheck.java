@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+/**
+ * Integrity check modes of persisted ChronicleMaps, applied when the map is opened.
+ *
+ * @see ChronicleMapBuilder#integrityCheckOnOpen(IntegrityCheck)
+ */
+public enum IntegrityCheck {
+    /**
+     * Doesn't check integrity of the map.
+     */
+    NONE,
+
+    /**
+     * Checks that every hash lookup slot of every segment points to a well-formed entry, which
+     * doesn't overlap other entries and whose key hashes to this segment, that free lists mark
+     * exactly the space of these entries, and that segment sizes are equal to the numbers
+     * of entries. Throws {@code IllegalStateException} on open, if the map is inconsistent.
+     */
+    VERIFY,
+
+    /**
+     * Checks the same as {@link #VERIFY}, and repairs inconsistent segments: drops dangling hash
+     * lookup slots, rebuilds free lists and segment sizes. Repairs are logged
+     * at {@code WARN} level.
+     */
+    REPAIR
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+/**
+ * Results of {@linkplain VanillaChronicleMap#checkIntegrity(boolean) the integrity check}
+ * of a range of segments, merged into the report of the whole map.
+ */
+final class IntegrityReport {
+    long segments = 0L;
+    long inconsistentSegments = 0L;
+    long entries = 0L;
+    /**
+     * Hash lookup slots, pointing to malformed or overlapping entries, or entries of keys,
+     * which don't hash to the segment and slot
+     */
+    long danglingSlots = 0L;
+    /**
+     * Tiers, whose free list (or free slot stack) doesn't match the entries
+     */
+    long freeListMismatches = 0L;
+    long sizeMismatches = 0L;
+
+    boolean isConsistent() {
+        return inconsistentSegments == 0L;
+    }
+
+    void add(IntegrityReport report) {
+        segments += report.segments;
+        inconsistentSegments += report.inconsistentSegments;
+        entries += report.entries;
+        danglingSlots += report.danglingSlots;
+        freeListMismatches += report.freeListMismatches;
+        sizeMismatches += report.sizeMismatches;
+    }
+
+    @Override
+    public String toString() {
+        return "segments=" + segments +
+                ", inconsistentSegments=" + inconsistentSegments +
+                ", entries=" + entries +
+                ", danglingSlots=" + danglingSlots +
+                ", freeListMismatches=" + freeListMismatches +
+                ", sizeMismatches=" + sizeMismatches;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * Key of a particular {@link ChronicleMap}, with the precomputed hash and segment index, and
+ * the hash lookup slot, where the key was found last time. Operations via the handle don't
+ * hash the key, and usually don't probe the hash lookup, the slot is just checked to still
+ * hold the key. Worth creating for hot keys, which are accessed repeatedly.
+ *
+ * <p>The handle could be shared between threads. The key object shouldn't be mutated while
+ * the handle is in use.
+ *
+ * @param <K> the map key type
+ * @see ChronicleMap#keyHandle(Object)
+ */
+public final class KeyHandle<K> {
+    final ChronicleMap<K, ?> map;
+    final K key;
+    final long hash;
+    /**
+     * -1 if the hash is not precomputed, i. e. the map doesn't support contexts
+     */
+    final int segmentIndex;
+    /**
+     * Hint, could be stale or racy, is always checked before use. -1 if unknown
+     */
+    long slot = -1L;
+
+    KeyHandle(ChronicleMap<K, ?> map, K key, long hash, int segmentIndex) {
+        this.map = map;
+        this.key = key;
+        this.hash = hash;
+        this.segmentIndex = segmentIndex;
+    }
+
+    /**
+     * @return the key of this handle
+     */
+    public K key() {
+        return key;
+    }
+
+    void checkMap(ChronicleMap<K, ?> map) {
+        if (this.map != map)
+            throw new IllegalArgumentException("Key handle is created by another map");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+/**
+ * {@link ChronicleLongLongMap} with inlined primitive entries.
+ */
+final class LongLongChronicleMap extends PrimitiveChronicleMap<Long, Long>
+        implements ChronicleLongLongMap {
+    private static final long serialVersionUID = 0L;
+
+    LongLongChronicleMap(ChronicleMapBuilder<?, ?> builder) {
+        super(builder, 8);
+    }
+
+    @Override
+    long unboxKey(Object key) {
+        return (Long) key;
+    }
+
+    @Override
+    Long boxKey(long key) {
+        return key;
+    }
+
+    @Override
+    long unboxValue(Object value) {
+        return (Long) value;
+    }
+
+    @Override
+    Long boxValue(long value) {
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(long key) {
+        return containsKey0(key);
+    }
+
+    @Override
+    public long getLong(long key) {
+        return get0(key, 0L);
+    }
+
+    @Override
+    public long getLong(long key, long defaultValue) {
+        return get0(key, defaultValue);
+    }
+
+    @Override
+    public long putLong(long key, long value) {
+        return put0(key, value);
+    }
+
+    @Override
+    public long removeLong(long key) {
+        return remove0(key);
+    }
+
+    @Override
+    public Class<Long> keyClass() {
+        return Long.class;
+    }
+
+    @Override
+    public Class<Long> valueClass() {
+        return Long.class;
+    }
+}
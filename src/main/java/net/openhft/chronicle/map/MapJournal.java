@@ -0,0 +1,427 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.io.ByteBufferBytes;
+import net.openhft.lang.io.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of map mutations, see {@link
+ * ChronicleMapBuilder#journal(File)}.
+ *
+ * <p>Mutations are serialized into records and appended to an in-memory batch under the segment
+ * lock (puts are appended after they are applied to the segment, so that a put, failed because
+ * the value is too large or the segment is full, is not journaled). A dedicated thread writes
+ * and fsyncs the batches (group commit): all records, appended while the previous batch is
+ * fsync-ed, go to the next batch. The mutating thread waits until its record is durable after
+ * the segment lock is released, once per the outermost context, see {@link
+ * VanillaContext#doClose()}.
+ *
+ * <p>The journal consists of two files, the given one and the one with {@code .1} suffix. Each
+ * {@linkplain SegmentCheckpointer#checkpoint() checkpoint} rotates the files: the records are
+ * appended to the other file, and the retired file is truncated after the checkpoint, because
+ * all mutations, journaled in it, are already forced with the segments. Files are replayed
+ * on open in the order of their generations, written in file headers.
+ *
+ * <p>Record format: 4-byte length of the payload, 1-byte type, payload, 4-byte CRC32 of the type
+ * and the payload. Payloads: {@link #PUT} - the key and the value, both prepended with the size,
+ * in the format of {@link BytesChronicleMap#putAll(Bytes)}, {@link #REMOVE} - the key, prepended
+ * with the size, {@link #CLEAR_SEGMENT} - 4-byte segment index.
+ */
+final class MapJournal implements Runnable, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(MapJournal.class);
+
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+    static final byte CLEAR_SEGMENT = 3;
+
+    /**
+     * "CMJ1"
+     */
+    private static final int MAGIC = 0x434D4A31;
+    private static final int FILE_HEADER_SIZE = 12;
+    private static final int RECORD_OVERHEAD = 9;
+    private static final int INITIAL_BATCH_CAPACITY = 1 << 16;
+
+    private final File[] files;
+    private final RandomAccessFile[] rafs = new RandomAccessFile[2];
+    private final FileChannel[] channels = new FileChannel[2];
+    private final long[] generations = new long[2];
+    private int activeFile = 0;
+    private int retiredFile = -1;
+
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BATCH_CAPACITY);
+    private ByteBuffer flushing = ByteBuffer.allocate(INITIAL_BATCH_CAPACITY);
+    /**
+     * The file of the pending records, before {@link #pendingSplit}, if the files are rotated
+     * while records are pending
+     */
+    private int pendingFile = 0;
+    private int pendingSplit = -1;
+    private long appendedSequence = 0L;
+    private long durableSequence = 0L;
+    private IOException failure;
+    private boolean closed = false;
+    private Thread thread;
+
+    MapJournal(File file) throws IOException {
+        files = new File[] {file, new File(file.getPath() + ".1")};
+        for (int i = 0; i < 2; i++) {
+            rafs[i] = new RandomAccessFile(files[i], "rw");
+            channels[i] = rafs[i].getChannel();
+            generations[i] = readGeneration(i);
+        }
+    }
+
+    private long readGeneration(int fileIndex) throws IOException {
+        RandomAccessFile raf = rafs[fileIndex];
+        if (raf.length() < FILE_HEADER_SIZE)
+            return -1L;
+        raf.seek(0L);
+        if (raf.readInt() != MAGIC)
+            throw new IOException(files[fileIndex] + " is not a Chronicle Map journal");
+        return raf.readLong();
+    }
+
+    /**
+     * @return {@code true} if there are no records in the journal, i. e. the map was closed
+     * cleanly, or is new
+     */
+    boolean isEmpty() throws IOException {
+        return rafs[0].length() <= FILE_HEADER_SIZE && rafs[1].length() <= FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Applies the journaled mutations to the map, the older file first. Replay of each file stops
+     * at the first incomplete or corrupt record, that could be only the last record, written
+     * partially when the process crashed. Complete records, that fail to apply, are logged and
+     * skipped.
+     *
+     * @return the number of applied records
+     */
+    long replay(VanillaChronicleMap<?, ?, ?, ?, ?, ?> map) throws IOException {
+        BytesChronicleMap bytesMap = new BytesChronicleMap(map);
+        long replayed = 0L;
+        int first = generations[0] <= generations[1] ? 0 : 1;
+        for (int fileIndex : new int[] {first, first ^ 1}) {
+            if (generations[fileIndex] >= 0L)
+                replayed += replay(fileIndex, map, bytesMap);
+        }
+        return replayed;
+    }
+
+    private long replay(int fileIndex, VanillaChronicleMap<?, ?, ?, ?, ?, ?> map,
+                        BytesChronicleMap bytesMap) throws IOException {
+        long replayed = 0L;
+        long remaining = rafs[fileIndex].length() - FILE_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(files[fileIndex])))) {
+            in.skipBytes(FILE_HEADER_SIZE);
+            while (remaining >= RECORD_OVERHEAD) {
+                int payloadLength = in.readInt();
+                if (payloadLength < 0 || payloadLength > remaining - RECORD_OVERHEAD)
+                    break;
+                byte type = in.readByte();
+                byte[] payload = new byte[payloadLength];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(type);
+                crc.update(payload, 0, payloadLength);
+                if (in.readInt() != (int) crc.getValue())
+                    break;
+                try {
+                    apply(type, new ByteBufferBytes(ByteBuffer.wrap(payload)), map, bytesMap);
+                    replayed++;
+                } catch (RuntimeException e) {
+                    // the record is complete, but can't be applied, e. g. the put, that failed
+                    // in the crashed process after it was journaled; the map should open anyway
+                    LOG.error("Skipped the journal record of type " + type + " in " +
+                            files[fileIndex] + ", that could not be applied", e);
+                }
+                remaining -= RECORD_OVERHEAD + payloadLength;
+            }
+        }
+        if (remaining > 0L) {
+            LOG.warn("Replay of " + files[fileIndex] + " stopped at the incomplete or corrupt " +
+                    "record, " + remaining + " bytes are skipped");
+        }
+        return replayed;
+    }
+
+    private static void apply(byte type, Bytes payload, VanillaChronicleMap<?, ?, ?, ?, ?, ?> map,
+                              BytesChronicleMap bytesMap) {
+        switch (type) {
+            case PUT:
+                bytesMap.put(payload, payload);
+                break;
+            case REMOVE:
+                bytesMap.remove(payload);
+                break;
+            case CLEAR_SEGMENT:
+                try (VanillaContext<?, ?, ?, ?, ?, ?> c = map.mapContext()) {
+                    c.segmentIndex = payload.readInt();
+                    c.clear();
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type: " + type);
+        }
+    }
+
+    /**
+     * Truncates both files (the mutations, journaled in them, should be already forced with the
+     * map) and starts the group commit thread.
+     */
+    void start() throws IOException {
+        long generation = Math.max(generations[0], generations[1]);
+        resetFile(0, generation + 1L);
+        resetFile(1, generation + 2L);
+        activeFile = pendingFile = 0;
+        thread = new Thread(this, "chronicle-map-journal-" + files[0].getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void resetFile(int fileIndex, long generation) throws IOException {
+        FileChannel channel = channels[fileIndex];
+        channel.truncate(0L);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putLong(generation).flip();
+        channel.position(0L);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+        generations[fileIndex] = generation;
+    }
+
+    /**
+     * Appends the record with the payload from the start to the position of the given buffer
+     * to the pending batch.
+     *
+     * @return the sequence of the record, to {@linkplain #awaitDurable(long) await} for
+     */
+    long append(byte type, ByteBuffer payload) {
+        int payloadLength = payload.position();
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload.array(), payload.arrayOffset(), payloadLength);
+        int recordSize = RECORD_OVERHEAD + payloadLength;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("Journal " + files[0] + " is closed");
+            // the mutation is not applied, if it couldn't be journaled
+            if (failure != null)
+                throw new IllegalStateException("Journal " + files[0] + " failed", failure);
+            if (pending.remaining() < recordSize) {
+                ByteBuffer grown = ByteBuffer.allocate(
+                        Math.max(pending.capacity() * 2, pending.position() + recordSize));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            boolean wasEmpty = pending.position() == 0;
+            pending.putInt(payloadLength).put(type)
+                    .put(payload.array(), payload.arrayOffset(), payloadLength)
+                    .putInt((int) crc.getValue());
+            appendedSequence += recordSize;
+            if (wasEmpty)
+                notifyAll();
+            return appendedSequence;
+        }
+    }
+
+    /**
+     * Waits until the record with the given sequence is written and fsync-ed.
+     *
+     * @throws IllegalStateException if the journal failed
+     */
+    void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        synchronized (this) {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new IllegalStateException("Journal " + files[0] + " failed, " +
+                            "the mutation is applied, but is not durable", failure);
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // the mutation is already applied, can't give up waiting
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            ByteBuffer batch;
+            int batchFile;
+            int split;
+            long batchSequence;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // closed
+                    }
+                }
+                if (pending.position() == 0)
+                    return;
+                batch = pending;
+                pending = flushing;
+                flushing = batch;
+                batchFile = pendingFile;
+                split = pendingSplit;
+                pendingFile = activeFile;
+                pendingSplit = -1;
+                batchSequence = appendedSequence;
+            }
+            try {
+                batch.flip();
+                if (split >= 0) {
+                    ByteBuffer beforeSplit = batch.duplicate();
+                    beforeSplit.limit(split);
+                    write(batchFile, beforeSplit);
+                    batch.position(split);
+                    batchFile ^= 1;
+                }
+                write(batchFile, batch);
+                batch.clear();
+            } catch (IOException e) {
+                LOG.error("Journal " + files[0] + " failed", e);
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durableSequence = batchSequence;
+                notifyAll();
+            }
+        }
+    }
+
+    private void write(int fileIndex, ByteBuffer records) throws IOException {
+        FileChannel channel = channels[fileIndex];
+        channel.position(channel.size());
+        while (records.hasRemaining()) {
+            channel.write(records);
+        }
+        // metadata (the file size) should be forced too, the journal is replayed up to it
+        channel.force(true);
+    }
+
+    /**
+     * Switches appends to the other file and waits until all records, appended to the retired
+     * file, are written. If the previous checkpoint failed, doesn't rotate and returns the file,
+     * retired by it, again.
+     *
+     * @return the retired file, to {@link #retire(int)} after the checkpoint
+     */
+    int rotate() {
+        long retiredSequence;
+        synchronized (this) {
+            if (retiredFile >= 0)
+                return retiredFile;
+            retiredFile = activeFile;
+            activeFile ^= 1;
+            if (pending.position() == 0) {
+                pendingFile = activeFile;
+            } else {
+                pendingSplit = pending.position();
+            }
+            retiredSequence = appendedSequence;
+        }
+        awaitDurable(retiredSequence);
+        return retiredFile;
+    }
+
+    /**
+     * Truncates the retired file, when all mutations, journaled in it, are forced with the map.
+     */
+    void retire(int fileIndex) throws IOException {
+        synchronized (this) {
+            assert fileIndex == retiredFile;
+            retiredFile = -1;
+        }
+        resetFile(fileIndex, Math.max(generations[0], generations[1]) + 1L);
+    }
+
+    /**
+     * Stops the group commit thread, after all appended records are written.
+     */
+    void stop() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        Thread thread = this.thread;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Truncates both files, should be called after {@link #stop()}, when all journaled
+     * mutations are forced with the map, so that the next open doesn't replay them.
+     */
+    void truncate() throws IOException {
+        channels[0].truncate(FILE_HEADER_SIZE);
+        channels[1].truncate(FILE_HEADER_SIZE);
+        channels[0].force(true);
+        channels[1].force(true);
+    }
+
+    @Override
+    public void close() {
+        stop();
+        for (RandomAccessFile raf : rafs) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close journal " + files[0], e);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.util.BitSet;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static net.openhft.chronicle.map.ChronicleMapBuilder.RUNTIME_PAGE_SIZE;
+import static net.openhft.lang.MemoryUnit.MEGABYTES;
+
+/**
+ * Forces ranges of the map file to the storage device through a fixed set of long-lived
+ * mappings of the file ("windows"), each is created on the first force of its range. msync()
+ * of any shared mapping of the file flushes the dirty pages of the range from the page cache,
+ * regardless which mapping the pages were written through, and only dirty pages are written,
+ * so forcing the whole window costs about the same as forcing the dirty range within it.
+ *
+ * <p>Mappings are not created per force, because there is no public API to unmap them eagerly,
+ * and {@code sun.nio.ch.DirectBuffer} is not accessible on Java 9+ runtimes: periodic
+ * checkpoints of a large map would pile up mappings until they are collected, and could exhaust
+ * {@code vm.max_map_count} or the address space. The number of windows is bounded by the file
+ * size, they are unmapped when the forcer is collected.
+ */
+final class MappedFileForcer {
+
+    private static final long MIN_WINDOW_SIZE = MEGABYTES.toBytes(64L);
+    /**
+     * {@code FileChannel.map()} can't map more than 2 GB at once
+     */
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+    private static final long TARGET_WINDOWS = 256L;
+
+    private final File file;
+    private final long fileSize;
+    private final long windowSize;
+    private final MappedByteBuffer[] windows;
+    /**
+     * Windows, overlapping the ranges {@linkplain #include(long, long) included} since the last
+     * {@link #forceIncluded()}
+     */
+    private final BitSet included = new BitSet();
+
+    MappedFileForcer(File file, long fileSize) {
+        this.file = file;
+        this.fileSize = fileSize;
+        long windowSize = Math.max(MIN_WINDOW_SIZE, fileSize / TARGET_WINDOWS);
+        long pageMask = RUNTIME_PAGE_SIZE - 1L;
+        this.windowSize = Math.min(MAX_WINDOW_SIZE, (windowSize + pageMask) & ~pageMask);
+        windows = new MappedByteBuffer[(int) ((fileSize + this.windowSize - 1L) / this.windowSize)];
+    }
+
+    /**
+     * Includes the given range to be forced by the next {@link #forceIncluded()}, a window is
+     * forced once, even if many ranges within it are included.
+     *
+     * @return the length of the range
+     */
+    synchronized long include(long offset, long length) {
+        if (length > 0L) {
+            included.set((int) (offset / windowSize),
+                    (int) ((Math.min(offset + length, fileSize) - 1L) / windowSize) + 1);
+        }
+        return length;
+    }
+
+    /**
+     * Forces the windows, overlapping the included ranges. If fails, the ranges are retained,
+     * to be forced by the next call.
+     */
+    synchronized void forceIncluded() throws IOException {
+        for (int i = included.nextSetBit(0); i >= 0; i = included.nextSetBit(i + 1)) {
+            window(i).force();
+            included.clear(i);
+        }
+    }
+
+    /**
+     * Forces the given range right away.
+     *
+     * @return the length of the range
+     */
+    synchronized long force(long offset, long length) throws IOException {
+        include(offset, length);
+        forceIncluded();
+        return length;
+    }
+
+    private MappedByteBuffer window(int index) throws IOException {
+        MappedByteBuffer window = windows[index];
+        if (window == null) {
+            long position = index * windowSize;
+            // the mapping stays valid after the channel is closed
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                window = raf.getChannel().map(READ_WRITE, position,
+                        Math.min(windowSize, fileSize - position));
+            }
+            windows[index] = window;
+        }
+        return window;
+    }
+}
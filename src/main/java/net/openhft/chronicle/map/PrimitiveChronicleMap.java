@@ -0,0 +1,928 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
+import net.openhft.chronicle.hash.locks.BackoffLockingStrategy;
+import net.openhft.chronicle.hash.locks.LockingStrategy;
+import net.openhft.lang.Maths;
+import net.openhft.lang.io.BytesStore;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.io.MappedStore;
+import net.openhft.lang.io.serialization.JDKObjectSerializer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import static java.util.Collections.emptyList;
+import static net.openhft.chronicle.map.ChronicleMapBuilder.RUNTIME_PAGE_SIZE;
+import static net.openhft.chronicle.map.Objects.requireNonNull;
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+/**
+ * Map with {@linkplain ChronicleMapBuilder#inlinedPrimitiveEntries(boolean) inlined primitive
+ * entries}: 4- or 8-byte keys and values are stored right in the slots of the per-segment open
+ * addressing hash tables, probed linearly. There is no entry space, no free list and no size
+ * encoding, each operation touches a single slot (usually, a single cache line) after the segment
+ * header.
+ *
+ * <p>Memory layout: the map header (this object, serialized), page-aligned, then 64-byte segment
+ * headers, then segment tables of {@code segmentCapacity} slots, each slot is the key followed
+ * by the value. Zero key marks free slots, so the entry of the zero key is stored in the segment
+ * header. Entries are removed with backward shift, so probe chains don't degrade under
+ * put/remove churn. The capacity is fixed, the table keeps at least one slot free.
+ *
+ * @param <K> the boxed key type, {@code Long} or {@code Integer}
+ * @param <V> the boxed value type, the same as the key type
+ */
+abstract class PrimitiveChronicleMap<K, V> extends AbstractMap<K, V>
+        implements ChronicleMap<K, V>, Serializable {
+    private static final long serialVersionUID = 0L;
+
+    static final long SEGMENT_HEADER_SIZE = 64L;
+    // after the fields of BigSegmentHeader
+    static final long ZERO_KEY_PRESENT_OFFSET = 48L; // 32-bit
+    static final long ZERO_KEY_VALUE_OFFSET = 56L;
+    static final long MIN_SEGMENT_CAPACITY = 8L;
+
+    static long capacityFor(long entriesPerSegment) {
+        // load factor is at most 3/4, for short probe chains
+        long capacity = Maths.nextPower2(entriesPerSegment + entriesPerSegment / 3L + 1L,
+                MIN_SEGMENT_CAPACITY);
+        if (capacity > Integer.MAX_VALUE)
+            throw new IllegalStateException("Max entries per segment is " +
+                    (Integer.MAX_VALUE / 2) + ", " + entriesPerSegment + " configured");
+        return capacity;
+    }
+
+    /**
+     * Size of the key and the value, 4 or 8
+     */
+    final int entrySize;
+    final int slotSize;
+    final int actualSegments;
+    final HashSplitting hashSplitting;
+    final long segmentCapacity;
+    final long segmentTableSize;
+    final LongHashFunction keyHashFunction;
+
+    transient BytesStore ms;
+    transient long headerSize;
+    transient long segmentHeadersAddress;
+    transient long segmentsAddress;
+    transient BigSegmentHeader segmentHeader;
+    transient MappedFileForcer fileForcer;
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    PrimitiveChronicleMap(ChronicleMapBuilder<?, ?> builder, int entrySize) {
+        this.entrySize = entrySize;
+        slotSize = entrySize * 2;
+        actualSegments = builder.actualSegments(false);
+        hashSplitting = HashSplitting.Splitting.forSegments(actualSegments);
+        segmentCapacity = capacityFor(builder.entriesPerSegment(false));
+        segmentTableSize = segmentCapacity * slotSize;
+        keyHashFunction = builder.newMapKeyHashFunction();
+        initTransients();
+    }
+
+    void initTransients() {
+        segmentHeader = new BigSegmentHeader(false,
+                BigSegmentHeader.DEFAULT_LOCK_TIME_OUT_NANOS, BackoffLockingStrategy.DEFAULT);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initTransients();
+    }
+
+    /**
+     * Lock time out and locking strategy are not persisted, they are configured by the builder
+     * in each process, accessing the map
+     */
+    void locking(long lockTimeOutNanos, LockingStrategy lockingStrategy) {
+        segmentHeader = new BigSegmentHeader(false, lockTimeOutNanos, lockingStrategy);
+    }
+
+    final void createMappedStore(File file) throws IOException {
+        createStore(new MappedStore(file, FileChannel.MapMode.READ_WRITE, sizeInBytes(),
+                JDKObjectSerializer.INSTANCE));
+    }
+
+    final void createInMemoryStore() {
+        createStore(new DirectStore(JDKObjectSerializer.INSTANCE, sizeInBytes(), true));
+    }
+
+    private void createStore(BytesStore bytesStore) {
+        ms = bytesStore;
+        segmentHeadersAddress = bytesStore.address() + mapHeaderOuterSize();
+        segmentsAddress = segmentHeadersAddress + actualSegments * SEGMENT_HEADER_SIZE;
+        if (bytesStore.file() != null)
+            fileForcer = new MappedFileForcer(bytesStore.file(), sizeInBytes());
+    }
+
+    private long mapHeaderOuterSize() {
+        long pageMask = RUNTIME_PAGE_SIZE - 1L;
+        return (headerSize + pageMask) & ~pageMask;
+    }
+
+    final long sizeInBytes() {
+        return mapHeaderOuterSize() + actualSegments * (SEGMENT_HEADER_SIZE + segmentTableSize);
+    }
+
+    abstract long unboxKey(Object key);
+
+    abstract K boxKey(long key);
+
+    abstract long unboxValue(Object value);
+
+    abstract V boxValue(long value);
+
+    final long hash(long key) {
+        return entrySize == 8 ? keyHashFunction.hashLong(key) :
+                keyHashFunction.hashInt((int) key);
+    }
+
+    private long segmentHeaderAddress(int segmentIndex) {
+        return segmentHeadersAddress + segmentIndex * SEGMENT_HEADER_SIZE;
+    }
+
+    private long segmentHeaderAddressForHash(long hash) {
+        return segmentHeaderAddress(hashSplitting.segmentIndex(hash));
+    }
+
+    private long tableAddress(long segmentHeaderAddress) {
+        long segmentIndex = (segmentHeaderAddress - segmentHeadersAddress) / SEGMENT_HEADER_SIZE;
+        return segmentsAddress + segmentIndex * segmentTableSize;
+    }
+
+    private long read(long address) {
+        return entrySize == 8 ? UNSAFE.getLong(address) : UNSAFE.getInt(address);
+    }
+
+    private void write(long address, long value) {
+        if (entrySize == 8) {
+            UNSAFE.putLong(address, value);
+        } else {
+            UNSAFE.putInt(address, (int) value);
+        }
+    }
+
+    private static boolean zeroKeyPresent(long header) {
+        return UNSAFE.getInt(header + ZERO_KEY_PRESENT_OFFSET) != 0;
+    }
+
+    /**
+     * Should be called under the segment lock.
+     *
+     * @return the address of the value of the given key, if present, otherwise the negated
+     * address of the value, where the key should be {@linkplain #insert inserted}
+     */
+    private long search(long header, long hash, long key) {
+        if (key == 0L) {
+            long valueAddress = header + ZERO_KEY_VALUE_OFFSET;
+            return zeroKeyPresent(header) ? valueAddress : -valueAddress;
+        }
+        long table = tableAddress(header);
+        long mask = segmentCapacity - 1L;
+        for (long i = hashSplitting.segmentHash(hash) & mask; ; i = (i + 1L) & mask) {
+            long slot = table + i * slotSize;
+            long k = read(slot);
+            if (k == key)
+                return slot + entrySize;
+            if (k == 0L)
+                return -(slot + entrySize);
+        }
+    }
+
+    /**
+     * Should be called under the segment write lock, if {@link #search} returned a negative
+     * value.
+     *
+     * @return the address of the value of the inserted key
+     */
+    private long insert(long header, long key, long search) {
+        long valueAddress = -search;
+        long size = segmentHeader.size(header);
+        if (key == 0L) {
+            UNSAFE.putInt(header + ZERO_KEY_PRESENT_OFFSET, 1);
+        } else {
+            long tableEntries = size - (zeroKeyPresent(header) ? 1L : 0L);
+            // keep at least one free slot, which terminates searches of absent keys
+            if (tableEntries >= segmentCapacity - 1L) {
+                throw new IllegalStateException("Segment is full, capacity " + segmentCapacity +
+                        ", configure more entries() for the map");
+            }
+            write(valueAddress - entrySize, key);
+        }
+        segmentHeader.size(header, size + 1L);
+        return valueAddress;
+    }
+
+    /**
+     * Should be called under the segment write lock, if {@link #search} returned a positive
+     * value.
+     */
+    private void remove(long header, long key, long valueAddress) {
+        if (key == 0L) {
+            UNSAFE.putInt(header + ZERO_KEY_PRESENT_OFFSET, 0);
+            write(valueAddress, 0L);
+        } else {
+            shiftBackward(tableAddress(header), valueAddress - entrySize);
+        }
+        segmentHeader.size(header, segmentHeader.size(header) - 1L);
+    }
+
+    /**
+     * Moves the entries of the probe chain, following the removed slot, closer to their home
+     * slots, so that searches don't need tombstones.
+     */
+    private void shiftBackward(long table, long removedSlot) {
+        long mask = segmentCapacity - 1L;
+        long free = (removedSlot - table) / slotSize;
+        for (long i = (free + 1L) & mask; ; i = (i + 1L) & mask) {
+            long slot = table + i * slotSize;
+            long key = read(slot);
+            if (key == 0L)
+                break;
+            long home = hashSplitting.segmentHash(hash(key)) & mask;
+            // the entry could be moved to the free slot, if the free slot is between
+            // the home slot and the current slot of the entry, cyclically
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                long freeSlot = table + free * slotSize;
+                write(freeSlot, key);
+                write(freeSlot + entrySize, read(slot + entrySize));
+                free = i;
+            }
+        }
+        long freeSlot = table + free * slotSize;
+        write(freeSlot, 0L);
+        write(freeSlot + entrySize, 0L);
+    }
+
+    /**
+     * Operations on the entry of a key, see {@link #access}
+     */
+    private enum Op {
+        /** returns the value, or the given default value, if the key is absent */
+        GET,
+        /** returns 1, if the key is present, 0 otherwise */
+        CONTAINS,
+        PUT,
+        PUT_IF_ABSENT,
+        /** inserts the entry with zero value, if the key is absent */
+        ACQUIRE,
+        REPLACE,
+        /** returns 1, if the value is equal to the expected and replaced, 0 otherwise */
+        REPLACE_IF_EQUAL,
+        REMOVE,
+        /** returns 1, if the value is equal to the expected and removed, 0 otherwise */
+        REMOVE_IF_EQUAL,
+        /** acquires the entry and adds the given delta to the value */
+        ADD,
+        /** acquires the entry, returns 1, if the value is equal to the expected and swapped */
+        COMPARE_AND_SWAP,
+        /** puts or removes the entry, see {@link Presence#compute} */
+        COMPUTE
+    }
+
+    /**
+     * Receives if the key was present before the operation, for boxed operations, which return
+     * {@code null} for absent keys. {@link Op#COMPUTE} operations override {@link #compute}.
+     */
+    class Presence {
+        boolean present;
+        V result;
+
+        /**
+         * Called under the segment write lock.
+         *
+         * @param oldValue the value, or {@code null} if the key is absent
+         * @return the new value, or {@code null} to remove the entry (or to leave it absent)
+         */
+        V compute(V oldValue) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Searches the key and performs the operation on its entry under the segment lock, the read
+     * lock for {@link Op#GET} and {@link Op#CONTAINS}, the write lock for the rest. This is
+     * the single place, where segments are locked for operations with keys.
+     *
+     * @param value    the new value, the delta for {@link Op#ADD}, or the default value for
+     *                 {@link Op#GET}
+     * @param expected the expected value for conditional operations
+     * @param presence if not {@code null}, receives if the key was present before the operation
+     * @return the value before the operation, or 0 if the key was absent, for value operations
+     */
+    private long access(Op op, long key, long value, long expected, Presence presence) {
+        long hash = hash(key);
+        long header = segmentHeaderAddressForHash(hash);
+        boolean readOnly = op == Op.GET || op == Op.CONTAINS;
+        if (readOnly) {
+            segmentHeader.readLock(header);
+        } else {
+            segmentHeader.writeLock(header);
+        }
+        try {
+            long search = search(header, hash, key);
+            boolean present = search > 0L;
+            if (presence != null)
+                presence.present = present;
+            long prevValue = present ? read(search) : 0L;
+            switch (op) {
+                case GET:
+                    return present ? prevValue : value;
+                case CONTAINS:
+                    return present ? 1L : 0L;
+                case PUT:
+                    write(present ? search : insert(header, key, search), value);
+                    return prevValue;
+                case PUT_IF_ABSENT:
+                    if (!present)
+                        write(insert(header, key, search), value);
+                    return prevValue;
+                case ACQUIRE:
+                    // the default value of inserted entries is zero
+                    if (!present)
+                        insert(header, key, search);
+                    return prevValue;
+                case REPLACE:
+                    if (present)
+                        write(search, value);
+                    return prevValue;
+                case REPLACE_IF_EQUAL:
+                    if (!present || prevValue != expected)
+                        return 0L;
+                    write(search, value);
+                    return 1L;
+                case REMOVE:
+                    if (present)
+                        remove(header, key, search);
+                    return prevValue;
+                case REMOVE_IF_EQUAL:
+                    if (!present || prevValue != expected)
+                        return 0L;
+                    remove(header, key, search);
+                    return 1L;
+                case ADD:
+                    write(present ? search : insert(header, key, search), prevValue + value);
+                    return prevValue;
+                case COMPARE_AND_SWAP: {
+                    long valueAddress = present ? search : insert(header, key, search);
+                    if (prevValue != expected)
+                        return 0L;
+                    write(valueAddress, value);
+                    return 1L;
+                }
+                case COMPUTE: {
+                    V newValue = presence.compute(present ? boxValue(prevValue) : null);
+                    presence.result = newValue;
+                    if (newValue != null) {
+                        long v = unboxValue(newValue);
+                        write(present ? search : insert(header, key, search), v);
+                    } else if (present) {
+                        remove(header, key, search);
+                    }
+                    return prevValue;
+                }
+                default:
+                    throw new AssertionError(op);
+            }
+        } finally {
+            if (readOnly) {
+                segmentHeader.readUnlock(header);
+            } else {
+                segmentHeader.writeUnlock(header);
+            }
+        }
+    }
+
+    /**
+     * @return the previous value, boxed, or {@code null} if the key was absent
+     */
+    private V accessBoxed(Op op, Object key, long value) {
+        Presence presence = new Presence();
+        long prevValue = access(op, unboxKey(key), value, 0L, presence);
+        return presence.present ? boxValue(prevValue) : null;
+    }
+
+    /**
+     * @return the new value, computed by the given presence
+     */
+    private V compute(K key, Presence presence) {
+        access(Op.COMPUTE, unboxKey(key), 0L, 0L, presence);
+        return presence.result;
+    }
+
+    final boolean containsKey0(long key) {
+        return access(Op.CONTAINS, key, 0L, 0L, null) != 0L;
+    }
+
+    final long get0(long key, long defaultValue) {
+        return access(Op.GET, key, defaultValue, 0L, null);
+    }
+
+    /**
+     * @return the previous value, or 0 if the key was absent
+     */
+    final long put0(long key, long value) {
+        return access(Op.PUT, key, value, 0L, null);
+    }
+
+    /**
+     * @return the removed value, or 0 if the key was absent
+     */
+    final long remove0(long key) {
+        return access(Op.REMOVE, key, 0L, 0L, null);
+    }
+
+    @Override
+    public final boolean containsKey(Object key) {
+        return containsKey0(unboxKey(key));
+    }
+
+    @Override
+    public final V get(Object key) {
+        return accessBoxed(Op.GET, key, 0L);
+    }
+
+    @Override
+    public final V getUsing(K key, V usingValue) {
+        // boxed values are immutable, there is nothing to reuse
+        return get(key);
+    }
+
+    @Override
+    public final V put(K key, V value) {
+        return accessBoxed(Op.PUT, key, unboxValue(value));
+    }
+
+    @Override
+    public final V putIfAbsent(K key, V value) {
+        return accessBoxed(Op.PUT_IF_ABSENT, key, unboxValue(value));
+    }
+
+    @Override
+    public final V acquireUsing(@NotNull K key, V usingValue) {
+        return boxValue(access(Op.ACQUIRE, unboxKey(key), 0L, 0L, null));
+    }
+
+    @Override
+    public final V remove(Object key) {
+        return accessBoxed(Op.REMOVE, key, 0L);
+    }
+
+    @Override
+    public final boolean remove(Object key, Object value) {
+        if (!valueClass().isInstance(value))
+            return false;
+        return access(Op.REMOVE_IF_EQUAL, unboxKey(key), 0L, unboxValue(value), null) != 0L;
+    }
+
+    @Override
+    public final V replace(K key, V value) {
+        return accessBoxed(Op.REPLACE, key, unboxValue(value));
+    }
+
+    @Override
+    public final boolean replace(K key, V oldValue, V newValue) {
+        long k = unboxKey(key);
+        long oldV = unboxValue(oldValue);
+        return access(Op.REPLACE_IF_EQUAL, k, unboxValue(newValue), oldV, null) != 0L;
+    }
+
+    @Override
+    public MapKeyContext<V> context(K key) {
+        throw new UnsupportedOperationException(
+                "Maps with inlined primitive entries don't support contexts");
+    }
+
+    @NotNull
+    @Override
+    public MapKeyContext<V> acquireContext(@NotNull K key, @NotNull V usingValue) {
+        throw new UnsupportedOperationException(
+                "Maps with inlined primitive entries don't support contexts");
+    }
+
+    @Override
+    public KeyHandle<K> keyHandle(K key) {
+        // hashing of primitive keys is cheap, operations via the handle are the same as
+        // via the key
+        return new KeyHandle<>(this, key, 0L, -1);
+    }
+
+    @Override
+    public MapKeyContext<V> context(KeyHandle<K> keyHandle) {
+        keyHandle.checkMap(this);
+        return context(keyHandle.key);
+    }
+
+    @Override
+    public final V getUsing(KeyHandle<K> keyHandle, V usingValue) {
+        keyHandle.checkMap(this);
+        return get(keyHandle.key);
+    }
+
+    @Override
+    public final V put(KeyHandle<K> keyHandle, V value) {
+        keyHandle.checkMap(this);
+        return put(keyHandle.key, value);
+    }
+
+    @Override
+    public final V acquireUsing(KeyHandle<K> keyHandle, V usingValue) {
+        keyHandle.checkMap(this);
+        return acquireUsing(keyHandle.key, usingValue);
+    }
+
+    @Override
+    public <R> R getMapped(K key, @NotNull Function<? super V, R> function) {
+        requireNonNull(function);
+        V value = get(key);
+        return value != null ? function.apply(value) : null;
+    }
+
+    @Override
+    public V putMapped(K key, @NotNull final UnaryOperator<V> unaryOperator) {
+        requireNonNull(unaryOperator);
+        return compute(key, new Presence() {
+            @Override
+            V compute(V oldValue) {
+                if (oldValue == null)
+                    return null;
+                V newValue = unaryOperator.update(oldValue);
+                requireNonNull(newValue);
+                return newValue;
+            }
+        });
+    }
+
+    @Override
+    public V computeLocked(final K key, @NotNull final BiFunction<? super K, ? super V,
+            ? extends V> remappingFunction) {
+        requireNonNull(remappingFunction);
+        return compute(key, new Presence() {
+            @Override
+            V compute(V oldValue) {
+                return remappingFunction.apply(key, oldValue);
+            }
+        });
+    }
+
+    @Override
+    public V computeIfAbsentLocked(
+            final K key, @NotNull final Function<? super K, ? extends V> mappingFunction) {
+        requireNonNull(mappingFunction);
+        return compute(key, new Presence() {
+            @Override
+            V compute(V oldValue) {
+                return oldValue != null ? oldValue : mappingFunction.apply(key);
+            }
+        });
+    }
+
+    @Override
+    public V computeIfPresentLocked(final K key, @NotNull final BiFunction<? super K, ? super V,
+            ? extends V> remappingFunction) {
+        requireNonNull(remappingFunction);
+        return compute(key, new Presence() {
+            @Override
+            V compute(V oldValue) {
+                return oldValue != null ? remappingFunction.apply(key, oldValue) : null;
+            }
+        });
+    }
+
+    @Override
+    public V mergeLocked(K key, @NotNull final V value, @NotNull final BiFunction<? super V,
+            ? super V, ? extends V> remappingFunction) {
+        requireNonNull(value);
+        requireNonNull(remappingFunction);
+        return compute(key, new Presence() {
+            @Override
+            V compute(V oldValue) {
+                return oldValue == null ? value : remappingFunction.apply(oldValue, value);
+            }
+        });
+    }
+
+    /**
+     * The value is a single field of {@code entrySize} bytes at offset 0.
+     */
+    private void checkValueField(long fieldOffset, int fieldSize) {
+        if (fieldOffset != 0L || fieldSize != entrySize) {
+            throw new IndexOutOfBoundsException("Value is a single " + entrySize +
+                    "-byte field, field [" + fieldOffset + ", " + (fieldOffset + fieldSize) +
+                    ") is given");
+        }
+    }
+
+    private long getAndAdd(K key, long fieldOffset, int fieldSize, long delta) {
+        checkValueField(fieldOffset, fieldSize);
+        return access(Op.ADD, unboxKey(key), delta, 0L, null);
+    }
+
+    private boolean compareAndSwap(K key, long fieldOffset, int fieldSize, long expected, long x) {
+        checkValueField(fieldOffset, fieldSize);
+        return access(Op.COMPARE_AND_SWAP, unboxKey(key), x, expected, null) != 0L;
+    }
+
+    @Override
+    public long addAndGetLong(K key, long fieldOffset, long delta) {
+        return getAndAddLong(key, fieldOffset, delta) + delta;
+    }
+
+    @Override
+    public long getAndAddLong(K key, long fieldOffset, long delta) {
+        return getAndAdd(key, fieldOffset, 8, delta);
+    }
+
+    @Override
+    public boolean compareAndSwapLong(K key, long fieldOffset, long expected, long x) {
+        return compareAndSwap(key, fieldOffset, 8, expected, x);
+    }
+
+    @Override
+    public int addAndGetInt(K key, long fieldOffset, int delta) {
+        return getAndAddInt(key, fieldOffset, delta) + delta;
+    }
+
+    @Override
+    public int getAndAddInt(K key, long fieldOffset, int delta) {
+        return (int) getAndAdd(key, fieldOffset, 4, delta);
+    }
+
+    @Override
+    public boolean compareAndSwapInt(K key, long fieldOffset, int expected, int x) {
+        return compareAndSwap(key, fieldOffset, 4, expected, x);
+    }
+
+    @Override
+    public synchronized void getAll(File toFile) throws IOException {
+        JsonSerializer.getAll(toFile, this, emptyList());
+    }
+
+    @Override
+    public synchronized void putAll(File fromFile) throws IOException {
+        JsonSerializer.putAll(fromFile, this, emptyList());
+    }
+
+    @Override
+    public void getAll(@NotNull Collection<? extends K> keys,
+                       @NotNull Map<? super K, ? super V> result) {
+        requireNonNull(result);
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null)
+                result.put(key, value);
+        }
+    }
+
+    @Override
+    public boolean removeAll(@NotNull Collection<? extends K> keys) {
+        boolean removed = false;
+        for (K key : keys) {
+            if (remove(key) != null)
+                removed = true;
+        }
+        return removed;
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        throw new UnsupportedOperationException(
+                "Maps with inlined primitive entries don't support contexts, iterate entrySet()");
+    }
+
+    @Override
+    public void parallelForEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        throw new UnsupportedOperationException(
+                "Maps with inlined primitive entries don't support contexts, iterate entrySet()");
+    }
+
+    @Override
+    public V newValueInstance() {
+        return boxValue(0L);
+    }
+
+    @Override
+    public K newKeyInstance() {
+        return boxKey(0L);
+    }
+
+    @Override
+    public long longSize() {
+        long result = 0L;
+        for (int i = 0; i < actualSegments; i++) {
+            result += segmentHeader.size(segmentHeaderAddress(i));
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        long size = longSize();
+        return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < actualSegments; i++) {
+            long header = segmentHeaderAddress(i);
+            segmentHeader.writeLock(header);
+            try {
+                UNSAFE.setMemory(tableAddress(header), segmentTableSize, (byte) 0);
+                UNSAFE.putInt(header + ZERO_KEY_PRESENT_OFFSET, 0);
+                write(header + ZERO_KEY_VALUE_OFFSET, 0L);
+                segmentHeader.size(header, 0L);
+            } finally {
+                segmentHeader.writeUnlock(header);
+            }
+        }
+    }
+
+    @Override
+    public File file() {
+        return ms.file();
+    }
+
+    /**
+     * Dirty segments are not tracked, inlined entries tables are compact, so the whole map file
+     * is forced.
+     */
+    @Override
+    public void checkpoint() throws IOException {
+        MappedFileForcer fileForcer = this.fileForcer;
+        if (fileForcer != null)
+            fileForcer.force(0L, sizeInBytes());
+    }
+
+    @Override
+    public void dumpTo(File toFile, boolean checksums) {
+        throw new UnsupportedOperationException("Binary dumps are not supported by maps with " +
+                "inlined primitive entries, use getAll(File)");
+    }
+
+    @Override
+    public void loadFrom(File fromFile) {
+        throw new UnsupportedOperationException("Binary dumps are not supported by maps with " +
+                "inlined primitive entries, use putAll(File)");
+    }
+
+    @Override
+    public void close() {
+        if (ms == null)
+            return;
+        ms.free();
+        ms = null;
+        fileForcer = null;
+    }
+
+    @NotNull
+    @Override
+    public final Set<Entry<K, V>> entrySet() {
+        return (entrySet != null) ? entrySet : (entrySet = new EntrySet());
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @NotNull
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            if (!keyClass().isInstance(e.getKey()))
+                return false;
+            V value = get(e.getKey());
+            return value != null && value.equals(e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return keyClass().isInstance(e.getKey()) &&
+                    PrimitiveChronicleMap.this.remove(e.getKey(), e.getValue());
+        }
+
+        @Override
+        public int size() {
+            return PrimitiveChronicleMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            PrimitiveChronicleMap.this.clear();
+        }
+    }
+
+    /**
+     * Copies entries of each segment under its read lock, so the iteration is weakly consistent,
+     * as in the other Chronicle Map implementations.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private int segmentIndex = 0;
+        private long[] keys = new long[0];
+        private long[] values = new long[0];
+        private int pos = 0;
+        private int count = 0;
+        private K lastKey;
+
+        private void copySegment(int segmentIndex) {
+            long header = segmentHeaderAddress(segmentIndex);
+            segmentHeader.readLock(header);
+            try {
+                int size = (int) segmentHeader.size(header);
+                if (keys.length < size) {
+                    keys = new long[size];
+                    values = new long[size];
+                }
+                int count = 0;
+                if (zeroKeyPresent(header)) {
+                    keys[count] = 0L;
+                    values[count++] = read(header + ZERO_KEY_VALUE_OFFSET);
+                }
+                long table = tableAddress(header);
+                for (long i = 0L; i < segmentCapacity && count < size; i++) {
+                    long slot = table + i * slotSize;
+                    long key = read(slot);
+                    if (key != 0L) {
+                        keys[count] = key;
+                        values[count++] = read(slot + entrySize);
+                    }
+                }
+                this.count = count;
+                pos = 0;
+            } finally {
+                segmentHeader.readUnlock(header);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pos == count && segmentIndex < actualSegments) {
+                copySegment(segmentIndex++);
+            }
+            return pos < count;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            K key = boxKey(keys[pos]);
+            V value = boxValue(values[pos++]);
+            lastKey = key;
+            return new WriteThroughEntry(key, value);
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null)
+                throw new IllegalStateException();
+            PrimitiveChronicleMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 0L;
+
+        WriteThroughEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Map, that serves traffic while entries are incrementally migrated from the source map to the
+ * target map of a different configuration (usually, larger {@code entries()} and {@code
+ * actualSegments()}), segment by segment.
+ *
+ * <p>The source segment is migrated in chunks of a bounded number of entries, not to hold its
+ * lock for long: under the update lock of the source segment, the entries of the chunk are put
+ * into the target map, the target map is checkpointed, then the entries are removed from the
+ * source segment. When the source segment is empty, it is marked as migrated in its header.
+ * Operations are always performed on the target map: if the source segment of the key is not
+ * migrated yet, only the entry of the key (if present) is moved in the calling thread first.
+ * Entries, moved this way, are made durable by the next checkpoint.
+ *
+ * <p>Migration state is persisted in the source segment headers, so if the migration is
+ * interrupted by {@link #close()} or by a crash, it is resumed by creating a new rehashing map
+ * over the same source and target files. {@code close()} waits until the migration thread
+ * finishes the chunk in progress. The source and the target maps shouldn't be accessed
+ * directly from other processes, or from this process bypassing this map, until the migration
+ * is complete.
+ */
+final class RehashingChronicleMap<K, V> extends AbstractChronicleMap<K, V> {
+    private static final long serialVersionUID = 0L;
+    private static final Logger LOG = LoggerFactory.getLogger(RehashingChronicleMap.class);
+    static final int MIGRATION_CHUNK_ENTRIES = 256;
+
+    private final VanillaChronicleMap<K, ?, ?, V, ?, ?> source;
+    private final VanillaChronicleMap<K, ?, ?, V, ?, ?> target;
+    private volatile boolean rehashed = false;
+    /**
+     * Entries of the migrating chunks, already put into the target map, but not removed from
+     * the source map yet, not to count them twice in {@link #longSize()}
+     */
+    private final AtomicLong entriesInBothMaps = new AtomicLong();
+    private transient Thread migrationThread;
+    private transient volatile boolean closing = false;
+
+    RehashingChronicleMap(VanillaChronicleMap<K, ?, ?, V, ?, ?> source,
+                          VanillaChronicleMap<K, ?, ?, V, ?, ?> target) {
+        this.source = source;
+        this.target = target;
+        resume();
+    }
+
+    /**
+     * Clears the source segments, marked as migrated, but not cleared before the previous
+     * migration was interrupted.
+     */
+    private void resume() {
+        boolean allMigrated = true;
+        for (int i = 0; i < source.actualSegments; i++) {
+            if (!migrated(i)) {
+                allMigrated = false;
+            } else if (source.segmentHeader.size(segmentHeaderAddress(i)) > 0L) {
+                try (VanillaContext<K, ?, ?, V, ?, ?> c = source.mapContext()) {
+                    c.segmentIndex = i;
+                    c.writeLock().lock();
+                    c.clear();
+                }
+            }
+        }
+        rehashed = allMigrated;
+    }
+
+    private long segmentHeaderAddress(int segmentIndex) {
+        return source.ms.address() + source.segmentHeaderOffset(segmentIndex);
+    }
+
+    private boolean migrated(int segmentIndex) {
+        return source.segmentHeader.migrated(segmentHeaderAddress(segmentIndex));
+    }
+
+    void startMigration() {
+        if (rehashed)
+            return;
+        migrationThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < source.actualSegments; i++) {
+                        while (!migrateChunk(i, MIGRATION_CHUNK_ENTRIES)) {
+                            if (closing)
+                                return;
+                            // let the operations, blocked by the migration, go
+                            Thread.yield();
+                        }
+                    }
+                    rehashed = true;
+                } catch (Throwable e) {
+                    LOG.error("Rehash of " + source.file() + " into " + target.file() +
+                            " failed", e);
+                }
+            }
+        }, "chronicle-map-rehash-" + target.file().getName());
+        migrationThread.setDaemon(true);
+        migrationThread.start();
+    }
+
+    /**
+     * @return {@code true} if all entries are migrated to the target map
+     */
+    boolean isRehashed() {
+        return rehashed;
+    }
+
+    /**
+     * Migrates all the rest segments in the current thread.
+     */
+    void finishRehash() {
+        if (rehashed)
+            return;
+        for (int i = 0; i < source.actualSegments; i++) {
+            migrateSegment(i);
+        }
+        rehashed = true;
+    }
+
+    /**
+     * Migrates all the rest entries of the source segment in the current thread.
+     */
+    void migrateSegment(int segmentIndex) {
+        while (!migrateChunk(segmentIndex, MIGRATION_CHUNK_ENTRIES));
+    }
+
+    /**
+     * Moves at most the given number of entries from the source segment to the target map. If
+     * the source segment is empty, marks it as migrated.
+     *
+     * @return {@code true} if the source segment is migrated
+     */
+    boolean migrateChunk(final int segmentIndex, final int maxEntries) {
+        if (migrated(segmentIndex))
+            return true;
+        final List<K> keys = new ArrayList<>();
+        try (final VanillaContext<K, ?, ?, V, ?, ?> c = source.mapContext()) {
+            c.segmentIndex = segmentIndex;
+            c.updateLock().lock();
+            if (migrated(segmentIndex))
+                return true;
+            if (c.size() > 0) {
+                c.forEachTierEntryWhile(new HashLookup.EntryPredicate() {
+                    @Override
+                    public boolean accept(long hash, long pos) {
+                        c.pos = pos;
+                        c.initKeyFromPos();
+                        try {
+                            K key = c.immutableKey();
+                            V value = c.getUsing(null);
+                            entriesInBothMaps.incrementAndGet();
+                            try (MapKeyContext<V> targetContext = target.context(key)) {
+                                targetContext.put(value);
+                            }
+                            keys.add(key);
+                        } finally {
+                            c.closeKeySearch();
+                        }
+                        return keys.size() < maxEntries;
+                    }
+                });
+            }
+            if (keys.isEmpty()) {
+                c.writeLock().lock();
+                source.segmentHeader.migrated(segmentHeaderAddress(segmentIndex), true);
+                // the segment is empty, but its extra tiers are returned to the initial state
+                c.clear();
+            } else {
+                try {
+                    // migrated entries should be durable before they are removed from the source
+                    checkpoint(target);
+                    // nested contexts share the segment lock of c
+                    for (K key : keys) {
+                        try (VanillaContext<K, ?, ?, V, ?, ?> sourceContext =
+                                     source.context(key)) {
+                            sourceContext.remove();
+                        }
+                    }
+                } finally {
+                    entriesInBothMaps.addAndGet(-keys.size());
+                }
+            }
+        }
+        // not under the segment lock, because the checkpoint acquires segment locks itself
+        checkpoint(source);
+        return keys.isEmpty();
+    }
+
+    /**
+     * Moves the entry of the given key from the source map to the target map, if the source
+     * segment of the key is not migrated yet. Checkpoints are not performed, not to make the
+     * operation latency proportional to the map size.
+     */
+    private void migrateKey(K key) {
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = source.context(key)) {
+            c.initSegmentIndex();
+            if (migrated(c.segmentIndex))
+                return;
+            c.updateLock().lock();
+            if (c.containsKey()) {
+                try (MapKeyContext<V> targetContext = target.context(key)) {
+                    targetContext.put(c.getUsing(null));
+                }
+                c.remove();
+            }
+        }
+    }
+
+    private static void checkpoint(ChronicleMap<?, ?> map) {
+        try {
+            map.checkpoint();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public VanillaContext<K, ?, ?, V, ?, ?> context(K key) {
+        if (!rehashed)
+            migrateKey(key);
+        return target.context(key);
+    }
+
+    @NotNull
+    @Override
+    public MapKeyContext<V> acquireContext(@NotNull K key, @NotNull V usingValue) {
+        if (!rehashed)
+            migrateKey(key);
+        return target.acquireContext(key, usingValue);
+    }
+
+    @Override
+    void checkValue(V value) {
+        target.checkValue(value);
+    }
+
+    @Override
+    void putDefaultValue(VanillaContext context) {
+        context.m.putDefaultValue(context);
+    }
+
+    @Override
+    int actualSegments() {
+        return target.actualSegments();
+    }
+
+    @Override
+    VanillaContext<K, ?, ?, V, ?, ?> rawContext() {
+        return target.rawContext();
+    }
+
+    @Override
+    VanillaContext<K, ?, ?, V, ?, ?> mapContext() {
+        return target.mapContext();
+    }
+
+    /**
+     * Iteration over the map, which is being rehashed, finishes the rehash in the current thread,
+     * because entries are moving between the source and the target maps.
+     */
+    @Override
+    Set<Map.Entry<K, V>> newEntrySet() {
+        finishRehash();
+        return target.entrySet();
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        finishRehash();
+        target.forEachEntry(action);
+    }
+
+    @Override
+    public void parallelForEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        finishRehash();
+        target.parallelForEachEntry(action);
+    }
+
+    @Override
+    public void clear() {
+        finishRehash();
+        target.clear();
+    }
+
+    @Override
+    public long longSize() {
+        if (rehashed)
+            return target.longSize();
+        // an entry is in both maps only while its chunk is migrated, migrated source segments
+        // are empty
+        long sourceSize = 0L;
+        for (int i = 0; i < source.actualSegments; i++) {
+            if (!migrated(i))
+                sourceSize += source.segmentHeader.size(segmentHeaderAddress(i));
+        }
+        return Math.max(0L, sourceSize + target.longSize() - entriesInBothMaps.get());
+    }
+
+    @Override
+    public int size() {
+        long size = longSize();
+        return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
+    @Override
+    public File file() {
+        return target.file();
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        source.checkpoint();
+        target.checkpoint();
+    }
+
+    @Override
+    public void dumpTo(File toFile, boolean checksums) throws IOException {
+        finishRehash();
+        target.dumpTo(toFile, checksums);
+    }
+
+    @Override
+    public void loadFrom(File fromFile) throws IOException {
+        finishRehash();
+        target.loadFrom(fromFile);
+    }
+
+    @Override
+    public Class<K> keyClass() {
+        return target.keyClass();
+    }
+
+    @Override
+    public Class<V> valueClass() {
+        return target.valueClass();
+    }
+
+    @Override
+    public V newValueInstance() {
+        return target.newValueInstance();
+    }
+
+    @Override
+    public K newKeyInstance() {
+        return target.newKeyInstance();
+    }
+
+    @Override
+    public void close() {
+        Thread migrationThread = this.migrationThread;
+        if (migrationThread != null) {
+            // not interrupted, an interrupt during the checkpoint closes the file channel
+            closing = true;
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    migrationThread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            this.migrationThread = null;
+        }
+        source.close();
+        target.close();
+    }
+}
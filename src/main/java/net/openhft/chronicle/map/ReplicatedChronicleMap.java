@@ -18,6 +18,7 @@
 
 package net.openhft.chronicle.map;
 
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
 import net.openhft.chronicle.hash.replication.AbstractReplication;
 import net.openhft.chronicle.hash.replication.TimeProvider;
 import net.openhft.chronicle.hash.serialization.BytesReader;
@@ -181,6 +182,13 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         modIterSet = new ATSDirectBitSet(modDelBytes);
     }
 
+    @Override
+    void checkAtomicValueUpdatesSupported() {
+        // in-place updates bypass modification timestamps and iterators
+        throw new UnsupportedOperationException(
+                "Atomic value field updates are not supported by replicated maps");
+    }
+
     @Override
     public void clear() {
         // we have to make sure that every calls notifies on remove,
@@ -374,6 +382,7 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
         }
 
         void writeReplicationBytes() {
+            segmentModified();
             entry.writeLong(replicationBytesOffset, newTimestamp);
             entry.writeByte(replicationBytesOffset + 8L, newIdentifier);
         }
@@ -448,7 +457,7 @@ final class ReplicatedChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? supe
             }
 
             @Override
-            public long hash(Object interop, Object o) {
+            public long hash(LongHashFunction hashFunction, Object interop, Object o) {
                 throw new UnsupportedOperationException();
             }
 
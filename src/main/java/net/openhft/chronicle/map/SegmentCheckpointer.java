@@ -0,0 +1,222 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks segments of the persisted map, written in this process since the last checkpoint, and
+ * forces only their ranges of the map file to the storage device, see {@link
+ * ChronicleMap#checkpoint()} and {@link ChronicleMapBuilder#checkpointInterval(long, TimeUnit)}.
+ *
+ * <p>The segment is marked dirty when its exclusive (update or write) lock is released by
+ * the context, which has modified the segment under the lock (see {@link
+ * VanillaContext#segmentModified()}), or when a value field is updated atomically under the read
+ * lock. Dirty bits are cleared before the segments are forced, so writes, concurrent with
+ * the checkpoint, mark the segments dirty again and are forced by the next checkpoint.
+ */
+final class SegmentCheckpointer implements Runnable, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentCheckpointer.class);
+
+    private final VanillaChronicleMap<?, ?, ?, ?, ?, ?> map;
+    private final AtomicLongArray dirtySegments;
+    private boolean mapHeaderForced = false;
+    private long intervalNanos;
+    private Thread thread;
+
+    SegmentCheckpointer(VanillaChronicleMap<?, ?, ?, ?, ?, ?> map) {
+        this.map = map;
+        dirtySegments = new AtomicLongArray((map.actualSegments + 63) / 64);
+    }
+
+    void segmentWritten(int segmentIndex) {
+        int wordIndex = segmentIndex >>> 6;
+        long bit = 1L << segmentIndex;
+        while (true) {
+            long word = dirtySegments.get(wordIndex);
+            // avoid contended CAS on the hot path, when the segment is already dirty
+            if ((word & bit) != 0L || dirtySegments.compareAndSet(wordIndex, word, word | bit))
+                return;
+        }
+    }
+
+    private BitSet takeDirtySegments() {
+        long[] words = new long[dirtySegments.length()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = dirtySegments.getAndSet(i, 0L);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private void returnDirtySegments(BitSet dirty) {
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            segmentWritten(i);
+        }
+    }
+
+    /**
+     * Forces the map header (on the first call), and the headers, the segments and the chained
+     * extra tiers of the dirty segments, through the {@linkplain MappedFileForcer long-lived
+     * mappings} of the map file, each mapping, overlapping the dirty ranges, is forced once.
+     * If the map is journaled, rotates the journal files before, and truncates the retired
+     * journal file after the segments are forced.
+     *
+     * @return the number of bytes in the dirty ranges
+     */
+    synchronized long checkpoint() throws IOException {
+        MapJournal journal = map.journal;
+        if (journal == null)
+            return forceDirtySegments();
+        int retiredJournalFile = journal.rotate();
+        awaitJournaledMutations();
+        long forcedBytes = forceDirtySegments();
+        journal.retire(retiredJournalFile);
+        return forcedBytes;
+    }
+
+    /**
+     * Mutations are journaled and applied under the segment update lock, so when the update
+     * lock of each segment is acquired and released, all mutations, journaled in the retired
+     * journal file, are applied and their segments are marked dirty. This barrier doesn't modify
+     * segments, so it doesn't mark them dirty itself (see {@link
+     * VanillaContext#segmentModified()}), and the checkpoint forces only the written segments.
+     */
+    private void awaitJournaledMutations() {
+        for (int i = 0; i < map.actualSegments; i++) {
+            try (VanillaContext<?, ?, ?, ?, ?, ?> c = map.mapContext()) {
+                c.segmentIndex = i;
+                c.updateLock().lock();
+            }
+        }
+    }
+
+    private long forceDirtySegments() throws IOException {
+        BitSet dirty = takeDirtySegments();
+        if (dirty.isEmpty() && mapHeaderForced)
+            return 0L;
+        long startNanos = System.nanoTime();
+        long forcedBytes = 0L;
+        boolean success = false;
+        MappedFileForcer forcer = map.fileForcer;
+        try {
+            if (!mapHeaderForced)
+                forcedBytes += forcer.include(0L, map.segmentHeadersOffset);
+            boolean extraTiersForced = false;
+            for (int from = dirty.nextSetBit(0), to; from >= 0; from = dirty.nextSetBit(to)) {
+                to = dirty.nextClearBit(from);
+                forcedBytes += forcer.include(map.segmentHeaderOffset(from),
+                        (to - from) * (long) map.segmentHeaderSize);
+                forcedBytes += forcer.include(map.segmentOffset(from),
+                        (to - from) * map.segmentSize);
+                for (int segmentIndex = from; segmentIndex < to; segmentIndex++) {
+                    long tiersBytes = includeExtraTiers(forcer, segmentIndex);
+                    forcedBytes += tiersBytes;
+                    extraTiersForced |= tiersBytes > 0L;
+                }
+            }
+            if (extraTiersForced) {
+                // the allocated extra tiers counter
+                forcedBytes += forcer.include(map.extraTierHeadersOffset, 8L);
+            }
+            forcer.forceIncluded();
+            success = true;
+        } finally {
+            if (success) {
+                mapHeaderForced = true;
+            } else {
+                // the next checkpoint should retry
+                returnDirtySegments(dirty);
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Checkpoint of " + map.file() + ": forced " + dirty.cardinality() +
+                    " segments, " + forcedBytes + " bytes in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+        }
+        return forcedBytes;
+    }
+
+    private long includeExtraTiers(MappedFileForcer forcer, int segmentIndex) {
+        long forcedBytes = 0L;
+        long tierHeaderAddress = map.ms.address() + map.segmentHeaderOffset(segmentIndex);
+        long nextTier;
+        while ((nextTier = map.segmentHeader.nextTier(tierHeaderAddress)) != 0L) {
+            long tierIndex = nextTier - 1L;
+            forcedBytes += forcer.include(map.extraTierHeaderOffset(tierIndex),
+                    map.segmentHeaderSize);
+            forcedBytes += forcer.include(map.extraTierOffset(tierIndex), map.segmentSize);
+            tierHeaderAddress = map.ms.address() + map.extraTierHeaderOffset(tierIndex);
+        }
+        return forcedBytes;
+    }
+
+    void start(long intervalNanos) {
+        this.intervalNanos = intervalNanos;
+        thread = new Thread(this, "chronicle-map-checkpoint-" + map.file().getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+                checkpointOrLogError();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void checkpointOrLogError() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            // dirty segments are retained, the next checkpoint retries
+            LOG.error("Checkpoint of " + map.file() + " failed", e);
+        }
+    }
+
+    /**
+     * Stops the background flusher, if started, and makes the final checkpoint.
+     */
+    @Override
+    public void close() {
+        Thread thread = this.thread;
+        if (thread == null)
+            return;
+        thread.interrupt();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.thread = null;
+        checkpointOrLogError();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background compaction of map segments, see {@link
+ * ChronicleMapBuilder#compactionPeriod(long, TimeUnit)}.
+ */
+final class SegmentCompactor implements Runnable, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentCompactor.class);
+
+    static final double FRAGMENTATION_RATIO_THRESHOLD = 0.5;
+
+    private final VanillaChronicleMap<?, ?, ?, ?, ?, ?> map;
+    private final long periodNanos;
+    private final long timeSliceNanos;
+    private final Thread thread;
+
+    SegmentCompactor(VanillaChronicleMap<?, ?, ?, ?, ?, ?> map,
+                     long periodNanos, long timeSliceNanos) {
+        this.map = map;
+        this.periodNanos = periodNanos;
+        this.timeSliceNanos = timeSliceNanos;
+        String name = map.file() != null ? map.file().getName() : "in-memory";
+        thread = new Thread(this, "chronicle-map-compaction-" + name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                TimeUnit.NANOSECONDS.sleep(periodNanos);
+                compactMostFragmentedSegment();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (Throwable e) {
+            LOG.error("Compaction of " + map.file() + " failed", e);
+        }
+    }
+
+    /**
+     * @return the number of moved entries
+     */
+    long compactMostFragmentedSegment() {
+        double[] fragmentationRatios = map.segmentFragmentationRatios();
+        int mostFragmentedSegment = -1;
+        double maxFragmentationRatio = FRAGMENTATION_RATIO_THRESHOLD;
+        for (int i = 0; i < fragmentationRatios.length; i++) {
+            if (fragmentationRatios[i] > maxFragmentationRatio) {
+                mostFragmentedSegment = i;
+                maxFragmentationRatio = fragmentationRatios[i];
+            }
+        }
+        if (mostFragmentedSegment < 0)
+            return 0L;
+        return map.compactSegment(mostFragmentedSegment, timeSliceNanos);
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        if (Thread.currentThread() == thread)
+            return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -25,6 +25,32 @@ public interface SegmentHeader {
     long nextPosToSearchFrom(long address);
     void nextPosToSearchFrom(long address, long nextPosToSearchFrom);
 
+    /**
+     * @return {@code 0} if the segment (or extra tier) at the given header address is not
+     * chained to an extra tier, otherwise index of the next extra tier + 1
+     */
+    long nextTier(long address);
+    void nextTier(long address, long nextTier);
+
+    /**
+     * @return the version of the segment, which is incremented on each acquisition and release
+     * of the write lock, i. e. it is odd while the segment is write-locked. Always 0, if the
+     * segment header doesn't maintain the write version
+     */
+    long writeVersion(long address);
+
+    /**
+     * If the exclusive (update or write) lock of the segment is held by a process, which is not
+     * alive anymore, takes the lock over and upgrades it to the write lock, held by the current
+     * thread.
+     *
+     * @return {@code true} if the write lock is taken over from a dead process
+     * @throws SegmentLockTimeOutException if the dead process held the update lock, but read
+     * locks of other (maybe dead as well) processes don't let it be upgraded to the write lock
+     * in the lock time out. The update lock of the dead process is released in this case
+     */
+    boolean tryTakeOverDeadExclusiveLock(long address);
+
     void readLock(long address);
     void readLockInterruptibly(long address);
     boolean tryReadLock(long address);
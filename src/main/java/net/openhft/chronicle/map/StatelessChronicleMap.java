@@ -205,6 +205,36 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         JsonSerializer.putAll(fromFile, this, emptyList());
     }
 
+    @Override
+    public void getAll(@NotNull Collection<? extends K> keys,
+                       @NotNull Map<? super K, ? super V> result) {
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null)
+                result.put(key, value);
+        }
+    }
+
+    @Override
+    public boolean removeAll(@NotNull Collection<? extends K> keys) {
+        boolean removed = false;
+        for (K key : keys) {
+            if (remove(key) != null)
+                removed = true;
+        }
+        return removed;
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        throw new UnsupportedOperationException("Contexts are not supported by stateless clients");
+    }
+
+    @Override
+    public void parallelForEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        throw new UnsupportedOperationException("Contexts are not supported by stateless clients");
+    }
+
     @Override
     public V newValueInstance() {
         if (vClass.equals(CharSequence.class) || vClass.equals(StringBuilder.class)) {
@@ -393,6 +423,24 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void checkpoint() {
+        throw new UnsupportedOperationException("Checkpoints are not supported by stateless " +
+                "clients");
+    }
+
+    @Override
+    public void dumpTo(File toFile, boolean checksums) {
+        throw new UnsupportedOperationException("Binary dumps are not supported by stateless " +
+                "clients, use getAll(File)");
+    }
+
+    @Override
+    public void loadFrom(File fromFile) {
+        throw new UnsupportedOperationException("Binary dumps are not supported by stateless " +
+                "clients, use putAll(File)");
+    }
+
     public synchronized void close() {
 
         if (closeables != null)
@@ -611,6 +659,134 @@ class StatelessChronicleMap<K, V> implements ChronicleMap<K, V>, Closeable, Clon
     }
 
 
+    @Override
+    public long addAndGetLong(K key, long fieldOffset, long delta) {
+        throw new UnsupportedOperationException("Atomic value field updates are not supported by stateless clients");
+    }
+
+    @Override
+    public long getAndAddLong(K key, long fieldOffset, long delta) {
+        throw new UnsupportedOperationException("Atomic value field updates are not supported by stateless clients");
+    }
+
+    @Override
+    public boolean compareAndSwapLong(K key, long fieldOffset, long expected, long x) {
+        throw new UnsupportedOperationException("Atomic value field updates are not supported by stateless clients");
+    }
+
+    @Override
+    public int addAndGetInt(K key, long fieldOffset, int delta) {
+        throw new UnsupportedOperationException("Atomic value field updates are not supported by stateless clients");
+    }
+
+    @Override
+    public int getAndAddInt(K key, long fieldOffset, int delta) {
+        throw new UnsupportedOperationException("Atomic value field updates are not supported by stateless clients");
+    }
+
+    @Override
+    public boolean compareAndSwapInt(K key, long fieldOffset, int expected, int x) {
+        throw new UnsupportedOperationException("Atomic value field updates are not supported by stateless clients");
+    }
+
+    @Override
+    public KeyHandle<K> keyHandle(K key) {
+        return new KeyHandle<>(this, key, 0L, -1);
+    }
+
+    @Override
+    public MapKeyContext<V> context(KeyHandle<K> keyHandle) {
+        throw new UnsupportedOperationException("Contexts are not supported by stateless clients");
+    }
+
+    @Override
+    public V getUsing(KeyHandle<K> keyHandle, V usingValue) {
+        keyHandle.checkMap(this);
+        return getUsing(keyHandle.key(), usingValue);
+    }
+
+    @Override
+    public V put(KeyHandle<K> keyHandle, V value) {
+        keyHandle.checkMap(this);
+        return put(keyHandle.key(), value);
+    }
+
+    @Override
+    public V acquireUsing(KeyHandle<K> keyHandle, V usingValue) {
+        keyHandle.checkMap(this);
+        return acquireUsing(keyHandle.key(), usingValue);
+    }
+
+    // computeLocked() family is not supported by the protocol, so implemented via
+    // optimistic loops of atomic remote operations, as ConcurrentMap default methods in Java 8
+
+    @Override
+    public V computeLocked(
+            K key, @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        while (true) {
+            V oldValue = get(key);
+            V newValue = remappingFunction.apply(key, oldValue);
+            if (oldValue == null) {
+                if (newValue == null || putIfAbsent(key, newValue) == null)
+                    return newValue;
+            } else if (newValue == null) {
+                if (remove(key, oldValue))
+                    return null;
+            } else if (replace(key, oldValue, newValue)) {
+                return newValue;
+            }
+        }
+    }
+
+    @Override
+    public V computeIfAbsentLocked(
+            K key, @NotNull Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value != null)
+            return value;
+        V newValue = mappingFunction.apply(key);
+        if (newValue == null)
+            return null;
+        V existingValue = putIfAbsent(key, newValue);
+        return existingValue != null ? existingValue : newValue;
+    }
+
+    @Override
+    public V computeIfPresentLocked(
+            K key, @NotNull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        V oldValue;
+        while ((oldValue = get(key)) != null) {
+            V newValue = remappingFunction.apply(key, oldValue);
+            if (newValue == null) {
+                if (remove(key, oldValue))
+                    return null;
+            } else if (replace(key, oldValue, newValue)) {
+                return newValue;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public V mergeLocked(K key, @NotNull V value,
+                         @NotNull BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        while (true) {
+            V oldValue = get(key);
+            if (oldValue == null) {
+                if (putIfAbsent(key, value) == null)
+                    return value;
+                continue;
+            }
+            V newValue = remappingFunction.apply(oldValue, value);
+            if (newValue == null) {
+                if (remove(key, oldValue))
+                    return null;
+            } else if (replace(key, oldValue, newValue)) {
+                return newValue;
+            }
+        }
+    }
+
     private Bytes resizeBufferOutBuffer(int newCapacity) {
         return resizeBufferOutBuffer(newCapacity, outBytes.position());
     }
@@ -19,6 +19,9 @@
 package net.openhft.chronicle.map;
 
 import net.openhft.chronicle.hash.KeyContext;
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
+import net.openhft.chronicle.hash.locks.BackoffLockingStrategy;
+import net.openhft.chronicle.hash.locks.LockingStrategy;
 import net.openhft.chronicle.hash.serialization.BytesReader;
 import net.openhft.chronicle.hash.serialization.SizeMarshaller;
 import net.openhft.chronicle.hash.serialization.internal.BytesBytesInterop;
@@ -42,12 +45,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static java.lang.Long.numberOfTrailingZeros;
 import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static net.openhft.chronicle.map.ChronicleMapBuilder.RUNTIME_PAGE_SIZE;
 import static net.openhft.chronicle.map.ChronicleMapBuilder.greatestCommonDivisor;
+import static net.openhft.chronicle.map.Objects.requireNonNull;
 import static net.openhft.lang.MemoryUnit.*;
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
 
 class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         V, VI, MVI extends MetaBytesInterop<V, ? super VI>> extends AbstractChronicleMap<K, V>  {
@@ -68,6 +81,12 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     final KI originalKeyInterop;
     final MKI originalMetaKeyInterop;
     final MetaProvider<K, KI, MKI> metaKeyInteropProvider;
+    /**
+     * SipHash-2-4 with a random key, if {@link ChronicleMapBuilder#seededKeyHashing(boolean)} is
+     * configured. Maps, persisted before the key hash function became configurable, deserialize
+     * this field as {@code null}, that means {@link LongHashFunction#murmur3()}.
+     */
+    final LongHashFunction keyHashFunction;
 
     final Class<V> vClass;
     final Class nativeValueClass;
@@ -114,7 +133,14 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     /////////////////////////////////////////////////
     // Precomputed offsets and sizes for fast Context init
     final int segmentHeaderSize;
+    /**
+     * If {@code true}, segment headers maintain the write version, and values are read
+     * optimistically, see {@link ChronicleMapBuilder#optimisticReads(boolean)}. Maps, persisted
+     * before optimistic reads were introduced, deserialize this field as {@code false}.
+     */
+    final boolean optimisticReads;
 
+    final HashLookupStrategy hashLookupStrategy;
     final int segmentHashLookupValueBits;
     final int segmentHashLookupKeyBits;
     final int segmentHashLookupEntrySize;
@@ -122,7 +148,18 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     final long segmentHashLookupInnerSize;
     final long segmentHashLookupOuterSize;
 
+    /**
+     * If {@code true}, entries are constantly sized and take exactly one chunk, entry slots are
+     * allocated from the {@link FreeSlotStack} instead of the free list bitset. Maps, persisted
+     * before slab entries were introduced, deserialize this field as {@code false}.
+     */
+    final boolean slabEntries;
     final long segmentFreeListInnerSize;
+    /**
+     * If {@code true}, {@link FreeRunHints} follow the free list of each segment tier. Maps,
+     * persisted before free run hints were introduced, deserialize this field as {@code false}.
+     */
+    final boolean freeRunHints;
     final long segmentFreeListOuterSize;
 
     final long segmentEntrySpaceInnerSize;
@@ -131,6 +168,10 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
 
     final long segmentSize;
 
+    /////////////////////////////////////////////////
+    // Extra tiers, chained to full segments
+    final long maxExtraTiers;
+
     /////////////////////////////////////////////////
     // Bytes Store (essentially, the base address) and serialization-dependent offsets
     transient BytesStore ms;
@@ -138,6 +179,13 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     transient long headerSize;
     transient long segmentHeadersOffset;
     transient long segmentsOffset;
+    transient long extraTierHeadersOffset;
+    transient long extraTiersOffset;
+    transient SegmentCompactor compactor;
+    transient MappedFileForcer fileForcer;
+    transient SegmentCheckpointer checkpointer;
+    transient MapJournal journal;
+    transient BigSegmentHeader segmentHeader;
 
     /////////////////////////////////////////////////
     // Cached Entry Set instance
@@ -155,6 +203,7 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         originalKeyInterop = (KI) keyBuilder.interop();
         originalMetaKeyInterop = (MKI) keyBuilder.metaInterop();
         metaKeyInteropProvider = (MetaProvider<K, KI, MKI>) keyBuilder.metaInteropProvider();
+        keyHashFunction = builder.newMapKeyHashFunction();
 
         SerializationBuilder<V> valueBuilder = builder.valueBuilder;
         vClass = valueBuilder.eClass;
@@ -207,19 +256,35 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
 
         // Precomputed offsets and sizes for fast Context init
         segmentHeaderSize = builder.segmentHeaderSize(replicated);
+        optimisticReads = builder.optimisticReadsOn(replicated);
 
+        hashLookupStrategy = builder.hashLookupStrategy();
         segmentHashLookupValueBits = HashLookup.valueBits(actualChunksPerSegment);
-        segmentHashLookupKeyBits =
-                HashLookup.keyBits(entriesPerSegment, segmentHashLookupValueBits);
-        segmentHashLookupEntrySize =
-                HashLookup.entrySize(segmentHashLookupKeyBits, segmentHashLookupValueBits);
-        segmentHashLookupCapacity = HashLookup.capacityFor(entriesPerSegment);
-        segmentHashLookupInnerSize = segmentHashLookupCapacity * segmentHashLookupEntrySize;
+        if (hashLookupStrategy == HashLookupStrategy.GROUPED_TAGS) {
+            segmentHashLookupKeyBits = GroupedHashLookup.keyBits(segmentHashLookupValueBits);
+            segmentHashLookupEntrySize = GroupedHashLookup.ENTRY_SIZE;
+            segmentHashLookupCapacity = GroupedHashLookup.capacityFor(entriesPerSegment);
+            segmentHashLookupInnerSize =
+                    GroupedHashLookup.innerSize(segmentHashLookupCapacity);
+        } else {
+            segmentHashLookupKeyBits =
+                    HashLookup.keyBits(entriesPerSegment, segmentHashLookupValueBits);
+            segmentHashLookupEntrySize =
+                    HashLookup.entrySize(segmentHashLookupKeyBits, segmentHashLookupValueBits);
+            segmentHashLookupCapacity = HashLookup.capacityFor(entriesPerSegment);
+            segmentHashLookupInnerSize =
+                    segmentHashLookupCapacity * segmentHashLookupEntrySize;
+        }
         segmentHashLookupOuterSize = CACHE_LINES.align(segmentHashLookupInnerSize, BYTES);
 
-        segmentFreeListInnerSize = LONGS.align(
+        slabEntries = builder.slabEntries(replicated);
+        segmentFreeListInnerSize = slabEntries ? FreeSlotStack.SIZE : LONGS.align(
                 BYTES.alignAndConvert(actualChunksPerSegment, BITS), BYTES);
-        segmentFreeListOuterSize = CACHE_LINES.align(segmentFreeListInnerSize, BYTES);
+        // single-chunk allocations don't need hints, the free list scan from
+        // nextPosToSearchFrom finds a free chunk immediately in the most cases
+        freeRunHints = maxChunksPerEntry > 1 && actualChunksPerSegment < Integer.MAX_VALUE;
+        segmentFreeListOuterSize = CACHE_LINES.align(segmentFreeListInnerSize +
+                (freeRunHints ? FreeRunHints.SIZE : 0L), BYTES);
 
         segmentEntrySpaceInnerSize = chunkSize * actualChunksPerSegment;
         segmentEntrySpaceInnerOffset = builder.segmentEntrySpaceInnerOffset(replicated);
@@ -228,6 +293,9 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
 
         segmentSize = segmentSize();
 
+        // Extra tiers
+        maxExtraTiers = builder.maxExtraTiers(replicated);
+
         initTransients();
     }
 
@@ -252,7 +320,28 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         return segmentSize;
     }
 
+    final LongHashFunction keyHashFunction() {
+        LongHashFunction f;
+        return (f = keyHashFunction) != null ? f : LongHashFunction.murmur3();
+    }
+
+    /**
+     * @return {@code true} if the key hash is known to be computed by {@link #keyHashFunction()}
+     * over the serialized form of the key, so it could be recomputed from the key bytes of
+     * the stored entry. Custom {@code BytesInterop}s, delegated to compute murmur3 hash, could
+     * hash keys in any other way.
+     */
+    final boolean keyHashedAsBytes() {
+        return !(originalMetaKeyInterop instanceof DelegatingMetaBytesInterop) ||
+                keyHashFunction() != LongHashFunction.murmur3() ||
+                originalKeyInterop.getClass().getPackage() ==
+                        BytesBytesInterop.class.getPackage();
+    }
+
     void initTransients() {
+        segmentHeader = new BigSegmentHeader(optimisticReads,
+                BigSegmentHeader.DEFAULT_LOCK_TIME_OUT_NANOS, BackoffLockingStrategy.DEFAULT);
+
         keyReaderProvider = Provider.of((Class) originalKeyReader.getClass());
         keyInteropProvider = Provider.of((Class) originalKeyInterop.getClass());
 
@@ -278,6 +367,13 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         segmentHeadersOffset = mapHeaderOuterSize();
         long segmentHeadersSize = actualSegments * segmentHeaderSize;
         segmentsOffset = segmentHeadersOffset + segmentHeadersSize;
+        extraTierHeadersOffset = segmentsOffset + actualSegments * segmentSize;
+        extraTiersOffset = extraTierHeadersOffset + extraTierHeadersOuterSize();
+
+        if (bytesStore.file() != null) {
+            fileForcer = new MappedFileForcer(bytesStore.file(), sizeInBytes());
+            checkpointer = new SegmentCheckpointer(this);
+        }
     }
 
     void warnOnWindows() {
@@ -316,6 +412,66 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
                 sizeInBytes(), JDKObjectSerializer.INSTANCE));
     }
 
+    /**
+     * Touches every page of the segment headers and segments (not extra tiers, they are used
+     * rarely) with an atomic write of the value, which is already there, in parallel, so that
+     * page faults happen on open, rather than on the first accesses of the pages in production.
+     * Pages of the persisted map become dirty, i. e. space of the sparse file is allocated
+     * on disk.
+     *
+     * @return the number of touched bytes
+     */
+    final long preTouch() {
+        final long from = ms.address() + segmentHeadersOffset;
+        final long to = ms.address() + segmentsOffset + actualSegments * segmentSize;
+        long startNanos = System.nanoTime();
+        // the store (if not mapped from a file) might be not page-aligned, so task ranges are
+        // split on page boundaries, counted from the page, which contains the first byte
+        long pageMask = RUNTIME_PAGE_SIZE - 1L;
+        final long firstPage = from & ~pageMask;
+        long pages = (to - firstPage + RUNTIME_PAGE_SIZE - 1L) / RUNTIME_PAGE_SIZE;
+        ForkJoinPool pool = ParallelIterationPoolHolder.POOL;
+        int tasks = (int) Math.min(pages, pool.getParallelism() * 4L);
+        List<ForkJoinTask<?>> submitted = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            // the first page is touched from the first byte, not to write out of the store
+            final long taskFrom =
+                    Math.max(from, firstPage + (pages * i / tasks) * RUNTIME_PAGE_SIZE);
+            final long taskTo =
+                    Math.min(to, firstPage + (pages * (i + 1) / tasks) * RUNTIME_PAGE_SIZE);
+            submitted.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    touchPages(taskFrom, taskTo);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : submitted) {
+            task.join();
+        }
+        long touchedBytes = to - from;
+        LOG.info("Pre-touched " + touchedBytes / MEGABYTES.toBytes(1L) + " MB of " +
+                (file() != null ? file() : "in-memory map") + " in " +
+                NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms by " + tasks +
+                " parallel tasks, transparent huge pages mode: " +
+                HugePages.transparentHugePagesMode());
+        return touchedBytes;
+    }
+
+    /**
+     * Touches {@code from} and each page boundary after it, before {@code to}
+     */
+    private static void touchPages(long from, long to) {
+        long pageMask = RUNTIME_PAGE_SIZE - 1L;
+        for (long address = from; address < to;
+             address = (address & ~pageMask) + RUNTIME_PAGE_SIZE) {
+            int value = UNSAFE.getIntVolatile(null, address);
+            // doesn't change the value, even if it is concurrently updated by another process,
+            // but is a write access, so the page is faulted in writable
+            UNSAFE.compareAndSwapInt(null, address, value, value);
+        }
+    }
+
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
         initTransients();
@@ -355,13 +511,198 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     final long sizeInBytes() {
-        return mapHeaderOuterSize() + actualSegments * (segmentHeaderSize + segmentSize);
+        return mapHeaderOuterSize() + actualSegments * (segmentHeaderSize + segmentSize) +
+                extraTierHeadersOuterSize() + maxExtraTiers * segmentSize;
+    }
+
+    private long extraTierHeadersOuterSize() {
+        if (maxExtraTiers == 0L)
+            return 0L;
+        // the first cache line is taken by the allocated extra tiers counter
+        return CACHE_LINES.align(CACHE_LINES.toBytes(1L) + maxExtraTiers * segmentHeaderSize,
+                BYTES);
+    }
+
+    /**
+     * Lock time out and locking strategy are not persisted, they are configured by the builder
+     * in each process, accessing the map
+     */
+    void locking(long lockTimeOutNanos, LockingStrategy lockingStrategy) {
+        segmentHeader = new BigSegmentHeader(optimisticReads, lockTimeOutNanos, lockingStrategy);
+    }
+
+    void startCompaction(long periodNanos, long timeSliceNanos) {
+        compactor = new SegmentCompactor(this, periodNanos, timeSliceNanos);
+        compactor.start();
+    }
+
+    /**
+     * The word within the padding after the serialized map header ({@code
+     * ChronicleMapBuilder.roundUpMapHeaderSize()} leaves at least 64 bytes), non-zero while
+     * the journaled map is open. Zero in files, created without the journal.
+     */
+    private long openFlagAddress() {
+        return ms.address() + headerSize - 8L;
+    }
+
+    /**
+     * Sets or clears the open flag and forces the map header, so that the flag is durable
+     * before any write to the segments reaches the storage device.
+     */
+    private void openFlag(boolean open) throws IOException {
+        UNSAFE.putLongVolatile(null, openFlagAddress(), open ? 1L : 0L);
+        fileForcer.force(0L, segmentHeadersOffset);
+    }
+
+    /**
+     * If the open flag is set, or the journal is not empty, i. e. the map was not closed cleanly,
+     * repairs all segments (see {@link #checkIntegrity(boolean)}), replays the journal and
+     * checkpoints the map, then sets the open flag and starts journaling. The journal might be
+     * empty after an unclean shutdown, if it was rotated by a checkpoint, but segment pages,
+     * written after that, reached the storage device before the journal records.
+     */
+    void openJournal(File journalFile) throws IOException {
+        MapJournal journal = new MapJournal(journalFile);
+        try {
+            boolean openFlag = UNSAFE.getLongVolatile(null, openFlagAddress()) != 0L;
+            if (openFlag || !journal.isEmpty()) {
+                long startNanos = System.nanoTime();
+                LOG.warn(file() + " was not closed cleanly, repairing it and replaying " +
+                        "the journal " + journalFile);
+                checkIntegrity(true);
+                long records = journal.replay(this);
+                checkpointer.checkpoint();
+                LOG.info("Replayed " + records + " journal records into " + file() + " in " +
+                        NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+            }
+            openFlag(true);
+            journal.start();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        this.journal = journal;
+    }
+
+    /**
+     * Checks integrity of all segments in parallel, each task checks a range of segments under
+     * their write locks, taking over locks of dead holders. If {@code repair} is {@code true},
+     * repairs inconsistent segments. See {@link VanillaContext#checkSegmentIntegrity}.
+     *
+     * @return the report of the whole map
+     */
+    final IntegrityReport checkIntegrity(final boolean repair) {
+        long startNanos = System.nanoTime();
+        ForkJoinPool pool = ParallelIterationPoolHolder.POOL;
+        int tasks = Math.min(actualSegments, pool.getParallelism() * 4);
+        List<ForkJoinTask<IntegrityReport>> submitted = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            final int fromSegment = (int) ((long) actualSegments * i / tasks);
+            final int toSegment = (int) ((long) actualSegments * (i + 1) / tasks);
+            submitted.add(pool.submit(new Callable<IntegrityReport>() {
+                @Override
+                public IntegrityReport call() {
+                    return checkSegmentsIntegrity(fromSegment, toSegment, repair);
+                }
+            }));
+        }
+        IntegrityReport report = new IntegrityReport();
+        for (ForkJoinTask<IntegrityReport> task : submitted) {
+            report.add(task.join());
+        }
+        String message = (repair ? "Checked and repaired " : "Checked ") +
+                (file() != null ? file() : "in-memory map") + " in " +
+                NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms by " + tasks +
+                " parallel tasks: " + report;
+        if (report.isConsistent()) {
+            LOG.info(message);
+        } else {
+            LOG.warn(message);
+        }
+        return report;
+    }
+
+    private IntegrityReport checkSegmentsIntegrity(int fromSegment, int toSegment,
+                                                   boolean repair) {
+        IntegrityReport report = new IntegrityReport();
+        for (int i = fromSegment; i < toSegment; i++) {
+            long headerAddress = ms.address() + segmentHeaderOffset(i);
+            // the lock might be held by the crashed process
+            try {
+                if (!segmentHeader.tryWriteLock(headerAddress) &&
+                        !segmentHeader.tryTakeOverDeadExclusiveLock(headerAddress)) {
+                    segmentHeader.writeLock(headerAddress);
+                }
+            } catch (SegmentLockTimeOutException e) {
+                throw new SegmentLockTimeOutException("Integrity check of the segment " + i +
+                        " of " + file() + " failed: " + e.getMessage());
+            }
+            try (VanillaContext<K, KI, MKI, V, VI, MVI> c = mapContext()) {
+                c.segmentIndex = i;
+                c.checkSegmentIntegrity(repair, report);
+                // written under the lock, acquired bypassing the context
+                if (repair && checkpointer != null)
+                    checkpointer.segmentWritten(i);
+            } finally {
+                segmentHeader.writeUnlock(headerAddress);
+            }
+        }
+        return report;
+    }
+
+    void startCheckpoints(long intervalNanos) {
+        checkpointer.start(intervalNanos);
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        SegmentCheckpointer checkpointer = this.checkpointer;
+        if (checkpointer != null)
+            checkpointer.checkpoint();
+    }
+
+    @Override
+    public void dumpTo(File toFile, boolean checksums) throws IOException {
+        BinaryEntriesSerializer.dump(this, toFile, checksums);
+    }
+
+    @Override
+    public void loadFrom(File fromFile) throws IOException {
+        BinaryEntriesSerializer.load(this, fromFile);
+    }
+
+    private void closeJournal() {
+        MapJournal journal = this.journal;
+        this.journal = null;
+        try {
+            journal.stop();
+            checkpointer.checkpoint();
+            // all journaled mutations are forced with the map, the next open won't replay them
+            journal.truncate();
+            openFlag(false);
+        } catch (IOException e) {
+            LOG.error("Failed to checkpoint " + file() + " on close, the journal is retained " +
+                    "and will be replayed on the next open", e);
+        } finally {
+            journal.close();
+        }
     }
 
     @Override
     public void close() {
         if (ms == null)
             return;
+        if (compactor != null) {
+            compactor.close();
+            compactor = null;
+        }
+        if (checkpointer != null) {
+            checkpointer.close();
+            if (journal != null)
+                closeJournal();
+            checkpointer = null;
+            fileForcer = null;
+        }
         ms.free();
         ms = null;
     }
@@ -401,6 +742,31 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         return context;
     }
 
+    @Override
+    public KeyHandle<K> keyHandle(K key) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> context = context(key)) {
+            context.initSegmentIndex();
+            return new KeyHandle<>(this, key, context.hash, context.segmentIndex);
+        }
+    }
+
+    @Override
+    public VanillaContext<K, KI, MKI, V, VI, MVI> context(KeyHandle<K> keyHandle) {
+        keyHandle.checkMap(this);
+        VanillaContext<K, KI, MKI, V, VI, MVI> context = mapContext();
+        context.initKeyHandle(keyHandle);
+        return context;
+    }
+
+    @Override
+    void checkAtomicValueUpdatesSupported() {
+        // in-place updates are not journaled, they would be lost on a crash
+        if (journal != null) {
+            throw new UnsupportedOperationException(
+                    "Atomic value field updates are not supported by journaled maps");
+        }
+    }
+
     @Override
     void putDefaultValue(VanillaContext context) {
         context.initPutDependencies();
@@ -573,15 +939,154 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         }
     }
 
+    /**
+     * Hashes all the keys with a single context, and orders them by segment index (counting
+     * sort, stable within segments).
+     *
+     * @param hashes        filled with the hashes of the keys, in the order of {@code keys}
+     * @param segmentStarts of {@code actualSegments + 1} length, filled with the start positions
+     *                      of the keys of each segment in the returned array
+     * @return the indexes in the {@code keys} array, ordered by segment index
+     */
+    @SuppressWarnings("unchecked")
+    final int[] groupBySegment(Object[] keys, long[] hashes, int[] segmentStarts) {
+        int[] segmentIndexes = new int[keys.length];
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> c = mapContext()) {
+            for (int i = 0; i < keys.length; i++) {
+                c.initKey((K) keys[i]);
+                c.initSegmentIndex();
+                hashes[i] = c.hash;
+                segmentIndexes[i] = c.segmentIndex;
+                segmentStarts[c.segmentIndex + 1]++;
+                c.closeKey();
+            }
+        }
+        for (int s = 1; s <= actualSegments; s++) {
+            segmentStarts[s] += segmentStarts[s - 1];
+        }
+        int[] nextPositions = segmentStarts.clone();
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[nextPositions[segmentIndexes[i]]++] = i;
+        }
+        return order;
+    }
+
+    final VanillaContext<K, KI, MKI, V, VI, MVI> segmentContext(int segmentIndex) {
+        VanillaContext<K, KI, MKI, V, VI, MVI> context = mapContext();
+        context.segmentIndex = segmentIndex;
+        return context;
+    }
+
+    /**
+     * Nested context of the key, within the segment context, which already holds the lock.
+     */
+    final VanillaContext<K, KI, MKI, V, VI, MVI> context(K key, long hash) {
+        VanillaContext<K, KI, MKI, V, VI, MVI> context = context(key);
+        // already computed in groupBySegment()
+        context.hash = hash;
+        return context;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void getAll(@NotNull Collection<? extends K> keys,
+                       @NotNull Map<? super K, ? super V> result) {
+        requireNonNull(result);
+        Object[] keyArray = keys.toArray();
+        long[] hashes = new long[keyArray.length];
+        int[] segmentStarts = new int[actualSegments + 1];
+        int[] order = groupBySegment(keyArray, hashes, segmentStarts);
+        for (int s = 0; s < actualSegments; s++) {
+            if (segmentStarts[s] == segmentStarts[s + 1])
+                continue;
+            try (VanillaContext<K, KI, MKI, V, VI, MVI> segmentContext = segmentContext(s)) {
+                segmentContext.readLock().lock();
+                for (int j = segmentStarts[s]; j < segmentStarts[s + 1]; j++) {
+                    int i = order[j];
+                    K key = (K) keyArray[i];
+                    try (VanillaContext<K, KI, MKI, V, VI, MVI> c = context(key, hashes[i])) {
+                        V value = c.getUsing(null);
+                        if (value != null)
+                            result.put(key, value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts all the mappings, grouped by segments, each segment is write locked once for all its
+     * keys. Unlike {@link #put(Object, Object)}, previous values are not read.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void putAll(@NotNull Map<? extends K, ? extends V> map) {
+        Object[] entries = map.entrySet().toArray();
+        Object[] keyArray = new Object[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            Map.Entry<K, V> e = (Map.Entry<K, V>) entries[i];
+            keyArray[i] = e.getKey();
+            checkValue(e.getValue());
+        }
+        long[] hashes = new long[keyArray.length];
+        int[] segmentStarts = new int[actualSegments + 1];
+        int[] order = groupBySegment(keyArray, hashes, segmentStarts);
+        for (int s = 0; s < actualSegments; s++) {
+            if (segmentStarts[s] == segmentStarts[s + 1])
+                continue;
+            try (VanillaContext<K, KI, MKI, V, VI, MVI> segmentContext = segmentContext(s)) {
+                // write lock upfront, nested contexts might need to upgrade the lock anyway
+                segmentContext.writeLock().lock();
+                for (int j = segmentStarts[s]; j < segmentStarts[s + 1]; j++) {
+                    int i = order[j];
+                    Map.Entry<K, V> e = (Map.Entry<K, V>) entries[i];
+                    try (VanillaContext<K, KI, MKI, V, VI, MVI> c =
+                                 context(e.getKey(), hashes[i])) {
+                        c.put(e.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeAll(@NotNull Collection<? extends K> keys) {
+        Object[] keyArray = keys.toArray();
+        long[] hashes = new long[keyArray.length];
+        int[] segmentStarts = new int[actualSegments + 1];
+        int[] order = groupBySegment(keyArray, hashes, segmentStarts);
+        boolean removed = false;
+        for (int s = 0; s < actualSegments; s++) {
+            if (segmentStarts[s] == segmentStarts[s + 1])
+                continue;
+            try (VanillaContext<K, KI, MKI, V, VI, MVI> segmentContext = segmentContext(s)) {
+                segmentContext.writeLock().lock();
+                for (int j = segmentStarts[s]; j < segmentStarts[s + 1]; j++) {
+                    int i = order[j];
+                    try (VanillaContext<K, KI, MKI, V, VI, MVI> c =
+                                 context((K) keyArray[i], hashes[i])) {
+                        if (c.remove())
+                            removed = true;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
     @Override
     public void clear() {
-        VanillaContext<K, KI, MKI, V, VI, MVI> context = mapContext();
-        for (int i = 0; i < actualSegments; i++) {
-            context.segmentIndex = i;
-            try {
-                context.clear();
-            } finally {
-                context.closeSegmentIndex();
+        // closed to await the journal group commit
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> context = mapContext()) {
+            for (int i = 0; i < actualSegments; i++) {
+                context.segmentIndex = i;
+                try {
+                    context.clear();
+                } finally {
+                    context.closeSegmentIndex();
+                }
             }
         }
     }
@@ -590,7 +1095,7 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     public final long longSize() {
         long result = 0L;
         for (int i = 0; i < actualSegments; i++) {
-            result += BigSegmentHeader.INSTANCE.size(ms.address() + segmentHeaderOffset(i));
+            result += segmentHeader.size(ms.address() + segmentHeaderOffset(i));
         }
         return result;
     }
@@ -681,11 +1186,72 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     final long[] segmentSizes() {
         long[] sizes = new long[actualSegments];
         for (int i = 0; i < actualSegments; i++) {
-            sizes[i] = BigSegmentHeader.INSTANCE.size(ms.address() + segmentHeaderOffset(i));
+            sizes[i] = segmentHeader.size(ms.address() + segmentHeaderOffset(i));
         }
         return sizes;
     }
 
+    /**
+     * For monitoring and testing
+     *
+     * @return the maximum number of hash lookup slots (or groups of slots, if {@link
+     * HashLookupStrategy#GROUPED_TAGS} strategy is used) probed to find an entry, by segments
+     */
+    final long[] segmentMaxProbeLengths() {
+        long[] maxProbeLengths = new long[actualSegments];
+        for (int i = 0; i < actualSegments; i++) {
+            try (VanillaContext<K, KI, MKI, V, VI, MVI> context = mapContext()) {
+                context.segmentIndex = i;
+                context.readLock().lock();
+                maxProbeLengths[i] = context.maxProbeLength();
+            }
+        }
+        return maxProbeLengths;
+    }
+
+    /**
+     * For monitoring and testing
+     *
+     * @return {@code 1 - largest free chunk run / free chunks} ratios, by segments
+     */
+    final double[] segmentFragmentationRatios() {
+        double[] fragmentationRatios = new double[actualSegments];
+        for (int i = 0; i < actualSegments; i++) {
+            try (VanillaContext<K, KI, MKI, V, VI, MVI> context = mapContext()) {
+                context.segmentIndex = i;
+                context.readLock().lock();
+                fragmentationRatios[i] = context.fragmentationRatio();
+            }
+        }
+        return fragmentationRatios;
+    }
+
+    final int[] segmentHintedFreeRuns() {
+        int[] hintedFreeRuns = new int[actualSegments];
+        for (int i = 0; i < actualSegments; i++) {
+            try (VanillaContext<K, KI, MKI, V, VI, MVI> context = mapContext()) {
+                context.segmentIndex = i;
+                context.readLock().lock();
+                hintedFreeRuns[i] = context.hintedFreeRuns();
+            }
+        }
+        return hintedFreeRuns;
+    }
+
+    /**
+     * Moves live entries of the segment toward the start of the entry space, holding
+     * the segment write lock for at most the given time.
+     *
+     * @return the number of moved entries
+     */
+    final long compactSegment(int segmentIndex, long timeSliceNanos) {
+        try (VanillaContext<K, KI, MKI, V, VI, MVI> context = mapContext()) {
+            context.segmentIndex = segmentIndex;
+            context.writeLock().lock();
+            return context.compact(System.nanoTime() + timeSliceNanos);
+        }
+    }
+
     final long segmentHeaderOffset(int segmentIndex) {
         return segmentHeadersOffset + ((long) segmentIndex) * segmentHeaderSize;
     }
@@ -693,4 +1259,32 @@ class VanillaChronicleMap<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     final long segmentOffset(int segmentIndex) {
         return segmentsOffset + ((long) segmentIndex) * segmentSize;
     }
+
+    final long extraTierHeaderOffset(long tierIndex) {
+        return extraTierHeadersOffset + CACHE_LINES.toBytes(1L) + tierIndex * segmentHeaderSize;
+    }
+
+    final long extraTierOffset(long tierIndex) {
+        return extraTiersOffset + tierIndex * segmentSize;
+    }
+
+    /**
+     * Reserves a new extra tier, visible to all processes, accessing this map.
+     *
+     * @return index of the allocated extra tier, or -1 if all {@link #maxExtraTiers} are
+     * already allocated
+     */
+    final long allocateExtraTier() {
+        if (maxExtraTiers == 0L)
+            return -1L;
+        long counterAddress = ms.address() + extraTierHeadersOffset;
+        while (true) {
+            long allocatedTiers = UNSAFE.getLongVolatile(null, counterAddress);
+            if (allocatedTiers >= maxExtraTiers)
+                return -1L;
+            if (UNSAFE.compareAndSwapLong(null, counterAddress,
+                    allocatedTiers, allocatedTiers + 1L))
+                return allocatedTiers;
+        }
+    }
 }
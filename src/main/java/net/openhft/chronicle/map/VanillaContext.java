@@ -29,12 +29,16 @@ import net.openhft.lang.io.Bytes;
 import net.openhft.lang.io.MultiStoreBytes;
 import net.openhft.lang.threadlocal.ThreadLocalCopies;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.ConcurrentModificationException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -45,6 +49,7 @@ import static net.openhft.lang.io.NativeBytes.UNSAFE;
 class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         V, VI, MVI extends MetaBytesInterop<V, ? super VI>>
         implements MapKeyContext<V> {
+    private static final Logger LOG = LoggerFactory.getLogger(VanillaContext.class);
 
     static interface ContextFactory<T extends VanillaContext> {
         T createContext(VanillaContext root, int indexInContextCache);
@@ -204,8 +209,37 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     void doClose() {
+        VanillaChronicleMap<K, KI, MKI, V, VI, MVI> map = m;
+        MapJournal journal = map != null ? map.journal : null;
         closeMap();
         used = false;
+        if (journalSequence != 0L) {
+            long sequence = journalSequence;
+            journalSequence = 0L;
+            if (journal == null)
+                return;
+            VanillaContext outer = outerContextOn(map);
+            if (outer != null) {
+                // the outer context might hold the segment lock (e. g. bulk operations), it
+                // waits for the group commit once for all nested mutations, when it is closed
+                outer.journalSequence = Math.max(outer.journalSequence, sequence);
+            } else {
+                // wait for the group commit after the segment lock is released
+                journal.awaitDurable(sequence);
+            }
+        }
+    }
+
+    /**
+     * @return the outermost context of this thread on the given map, which is still used, or
+     * {@code null}, if this context is the outermost
+     */
+    private VanillaContext outerContextOn(VanillaChronicleMap map) {
+        for (VanillaContext context : contextCache.contexts) {
+            if (context != this && context.used && context.m == map)
+                return context;
+        }
+        return null;
     }
 
     synchronized void closeFromAnotherThread() {
@@ -393,6 +427,15 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         initKey0(key);
     }
 
+    KeyHandle<K> keyHandle;
+
+    void initKeyHandle(KeyHandle<K> keyHandle) {
+        initKey(keyHandle.key);
+        this.keyHandle = keyHandle;
+        hash = keyHandle.hash;
+        segmentIndex = keyHandle.segmentIndex;
+    }
+
     void initKeyDependencies() {
         initKeyModel();
     }
@@ -424,12 +467,15 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     void closeKey0() {
         key = null;
         metaKeyInterop = null;
+        keyHandle = null;
     }
 
     @Override
     public long keySize() {
         checkOnEachPublicOperation();
-        checkKeyInit();
+        // the context might be positioned on an entry during iteration, without the key object
+        if (state != PRESENT)
+            checkKeyInit();
         return keySize;
     }
 
@@ -451,7 +497,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     void initKeyHash0() {
-        hash = metaKeyInterop.hash(keyInterop, key);
+        hash = metaKeyInterop.hash(m.keyHashFunction(), keyInterop, key);
     }
 
     void closeKeyHash() {
@@ -522,7 +568,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
 
     void initSegmentHeader0() {
         segmentHeaderAddress = m.ms.address() + m.segmentHeaderOffset(segmentIndex);
-        segmentHeader = BigSegmentHeader.INSTANCE;
+        segmentHeader = m.segmentHeader;
     }
 
     void closeSegmentHeader() {
@@ -547,15 +593,16 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     void size(long size) {
+        segmentModified();
         segmentHeader.size(segmentHeaderAddress, size);
     }
 
     long nextPosToSearchFrom() {
-        return segmentHeader.nextPosToSearchFrom(segmentHeaderAddress);
+        return segmentHeader.nextPosToSearchFrom(tierHeaderAddress);
     }
 
     void nextPosToSearchFrom(long nextPosToSearchFrom) {
-        segmentHeader.nextPosToSearchFrom(segmentHeaderAddress, nextPosToSearchFrom);
+        segmentHeader.nextPosToSearchFrom(tierHeaderAddress, nextPosToSearchFrom);
     }
 
 
@@ -568,6 +615,10 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     int totalReadLockCount;
     int totalUpdateLockCount;
     int totalWriteLockCount;
+    /**
+     * Set in the root context on this segment, see {@link #segmentModified()}
+     */
+    boolean segmentModified;
 
     final InterProcessLock readLock = new ReadLock();
     final InterProcessLock updateLock = new UpdateLock();
@@ -600,6 +651,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         totalReadLockCount = 0;
         totalUpdateLockCount = 0;
         totalWriteLockCount = 0;
+        segmentModified = false;
     }
 
     void closeLocks() {
@@ -617,9 +669,11 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     void closeLocks0() {
         if (rootContextOnThisSegment == this) {
             if (totalWriteLockCount > 0) {
+                beforeExclusiveUnlock();
                 segmentHeader.writeUnlock(segmentHeaderAddress);
                 closeKeySearch();
             } else if (totalUpdateLockCount > 0) {
+                beforeExclusiveUnlock();
                 segmentHeader.updateUnlock(segmentHeaderAddress);
                 closeKeySearch();
             } else if (totalReadLockCount > 0) {
@@ -630,6 +684,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
             if (writeLockCount > 0 &&
                     rootContextOnThisSegment.totalReadLockCount == writeLockCount) {
                 if (shouldUpdateUnlock()) {
+                    beforeExclusiveUnlock();
                     if (shouldReadUnlock()) {
                         segmentHeader.writeUnlock(segmentHeaderAddress);
                         closeKeySearch();
@@ -640,6 +695,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
                     segmentHeader.downgradeWriteToUpdateLock(segmentHeaderAddress);
                 }
             } else if (shouldUpdateUnlock()) {
+                beforeExclusiveUnlock();
                 if (shouldReadUnlock()) {
                     segmentHeader.updateUnlock(segmentHeaderAddress);
                     closeKeySearch();
@@ -658,6 +714,28 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         rootContextOnThisSegment = null;
     }
 
+    /**
+     * Should be called on each write to the segment under the update or write lock of this
+     * context. The segment is marked dirty for the next checkpoint on the release of the lock,
+     * after all writes under the lock are done, so update locks, acquired only for reading (e. g.
+     * by iteration), don't make the segment forced by the checkpoint.
+     */
+    void segmentModified() {
+        VanillaContext root = rootContextOnThisSegment;
+        // null if the lock is acquired bypassing this context, then the segment is marked dirty
+        // by the code, which acquired the lock
+        if (root != null && m.checkpointer != null)
+            root.segmentModified = true;
+    }
+
+    void beforeExclusiveUnlock() {
+        VanillaContext root = rootContextOnThisSegment;
+        if (root.segmentModified) {
+            root.segmentModified = false;
+            m.checkpointer.segmentWritten(segmentIndex);
+        }
+    }
+
     boolean isReadLocked() {
         return rootContextOnThisSegment.totalReadLockCount > 0;
     }
@@ -719,6 +797,278 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         writeLockCount--;
     }
 
+    /**
+     * If the exclusive lock of the segment is held by a dead process, takes it over, rebuilds
+     * the free list and the size of the segment from the hash lookup (the dead process might
+     * be interrupted in the middle of an update) and releases the lock. Read locks and waits
+     * of dead processes are not recorded by holder, so they couldn't be recovered.
+     *
+     * @return {@code true} if the lock is recovered, i. e. it makes sense to try to acquire
+     * the lock again
+     * @throws SegmentLockTimeOutException if the update lock of a dead process is taken over,
+     * but read locks of the segment don't let it be upgraded to the write lock
+     */
+    boolean recoverLockFromDeadHolder() {
+        // a lock, held by the current thread, couldn't be counted properly after the takeover
+        if (isReadLocked())
+            return false;
+        try {
+            if (!segmentHeader.tryTakeOverDeadExclusiveLock(segmentHeaderAddress))
+                return false;
+        } catch (SegmentLockTimeOutException e) {
+            throw lockNotRecovered(e);
+        }
+        try (VanillaContext<K, ?, ?, V, ?, ?> c = m.mapContext()) {
+            c.segmentIndex = segmentIndex;
+            c.recoverSegment();
+            // written under the lock, acquired bypassing the context
+            if (m.checkpointer != null)
+                m.checkpointer.segmentWritten(segmentIndex);
+        } finally {
+            segmentHeader.writeUnlock(segmentHeaderAddress);
+        }
+        LOG.warn("Recovered the lock of the segment " + segmentIndex + " of " + m.file() +
+                ", held by a dead process");
+        return true;
+    }
+
+    /**
+     * @return the exception, thrown if the lock is not acquired in the time out, and couldn't be
+     * recovered from a dead holder
+     */
+    SegmentLockTimeOutException lockNotRecovered(SegmentLockTimeOutException e) {
+        return new SegmentLockTimeOutException("Segment " + segmentIndex + " of " +
+                (m.file() != null ? m.file() : "in-memory map") + ": " + e.getMessage());
+    }
+
+    /**
+     * Should be called under the write lock, acquired bypassing this context.
+     */
+    void recoverSegment() {
+        class EntryMarker implements HashLookup.EntryConsumer {
+            long size = 0;
+            final BitSet occupiedSlots = new BitSet();
+            @Override
+            public void accept(long hash, long pos) {
+                VanillaContext.this.pos = pos;
+                initKeyFromPos();
+                try {
+                    if (m.slabEntries) {
+                        occupiedSlots.set((int) pos);
+                    } else {
+                        initEntrySizeInChunks();
+                        freeList.set(pos, Math.min(pos + entrySizeInChunks,
+                                m.actualChunksPerSegment));
+                    }
+                    size++;
+                } finally {
+                    closeEntrySizeInChunks();
+                    closeKeySearch();
+                }
+            }
+        }
+        initSegment();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        EntryMarker entryMarker = new EntryMarker();
+        do {
+            freeList.clear();
+            nextPosToSearchFrom(0L);
+            if (m.freeRunHints)
+                freeRunHints.clear();
+            hashLookup.forEach(entryMarker);
+            if (m.slabEntries) {
+                freeSlots.rebuild(entryMarker.occupiedSlots);
+                entryMarker.occupiedSlots.clear();
+            }
+        } while (switchToNextTier(false));
+        size(entryMarker.size);
+    }
+
+    /**
+     * Checks that every hash lookup slot of the segment points to a well-formed entry, which
+     * doesn't overlap other entries of the tier, and whose key hashes to this segment and is
+     * found by the hash lookup search at this slot (if the key hash could be recomputed from
+     * the key bytes, see {@link VanillaChronicleMap#keyHashedAsBytes()}); that the free list (or
+     * the free slot stack) of each tier marks exactly the space of these entries, and that
+     * the segment size is equal to the number of them. If {@code repair} is {@code true}, drops
+     * dangling slots, rebuilds free lists and the size of the segment.
+     *
+     * <p>Must be called under the segment write lock, acquired bypassing the context.
+     */
+    void checkSegmentIntegrity(boolean repair, IntegrityReport report) {
+        initSegment();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        SlotCollector slots = new SlotCollector();
+        BitSet occupied = new BitSet();
+        long entries = 0L;
+        boolean consistent = true;
+        boolean checkHash = m.keyHashedAsBytes();
+        do {
+            slots.count = 0;
+            hashLookup.forEach(slots);
+            occupied.clear();
+            for (int i = 0; i < slots.count; i++) {
+                long pos = slots.positions[i];
+                int chunks = checkEntry(pos, occupied, checkHash);
+                if (chunks > 0) {
+                    occupied.set((int) pos, (int) pos + chunks);
+                    entries++;
+                } else {
+                    report.danglingSlots++;
+                    consistent = false;
+                    if (repair)
+                        removeSlot(slots.keys[i], pos);
+                }
+            }
+            if (!freeListMatches(occupied)) {
+                report.freeListMismatches++;
+                consistent = false;
+                if (repair)
+                    rebuildFreeList(occupied);
+            }
+        } while (switchToNextTier(false));
+        if (size() != entries) {
+            report.sizeMismatches++;
+            consistent = false;
+            if (repair)
+                size(entries);
+        }
+        report.segments++;
+        report.entries += entries;
+        if (!consistent)
+            report.inconsistentSegments++;
+    }
+
+    /**
+     * @return the number of chunks, taken by the well-formed entry at the given pos, or 0
+     * if the entry is malformed, overlaps already checked entries, or {@code checkHash} is
+     * {@code true} and its key doesn't hash to this segment and slot
+     */
+    private int checkEntry(long pos, BitSet occupied, boolean checkHash) {
+        if (pos < 0L || pos >= m.actualChunksPerSegment || occupied.get((int) pos))
+            return 0;
+        try {
+            reuse(pos);
+            keyFound();
+            long entryLimit = m.slabEntries ? m.chunkSize : entry.limit();
+            // don't read beyond the entry, if sizes are garbage
+            keySize = m.keySizeMarshaller.readSize(entry);
+            initKeyOffset0();
+            if (keySize < 0L || keyOffset + keySize > entryLimit)
+                return 0;
+            initValueBytes();
+            if (valueSize < 0L || valueOffset + valueSize > entryLimit)
+                return 0;
+            initEntrySizeInChunks();
+            int overlapped = occupied.nextSetBit((int) pos);
+            if (overlapped >= 0 && overlapped < pos + entrySizeInChunks)
+                return 0;
+            if (!checkHash)
+                return entrySizeInChunks;
+            long hash = m.keyHashFunction().hashBytes(entry, keyOffset, keyOffset + keySize);
+            if (m.hashSplitting.segmentIndex(hash) != segmentIndex)
+                return 0;
+            return slotFound(m.hashSplitting.segmentHash(hash), pos) ? entrySizeInChunks : 0;
+        } finally {
+            closeEntrySizeInChunks();
+            closeKeySearch();
+        }
+    }
+
+    /**
+     * Searches the hash lookup of the current tier for the slot with the given key and pos,
+     * and leaves the hash lookup search positioned at this slot, if found.
+     */
+    private boolean searchSlot(long key, long pos) {
+        hashLookup.init0(key);
+        hashLookup.initSearch0();
+        long foundPos;
+        while ((foundPos = hashLookup.nextPos()) >= 0L && foundPos != pos);
+        return foundPos == pos;
+    }
+
+    private boolean slotFound(long key, long pos) {
+        try {
+            return searchSlot(key, pos);
+        } finally {
+            hashLookup.closeSearch0();
+            hashLookup.close0();
+        }
+    }
+
+    private void removeSlot(long key, long pos) {
+        try {
+            if (searchSlot(key, pos)) {
+                hashLookup.found();
+                hashLookup.remove();
+            }
+        } finally {
+            hashLookup.closeSearch0();
+            hashLookup.close0();
+        }
+    }
+
+    private boolean freeListMatches(BitSet occupied) {
+        if (m.slabEntries) {
+            BitSet free;
+            try {
+                free = freeSlots.freeSlots();
+            } catch (IllegalStateException e) {
+                return false;
+            }
+            long highWaterMark = freeSlots.highWaterMark();
+            return occupied.length() <= highWaterMark && !free.intersects(occupied) &&
+                    free.cardinality() + occupied.cardinality() == highWaterMark;
+        }
+        long freeListBits = 0L;
+        for (long i = freeList.nextSetBit(0L); i != DirectBitSet.NOT_FOUND;
+             i = freeList.nextSetBit(i + 1L)) {
+            if (i >= m.actualChunksPerSegment || !occupied.get((int) i))
+                return false;
+            freeListBits++;
+        }
+        return freeListBits == occupied.cardinality();
+    }
+
+    private void rebuildFreeList(BitSet occupied) {
+        nextPosToSearchFrom(0L);
+        if (m.freeRunHints)
+            freeRunHints.clear();
+        if (m.slabEntries) {
+            freeSlots.rebuild(occupied);
+            return;
+        }
+        freeList.clear();
+        for (int from = occupied.nextSetBit(0); from >= 0; ) {
+            int to = occupied.nextClearBit(from);
+            freeList.set(from, to);
+            from = occupied.nextSetBit(to);
+        }
+    }
+
+    /**
+     * Collects slots of the tier, because the hash lookup couldn't be searched and modified
+     * while iterated
+     */
+    private static final class SlotCollector implements HashLookup.EntryConsumer {
+        long[] keys = new long[16];
+        long[] positions = new long[16];
+        int count = 0;
+
+        @Override
+        public void accept(long key, long pos) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            keys[count] = key;
+            positions[count] = pos;
+            count++;
+        }
+    }
+
     abstract class AbstractLock implements InterProcessLock {
         abstract boolean fastLock();
         abstract void doLock();
@@ -729,23 +1079,38 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         @Override
         public void lock() {
             checkOnEachPublicOperation();
-            if (!fastLock())
-                doLock();
+            if (!fastLock()) {
+                try {
+                    doLock();
+                } catch (SegmentLockTimeOutException e) {
+                    if (!recoverLockFromDeadHolder())
+                        throw lockNotRecovered(e);
+                    doLock();
+                }
+            }
             incrementCounts();
         }
 
         @Override
         public void lockInterruptibly() throws InterruptedException {
             checkOnEachPublicOperation();
-            if (!fastLock())
-                doLockInterruptibly();
+            if (!fastLock()) {
+                try {
+                    doLockInterruptibly();
+                } catch (SegmentLockTimeOutException e) {
+                    if (!recoverLockFromDeadHolder())
+                        throw lockNotRecovered(e);
+                    doLockInterruptibly();
+                }
+            }
             incrementCounts();
         }
 
         @Override
         public boolean tryLock(long time, @NotNull TimeUnit unit) throws InterruptedException {
             checkOnEachPublicOperation();
-            if (fastLock() || doTryLock(time, unit)) {
+            if (fastLock() || doTryLock(time, unit) ||
+                    (tryRecoverLockFromDeadHolder() && doTryLock(time, unit))) {
                 incrementCounts();
                 return true;
             } else {
@@ -753,6 +1118,15 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
             }
         }
 
+        private boolean tryRecoverLockFromDeadHolder() {
+            try {
+                return recoverLockFromDeadHolder();
+            } catch (SegmentLockTimeOutException e) {
+                LOG.warn(e.getMessage());
+                return false;
+            }
+        }
+
         @NotNull
         @Override
         public Condition newCondition() {
@@ -881,6 +1255,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
             if (updateLockCount == 0)
                 throw new IllegalInterProcessLockStateException("Update lock is not held");
             if (rootContextOnThisSegment.totalUpdateLockCount == 1) {
+                beforeExclusiveUnlock();
                 if (rootContextOnThisSegment.totalReadLockCount == 1) {
                     segmentHeader.updateUnlock(segmentHeaderAddress);
                     closeKeySearch();
@@ -976,6 +1351,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
                 throw new IllegalInterProcessLockStateException("Write lock is not held");
             if (rootContextOnThisSegment.totalWriteLockCount == 1) {
                 if (rootContextOnThisSegment.totalUpdateLockCount == 1) {
+                    beforeExclusiveUnlock();
                     if (rootContextOnThisSegment.totalReadLockCount == 1) {
                         segmentHeader.writeUnlock(segmentHeaderAddress);
                         closeKeySearch();
@@ -1016,10 +1392,20 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
 
     /////////////////////////////////////////////////
     // Segment
-    final HashLookup hashLookup = new HashLookup();
+    final HashLookup linearHashLookup = new HashLookup();
+    final GroupedHashLookup groupedHashLookup = new GroupedHashLookup();
+    HashLookup hashLookup = linearHashLookup;
     final MultiStoreBytes freeListBytes = new MultiStoreBytes();
     final SingleThreadedDirectBitSet freeList = new SingleThreadedDirectBitSet();
+    final FreeRunHints freeRunHints = new FreeRunHints();
+    final FreeSlotStack freeSlots = new FreeSlotStack();
     long entrySpaceOffset;
+    /**
+     * -1 if the context is on the segment itself, otherwise index of the extra tier, chained to
+     * the segment, the hash lookup, free list and entry space are currently pointing to
+     */
+    long extraTier = -1L;
+    long tierHeaderAddress;
 
     void initSegment() {
         if (entrySpaceOffset != 0L)
@@ -1033,15 +1419,52 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     void initSegment0() {
-        long hashLookupOffset = m.segmentOffset(segmentIndex);
+        // hash lookup is closed at this point, so could be switched
+        if (m.hashLookupStrategy == HashLookupStrategy.GROUPED_TAGS) {
+            hashLookup = groupedHashLookup;
+        } else {
+            hashLookup = linearHashLookup;
+            linearHashLookup.robinHood(m.hashLookupStrategy == HashLookupStrategy.ROBIN_HOOD);
+        }
+        switchToFirstTier();
+    }
+
+    void switchToFirstTier() {
+        extraTier = -1L;
+        tierHeaderAddress = segmentHeaderAddress;
+        reuseTier(m.segmentOffset(segmentIndex));
+    }
+
+    /**
+     * @param tier -1 for the segment itself, otherwise the index of the extra tier, chained to
+     *             the segment
+     */
+    void switchToTier(long tier) {
+        if (tier < 0L) {
+            switchToFirstTier();
+        } else {
+            extraTier = tier;
+            tierHeaderAddress = m.ms.address() + m.extraTierHeaderOffset(tier);
+            reuseTier(m.extraTierOffset(tier));
+        }
+    }
+
+    void reuseTier(long hashLookupOffset) {
         hashLookup.reuse(m.ms.address() + hashLookupOffset,
                 m.segmentHashLookupCapacity, m.segmentHashLookupEntrySize,
                 m.segmentHashLookupKeyBits, m.segmentHashLookupValueBits);
         long freeListOffset = hashLookupOffset + m.segmentHashLookupOuterSize;
         freeListBytes.storePositionAndSize(m.ms, freeListOffset, m.segmentFreeListInnerSize);
         freeList.reuse(freeListBytes);
+        if (m.freeRunHints)
+            freeRunHints.reuse(m.ms.address() + freeListOffset + m.segmentFreeListInnerSize,
+                    FreeRunHints.slots(m.segmentFreeListOuterSize - m.segmentFreeListInnerSize));
         entrySpaceOffset = freeListOffset + m.segmentFreeListOuterSize +
                 m.segmentEntrySpaceInnerOffset;
+        if (m.slabEntries) {
+            freeSlots.reuse(m.ms.address() + freeListOffset, m.ms.address() + entrySpaceOffset,
+                    m.chunkSize, m.actualChunksPerSegment);
+        }
     }
 
     void closeSegment() {
@@ -1057,6 +1480,69 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
 
     void closeSegment0() {
         entrySpaceOffset = 0L;
+        extraTier = -1L;
+    }
+
+    /**
+     * Switches hash lookup, free list and entry space to the extra tier, chained to the current
+     * tier. Should be called only under update (or write) lock, if {@code allocate} is
+     * {@code true}.
+     *
+     * @param allocate whether to allocate and chain a new extra tier, if the current tier is the
+     *                 last in the chain
+     * @return {@code true} if switched, {@code false} if the current tier is the last, and a new
+     * extra tier is not allocated
+     */
+    boolean switchToNextTier(boolean allocate) {
+        long nextTier = segmentHeader.nextTier(tierHeaderAddress);
+        if (nextTier == 0L) {
+            if (!allocate)
+                return false;
+            long allocatedTier = m.allocateExtraTier();
+            if (allocatedTier < 0L)
+                return false;
+            nextTier = allocatedTier + 1L;
+            segmentHeader.nextTier(tierHeaderAddress, nextTier);
+        }
+        extraTier = nextTier - 1L;
+        tierHeaderAddress = m.ms.address() + m.extraTierHeaderOffset(extraTier);
+        reuseTier(m.extraTierOffset(extraTier));
+        return true;
+    }
+
+    long maxProbeLength() {
+        initSegment();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        long maxProbeLength = 0L;
+        do {
+            maxProbeLength = Math.max(maxProbeLength, hashLookup.maxProbeLength());
+        } while (switchToNextTier(false));
+        return maxProbeLength;
+    }
+
+    void forEachTierEntry(HashLookup.EntryConsumer action) {
+        initSegment();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        do {
+            hashLookup.forEach(action);
+        } while (switchToNextTier(false));
+    }
+
+    /**
+     * @return {@code true} if all entries of all tiers are visited, {@code false} if the
+     * iteration is stopped by the predicate
+     */
+    boolean forEachTierEntryWhile(HashLookup.EntryPredicate action) {
+        initSegment();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        do {
+            if (!hashLookup.forEachWhile(action))
+                return false;
+        } while (switchToNextTier(false));
+        return true;
     }
 
     /////////////////////////////////////////////////
@@ -1111,19 +1597,55 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     void initKeySearch0() {
-        hashLookup.initSearch0();
-        while ((pos = hashLookup.nextPos()) >= 0L) {
-            reuse(pos);
-            if (!keyEquals())
-                continue;
-            hashLookup.found();
-            initKeyOffset0();
-            keyFound();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        if (keyHandle != null && searchFromKeyHandleSlot())
             return;
-        }
+        do {
+            hashLookup.initSearch0();
+            while ((pos = hashLookup.nextPos()) >= 0L) {
+                reuse(pos);
+                if (!keyEquals())
+                    continue;
+                hashLookup.found();
+                initKeyOffset0();
+                keyFound();
+                // slots of extra tiers are not remembered, for simplicity
+                if (keyHandle != null && extraTier < 0L)
+                    keyHandle.slot = hashLookup.foundSlot();
+                return;
+            }
+        } while (switchToNextTier(false));
+        // if absent, the context is left on the last tier, the hash lookup search position is
+        // the empty slot to put the entry to
         state = ABSENT;
     }
 
+    /**
+     * Should be called on the first tier.
+     *
+     * @return {@code true} if the slot of the key handle still holds the key
+     */
+    boolean searchFromKeyHandleSlot() {
+        long slot = keyHandle.slot;
+        if (slot < 0L)
+            return false;
+        long hintedPos = hashLookup.tryFoundAt(slot);
+        // check the bound, because the slot might be read concurrently with an update,
+        // in optimistic reads
+        if (hintedPos < 0L || hintedPos >= m.actualChunksPerSegment)
+            return false;
+        pos = hintedPos;
+        reuse(pos);
+        if (!keyEquals()) {
+            hashLookup.closeSearch0();
+            return false;
+        }
+        initKeyOffset0();
+        keyFound();
+        return true;
+    }
+
     void initKeyOffset0() {
         keyOffset = entry.position();
     }
@@ -1301,6 +1823,30 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         // no check, because getUsing MUST try to use the given usingValue
 //        if (value != null)
 //            return value;
+        if (m.optimisticReads && state == null) {
+            initHashLookup();
+            initLocks();
+            if (!isReadLocked()) {
+                for (int i = 0; i < MAX_OPTIMISTIC_READ_ATTEMPTS; i++) {
+                    long writeVersion = segmentHeader.writeVersion(segmentHeaderAddress);
+                    if ((writeVersion & 1L) != 0L)
+                        break; // write-locked, fall back to the read lock
+                    V value;
+                    try {
+                        value = optimisticGetUsing(usingValue);
+                    } catch (RuntimeException | Error e) {
+                        closeKeySearch();
+                        if (validateOptimisticRead(writeVersion))
+                            throw e;
+                        continue;
+                    }
+                    // the context shouldn't stay on the entry, found without lock
+                    closeKeySearch();
+                    if (validateOptimisticRead(writeVersion))
+                        return value;
+                }
+            }
+        }
         initKeySearch();
         if (state != PRESENT)
             return null;
@@ -1309,6 +1855,32 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         return value;
     }
 
+    static final int MAX_OPTIMISTIC_READ_ATTEMPTS = 2;
+
+    /**
+     * Volatile write to this field prevents reads of the entry during an optimistic read from
+     * being reordered with the following read of the segment write version.
+     */
+    private volatile int optimisticReadFence;
+
+    private V optimisticGetUsing(V usingValue) {
+        initKeySearch0();
+        if (state != PRESENT)
+            return null;
+        initValueBytes();
+        // entry bytes might be torn by a concurrent writer, don't read outside the segment
+        if (pos * m.chunkSize + valueOffset + valueSize > m.segmentEntrySpaceInnerSize)
+            throw new IllegalStateException("Entry at " + pos + " exceeds the segment");
+        initValueDependencies();
+        initValue0(usingValue);
+        return value;
+    }
+
+    private boolean validateOptimisticRead(long writeVersion) {
+        optimisticReadFence = 0;
+        return segmentHeader.writeVersion(segmentHeaderAddress) == writeVersion;
+    }
+
     void initValue0(V usingValue) {
         entry.position(valueOffset);
         value = valueReader.read(entry, valueSize, usingValue);
@@ -1447,7 +2019,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     void initEntrySizeInChunks0() {
-        entrySizeInChunks = inChunks(valueOffset + valueSize);
+        entrySizeInChunks = m.slabEntries ? 1 : inChunks(valueOffset + valueSize);
     }
 
     void closeEntrySizeInChunks() {
@@ -1490,9 +2062,20 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     boolean put0() {
+        // the record is written before the entry (which key could be read from) is modified,
+        // but is appended only if the put succeeds: a put, that failed because the value is too
+        // large or the segment is full, shouldn't fail again on replay
+        if (m.journal != null)
+            writeJournalPutRecord();
         switch (state) {
-            case PRESENT:
             case DELETED:
+                if (m.slabEntries) {
+                    // the first bytes of the removed entry are overwritten by the free slot
+                    // stack link, so write the whole entry again
+                    putEntry();
+                    break;
+                }
+            case PRESENT:
                 initValueBytes();
                 putValue();
                 break;
@@ -1500,12 +2083,13 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
                 putEntry();
         }
         state = PRESENT;
+        if (m.journal != null)
+            appendJournalRecord(MapJournal.PUT);
         return true;
     }
 
     void putEntry() {
-        long entrySize = entrySize(keySize, newValueSize);
-        int allocatedChunks = inChunks(entrySize);
+        int allocatedChunks = m.slabEntries ? 1 : inChunks(entrySize(keySize, newValueSize));
         pos = alloc(allocatedChunks);
         reuse(pos);
 
@@ -1525,6 +2109,8 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
             size(size() + 1L);
         }
         beforePutPos();
+        if (hashLookup.putDisplaces())
+            upgradeToWriteLock();
         // put + store fence, guarantees if concurrent readers see the new entry
         // in the hashLookup => they will also see written entry bytes
         hashLookup.putVolatile(pos);
@@ -1564,7 +2150,14 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
                     free(pos, entrySizeInChunks);
                 int allocatedChunks =
                         inChunks(innerEntrySize(newSizeOfEverythingBeforeValue, newValueSize));
-                pos = alloc(allocatedChunks);
+                try {
+                    pos = alloc(allocatedChunks);
+                } catch (IllegalStateException e) {
+                    // the segment is full, the entry stays in place
+                    if (freeListBitsSet())
+                        freeList.set(pos, pos + entrySizeInChunks);
+                    throw e;
+                }
                 reuse(pos);
                 UNSAFE.copyMemory(entryStartAddr, entry.address(), valueSizeOffset);
                 writeValueAndPutPos(allocatedChunks);
@@ -1611,6 +2204,8 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
                 freeList.set(pos, pos + entrySizeInChunks);
             size(size() + 1L);
             beforePutPos();
+            if (hashLookup.putDisplaces())
+                upgradeToWriteLock();
             hashLookup.putVolatile(pos);
         }
         if (lesserChunks > 0)
@@ -1633,6 +2228,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     void writeNewValueAndSwitch() {
+        segmentModified();
         entry.position(valueOffset);
         metaValueInterop.write(valueInterop, entry, newValue);
         value = newValue;
@@ -1653,6 +2249,8 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     boolean remove0() {
         if (containsKey()) {
             initEntrySizeInChunks();
+            if (m.journal != null)
+                journalRemove();
             upgradeToWriteLock();
             hashLookup.remove();
             free(pos, entrySizeInChunks);
@@ -1673,18 +2271,161 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     void closeRemove() {
     }
 
+    /////////////////////////////////////////////////
+    // Journal
+    private ByteBuffer journalRecordBuffer;
+    private ByteBufferBytes journalRecordBytes;
+    /**
+     * The sequence of the last journal record, appended by this context, to await for on close
+     */
+    long journalSequence = 0L;
+
+    Bytes journalRecord(long size) {
+        if (journalRecordBuffer == null || journalRecordBuffer.capacity() < size) {
+            journalRecordBuffer = ByteBuffer.allocate((int) Math.max(size, 256L));
+            journalRecordBytes = new ByteBufferBytes(journalRecordBuffer);
+        }
+        journalRecordBytes.clear();
+        return journalRecordBytes;
+    }
+
+    void appendJournalRecord(byte type) {
+        journalRecordBuffer.position((int) journalRecordBytes.position());
+        journalSequence = m.journal.append(type, journalRecordBuffer);
+    }
+
+    /**
+     * Should be called under the update lock, before the new value is written. The record is
+     * appended by {@code appendJournalRecord(MapJournal.PUT)}, after the value is written.
+     */
+    void writeJournalPutRecord() {
+        Bytes record = journalRecord(m.keySizeMarshaller.sizeEncodingSize(keySize) + keySize +
+                m.valueSizeMarshaller.sizeEncodingSize(newValueSize) + newValueSize);
+        writeJournalKey(record);
+        m.valueSizeMarshaller.writeSize(record, newValueSize);
+        metaValueInterop.write(valueInterop, record, newValue);
+    }
+
+    void journalRemove() {
+        Bytes record = journalRecord(m.keySizeMarshaller.sizeEncodingSize(keySize) + keySize);
+        writeJournalKey(record);
+        appendJournalRecord(MapJournal.REMOVE);
+    }
+
+    private void writeJournalKey(Bytes record) {
+        m.keySizeMarshaller.writeSize(record, keySize);
+        if (state == PRESENT) {
+            // the key object is not initialized, if the entry is found by iteration
+            record.write(entry, keyOffset, keySize);
+        } else {
+            metaKeyInterop.write(keyInterop, record, key);
+        }
+    }
+
+    void journalClearSegment() {
+        Bytes record = journalRecord(4L);
+        record.writeInt(segmentIndex);
+        appendJournalRecord(MapJournal.CLEAR_SEGMENT);
+    }
+
+    /////////////////////////////////////////////////
+    // Atomic value field operations
+
+    /**
+     * Should be called under at least read lock, values are written only under write lock, so
+     * the entry doesn't move while the read lock is held.
+     *
+     * @return the address of the field within the value bytes
+     */
+    long valueFieldAddress(long fieldOffset, int fieldSize) {
+        checkContainsKey();
+        initValueBytes();
+        if (fieldOffset < 0L || fieldOffset > valueSize - fieldSize) {
+            throw new IndexOutOfBoundsException("Field of " + fieldSize + " bytes at offset " +
+                    fieldOffset + " is out of the value of " + valueSize + " bytes");
+        }
+        long address = entry.address() + valueOffset + fieldOffset;
+        if ((address & (fieldSize - 1)) != 0L) {
+            throw new IllegalArgumentException("Field at offset " + fieldOffset + " is not " +
+                    fieldSize + "-byte aligned, configure entryAndValueAlignment()");
+        }
+        return address;
+    }
+
+    /**
+     * Atomic field updates are made under the read lock, so the segment is not marked dirty
+     * on the write lock release.
+     */
+    private void valueFieldWritten() {
+        SegmentCheckpointer checkpointer = m.checkpointer;
+        if (checkpointer != null)
+            checkpointer.segmentWritten(segmentIndex);
+    }
+
+    long getAndAddLong(long fieldOffset, long delta) {
+        long address = valueFieldAddress(fieldOffset, 8);
+        while (true) {
+            long current = UNSAFE.getLongVolatile(null, address);
+            if (UNSAFE.compareAndSwapLong(null, address, current, current + delta)) {
+                valueFieldWritten();
+                return current;
+            }
+        }
+    }
+
+    boolean compareAndSwapLong(long fieldOffset, long expected, long x) {
+        if (UNSAFE.compareAndSwapLong(null, valueFieldAddress(fieldOffset, 8), expected, x)) {
+            valueFieldWritten();
+            return true;
+        }
+        return false;
+    }
+
+    int getAndAddInt(long fieldOffset, int delta) {
+        long address = valueFieldAddress(fieldOffset, 4);
+        while (true) {
+            int current = UNSAFE.getIntVolatile(null, address);
+            if (UNSAFE.compareAndSwapInt(null, address, current, current + delta)) {
+                valueFieldWritten();
+                return current;
+            }
+        }
+    }
+
+    boolean compareAndSwapInt(long fieldOffset, int expected, int x) {
+        if (UNSAFE.compareAndSwapInt(null, valueFieldAddress(fieldOffset, 4), expected, x)) {
+            valueFieldWritten();
+            return true;
+        }
+        return false;
+    }
+
     void checkMultiMapsAndBitSetsConsistency() {
         class EntryChecker implements HashLookup.EntryConsumer {
             long size = 0;
+            long freeSlotsTier = -2L;
+            BitSet freeSlots;
             @Override
             public void accept(long key, long value) {
-                if (freeList.isClear(value))
+                if (m.slabEntries) {
+                    if (freeSlotsTier != extraTier) {
+                        freeSlots = VanillaContext.this.freeSlots.freeSlots();
+                        freeSlotsTier = extraTier;
+                    }
+                    if (value >= VanillaContext.this.freeSlots.highWaterMark() ||
+                            freeSlots.get((int) value)) {
+                        throw new IllegalStateException("Position " + value + " is present " +
+                                "in multiMap but available in the free slot stack");
+                    }
+                } else if (freeList.isClear(value)) {
                     throw new IllegalStateException("Position " + value + " is present in " +
                             "multiMap but available in the free chunk list");
+                }
+                size++;
             }
         }
         EntryChecker entryChecker = new EntryChecker();
-        hashLookup.forEach(entryChecker);
+        forEachTierEntry(entryChecker);
         if (size() != entryChecker.size) {
             throw new IllegalStateException("Segment inconsistent: " +
                     "size by Segment counter: " + size() +
@@ -1828,6 +2569,52 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         if (chunks > m.maxChunksPerEntry)
             throw new IllegalArgumentException("Entry is too large: requires " + chunks +
                     " entry size chucks, " + m.maxChunksPerEntry + " is maximum.");
+        segmentModified();
+        long ret = allocInTier(chunks);
+        if (ret != DirectBitSet.NOT_FOUND)
+            return ret;
+        long prevTier = extraTier;
+        do {
+            if (!switchToNextTier(true)) {
+                // the present entry stays in its tier
+                switchToTier(prevTier);
+                if (chunks == 1) {
+                    throw new IllegalStateException(
+                            "Segment is full, no free entries found");
+                } else {
+                    throw new IllegalStateException(
+                            "Segment is full or has no ranges of " + chunks
+                                    + " continuous free chunks"
+                    );
+                }
+            }
+        } while ((ret = allocInTier(chunks)) == DirectBitSet.NOT_FOUND);
+        long lookupKey = m.hashSplitting.segmentHash(hash);
+        if (state == PRESENT) {
+            // the entry is relocated to another tier, its slot is removed only when the space
+            // in the new tier is allocated, so the entry is not lost if the segment is full.
+            // Concurrent readers shouldn't observe it absent in both tiers
+            upgradeToWriteLock();
+            long newTier = extraTier;
+            switchToTier(prevTier);
+            removeSlot(lookupKey, pos);
+            switchToTier(newTier);
+        }
+        // move the hash lookup search position to an empty slot in the tier, switched to
+        hashLookup.init0(lookupKey);
+        hashLookup.initSearch0();
+        while (hashLookup.nextPos() >= 0L);
+        return ret;
+    }
+
+    private long allocInTier(int chunks) {
+        if (m.slabEntries)
+            return freeSlots.alloc();
+        if (m.freeRunHints && chunks > 1) {
+            long ret = allocFromFreeRunHints(chunks);
+            if (ret >= 0L)
+                return ret;
+        }
         long ret = freeList.setNextNContinuousClearBits(nextPosToSearchFrom(), chunks);
         if (ret == DirectBitSet.NOT_FOUND || ret + chunks > m.actualChunksPerSegment) {
             if (ret != DirectBitSet.NOT_FOUND &&
@@ -1839,15 +2626,7 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
                         ret + chunks > m.actualChunksPerSegment &&
                         ret < m.actualChunksPerSegment)
                     freeList.clear(ret, m.actualChunksPerSegment);
-                if (chunks == 1) {
-                    throw new IllegalStateException(
-                            "Segment is full, no free entries found");
-                } else {
-                    throw new IllegalStateException(
-                            "Segment is full or has no ranges of " + chunks
-                                    + " continuous free chunks"
-                    );
-                }
+                return DirectBitSet.NOT_FOUND;
             }
             updateNextPosToSearchFrom(ret, chunks);
         } else {
@@ -1861,6 +2640,41 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
         return ret;
     }
 
+    /**
+     * @return the start of allocated chunks, or -1, if no hinted free run of a suitable size class
+     * is actually free
+     */
+    private long allocFromFreeRunHints(int chunks) {
+        for (int sizeClass = FreeRunHints.sizeClass(chunks);
+             sizeClass < FreeRunHints.SIZE_CLASSES; sizeClass++) {
+            long runStart;
+            // the popped hint is taken, or it is stale, either way it is removed
+            while ((runStart = freeRunHints.pop(sizeClass)) >= 0L) {
+                long allocatedEnd = runStart + chunks;
+                if (allocatedEnd <= m.actualChunksPerSegment &&
+                        freeList.allClear(runStart, allocatedEnd)) {
+                    freeList.set(runStart, allocatedEnd);
+                    hintFreeRun(allocatedEnd);
+                    return runStart;
+                }
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Remembers the free run, starting at the given position (if the chunk at this position is
+     * free, indeed), in the hints of the run size class.
+     */
+    private void hintFreeRun(long runStart) {
+        if (runStart >= m.actualChunksPerSegment || freeList.isSet(runStart))
+            return;
+        long runEnd = freeList.nextSetBit(runStart);
+        if (runEnd == DirectBitSet.NOT_FOUND || runEnd > m.actualChunksPerSegment)
+            runEnd = m.actualChunksPerSegment;
+        freeRunHints.push(FreeRunHints.sizeClass(runEnd - runStart), runStart);
+    }
+
     void updateNextPosToSearchFrom(long allocated, int chunks) {
         long nextPosToSearchFrom = allocated + chunks;
         if (nextPosToSearchFrom >= m.actualChunksPerSegment)
@@ -1869,9 +2683,19 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
     }
 
     void free(long fromPos, int chunks) {
+        segmentModified();
+        if (m.slabEntries) {
+            freeSlots.free(fromPos);
+            return;
+        }
         freeList.clear(fromPos, fromPos + chunks);
         if (fromPos < nextPosToSearchFrom())
             nextPosToSearchFrom(fromPos);
+        if (m.freeRunHints) {
+            // coalesce with the free chunks before the freed ones
+            long runStart = fromPos > 0L ? freeList.previousSetBit(fromPos - 1L) + 1L : 0L;
+            hintFreeRun(runStart);
+        }
     }
 
     boolean keyEquals() {
@@ -1881,13 +2705,149 @@ class VanillaContext<K, KI, MKI extends MetaBytesInterop<K, ? super KI>,
 
     void clear() {
         writeLock();
+        segmentModified();
+        if (m.journal != null)
+            journalClearSegment();
         initSegment();
-        hashLookup.clear();
-        freeList.clear();
-        nextPosToSearchFrom(0L);
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        // extra tiers are not returned to the map, they stay chained to the segment and empty
+        do {
+            hashLookup.clear();
+            if (m.slabEntries) {
+                freeSlots.clear();
+            } else {
+                freeList.clear();
+            }
+            nextPosToSearchFrom(0L);
+            if (m.freeRunHints)
+                freeRunHints.clear();
+        } while (switchToNextTier(false));
         size(0L);
     }
 
+    /**
+     * @return {@code 1 - largest free chunk run / free chunks} over all tiers of the segment,
+     * 0 if there are no free chunks
+     */
+    double fragmentationRatio() {
+        // all slab entry slots are interchangeable
+        if (m.slabEntries)
+            return 0.0;
+        initSegment();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        long freeChunks = 0L;
+        long largestFreeRun = 0L;
+        do {
+            long runStart = freeList.nextClearBit(0L);
+            while (runStart != DirectBitSet.NOT_FOUND && runStart < m.actualChunksPerSegment) {
+                long runEnd = freeList.nextSetBit(runStart);
+                if (runEnd == DirectBitSet.NOT_FOUND || runEnd > m.actualChunksPerSegment)
+                    runEnd = m.actualChunksPerSegment;
+                freeChunks += runEnd - runStart;
+                largestFreeRun = Math.max(largestFreeRun, runEnd - runStart);
+                if (runEnd == m.actualChunksPerSegment)
+                    break;
+                runStart = freeList.nextClearBit(runEnd);
+            }
+        } while (switchToNextTier(false));
+        return freeChunks == 0L ? 0.0 : 1.0 - ((double) largestFreeRun) / freeChunks;
+    }
+
+    /**
+     * @return the number of free runs, remembered in the {@link FreeRunHints} of all tiers of
+     * the segment
+     */
+    int hintedFreeRuns() {
+        if (!m.freeRunHints)
+            return 0;
+        initSegment();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        int hintedFreeRuns = 0;
+        do {
+            hintedFreeRuns += freeRunHints.count();
+        } while (switchToNextTier(false));
+        return hintedFreeRuns;
+    }
+
+    /**
+     * Moves live entries of the segment (within each tier) to the first free chunk runs before
+     * them, until the deadline. Should be called under write lock.
+     *
+     * @param deadlineNanos {@link System#nanoTime()} value, after which entries are not moved
+     * @return the number of moved entries
+     */
+    long compact(final long deadlineNanos) {
+        if (m.slabEntries)
+            return 0L;
+        initSegment();
+        if (extraTier >= 0L)
+            switchToFirstTier();
+        final long[] movedEntries = {0L};
+        do {
+            // stop at the deadline, not to hold the write lock for the rest of the hash lookup
+            hashLookup.forEachWhile(new HashLookup.EntryPredicate() {
+                @Override
+                public boolean accept(long hash, long pos) {
+                    if (System.nanoTime() - deadlineNanos >= 0L)
+                        return false;
+                    if (moveEntryBackward(hash, pos))
+                        movedEntries[0]++;
+                    return true;
+                }
+            });
+            long firstFreeChunk = freeList.nextClearBit(0L);
+            nextPosToSearchFrom(firstFreeChunk != DirectBitSet.NOT_FOUND &&
+                    firstFreeChunk < m.actualChunksPerSegment ? firstFreeChunk : 0L);
+        } while (System.nanoTime() - deadlineNanos < 0L && switchToNextTier(false));
+        return movedEntries[0];
+    }
+
+    private boolean moveEntryBackward(long hash, long entryPos) {
+        pos = entryPos;
+        initKeyFromPos();
+        int chunks;
+        try {
+            initEntrySizeInChunks();
+            chunks = entrySizeInChunks;
+        } finally {
+            closeEntrySizeInChunks();
+            closeKeySearch();
+        }
+        long firstFreeChunk = freeList.nextClearBit(0L);
+        if (firstFreeChunk == DirectBitSet.NOT_FOUND || firstFreeChunk + chunks > entryPos)
+            return false;
+        long newPos = freeList.setNextNContinuousClearBits(firstFreeChunk, chunks);
+        if (newPos == DirectBitSet.NOT_FOUND)
+            return false;
+        if (newPos >= entryPos) {
+            freeList.clear(newPos, newPos + chunks);
+            return false;
+        }
+        segmentModified();
+        long entrySpaceAddress = m.ms.address() + entrySpaceOffset;
+        UNSAFE.copyMemory(entrySpaceAddress + entryPos * m.chunkSize,
+                entrySpaceAddress + newPos * m.chunkSize, chunks * m.chunkSize);
+        hashLookup.init0(hash);
+        hashLookup.initSearch0();
+        long foundPos;
+        while ((foundPos = hashLookup.nextPos()) >= 0L && foundPos != entryPos);
+        if (foundPos == entryPos) {
+            hashLookup.found();
+            hashLookup.putVolatile(newPos);
+        }
+        hashLookup.closeSearch0();
+        hashLookup.close0();
+        if (foundPos != entryPos) {
+            throw new IllegalStateException("Entry at " + entryPos +
+                    " is not found in hash lookup");
+        }
+        freeList.clear(entryPos, entryPos + chunks);
+        return true;
+    }
+
 
     /////////////////////////////////////////////////
     // Iteration
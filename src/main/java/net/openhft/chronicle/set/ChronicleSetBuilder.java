@@ -20,6 +20,8 @@ package net.openhft.chronicle.set;
 
 import net.openhft.chronicle.hash.ChronicleHashBuilder;
 import net.openhft.chronicle.hash.ChronicleHashInstanceBuilder;
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
+import net.openhft.chronicle.hash.locks.LockingStrategy;
 import net.openhft.chronicle.hash.replication.SingleChronicleHashReplication;
 import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
 import net.openhft.chronicle.hash.replication.TimeProvider;
@@ -82,6 +84,36 @@ public final class ChronicleSetBuilder<K>
         return this;
     }
 
+    @Override
+    public ChronicleSetBuilder<K> maxExtraTiers(long maxExtraTiers) {
+        chronicleMapBuilder.maxExtraTiers(maxExtraTiers);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> lockTimeOut(long lockTimeOut, TimeUnit unit) {
+        chronicleMapBuilder.lockTimeOut(lockTimeOut, unit);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> lockingStrategy(@NotNull LockingStrategy lockingStrategy) {
+        chronicleMapBuilder.lockingStrategy(lockingStrategy);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> keyHashFunction(@NotNull LongHashFunction keyHashFunction) {
+        chronicleMapBuilder.keyHashFunction(keyHashFunction);
+        return this;
+    }
+
+    @Override
+    public ChronicleSetBuilder<K> seededKeyHashing(boolean seededKeyHashing) {
+        chronicleMapBuilder.seededKeyHashing(seededKeyHashing);
+        return this;
+    }
+
     @Override
     public ChronicleSetBuilder<K> minSegments(int minSegments) {
         chronicleMapBuilder.minSegments(minSegments);
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.xstream;
+
+import com.thoughtworks.xstream.io.AbstractDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * XStream driver, which writes and reads JSON token by token, without building an object model
+ * of the whole document, so a map of any size is exported and imported within a few kilobytes
+ * of heap (plus the size of the largest single key or value).
+ *
+ * <p>Layout: each node is a single-member object: <code>{"name": content}</code>. The content
+ * of a node with only a text value is a string (an empty string, if the node has neither value
+ * nor children). The content of a node with attributes or children is an array of the node
+ * items: attributes <code>{"@attribute": "value"}</code> go first, then the text value
+ * <code>{"$": "text"}</code>, if any, then child nodes. For example, a map of one entry is
+ * exported as
+ * <pre>{"cmap":[{"entry":[{"java.lang.Integer":"1"},{"java.lang.String":"one"}]}]}</pre>
+ *
+ * <p>On read, numbers, {@code true} and {@code false} are accepted as text values as well.
+ * Documents are read and written in UTF-8.
+ */
+public class StreamingJsonDriver extends AbstractDriver {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Override
+    public HierarchicalStreamReader createReader(Reader in) {
+        return new StreamingJsonReader(in);
+    }
+
+    @Override
+    public HierarchicalStreamReader createReader(InputStream in) {
+        return createReader(new InputStreamReader(in, UTF_8));
+    }
+
+    @Override
+    public HierarchicalStreamWriter createWriter(Writer out) {
+        return new StreamingJsonWriter(out);
+    }
+
+    @Override
+    public HierarchicalStreamWriter createWriter(OutputStream out) {
+        return createWriter(new OutputStreamWriter(out, UTF_8));
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.xstream;
+
+import com.thoughtworks.xstream.converters.ErrorWriter;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.StreamException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pulls JSON tokens from the underlying reader as the nodes are visited, keeping only the names,
+ * attributes and text values of the nodes on the current path. Children, which are not visited
+ * before {@link #moveUp()}, are skipped without parsing. See {@link StreamingJsonDriver} for
+ * the layout.
+ */
+public class StreamingJsonReader implements HierarchicalStreamReader {
+
+    private static final class Node {
+        String name;
+        String value;
+        final List<String> attributeNames = new ArrayList<>();
+        final List<String> attributeValues = new ArrayList<>();
+        /**
+         * The name of the next child, which key is already read, but the content is not,
+         * {@code null} if there are no more children
+         */
+        String nextChild;
+
+        void reset(String name) {
+            this.name = name;
+            value = null;
+            attributeNames.clear();
+            attributeValues.clear();
+            nextChild = null;
+        }
+    }
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+    /**
+     * The number of chars, read before the current buffer, for error messages
+     */
+    private long bufferOffset = 0L;
+    /**
+     * If the end of the underlying reader is reached
+     */
+    private boolean endOfInput = false;
+    private final StringBuilder text = new StringBuilder();
+    private Node[] nodes = new Node[16];
+    private int depth = 0;
+
+    public StreamingJsonReader(Reader in) {
+        this(in, true);
+    }
+
+    /**
+     * Checks if the document, which starts with the given chars, is in the {@linkplain
+     * StreamingJsonDriver streaming layout}, rather than in the layout of {@code
+     * JettisonMappedXmlDriver}, used by earlier versions: reads the root node up to the end
+     * of its first grandchild (in a map export, the key of the first entry). Jettison writes
+     * nodes with children as objects with several members, that breaks the streaming layout
+     * before the first grandchild ends. If the grandchild doesn't end within the given chars,
+     * the layout is assumed to be streaming.
+     *
+     * @param head the first chars of the document
+     * @param truncated if the document is longer than the given head
+     * @return {@code true} if the document is in the streaming layout
+     */
+    public static boolean isStreamingLayout(String head, boolean truncated) {
+        StreamingJsonReader reader = new StreamingJsonReader(new StringReader(head), false);
+        try {
+            reader.readRoot();
+            if (reader.hasMoreChildren()) {
+                reader.moveDown();
+                if (reader.hasMoreChildren()) {
+                    reader.moveDown();
+                    reader.endNode();
+                }
+            }
+            return true;
+        } catch (StreamException e) {
+            return truncated && reader.endOfInput;
+        }
+    }
+
+    private StreamingJsonReader(Reader in, boolean readRoot) {
+        this.in = in;
+        if (readRoot)
+            readRoot();
+    }
+
+    private void readRoot() {
+        expect('{');
+        String rootName = readString();
+        expect(':');
+        openNode(rootName);
+    }
+
+    private Node current() {
+        return nodes[depth - 1];
+    }
+
+    /**
+     * Reads attribute and text value items of the node, until the next child, which key is
+     * read, or the end of the items array
+     */
+    private void readItems(Node node) {
+        do {
+            if (peek() == '"') {
+                // a bare text item, Jettison writes an empty node as [""]
+                node.value = readString();
+                continue;
+            }
+            expect('{');
+            String key = readString();
+            if (!key.startsWith("@") && !"$".equals(key)) {
+                expect(':');
+                node.nextChild = key;
+                return;
+            }
+            expect(':');
+            String value = peek() == '"' ? readString() : readLiteral();
+            if ("$".equals(key)) {
+                node.value = value;
+            } else {
+                node.attributeNames.add(key.substring(1));
+                node.attributeValues.add(value);
+            }
+            expect('}');
+        } while (nextItem());
+    }
+
+    /**
+     * @return {@code true} if there is the next item in the array, {@code false} if the end
+     * of the array is consumed
+     */
+    private boolean nextItem() {
+        char c = next();
+        if (c == ',')
+            return true;
+        if (c == ']')
+            return false;
+        throw error("',' or ']' expected");
+    }
+
+    @Override
+    public boolean hasMoreChildren() {
+        return current().nextChild != null;
+    }
+
+    @Override
+    public void moveDown() {
+        Node parent = current();
+        String name = parent.nextChild;
+        if (name == null)
+            throw new StreamException("Node " + parent.name + " has no more children");
+        parent.nextChild = null;
+        openNode(name);
+    }
+
+    /**
+     * Pushes the node, which key and ':' are just read, and reads its content up to the first
+     * child
+     */
+    private void openNode(String name) {
+        if (depth == nodes.length)
+            nodes = Arrays.copyOf(nodes, depth * 2);
+        Node node = nodes[depth];
+        if (node == null)
+            nodes[depth] = node = new Node();
+        depth++;
+        node.reset(name);
+        readContent(node);
+    }
+
+    private void readContent(Node node) {
+        char c = peek();
+        if (c == '[') {
+            position++;
+            if (peek() == ']') {
+                position++;
+            } else {
+                readItems(node);
+            }
+        } else if (c == '"') {
+            node.value = readString();
+        } else if (c == '{') {
+            // Jettison layout writes nodes with children as objects
+            throw error("'[' or a value expected");
+        } else {
+            node.value = readLiteral();
+        }
+    }
+
+    @Override
+    public void moveUp() {
+        endNode();
+        if (depth > 0 && nextItem())
+            readItems(current());
+    }
+
+    /**
+     * Skips the children of the current node, which were not visited, and pops the node
+     */
+    private void endNode() {
+        Node node = current();
+        while (node.nextChild != null) {
+            node.nextChild = null;
+            skipValue();
+            expect('}');
+            if (nextItem())
+                readItems(node);
+        }
+        expect('}');
+        depth--;
+    }
+
+    @Override
+    public String getNodeName() {
+        return current().name;
+    }
+
+    @Override
+    public String getValue() {
+        String value = current().value;
+        return value != null ? value : "";
+    }
+
+    @Override
+    public String getAttribute(String name) {
+        Node node = current();
+        int index = node.attributeNames.indexOf(name);
+        return index >= 0 ? node.attributeValues.get(index) : null;
+    }
+
+    @Override
+    public String getAttribute(int index) {
+        return current().attributeValues.get(index);
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return current().attributeNames.size();
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        return current().attributeNames.get(index);
+    }
+
+    @Override
+    public Iterator getAttributeNames() {
+        return current().attributeNames.iterator();
+    }
+
+    @Override
+    public void appendErrors(ErrorWriter errorWriter) {
+        errorWriter.add("json offset", String.valueOf(bufferOffset + position));
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new StreamException(e);
+        }
+    }
+
+    @Override
+    public HierarchicalStreamReader underlyingReader() {
+        return this;
+    }
+
+    /////////////////////////////////////////////////
+    // Tokenizer
+
+    private boolean fill() {
+        try {
+            bufferOffset += limit;
+            position = 0;
+            limit = Math.max(in.read(buffer), 0);
+            endOfInput = limit == 0;
+            return limit > 0;
+        } catch (IOException e) {
+            throw new StreamException(e);
+        }
+    }
+
+    private char readChar() {
+        if (position == limit && !fill())
+            throw error("Unexpected end of JSON document");
+        return buffer[position++];
+    }
+
+    /**
+     * Skips whitespace and returns the next char without consuming it
+     */
+    private char peek() {
+        while (true) {
+            if (position == limit && !fill())
+                throw error("Unexpected end of JSON document");
+            char c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return c;
+            position++;
+        }
+    }
+
+    private char next() {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private void expect(char expected) {
+        if (next() != expected)
+            throw error("'" + expected + "' expected");
+    }
+
+    private String readString() {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            if (position == limit && !fill())
+                throw error("Unexpected end of JSON document");
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+            if (position == limit)
+                continue;
+            if (buffer[position++] == '"')
+                return text.toString();
+            char c = readChar();
+            switch (c) {
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(readChar(), 16);
+                        if (digit < 0)
+                            throw error("Invalid unicode escape");
+                        code = (code << 4) | digit;
+                    }
+                    text.append((char) code);
+                    break;
+                default:
+                    // '"', '\\', '/'
+                    text.append(c);
+            }
+        }
+    }
+
+    /**
+     * Reads a number, {@code true}, {@code false} or {@code null} (returned as {@code null})
+     */
+    private String readLiteral() {
+        peek();
+        text.setLength(0);
+        while (position < limit || fill()) {
+            char c = buffer[position];
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' ||
+                    c == '\t') {
+                break;
+            }
+            text.append(c);
+            position++;
+        }
+        if (text.length() == 0)
+            throw error("Value expected");
+        String literal = text.toString();
+        return "null".equals(literal) ? null : literal;
+    }
+
+    private void skipString() {
+        expect('"');
+        char c;
+        while ((c = readChar()) != '"') {
+            if (c == '\\')
+                readChar();
+        }
+    }
+
+    /**
+     * Skips a JSON value of any structure, without building it
+     */
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            skipString();
+            return;
+        }
+        if (c != '[' && c != '{') {
+            readLiteral();
+            return;
+        }
+        int nesting = 0;
+        do {
+            c = peek();
+            if (c == '"') {
+                skipString();
+                continue;
+            }
+            position++;
+            if (c == '[' || c == '{') {
+                nesting++;
+            } else if (c == ']' || c == '}') {
+                nesting--;
+            }
+        } while (nesting > 0);
+    }
+
+    private StreamException error(String message) {
+        return new StreamException(message + " at offset " + (bufferOffset + position));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.xstream;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.StreamException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON tokens straight to the underlying writer, keeping only the states of open nodes.
+ * See {@link StreamingJsonDriver} for the layout.
+ */
+public class StreamingJsonWriter implements HierarchicalStreamWriter {
+
+    /**
+     * The node name is written, the content is not started yet
+     */
+    private static final byte PENDING = 0;
+    /**
+     * The content is a string value
+     */
+    private static final byte VALUE = 1;
+    /**
+     * The content is an array with at least one item
+     */
+    private static final byte ITEMS = 2;
+
+    private final Writer out;
+    private byte[] states = new byte[16];
+    private int depth = 0;
+    private boolean rootWritten = false;
+
+    public StreamingJsonWriter(Writer out) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+    }
+
+    @Override
+    public void startNode(String name) {
+        if (depth > 0) {
+            startItem();
+        } else if (rootWritten) {
+            throw new StreamException("JSON document should have a single root node");
+        }
+        if (depth == states.length)
+            states = Arrays.copyOf(states, depth * 2);
+        states[depth++] = PENDING;
+        rootWritten = true;
+        write('{');
+        writeString(name);
+        write(':');
+    }
+
+    /**
+     * Starts the array content of the current node, if not yet, or separates the next item
+     */
+    private void startItem() {
+        switch (states[depth - 1]) {
+            case PENDING:
+                write('[');
+                states[depth - 1] = ITEMS;
+                break;
+            case ITEMS:
+                write(',');
+                break;
+            default:
+                throw new StreamException("Node with a text value couldn't have " +
+                        "attributes or children");
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, String value) {
+        checkOpenNode();
+        startItem();
+        write('{');
+        writeString("@" + name);
+        write(':');
+        writeString(value);
+        write('}');
+    }
+
+    @Override
+    public void setValue(String text) {
+        checkOpenNode();
+        if (states[depth - 1] == PENDING) {
+            writeString(text);
+            states[depth - 1] = VALUE;
+        } else {
+            startItem();
+            write('{');
+            writeString("$");
+            write(':');
+            writeString(text);
+            write('}');
+        }
+    }
+
+    @Override
+    public void endNode() {
+        checkOpenNode();
+        switch (states[--depth]) {
+            case PENDING:
+                writeString("");
+                break;
+            case ITEMS:
+                write(']');
+                break;
+        }
+        write('}');
+        if (depth == 0)
+            flush();
+    }
+
+    private void checkOpenNode() {
+        if (depth == 0)
+            throw new StreamException("No open node");
+    }
+
+    private void write(char c) {
+        try {
+            out.write(c);
+        } catch (IOException e) {
+            throw new StreamException(e);
+        }
+    }
+
+    private void writeString(String s) {
+        try {
+            out.write('"');
+            int from = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\')
+                    continue;
+                out.write(s, from, i - from);
+                from = i + 1;
+                switch (c) {
+                    case '"':
+                        out.write("\\\"");
+                        break;
+                    case '\\':
+                        out.write("\\\\");
+                        break;
+                    case '\n':
+                        out.write("\\n");
+                        break;
+                    case '\r':
+                        out.write("\\r");
+                        break;
+                    case '\t':
+                        out.write("\\t");
+                        break;
+                    default:
+                        out.write("\\u00");
+                        out.write(Character.forDigit(c >> 4, 16));
+                        out.write(Character.forDigit(c & 0xF, 16));
+                }
+            }
+            out.write(s, from, s.length() - from);
+            out.write('"');
+        } catch (IOException e) {
+            throw new StreamException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new StreamException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new StreamException(e);
+        }
+    }
+
+    @Override
+    public HierarchicalStreamWriter underlyingWriter() {
+        return this;
+    }
+}
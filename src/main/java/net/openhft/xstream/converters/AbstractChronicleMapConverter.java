@@ -24,6 +24,7 @@ import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import net.openhft.lang.model.DataValueClasses;
+import net.openhft.xstream.StreamingJsonReader;
 import net.openhft.lang.model.constraints.NotNull;
 
 import java.util.Collections;
@@ -77,12 +78,36 @@ class AbstractChronicleMapConverter<K, V> implements Converter {
     @Override
     public Object unmarshal(HierarchicalStreamReader reader,
                             UnmarshallingContext context) {
+        if (!(reader.underlyingReader() instanceof StreamingJsonReader))
+            return unmarshalJettisonLayout(reader, context);
+        // empty map
+        if (!reader.hasMoreChildren())
+            return null;
+        if (!"cmap".equals(reader.getNodeName()))
+            throw new ConversionException("should be under 'cmap' node");
+        // entries are put as they are read, the reader doesn't keep the read entries
+        readEntries(reader, context);
+        return null;
+    }
+
+    /**
+     * Files, exported by earlier versions, are read by {@code JettisonMappedXmlDriver}, which
+     * adds an extra nesting level under the 'cmap' node
+     */
+    private Object unmarshalJettisonLayout(HierarchicalStreamReader reader,
+                                           UnmarshallingContext context) {
         // empty map
         if ("[\"\"]".equals(reader.getValue()))
             return null;
         if (!"cmap".equals(reader.getNodeName()))
             throw new ConversionException("should be under 'cmap' node");
         reader.moveDown();
+        readEntries(reader, context);
+        reader.moveUp();
+        return null;
+    }
+
+    private void readEntries(HierarchicalStreamReader reader, UnmarshallingContext context) {
         while (reader.hasMoreChildren()) {
             reader.moveDown();
 
@@ -107,8 +132,6 @@ class AbstractChronicleMapConverter<K, V> implements Converter {
 
             reader.moveUp();
         }
-        reader.moveUp();
-        return null;
     }
 
     private static <E> E deserialize(@NotNull UnmarshallingContext unmarshallingContext,
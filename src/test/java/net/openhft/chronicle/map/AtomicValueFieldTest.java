@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.lang.values.IntValue;
+import net.openhft.lang.values.LongValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static net.openhft.chronicle.map.Alignment.OF_8_BYTES;
+
+public class AtomicValueFieldTest {
+
+    static ChronicleMap<Integer, LongValue> newLongValueMap() {
+        return ChronicleMapBuilder.of(Integer.class, LongValue.class)
+                .entries(1000).entryAndValueAlignment(OF_8_BYTES).create();
+    }
+
+    @Test
+    public void testLongFieldOperations() {
+        try (ChronicleMap<Integer, LongValue> map = newLongValueMap()) {
+            // absent key, the default (zero) value is put first
+            Assert.assertEquals(5L, map.addAndGetLong(1, 0, 5L));
+            Assert.assertEquals(5L, map.getAndAddLong(1, 0, 3L));
+            Assert.assertEquals(8L, map.get(1).getValue());
+            Assert.assertFalse(map.compareAndSwapLong(1, 0, 7L, 10L));
+            Assert.assertTrue(map.compareAndSwapLong(1, 0, 8L, 10L));
+            Assert.assertEquals(10L, map.get(1).getValue());
+            Assert.assertEquals(1, map.size());
+        }
+    }
+
+    @Test
+    public void testIntFieldOperations() {
+        try (ChronicleMap<Integer, IntValue> map = ChronicleMapBuilder
+                .of(Integer.class, IntValue.class).entries(1000)
+                .entryAndValueAlignment(Alignment.OF_4_BYTES).create()) {
+            Assert.assertEquals(2, map.addAndGetInt(1, 0, 2));
+            Assert.assertEquals(2, map.getAndAddInt(1, 0, 2));
+            Assert.assertTrue(map.compareAndSwapInt(1, 0, 4, 0));
+            Assert.assertEquals(0, map.get(1).getValue());
+        }
+    }
+
+    @Test
+    public void testJournaledMapRejectsFieldOperations() throws IOException {
+        File mapFile = File.createTempFile("atomic", ".map");
+        File journalFile = File.createTempFile("atomic", ".journal");
+        try (ChronicleMap<Integer, LongValue> map = ChronicleMapBuilder
+                .of(Integer.class, LongValue.class).entries(1000)
+                .entryAndValueAlignment(OF_8_BYTES).journal(journalFile)
+                .createPersistedTo(mapFile)) {
+            try {
+                map.addAndGetLong(1, 0, 5L);
+                Assert.fail("field updates are not journaled, should be rejected");
+            } catch (UnsupportedOperationException expected) {
+                // expected
+            }
+            Assert.assertEquals(0, map.size());
+        } finally {
+            mapFile.delete();
+            journalFile.delete();
+            new File(journalFile.getPath() + ".1").delete();
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testFieldOutOfValue() {
+        try (ChronicleMap<Integer, LongValue> map = newLongValueMap()) {
+            map.addAndGetLong(1, 4, 1L);
+        }
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        final int threads = 4;
+        final int increments = 100000;
+        try (final ChronicleMap<Integer, LongValue> map = newLongValueMap()) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < increments; i++) {
+                                map.addAndGetLong(i & 7, 0, 1L);
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdown();
+            }
+            long total = 0L;
+            for (int k = 0; k < 8; k++) {
+                total += map.get(k).getValue();
+            }
+            Assert.assertEquals((long) threads * increments, total);
+        }
+    }
+}
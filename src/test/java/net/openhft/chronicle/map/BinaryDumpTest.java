@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class BinaryDumpTest {
+
+    static ChronicleMap<Integer, String> newMap() {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(10000).averageValueSize(10).create();
+    }
+
+    static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("dump", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    static void dumpAndLoad(String suffix, boolean checksums) throws IOException {
+        File dump = tempFile(suffix);
+        try (ChronicleMap<Integer, String> map = newMap();
+             ChronicleMap<Integer, String> loaded = newMap()) {
+            for (int i = 0; i < 10000; i++) {
+                map.put(i, "value" + i);
+            }
+            map.dumpTo(dump, checksums);
+            loaded.put(0, "overwritten");
+            loaded.put(-1, "kept");
+            loaded.loadFrom(dump);
+            Assert.assertEquals(10001, loaded.size());
+            for (int i = 0; i < 10000; i++) {
+                Assert.assertEquals("value" + i, loaded.get(i));
+            }
+            Assert.assertEquals("kept", loaded.get(-1));
+        } finally {
+            dump.delete();
+        }
+    }
+
+    @Test
+    public void testDumpAndLoad() throws IOException {
+        dumpAndLoad(".dump", false);
+    }
+
+    @Test
+    public void testDumpAndLoadWithChecksums() throws IOException {
+        dumpAndLoad(".dump", true);
+    }
+
+    @Test
+    public void testGzippedDumpAndLoad() throws IOException {
+        dumpAndLoad(".dump.gz", true);
+    }
+
+    @Test
+    public void testEmptyMap() throws IOException {
+        File dump = tempFile(".dump");
+        try (ChronicleMap<Integer, String> map = newMap();
+             ChronicleMap<Integer, String> loaded = newMap()) {
+            map.dumpTo(dump, true);
+            loaded.loadFrom(dump);
+            Assert.assertEquals(0, loaded.size());
+        } finally {
+            dump.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testChecksumMismatch() throws IOException {
+        File dump = tempFile(".dump");
+        try (ChronicleMap<Integer, String> map = newMap();
+             ChronicleMap<Integer, String> loaded = newMap()) {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "value" + i);
+            }
+            map.dumpTo(dump, true);
+            try (RandomAccessFile raf = new RandomAccessFile(dump, "rw")) {
+                // the last byte of the payload of the last block, before its checksum
+                // and the end marker
+                long pos = raf.length() - 9L;
+                raf.seek(pos);
+                int b = raf.read();
+                raf.seek(pos);
+                raf.write(b ^ 1);
+            }
+            loaded.loadFrom(dump);
+        } finally {
+            dump.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedDump() throws IOException {
+        File dump = tempFile(".dump");
+        try (ChronicleMap<Integer, String> map = newMap();
+             ChronicleMap<Integer, String> loaded = newMap()) {
+            map.put(1, "value1");
+            map.dumpTo(dump, false);
+            try (RandomAccessFile raf = new RandomAccessFile(dump, "rw")) {
+                // cut the end marker
+                raf.setLength(raf.length() - 4L);
+            }
+            loaded.loadFrom(dump);
+        } finally {
+            dump.delete();
+        }
+    }
+}
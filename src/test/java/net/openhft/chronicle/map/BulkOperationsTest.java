@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class BulkOperationsTest {
+
+    static ChronicleMap<Integer, CharSequence> newMap() {
+        return ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                .entries(10000).actualSegments(16).create();
+    }
+
+    @Test
+    public void testPutAllGetAllRemoveAll() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            Map<Integer, CharSequence> batch = new HashMap<>();
+            for (int i = 0; i < 5000; i++) {
+                batch.put(i, "value" + i);
+            }
+            map.putAll(batch);
+            Assert.assertEquals(5000, map.size());
+
+            List<Integer> keys = new ArrayList<>();
+            for (int i = 4000; i < 6000; i++) {
+                keys.add(i);
+            }
+            Map<Integer, CharSequence> result = new HashMap<>();
+            map.getAll(keys, result);
+            Assert.assertEquals(1000, result.size());
+            for (int i = 4000; i < 5000; i++) {
+                Assert.assertEquals("value" + i, result.get(i).toString());
+            }
+
+            Assert.assertTrue(map.removeAll(keys));
+            Assert.assertEquals(4000, map.size());
+            Assert.assertFalse(map.removeAll(keys));
+            for (int i = 0; i < 4000; i++) {
+                Assert.assertEquals("value" + i, map.get(i).toString());
+            }
+        }
+    }
+
+    @Test
+    public void testPutAllOverwrites() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            map.put(1, "old");
+            Map<Integer, CharSequence> batch = new HashMap<>();
+            batch.put(1, "new");
+            batch.put(2, "two");
+            map.putAll(batch);
+            Assert.assertEquals(2, map.size());
+            Assert.assertEquals("new", map.get(1).toString());
+            Assert.assertEquals("two", map.get(2).toString());
+        }
+    }
+
+    @Test
+    public void testGroupBySegment() {
+        try (ChronicleMap<Integer, CharSequence> map = newMap()) {
+            VanillaChronicleMap<Integer, ?, ?, CharSequence, ?, ?> vanillaMap =
+                    (VanillaChronicleMap<Integer, ?, ?, CharSequence, ?, ?>) map;
+            Object[] keys = new Object[1000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = i;
+            }
+            long[] hashes = new long[keys.length];
+            int[] segmentStarts = new int[vanillaMap.actualSegments + 1];
+            int[] order = vanillaMap.groupBySegment(keys, hashes, segmentStarts);
+            Assert.assertEquals(keys.length, segmentStarts[vanillaMap.actualSegments]);
+            boolean[] seen = new boolean[keys.length];
+            for (int s = 0; s < vanillaMap.actualSegments; s++) {
+                for (int j = segmentStarts[s]; j < segmentStarts[s + 1]; j++) {
+                    int i = order[j];
+                    Assert.assertFalse(seen[i]);
+                    seen[i] = true;
+                    try (VanillaContext<Integer, ?, ?, CharSequence, ?, ?> c =
+                                 vanillaMap.context((Integer) keys[i])) {
+                        c.initSegmentIndex();
+                        Assert.assertEquals(s, c.segmentIndex);
+                        Assert.assertEquals(c.hash, hashes[i]);
+                    }
+                }
+            }
+        }
+    }
+}
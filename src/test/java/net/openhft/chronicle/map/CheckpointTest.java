@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.map.Alignment.OF_8_BYTES;
+
+public class CheckpointTest {
+
+    @Test
+    public void testOnlyDirtySegmentsAreForced() throws IOException {
+        File file = File.createTempFile("checkpoint", ".map");
+        file.deleteOnExit();
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(10000).actualSegments(16).entryAndValueAlignment(OF_8_BYTES)
+                .createPersistedTo(file)) {
+            VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+            long segmentBytes = vanillaMap.segmentHeaderSize + vanillaMap.segmentSize;
+            // the first checkpoint forces the map header
+            Assert.assertTrue(
+                    vanillaMap.checkpointer.checkpoint() >= vanillaMap.segmentHeadersOffset);
+            Assert.assertEquals(0L, vanillaMap.checkpointer.checkpoint());
+
+            map.put(1, 1L);
+            Assert.assertEquals(segmentBytes, vanillaMap.checkpointer.checkpoint());
+            Assert.assertEquals(0L, vanillaMap.checkpointer.checkpoint());
+
+            map.get(1);
+            Assert.assertEquals(0L, vanillaMap.checkpointer.checkpoint());
+
+            // iteration holds segment update locks, but doesn't modify segments
+            long sum = 0L;
+            for (Map.Entry<Integer, Long> e : map.entrySet()) {
+                sum += e.getValue();
+            }
+            Assert.assertEquals(1L, sum);
+            Assert.assertEquals(0L, vanillaMap.checkpointer.checkpoint());
+
+            // atomic field updates are made under the read lock
+            map.addAndGetLong(1, 0L, 1L);
+            Assert.assertEquals(segmentBytes, vanillaMap.checkpointer.checkpoint());
+
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, (long) i);
+            }
+            Assert.assertEquals(16L * segmentBytes, vanillaMap.checkpointer.checkpoint());
+            map.checkpoint();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBackgroundCheckpoints() throws IOException, InterruptedException {
+        File file = File.createTempFile("checkpoint", ".map");
+        file.deleteOnExit();
+        try {
+            ChronicleMapBuilder<Integer, Long> builder =
+                    ChronicleMapBuilder.of(Integer.class, Long.class).entries(10000)
+                            .checkpointInterval(10L, TimeUnit.MILLISECONDS);
+            try (ChronicleMap<Integer, Long> map = builder.createPersistedTo(file)) {
+                map.put(1, 1L);
+                Thread.sleep(200L);
+                Assert.assertEquals(0L,
+                        ((VanillaChronicleMap) map).checkpointer.checkpoint());
+            }
+            try (ChronicleMap<Integer, Long> map = builder.createPersistedTo(file)) {
+                Assert.assertEquals((Long) 1L, map.get(1));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testInMemoryMapCheckpointIsNoOp() throws IOException {
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(10000).checkpointInterval(10L, TimeUnit.MILLISECONDS).create()) {
+            map.put(1, 1L);
+            map.checkpoint();
+            Assert.assertNull(((VanillaChronicleMap) map).checkpointer);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.thoughtworks.xstream.io.json.JettisonMappedXmlDriver;
 import net.openhft.chronicle.hash.replication.TcpTransportAndNetworkConfig;
 import net.openhft.chronicle.map.fromdocs.BondVOInterface;
 import net.openhft.lang.values.LongValue;
+import net.openhft.xstream.converters.VanillaChronicleMapConverter;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -49,6 +50,28 @@ public class ChronicleMapImportExportTest {
         }
     }
 
+    @Test
+    public void testEmptyMap() throws IOException {
+        File file = new File(TMP + "/chronicle-map-" + System.nanoTime() + ".json");
+        file.deleteOnExit();
+
+        ChronicleMapBuilder<String, String> builder = ChronicleMapBuilder
+                .of(String.class, String.class)
+                .averageKeySize(10).averageValueSize(10)
+                .entries(1000);
+        try (ChronicleMap<String, String> expected = builder.create()) {
+            expected.getAll(file);
+
+            try (ChronicleMap<String, String> actual = builder.create()) {
+                actual.putAll(file);
+
+                Assert.assertTrue(actual.isEmpty());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     @Test
     public void testWithMapValue() throws IOException, InterruptedException {
 
@@ -162,6 +185,38 @@ public class ChronicleMapImportExportTest {
     }
 
 
+    @Test
+    public void testImportOfJettisonLayout() throws IOException {
+        File file = new File(TMP + "/chronicle-map-" + System.nanoTime() + ".json");
+        file.deleteOnExit();
+
+        ChronicleMapBuilder<Integer, String> builder = ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .averageValueSize(10)
+                .entries(1000);
+        try (ChronicleMap<Integer, String> expected = builder.create()) {
+            expected.put(1, "one");
+            expected.put(2, "two");
+
+            // the export of earlier versions
+            XStream xstream = new XStream(new JettisonMappedXmlDriver());
+            xstream.setMode(XStream.NO_REFERENCES);
+            xstream.alias("cmap", expected.getClass());
+            xstream.registerConverter(new VanillaChronicleMapConverter<>(expected));
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                xstream.toXML(expected, out);
+            }
+
+            try (ChronicleMap<Integer, String> actual = builder.create()) {
+                actual.putAll(file);
+
+                Assert.assertEquals(expected, actual);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     @Test
     public void testFromHashMap() throws IOException, InterruptedException {
 
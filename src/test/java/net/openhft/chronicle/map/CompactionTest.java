@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(value = Parameterized.class)
+public class CompactionTest {
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {HashLookupStrategy.LINEAR_PROBING},
+                {HashLookupStrategy.ROBIN_HOOD},
+                {HashLookupStrategy.GROUPED_TAGS},
+        });
+    }
+
+    private final HashLookupStrategy hashLookupStrategy;
+
+    public CompactionTest(HashLookupStrategy hashLookupStrategy) {
+        this.hashLookupStrategy = hashLookupStrategy;
+    }
+
+    private static String value(int key) {
+        char[] chars = new char[100 + (key % 10) * 100];
+        Arrays.fill(chars, (char) ('a' + key % 26));
+        return new String(chars);
+    }
+
+    private ChronicleMapBuilder<Integer, String> builder() {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(2000).averageValueSize(550).actualSegments(1)
+                .hashLookupStrategy(hashLookupStrategy);
+    }
+
+    private static void fragment(ChronicleMap<Integer, String> map,
+                                 Map<Integer, String> reference) {
+        for (int i = 0; i < 2000; i++) {
+            map.put(i, value(i));
+            reference.put(i, value(i));
+        }
+        for (int i = 0; i < 2000; i += 2) {
+            map.remove(i);
+            reference.remove(i);
+        }
+    }
+
+    @Test
+    public void testCompactSegment() {
+        Map<Integer, String> reference = new HashMap<>();
+        try (ChronicleMap<Integer, String> map = builder().create()) {
+            VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+            fragment(map, reference);
+            double fragmentationRatio = vanillaMap.segmentFragmentationRatios()[0];
+            Assert.assertTrue(fragmentationRatio > 0.5);
+
+            Assert.assertTrue(vanillaMap.compactSegment(0, TimeUnit.SECONDS.toNanos(10)) > 0L);
+            Assert.assertTrue(vanillaMap.segmentFragmentationRatios()[0] < fragmentationRatio);
+            Assert.assertEquals(reference, map);
+
+            // the map is functional after compaction
+            for (int i = 0; i < 2000; i += 2) {
+                map.put(i, value(i));
+                reference.put(i, value(i));
+            }
+            Assert.assertEquals(reference, map);
+        }
+    }
+
+    @Test
+    public void testZeroTimeSliceMovesNothing() {
+        Map<Integer, String> reference = new HashMap<>();
+        try (ChronicleMap<Integer, String> map = builder().create()) {
+            fragment(map, reference);
+            Assert.assertEquals(0L, ((VanillaChronicleMap) map).compactSegment(0, 0L));
+            Assert.assertEquals(reference, map);
+        }
+    }
+
+    @Test
+    public void testBackgroundCompaction() throws InterruptedException {
+        Map<Integer, String> reference = new HashMap<>();
+        try (ChronicleMap<Integer, String> map = builder()
+                .compactionPeriod(10, TimeUnit.MILLISECONDS).create()) {
+            VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+            fragment(map, reference);
+            double fragmentationRatio = vanillaMap.segmentFragmentationRatios()[0];
+            for (int i = 0; i < 500 &&
+                    vanillaMap.segmentFragmentationRatios()[0] >= fragmentationRatio; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(vanillaMap.segmentFragmentationRatios()[0] < fragmentationRatio);
+            Assert.assertEquals(reference, map);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class ComputeTest {
+
+    static final BiFunction<Long, Long, Long> SUM = new BiFunction<Long, Long, Long>() {
+        @Override
+        public Long apply(Long a, Long b) {
+            return a + b;
+        }
+    };
+
+    static ChronicleMap<Integer, Long> newMap() {
+        return ChronicleMapBuilder.of(Integer.class, Long.class).entries(1000).create();
+    }
+
+    @Test
+    public void testCompute() {
+        try (ChronicleMap<Integer, Long> map = newMap()) {
+            BiFunction<Integer, Long, Long> increment = new BiFunction<Integer, Long, Long>() {
+                @Override
+                public Long apply(Integer key, Long value) {
+                    return value == null ? 1L : value + 1L;
+                }
+            };
+            Assert.assertEquals((Long) 1L, map.computeLocked(1, increment));
+            Assert.assertEquals((Long) 2L, map.computeLocked(1, increment));
+            Assert.assertNull(map.computeLocked(1, new BiFunction<Integer, Long, Long>() {
+                @Override
+                public Long apply(Integer key, Long value) {
+                    return null;
+                }
+            }));
+            Assert.assertFalse(map.containsKey(1));
+            Assert.assertEquals(0, map.size());
+        }
+    }
+
+    @Test
+    public void testComputeIfAbsentAndIfPresent() {
+        try (ChronicleMap<Integer, Long> map = newMap()) {
+            Function<Integer, Long> toLong = new Function<Integer, Long>() {
+                @Override
+                public Long apply(Integer key) {
+                    return (long) key;
+                }
+            };
+            Assert.assertEquals((Long) 5L, map.computeIfAbsentLocked(5, toLong));
+            map.put(6, 60L);
+            Assert.assertEquals((Long) 60L, map.computeIfAbsentLocked(6, toLong));
+
+            BiFunction<Integer, Long, Long> doubling = new BiFunction<Integer, Long, Long>() {
+                @Override
+                public Long apply(Integer key, Long value) {
+                    return value * 2;
+                }
+            };
+            Assert.assertEquals((Long) 120L, map.computeIfPresentLocked(6, doubling));
+            Assert.assertNull(map.computeIfPresentLocked(7, doubling));
+            Assert.assertFalse(map.containsKey(7));
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        try (ChronicleMap<Integer, Long> map = newMap()) {
+            Assert.assertEquals((Long) 3L, map.mergeLocked(1, 3L, SUM));
+            Assert.assertEquals((Long) 7L, map.mergeLocked(1, 4L, SUM));
+            Assert.assertNull(map.mergeLocked(1, 1L, new BiFunction<Long, Long, Long>() {
+                @Override
+                public Long apply(Long a, Long b) {
+                    return null;
+                }
+            }));
+            Assert.assertEquals(0, map.size());
+        }
+    }
+
+    @Test
+    public void testConcurrentMerge() throws Exception {
+        final int threads = 4;
+        final int increments = 10000;
+        try (final ChronicleMap<Integer, Long> map = newMap()) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < increments; i++) {
+                                map.mergeLocked(i % 10, 1L, SUM);
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdown();
+            }
+            for (int k = 0; k < 10; k++) {
+                Assert.assertEquals((Long) (long) (threads * increments / 10), map.get(k));
+            }
+        }
+    }
+}
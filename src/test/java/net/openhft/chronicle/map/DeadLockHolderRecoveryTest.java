@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.map.BigSegmentHeader.*;
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+public class DeadLockHolderRecoveryTest {
+
+    // greater than any pid_max
+    static final long DEAD_PROCESS_ID = Integer.MAX_VALUE;
+
+    static long segmentHeaderAddress(ChronicleMap<Integer, Integer> map) {
+        VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?> vanillaMap =
+                (VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?>) map;
+        return vanillaMap.ms.address() + vanillaMap.segmentHeaderOffset(0);
+    }
+
+    static void lockByDeadProcess(long segmentHeaderAddress, int countWord) {
+        UNSAFE.putLong(segmentHeaderAddress + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET,
+                (DEAD_PROCESS_ID << 32) | 1L);
+        UNSAFE.putIntVolatile(null, segmentHeaderAddress + COUNT_WORD_OFFSET, countWord);
+    }
+
+    static ChronicleMap<Integer, Integer> newMap() {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1000).actualSegments(1)
+                .lockTimeOut(100, TimeUnit.MILLISECONDS).create();
+    }
+
+    @Test
+    public void testWriteLockOfDeadProcessIsRecovered() {
+        Assume.assumeTrue(new File("/proc").isDirectory() && PROCESS_ID != 0L);
+        try (ChronicleMap<Integer, Integer> map = newMap()) {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, i);
+            }
+            long segmentHeaderAddress = segmentHeaderAddress(map);
+            lockByDeadProcess(segmentHeaderAddress, WRITE_LOCKED_COUNT_WORD);
+            // the dead process was in the middle of update
+            UNSAFE.putInt(segmentHeaderAddress + SIZE_OFFSET, 3);
+
+            Assert.assertEquals((Integer) 42, map.get(42));
+            Assert.assertEquals(100, map.size());
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals((Integer) i, map.get(i));
+            }
+            map.put(100, 100);
+            map.remove(0);
+            Assert.assertEquals(100, map.size());
+            try (VanillaContext<Integer, ?, ?, Integer, ?, ?> c =
+                         ((VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?>) map).mapContext()) {
+                c.segmentIndex = 0;
+                c.checkMultiMapsAndBitSetsConsistency();
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateLockOfDeadProcessIsRecovered() {
+        Assume.assumeTrue(new File("/proc").isDirectory() && PROCESS_ID != 0L);
+        try (ChronicleMap<Integer, Integer> map = newMap()) {
+            map.put(1, 1);
+            lockByDeadProcess(segmentHeaderAddress(map), UPDATE_PARTY);
+            map.put(2, 2);
+            Assert.assertEquals(2, map.size());
+            Assert.assertEquals((Integer) 1, map.get(1));
+        }
+    }
+
+    @Test
+    public void testLockOfAliveProcessIsNotRecovered() {
+        try (ChronicleMap<Integer, Integer> map = newMap()) {
+            map.put(1, 1);
+            long segmentHeaderAddress = segmentHeaderAddress(map);
+            // the lock holder is another thread of this process
+            UNSAFE.putLong(segmentHeaderAddress + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET,
+                    (PROCESS_ID << 32) | 1L);
+            UNSAFE.putIntVolatile(null, segmentHeaderAddress + COUNT_WORD_OFFSET,
+                    WRITE_LOCKED_COUNT_WORD);
+            try {
+                map.get(1);
+                Assert.fail("the lock of the alive process shouldn't be taken over");
+            } catch (SegmentLockTimeOutException expected) {
+                // expected
+            } finally {
+                UNSAFE.putIntVolatile(null, segmentHeaderAddress + COUNT_WORD_OFFSET, 0);
+            }
+            Assert.assertEquals((Integer) 1, map.get(1));
+        }
+    }
+
+    @Test
+    public void testUpgradedLockOfDeadProcessIsRecovered() {
+        Assume.assumeTrue(new File("/proc").isDirectory() && PROCESS_ID != 0L);
+        try (ChronicleMap<Integer, Integer> map = newMap()) {
+            map.put(1, 1);
+            long segmentHeaderAddress = segmentHeaderAddress(map);
+            BigSegmentHeader segmentHeader =
+                    ((VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?>) map).segmentHeader;
+            Assert.assertTrue(segmentHeader.tryReadLock(segmentHeaderAddress));
+            Assert.assertTrue(segmentHeader.tryUpgradeReadToUpdateLock(segmentHeaderAddress));
+            Assert.assertEquals(PROCESS_ID, UNSAFE.getLong(
+                    segmentHeaderAddress + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET) >>> 32);
+            // the holder process dies
+            UNSAFE.putLong(segmentHeaderAddress + EXCLUSIVE_LOCK_HOLDER_THREAD_ID_OFFSET,
+                    (DEAD_PROCESS_ID << 32) | 1L);
+            map.put(2, 2);
+            Assert.assertEquals(2, map.size());
+        }
+    }
+
+    @Test
+    public void testReadLockOfDeadProcessFailsWithClearError() {
+        try (ChronicleMap<Integer, Integer> map = newMap()) {
+            map.put(1, 1);
+            long segmentHeaderAddress = segmentHeaderAddress(map);
+            UNSAFE.putIntVolatile(null, segmentHeaderAddress + COUNT_WORD_OFFSET, READ_PARTY);
+            try {
+                map.put(2, 2);
+                Assert.fail("read locks are not recorded by holder, so not recovered");
+            } catch (SegmentLockTimeOutException expected) {
+                Assert.assertTrue(expected.getMessage(),
+                        expected.getMessage().startsWith("Segment 0 of "));
+                // the update lock is acquired, but couldn't be upgraded
+                Assert.assertTrue(expected.getMessage(),
+                        expected.getMessage().contains("read-locked 1 more times"));
+                Assert.assertTrue(expected.getMessage(),
+                        expected.getMessage().contains("not recorded by holder"));
+            } finally {
+                UNSAFE.putIntVolatile(null, segmentHeaderAddress + COUNT_WORD_OFFSET, 0);
+            }
+            map.put(2, 2);
+            Assert.assertEquals(2, map.size());
+        }
+    }
+
+    @Test
+    public void testUpdateLockOfDeadProcessIsReleasedDespiteReaders() {
+        Assume.assumeTrue(new File("/proc").isDirectory() && PROCESS_ID != 0L);
+        try (ChronicleMap<Integer, Integer> map = newMap()) {
+            map.put(1, 1);
+            long segmentHeaderAddress = segmentHeaderAddress(map);
+            // the dead process held the update lock, another dead process - the read lock
+            lockByDeadProcess(segmentHeaderAddress, UPDATE_PARTY + READ_PARTY);
+            try {
+                map.put(2, 2);
+                Assert.fail("the update lock couldn't be upgraded while the segment is read");
+            } catch (SegmentLockTimeOutException expected) {
+                Assert.assertTrue(expected.getMessage(),
+                        expected.getMessage().contains("read-locked 1 times"));
+            }
+            // the update lock is not left held, by the dead or the current thread
+            Assert.assertEquals(READ_PARTY, UNSAFE.getIntVolatile(null,
+                    segmentHeaderAddress + COUNT_WORD_OFFSET));
+            UNSAFE.putIntVolatile(null, segmentHeaderAddress + COUNT_WORD_OFFSET, 0);
+            Assert.assertEquals((Integer) 1, map.get(1));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ExtraTiersTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1000L).actualSegments(1).maxExtraTiers(10L);
+    }
+
+    @Test
+    public void segmentGrowsIntoExtraTiers() {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            for (int i = 0; i < 5000; i++) {
+                map.put(i, i);
+            }
+            assertEquals(5000, map.size());
+            for (int i = 0; i < 5000; i++) {
+                assertEquals((Integer) i, map.get(i));
+            }
+            for (int i = 0; i < 5000; i += 2) {
+                assertEquals((Integer) i, map.remove(i));
+            }
+            assertEquals(2500, map.size());
+            int count = 0;
+            for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+                assertEquals(1, e.getKey() & 1);
+                assertEquals(e.getKey(), e.getValue());
+                count++;
+            }
+            assertEquals(2500, count);
+            map.clear();
+            assertTrue(map.isEmpty());
+            for (int i = 0; i < 5000; i++) {
+                map.put(i, -i);
+            }
+            assertEquals((Integer) (-4999), map.get(4999));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsWhenAllExtraTiersAreAllocated() {
+        try (ChronicleMap<Integer, Integer> map = builder().maxExtraTiers(1L).create()) {
+            for (int i = 0; i < 100000; i++) {
+                map.put(i, i);
+            }
+        }
+    }
+
+    private static ChronicleMapBuilder<Integer, String> stringsBuilder() {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(100L).actualSegments(1).averageValueSize(4);
+    }
+
+    private static String largeValue(int i) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 30)
+            sb.append(i).append(' ');
+        return sb.toString();
+    }
+
+    @Test
+    public void entryIsNotLostIfRelocationFailsInFullSegment() {
+        try (ChronicleMap<Integer, String> map = stringsBuilder().create()) {
+            int entries = 0;
+            try {
+                for (; entries < 100000; entries++) {
+                    map.put(entries, "" + entries);
+                }
+            } catch (IllegalStateException e) {
+                // the segment is full
+            }
+            assertEquals(entries, map.size());
+            try {
+                map.put(0, largeValue(0));
+                fail("the segment is expected to be full");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertEquals(entries, map.size());
+            assertEquals("0", map.get(0));
+            assertEquals("0", map.remove(0));
+            assertEquals(entries - 1, map.size());
+        }
+    }
+
+    @Test
+    public void entriesAreRelocatedToExtraTiers() {
+        try (ChronicleMap<Integer, String> map = stringsBuilder().maxExtraTiers(10L).create()) {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "" + i);
+            }
+            for (int i = 0; i < 100; i++) {
+                map.put(i, largeValue(i));
+            }
+            assertEquals(100, map.size());
+            int count = 0;
+            for (Map.Entry<Integer, String> e : map.entrySet()) {
+                assertEquals(largeValue(e.getKey()), e.getValue());
+                count++;
+            }
+            assertEquals(100, count);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(largeValue(i), map.remove(i));
+            }
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    public void extraTiersArePersisted() throws IOException {
+        File file = File.createTempFile("extra-tiers", ".dat");
+        file.deleteOnExit();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            for (int i = 0; i < 5000; i++) {
+                map.put(i, i);
+            }
+        }
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            assertEquals(5000, map.size());
+            for (int i = 0; i < 5000; i++) {
+                assertEquals((Integer) i, map.get(i));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
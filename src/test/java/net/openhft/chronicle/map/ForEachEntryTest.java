@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ForEachEntryTest {
+
+    @Test
+    public void testForEachEntry() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(10000).actualSegments(8).create()) {
+            long expectedSum = 0L;
+            for (int i = 0; i < 5000; i++) {
+                map.put(i, i * 2);
+                expectedSum += i * 2;
+            }
+            final long[] countAndSum = new long[2];
+            map.forEachEntry(new Consumer<MapKeyContext<Integer>>() {
+                @Override
+                public void accept(MapKeyContext<Integer> c) {
+                    Assert.assertTrue(c.keySize() > 0);
+                    Assert.assertTrue(c.valueSize() > 0);
+                    Assert.assertTrue(c.readLock().isHeldByCurrentThread());
+                    countAndSum[0]++;
+                    countAndSum[1] += c.get();
+                }
+            });
+            Assert.assertEquals(5000L, countAndSum[0]);
+            Assert.assertEquals(expectedSum, countAndSum[1]);
+            // segment locks are released
+            map.put(1, 1);
+            Assert.assertEquals((Integer) 1, map.get(1));
+        }
+    }
+
+    @Test
+    public void testParallelForEachEntry() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100000).actualSegments(64).create()) {
+            long expectedSum = 0L;
+            for (int i = 0; i < 50000; i++) {
+                map.put(i, i);
+                expectedSum += i;
+            }
+            final AtomicLong count = new AtomicLong();
+            final AtomicLong sum = new AtomicLong();
+            map.parallelForEachEntry(new Consumer<MapKeyContext<Integer>>() {
+                @Override
+                public void accept(MapKeyContext<Integer> c) {
+                    count.incrementAndGet();
+                    sum.addAndGet(c.getUsing(null));
+                }
+            });
+            Assert.assertEquals(50000L, count.get());
+            Assert.assertEquals(expectedSum, sum.get());
+        }
+    }
+
+    @Test
+    public void testForEachEntryOfEmptyMap() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class).entries(100).create()) {
+            map.forEachEntry(new Consumer<MapKeyContext<Integer>>() {
+                @Override
+                public void accept(MapKeyContext<Integer> c) {
+                    Assert.fail("no entries expected");
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+public class FreeRunHintsTest {
+
+    @Test
+    public void testSizeClass() {
+        Assert.assertEquals(0, FreeRunHints.sizeClass(1));
+        Assert.assertEquals(1, FreeRunHints.sizeClass(2));
+        Assert.assertEquals(1, FreeRunHints.sizeClass(3));
+        Assert.assertEquals(2, FreeRunHints.sizeClass(4));
+        Assert.assertEquals(FreeRunHints.SIZE_CLASSES - 1, FreeRunHints.sizeClass(1L << 40));
+    }
+
+    @Test
+    public void testBoundedRunsPerSizeClass() {
+        long address = UNSAFE.allocateMemory(FreeRunHints.SIZE);
+        try {
+            FreeRunHints hints = new FreeRunHints();
+            hints.reuse(address, FreeRunHints.SLOTS);
+            hints.clear();
+            for (int run = 0; run < FreeRunHints.SLOTS + 2; run++) {
+                hints.push(3, run * 100L);
+            }
+            // duplicates are not remembered twice
+            hints.push(3, (FreeRunHints.SLOTS + 1) * 100L);
+            Assert.assertEquals(FreeRunHints.SLOTS, hints.count());
+            Assert.assertEquals(-1L, hints.pop(2));
+            // the most recently freed runs first, the oldest ones are forgotten
+            for (int run = FreeRunHints.SLOTS + 1; run >= 2; run--) {
+                Assert.assertEquals(run * 100L, hints.pop(3));
+            }
+            Assert.assertEquals(-1L, hints.pop(3));
+            Assert.assertEquals(0, hints.count());
+        } finally {
+            UNSAFE.freeMemory(address);
+        }
+    }
+
+    @Test
+    public void testSingleSlotLayoutOfOlderMaps() {
+        long address = UNSAFE.allocateMemory(FreeRunHints.SIZE_CLASSES * 4L);
+        try {
+            FreeRunHints hints = new FreeRunHints();
+            hints.reuse(address, FreeRunHints.slots(FreeRunHints.SIZE_CLASSES * 4L));
+            hints.clear();
+            UNSAFE.putInt(address + 5 * 4L, 43);
+            Assert.assertEquals(1, hints.count());
+            hints.push(5, 7L);
+            Assert.assertEquals(7L, hints.pop(5));
+            Assert.assertEquals(-1L, hints.pop(5));
+        } finally {
+            UNSAFE.freeMemory(address);
+        }
+    }
+
+    @Test
+    public void testAllocationUnderFragmentationUsesHints() {
+        char[] chars = new char[2000];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        Map<Integer, String> reference = new HashMap<>();
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .entries(1000).averageValueSize(1000).actualSegments(1).create()) {
+            VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+            Assert.assertTrue(vanillaMap.freeRunHints);
+            for (int i = 0; i < 500; i++) {
+                map.put(i, value);
+                reference.put(i, value);
+            }
+            // leaves many holes of the entry size, surrounded by live entries
+            for (int i = 0; i < 500; i += 2) {
+                map.remove(i);
+                reference.remove(i);
+            }
+            int hintedFreeRuns = vanillaMap.segmentHintedFreeRuns()[0];
+            Assert.assertTrue(hintedFreeRuns >= FreeRunHints.SLOTS);
+            // each new entry of the same size takes a hinted hole exactly, the hint is consumed
+            // and no remainder is hinted; entries, allocated by the free list scan, would leave
+            // the hints intact
+            for (int i = 0; i < FreeRunHints.SLOTS; i++) {
+                map.put(1000 + i, value);
+                reference.put(1000 + i, value);
+                Assert.assertEquals(hintedFreeRuns - i - 1,
+                        vanillaMap.segmentHintedFreeRuns()[0]);
+            }
+            Assert.assertEquals(reference, map);
+        }
+    }
+
+    private static String value(Random r) {
+        char[] chars = new char[200 + r.nextInt(8000)];
+        Arrays.fill(chars, (char) ('a' + r.nextInt(26)));
+        return new String(chars);
+    }
+
+    @Test
+    public void testVariableSizeValuesChurn() {
+        Random r = new Random(1);
+        Map<Integer, String> reference = new HashMap<>();
+        try (ChronicleMap<Integer, String> map = ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .entries(2000).averageValueSize(4000).actualSegments(2).create()) {
+            Assert.assertTrue(((VanillaChronicleMap) map).freeRunHints);
+            for (int i = 0; i < 20000; i++) {
+                Integer key = r.nextInt(800);
+                if (r.nextInt(3) == 0) {
+                    Assert.assertEquals(reference.remove(key), map.remove(key));
+                } else {
+                    String value = value(r);
+                    Assert.assertEquals(reference.put(key, value), map.put(key, value));
+                }
+            }
+            Assert.assertEquals(reference, map);
+        }
+    }
+}
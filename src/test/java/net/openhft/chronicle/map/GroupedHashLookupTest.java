@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import org.junit.*;
+
+import java.util.*;
+
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+public class GroupedHashLookupTest {
+
+    static final long GROUPS = 8;
+    static final int VALUE_BITS = 20;
+    static long address;
+    GroupedHashLookup lookup = new GroupedHashLookup();
+    Multimap<Long, Long> referenceMap = HashMultimap.create();
+
+    @BeforeClass
+    public static void setUp() {
+        address = UNSAFE.allocateMemory(GROUPS * GroupedHashLookup.GROUP_SIZE);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        UNSAFE.freeMemory(address);
+    }
+
+    @Before
+    public void clean() {
+        lookup.reuse(address, GROUPS * GroupedHashLookup.GROUP_SLOTS,
+                GroupedHashLookup.ENTRY_SIZE, GroupedHashLookup.keyBits(VALUE_BITS), VALUE_BITS);
+        lookup.clear();
+        referenceMap.clear();
+    }
+
+    private void put(long k, long v) {
+        lookup.init0(k);
+        lookup.initSearch0();
+        while (lookup.nextPos() >= 0L)
+            ;
+        lookup.put(v);
+        lookup.closeSearch0();
+        lookup.close0();
+        referenceMap.put(k, v);
+    }
+
+    private void remove(long k, long value) {
+        lookup.init0(k);
+        lookup.initSearch0();
+        long v;
+        while ((v = lookup.nextPos()) >= 0L && v != value)
+            ;
+        Assert.assertEquals(value, v);
+        lookup.found();
+        lookup.remove();
+        lookup.closeSearch0();
+        lookup.close0();
+        referenceMap.remove(k, value);
+    }
+
+    private void checkValuesByKey(long k) {
+        Set<Long> values = new HashSet<>();
+        lookup.init0(k);
+        lookup.initSearch0();
+        long v;
+        while ((v = lookup.nextPos()) >= 0L)
+            Assert.assertTrue(values.add(v));
+        lookup.closeSearch0();
+        lookup.close0();
+        Assert.assertEquals(new HashSet<>(referenceMap.get(k)), values);
+    }
+
+    private void checkAll() {
+        final int[] size = {0};
+        lookup.forEach(new HashLookup.EntryConsumer() {
+            @Override
+            public void accept(long key, long value) {
+                size[0]++;
+                Assert.assertTrue(referenceMap.containsEntry(key, value));
+            }
+        });
+        Assert.assertEquals(referenceMap.size(), size[0]);
+        for (Long k : referenceMap.keySet()) {
+            checkValuesByKey(k);
+        }
+    }
+
+    @Test
+    public void testPutRemoveSearch() {
+        put(1, 11);
+        put(3, 33);
+        put(1, 12);
+        put(1, 13);
+        checkAll();
+        remove(1, 12);
+        checkAll();
+        remove(1, 11);
+        remove(1, 13);
+        checkAll();
+        checkValuesByKey(1);
+    }
+
+    @Test
+    public void testGroupOverflow() {
+        // all keys have the same home group (the lowest 3 bits),
+        // 20 entries overflow the home group and the next two groups
+        for (long i = 0; i < 20; i++) {
+            put((i << 37) | 5L, i + 100);
+        }
+        checkAll();
+        for (long i = 0; i < 20; i += 3) {
+            remove((i << 37) | 5L, i + 100);
+        }
+        checkAll();
+        for (long i = 20; i < 30; i++) {
+            put((i << 37) | 5L, i + 100);
+        }
+        checkAll();
+    }
+
+    @Test
+    public void testSameTagDifferentKeys() {
+        // tags and home groups (the lowest 3 bits) are the same, keys differ in the middle
+        long tag = GroupedHashLookup.tag(2L);
+        List<Long> keys = new ArrayList<>();
+        for (long i = 0; keys.size() < 10; i++) {
+            long key = (i << 10) | 2L;
+            if (GroupedHashLookup.tag(key) == tag)
+                keys.add(key);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            put(keys.get(i), i);
+        }
+        checkAll();
+        remove(2L, 0L);
+        checkAll();
+    }
+
+    @Test
+    public void testTagsOfKeysWithFewSignificantBits() {
+        // maps with non-power-of-2 segments count leave only 33 bits of the hash for the key,
+        // but the key takes keyBits(VALUE_BITS) = 44 bits
+        HashSplitting splitting = HashSplitting.Splitting.forSegments(3);
+        Random random = new Random(0L);
+        Set<Long> tags = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            long key = splitting.segmentHash(random.nextLong());
+            Assert.assertEquals(0L, key >>> 33);
+            tags.add(GroupedHashLookup.tag(key));
+        }
+        Assert.assertEquals(128, tags.size());
+    }
+
+    @Test
+    public void testAbsentKeyInEmptyGroupDoesNotProbeFurther() {
+        put(2, 22);
+        lookup.init0(3);
+        lookup.initSearch0();
+        Assert.assertTrue(lookup.nextPos() < 0);
+    }
+
+    @Test
+    public void testMapWithGroupedTagsHashLookup() {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(10000L).hashLookupStrategy(HashLookupStrategy.GROUPED_TAGS).create()) {
+            for (long i = 0; i < 10000; i++) {
+                map.put(i, -i);
+            }
+            for (long i = 0; i < 10000; i += 2) {
+                Assert.assertEquals((Long) (-i), map.remove(i));
+            }
+            Assert.assertEquals(5000, map.size());
+            for (long i = 0; i < 10000; i++) {
+                Assert.assertEquals(i % 2 == 0 ? null : (Long) (-i), map.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testMapWithNonPowerOf2Segments() {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(10000L).actualSegments(3)
+                .hashLookupStrategy(HashLookupStrategy.GROUPED_TAGS).create()) {
+            for (long i = 0; i < 10000; i++) {
+                map.put(i, -i);
+            }
+            for (long i = 0; i < 10000; i += 2) {
+                Assert.assertEquals((Long) (-i), map.remove(i));
+            }
+            Assert.assertEquals(5000, map.size());
+            for (long i = 0; i < 10000; i++) {
+                Assert.assertEquals(i % 2 == 0 ? null : (Long) (-i), map.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.serialization.BytesInterop;
+import net.openhft.chronicle.hash.serialization.BytesReader;
+import net.openhft.lang.io.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static net.openhft.chronicle.map.BigSegmentHeader.SIZE_OFFSET;
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+public class IntegrityCheckTest {
+
+    static ChronicleMapBuilder<Integer, String> builder() {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(1000).averageValueSize(10);
+    }
+
+    static File tempFile() throws IOException {
+        File file = File.createTempFile("integrity", ".map");
+        file.deleteOnExit();
+        return file;
+    }
+
+    static VanillaChronicleMap<Integer, ?, ?, String, ?, ?> vanilla(
+            ChronicleMap<Integer, String> map) {
+        return (VanillaChronicleMap<Integer, ?, ?, String, ?, ?>) map;
+    }
+
+    static ChronicleMap<Integer, String> createWithEntries(File file) throws IOException {
+        ChronicleMap<Integer, String> map = builder().createPersistedTo(file);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "value" + i);
+        }
+        return map;
+    }
+
+    /**
+     * Breaks the size, the free list (marks a free chunk as occupied) and the hash lookup (adds
+     * a slot, pointing to the last free chunk) of the first segment
+     */
+    static void corruptFirstSegment(ChronicleMap<Integer, String> map) {
+        VanillaChronicleMap<Integer, ?, ?, String, ?, ?> vanillaMap = vanilla(map);
+        long segmentHeaderAddress = vanillaMap.ms.address() + vanillaMap.segmentHeaderOffset(0);
+        UNSAFE.putInt(segmentHeaderAddress + SIZE_OFFSET,
+                UNSAFE.getInt(segmentHeaderAddress + SIZE_OFFSET) + 5);
+        try (VanillaContext<Integer, ?, ?, String, ?, ?> c = vanillaMap.mapContext()) {
+            c.segmentIndex = 0;
+            c.initSegment();
+            c.freeList.set(vanillaMap.actualChunksPerSegment - 2L);
+            c.hashLookup.init0(12345L);
+            c.hashLookup.initSearch0();
+            while (c.hashLookup.nextPos() >= 0L);
+            c.hashLookup.putVolatile(vanillaMap.actualChunksPerSegment - 1L);
+            c.hashLookup.closeSearch0();
+            c.hashLookup.close0();
+        }
+    }
+
+    @Test
+    public void testConsistentMap() throws IOException {
+        File file = tempFile();
+        try {
+            try (ChronicleMap<Integer, String> map = createWithEntries(file)) {
+                IntegrityReport report = vanilla(map).checkIntegrity(false);
+                Assert.assertTrue(report.toString(), report.isConsistent());
+                Assert.assertEquals(100L, report.entries);
+                Assert.assertEquals(vanilla(map).actualSegments, report.segments);
+            }
+            try (ChronicleMap<Integer, String> map = builder()
+                    .integrityCheckOnOpen(IntegrityCheck.VERIFY).createPersistedTo(file)) {
+                Assert.assertEquals(100, map.size());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testVerifyThrowsOnInconsistentMap() throws IOException {
+        File file = tempFile();
+        try {
+            try (ChronicleMap<Integer, String> map = createWithEntries(file)) {
+                corruptFirstSegment(map);
+            }
+            try {
+                builder().integrityCheckOnOpen(IntegrityCheck.VERIFY).createPersistedTo(file);
+                Assert.fail("inconsistent map should fail verification");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRepair() throws IOException {
+        File file = tempFile();
+        try {
+            try (ChronicleMap<Integer, String> map = createWithEntries(file)) {
+                corruptFirstSegment(map);
+                IntegrityReport report = vanilla(map).checkIntegrity(false);
+                Assert.assertEquals(1L, report.inconsistentSegments);
+                Assert.assertEquals(1L, report.danglingSlots);
+                Assert.assertEquals(1L, report.freeListMismatches);
+                Assert.assertEquals(1L, report.sizeMismatches);
+                Assert.assertEquals(100L, report.entries);
+            }
+            try (ChronicleMap<Integer, String> map = builder()
+                    .integrityCheckOnOpen(IntegrityCheck.REPAIR).createPersistedTo(file)) {
+                Assert.assertEquals(100, map.size());
+                for (int i = 0; i < 100; i++) {
+                    Assert.assertEquals("value" + i, map.get(i));
+                }
+                VanillaChronicleMap<Integer, ?, ?, String, ?, ?> vanillaMap = vanilla(map);
+                Assert.assertTrue(vanillaMap.checkIntegrity(false).isConsistent());
+                for (int i = 0; i < vanillaMap.actualSegments; i++) {
+                    try (VanillaContext<Integer, ?, ?, String, ?, ?> c =
+                                 vanillaMap.mapContext()) {
+                        c.segmentIndex = i;
+                        c.checkMultiMapsAndBitSetsConsistency();
+                    }
+                }
+                for (int i = 100; i < 200; i++) {
+                    map.put(i, "value" + i);
+                }
+                Assert.assertEquals(200, map.size());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Hashes keys not as their serialized form
+     */
+    enum CustomHashIntegerInterop implements BytesInterop<Integer>, BytesReader<Integer> {
+        INSTANCE;
+
+        @Override
+        public long size(Integer e) {
+            return 4L;
+        }
+
+        @Override
+        public boolean startsWith(Bytes bytes, Integer e) {
+            return e == bytes.readInt(bytes.position());
+        }
+
+        @Override
+        public long hash(Integer e) {
+            return e * 0x9E3779B97F4A7C15L;
+        }
+
+        @Override
+        public void write(Bytes bytes, Integer e) {
+            bytes.writeInt(e);
+        }
+
+        @Override
+        public Integer read(Bytes bytes, long size) {
+            return bytes.readInt();
+        }
+
+        @Override
+        public Integer read(Bytes bytes, long size, Integer toReuse) {
+            return bytes.readInt();
+        }
+    }
+
+    @Test
+    public void testCustomKeyHashIsNotRecomputed() throws IOException {
+        File file = tempFile();
+        CustomHashIntegerInterop interop = CustomHashIntegerInterop.INSTANCE;
+        try (ChronicleMap<Integer, String> map =
+                     builder().keyMarshallers(interop, interop).createPersistedTo(file)) {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "value" + i);
+            }
+            IntegrityReport report = vanilla(map).checkIntegrity(false);
+            Assert.assertTrue(report.toString(), report.isConsistent());
+            Assert.assertEquals(100L, report.entries);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+public class JournalTest {
+
+    static ChronicleMapBuilder<Integer, String> builder(File journalFile) {
+        return ChronicleMapBuilder.of(Integer.class, String.class)
+                .entries(1000).averageValueSize(10).journal(journalFile);
+    }
+
+    static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("journal", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    static void delete(File mapFile, File journalFile) {
+        mapFile.delete();
+        journalFile.delete();
+        new File(journalFile.getPath() + ".1").delete();
+    }
+
+    /**
+     * Simulates a crash: records are left in the journal, the map loses all entries
+     */
+    static void crash(ChronicleMap<Integer, String> map) {
+        VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+        MapJournal journal = vanillaMap.journal;
+        vanillaMap.journal = null;
+        journal.close();
+        map.clear();
+        map.close();
+    }
+
+    @Test
+    public void testJournalIsEmptyAfterCleanClose() throws IOException {
+        File mapFile = tempFile(".map");
+        File journalFile = tempFile(".journal");
+        try {
+            try (ChronicleMap<Integer, String> map = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                for (int i = 0; i < 100; i++) {
+                    map.put(i, "value" + i);
+                }
+                map.remove(0);
+                Assert.assertTrue(journalFile.length() > 12L);
+            }
+            Assert.assertEquals(12L, journalFile.length());
+            Assert.assertEquals(12L, new File(journalFile.getPath() + ".1").length());
+            try (ChronicleMap<Integer, String> map = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                Assert.assertEquals(99, map.size());
+                Assert.assertEquals("value1", map.get(1));
+            }
+        } finally {
+            delete(mapFile, journalFile);
+        }
+    }
+
+    @Test
+    public void testReplayAfterCrash() throws IOException {
+        File mapFile = tempFile(".map");
+        File journalFile = tempFile(".journal");
+        try {
+            ChronicleMap<Integer, String> map = builder(journalFile).createPersistedTo(mapFile);
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "value" + i);
+            }
+            for (int i = 0; i < 10; i++) {
+                map.remove(i);
+            }
+            map.put(50, "updated");
+            crash(map);
+
+            // torn record at the end of the journal
+            try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+                out.write(new byte[] {0, 0, 0, 100, 1, 2, 3});
+            }
+
+            try (ChronicleMap<Integer, String> recovered = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                Assert.assertEquals(90, recovered.size());
+                Assert.assertNull(recovered.get(5));
+                Assert.assertEquals("value10", recovered.get(10));
+                Assert.assertEquals("updated", recovered.get(50));
+                VanillaChronicleMap<Integer, ?, ?, String, ?, ?> vanillaMap =
+                        (VanillaChronicleMap<Integer, ?, ?, String, ?, ?>) recovered;
+                for (int i = 0; i < vanillaMap.actualSegments; i++) {
+                    try (VanillaContext<Integer, ?, ?, String, ?, ?> c =
+                                 vanillaMap.mapContext()) {
+                        c.segmentIndex = i;
+                        c.checkMultiMapsAndBitSetsConsistency();
+                    }
+                }
+            }
+        } finally {
+            delete(mapFile, journalFile);
+        }
+    }
+
+    @Test
+    public void testFailedPutIsNotJournaled() throws IOException {
+        File mapFile = tempFile(".map");
+        File journalFile = tempFile(".journal");
+        try {
+            ChronicleMap<Integer, String> map = builder(journalFile).createPersistedTo(mapFile);
+            map.put(1, "value1");
+            char[] chars = new char[10 << 20];
+            Arrays.fill(chars, 'x');
+            String tooLarge = new String(chars);
+            for (int key = 1; key <= 2; key++) {
+                try {
+                    map.put(key, tooLarge);
+                    Assert.fail("value should be too large");
+                } catch (IllegalArgumentException expected) {
+                    // expected
+                }
+            }
+            crash(map);
+
+            try (ChronicleMap<Integer, String> recovered = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                Assert.assertEquals(1, recovered.size());
+                Assert.assertEquals("value1", recovered.get(1));
+            }
+        } finally {
+            delete(mapFile, journalFile);
+        }
+    }
+
+    @Test
+    public void testRecordWhichCouldNotBeAppliedIsSkipped() throws IOException {
+        File mapFile = tempFile(".map");
+        File journalFile = tempFile(".journal");
+        try {
+            ChronicleMap<Integer, String> map = builder(journalFile).createPersistedTo(mapFile);
+            map.put(1, "value1");
+            crash(map);
+
+            // complete record of unknown type, with empty payload
+            byte type = 100;
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            try (DataOutputStream out =
+                         new DataOutputStream(new FileOutputStream(journalFile, true))) {
+                out.writeInt(0);
+                out.writeByte(type);
+                out.writeInt((int) crc.getValue());
+            }
+
+            try (ChronicleMap<Integer, String> recovered = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                Assert.assertEquals(1, recovered.size());
+                Assert.assertEquals("value1", recovered.get(1));
+            }
+        } finally {
+            delete(mapFile, journalFile);
+        }
+    }
+
+    @Test
+    public void testRepairAfterCrashWithEmptyJournal() throws IOException {
+        File mapFile = tempFile(".map");
+        File journalFile = tempFile(".journal");
+        try {
+            ChronicleMap<Integer, String> map = builder(journalFile).createPersistedTo(mapFile);
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "value" + i);
+            }
+            map.checkpoint();
+            // segment pages, written before their journal records are durable
+            IntegrityCheckTest.corruptFirstSegment(map);
+            VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+            MapJournal journal = vanillaMap.journal;
+            vanillaMap.journal = null;
+            journal.close();
+            map.close();
+            Assert.assertEquals(12L, journalFile.length());
+
+            try (ChronicleMap<Integer, String> recovered = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                Assert.assertEquals(100, recovered.size());
+                IntegrityReport report =
+                        IntegrityCheckTest.vanilla(recovered).checkIntegrity(false);
+                Assert.assertTrue(report.toString(), report.isConsistent());
+            }
+            // closed cleanly, the next open doesn't repair
+            try (ChronicleMap<Integer, String> map2 = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                IntegrityCheckTest.corruptFirstSegment(map2);
+            }
+            try (ChronicleMap<Integer, String> reopened = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                IntegrityReport report =
+                        IntegrityCheckTest.vanilla(reopened).checkIntegrity(false);
+                Assert.assertFalse(report.isConsistent());
+            }
+        } finally {
+            delete(mapFile, journalFile);
+        }
+    }
+
+    @Test
+    public void testCheckpointForcesOnlyWrittenSegments() throws IOException {
+        File mapFile = tempFile(".map");
+        File journalFile = tempFile(".journal");
+        try (ChronicleMap<Integer, String> map = builder(journalFile)
+                .actualSegments(16).createPersistedTo(mapFile)) {
+            VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+            long segmentBytes = vanillaMap.segmentHeaderSize + vanillaMap.segmentSize;
+            map.checkpoint();
+            // the journal barrier acquires update locks of all segments
+            Assert.assertEquals(0L, vanillaMap.checkpointer.checkpoint());
+            map.put(1, "value1");
+            Assert.assertEquals(segmentBytes, vanillaMap.checkpointer.checkpoint());
+        } finally {
+            delete(mapFile, journalFile);
+        }
+    }
+
+    @Test
+    public void testOutermostContextAwaitsNestedMutations() throws IOException {
+        File mapFile = tempFile(".map");
+        File journalFile = tempFile(".journal");
+        try (ChronicleMap<Integer, String> map = builder(journalFile)
+                .createPersistedTo(mapFile)) {
+            VanillaChronicleMap<Integer, ?, ?, String, ?, ?> vanillaMap =
+                    (VanillaChronicleMap<Integer, ?, ?, String, ?, ?>) map;
+            VanillaContext<Integer, ?, ?, String, ?, ?> outer = vanillaMap.mapContext();
+            try {
+                for (int i = 0; i < 10; i++) {
+                    map.put(i, "value" + i);
+                }
+                // nested puts pass their journal sequences to the outer context
+                Assert.assertTrue(outer.journalSequence > 0L);
+            } finally {
+                outer.close();
+            }
+            Assert.assertEquals(0L, outer.journalSequence);
+            Assert.assertTrue(journalFile.length() > 12L);
+        } finally {
+            delete(mapFile, journalFile);
+        }
+    }
+
+    @Test
+    public void testCheckpointTruncatesJournal() throws IOException {
+        File mapFile = tempFile(".map");
+        File journalFile = tempFile(".journal");
+        File nextJournalFile = new File(journalFile.getPath() + ".1");
+        try (ChronicleMap<Integer, String> map = builder(journalFile)
+                .createPersistedTo(mapFile)) {
+            map.put(1, "value1");
+            map.checkpoint();
+            Assert.assertEquals(12L, journalFile.length());
+            map.put(2, "value2");
+            Assert.assertTrue(nextJournalFile.length() > 12L);
+            map.checkpoint();
+            Assert.assertEquals(12L, nextJournalFile.length());
+            map.put(3, "value3");
+            crash(map);
+            try (ChronicleMap<Integer, String> recovered = builder(journalFile)
+                    .createPersistedTo(mapFile)) {
+                // checkpointed entries are cleared by the simulated crash, only the last put
+                // is replayed
+                Assert.assertEquals(1, recovered.size());
+                Assert.assertEquals("value3", recovered.get(3));
+            }
+        } finally {
+            delete(mapFile, journalFile);
+        }
+    }
+}
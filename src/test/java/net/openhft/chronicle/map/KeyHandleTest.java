@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeyHandleTest {
+
+    static ChronicleMap<CharSequence, Long> newMap(HashLookupStrategy strategy) {
+        return ChronicleMapBuilder.of(CharSequence.class, Long.class)
+                .entries(1000).actualSegments(4).hashLookupStrategy(strategy).create();
+    }
+
+    @Test
+    public void testKeyHandle() {
+        for (HashLookupStrategy strategy : HashLookupStrategy.values()) {
+            try (ChronicleMap<CharSequence, Long> map = newMap(strategy)) {
+                KeyHandle<CharSequence> handle = map.keyHandle("instrument");
+                Assert.assertNull(map.getUsing(handle, null));
+                Assert.assertEquals(-1L, handle.slot);
+                Assert.assertNull(map.put(handle, 1L));
+                Assert.assertEquals((Long) 1L, map.getUsing(handle, null));
+                // the slot is remembered on the first successful search
+                Assert.assertTrue(handle.slot >= 0L);
+                Assert.assertEquals((Long) 1L, map.put(handle, 2L));
+                Assert.assertEquals((Long) 2L, map.get("instrument"));
+                Assert.assertEquals((Long) 2L, map.acquireUsing(handle, null));
+
+                // the slot becomes stale
+                for (int i = 0; i < 500; i++) {
+                    map.put("other" + i, (long) i);
+                }
+                map.remove("instrument");
+                for (int i = 500; i < 600; i++) {
+                    map.put("other" + i, (long) i);
+                }
+                Assert.assertNull(map.getUsing(handle, null));
+                map.put("instrument", 3L);
+                Assert.assertEquals((Long) 3L, map.getUsing(handle, null));
+                try (MapKeyContext<Long> c = map.context(handle)) {
+                    Assert.assertTrue(c.remove());
+                }
+                Assert.assertFalse(map.containsKey("instrument"));
+                Assert.assertEquals(600, map.size());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHandleOfAnotherMap() {
+        try (ChronicleMap<CharSequence, Long> map1 = newMap(HashLookupStrategy.LINEAR_PROBING);
+             ChronicleMap<CharSequence, Long> map2 = newMap(HashLookupStrategy.LINEAR_PROBING)) {
+            map2.getUsing(map1.keyHandle("key"), null);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.hashing.LongHashFunction;
+import net.openhft.chronicle.hash.serialization.internal.DelegatingMetaBytesInterop;
+import net.openhft.chronicle.hash.serialization.internal.DoubleMarshaller;
+import net.openhft.chronicle.hash.serialization.internal.IntegerMarshaller;
+import net.openhft.chronicle.hash.serialization.internal.LongMarshaller;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class KeyHashFunctionTest {
+
+    static final String[] VECTOR_INPUTS = {"", "a", "abc", "message digest",
+            "abcdefghijklmnopqrstuvwxyz",
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789",
+            "1234567890123456789012345678901234567890" +
+                    "1234567890123456789012345678901234567890"};
+
+    static final LongHashFunction[] FUNCTIONS = {LongHashFunction.murmur3(),
+            LongHashFunction.xx64(), LongHashFunction.wyHash()};
+
+    @Test
+    public void testReferenceVectors() throws IOException {
+        Assert.assertEquals(0xef46db3751d8e999L, LongHashFunction.xx64().hashBytes(bytes("")));
+        Assert.assertEquals(0xd24ec4f1a98c6e5bL, LongHashFunction.xx64().hashBytes(bytes("a")));
+        Assert.assertEquals(0x44bc2cf5ad770999L, LongHashFunction.xx64().hashBytes(bytes("abc")));
+        Assert.assertEquals(0x42bc986dc5eec4d3L, LongHashFunction.wyHash().hashBytes(bytes("")));
+    }
+
+    @Test
+    public void testSipHashReferenceVectors() {
+        // the key and the messages are 0x00, 0x01, 0x02... bytes, as in the SipHash paper
+        LongHashFunction f =
+                LongHashFunction.sipHash24(0x0706050403020100L, 0x0f0e0d0c0b0a0908L);
+        Assert.assertEquals(0x726fdb47dd0e0e31L, f.hashBytes(new byte[0]));
+        Assert.assertEquals(0xa129ca6149be45e5L, f.hashBytes(sequence(15)));
+        Assert.assertEquals(0xa129ca6149be45e5L, f.hashBytes(ByteBuffer.wrap(sequence(15))));
+        Assert.assertEquals(0x93f5f5799a932462L, f.hashBytes(sequence(8)));
+        Assert.assertEquals(0x93f5f5799a932462L, f.hashLong(
+                ByteBuffer.wrap(sequence(8)).order(ByteOrder.nativeOrder()).getLong()));
+        Assert.assertEquals(0xcf2794e0277187b7L, f.hashInt(
+                ByteBuffer.wrap(sequence(4)).order(ByteOrder.nativeOrder()).getInt()));
+        Assert.assertNotEquals(f.hashLong(1L),
+                LongHashFunction.sipHash24(0x0706050403020100L, 0L).hashLong(1L));
+    }
+
+    @Test
+    public void testAccessesAreConsistent() throws IOException {
+        for (LongHashFunction f : FUNCTIONS) {
+            for (String input : VECTOR_INPUTS) {
+                byte[] bytes = bytes(input);
+                long hash = f.hashBytes(bytes);
+                Assert.assertEquals(hash,
+                        f.hashBytes(ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder())));
+                if (f != LongHashFunction.murmur3()) {
+                    // xxHash64 and wyhash read little-endian values regardless the access order
+                    Assert.assertEquals(hash,
+                            f.hashBytes(ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN)));
+                }
+                ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length)
+                        .order(ByteOrder.nativeOrder());
+                direct.put(bytes).flip();
+                Assert.assertEquals(hash, f.hashBytes(direct));
+            }
+            for (long v = -1000L; v < 1000L; v += 7L) {
+                ByteBuffer bb = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+                bb.putLong(0, v);
+                Assert.assertEquals(f.hashBytes(bb.array()), f.hashLong(v));
+                bb = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+                bb.putInt(0, (int) v);
+                Assert.assertEquals(f.hashBytes(bb.array()), f.hashInt((int) v));
+            }
+        }
+    }
+
+    @Test
+    public void testPrimitiveKeysHashedAsSerialized() {
+        DelegatingMetaBytesInterop meta = DelegatingMetaBytesInterop.instance();
+        for (LongHashFunction f : FUNCTIONS) {
+            for (long v = -1000L; v < 1000L; v += 7L) {
+                ByteBuffer bb = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+                bb.putLong(0, v);
+                Assert.assertEquals(f.hashBytes(bb.array()),
+                        meta.hash(f, LongMarshaller.INSTANCE, v));
+                bb.putDouble(0, (double) v);
+                Assert.assertEquals(f.hashBytes(bb.array()),
+                        meta.hash(f, DoubleMarshaller.INSTANCE, (double) v));
+                bb = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+                bb.putInt(0, (int) v);
+                Assert.assertEquals(f.hashBytes(bb.array()),
+                        meta.hash(f, IntegerMarshaller.INSTANCE, (int) v));
+            }
+        }
+    }
+
+    @Test
+    public void testMapsWithKeyHashFunctions() {
+        for (LongHashFunction f : FUNCTIONS) {
+            try (ChronicleMap<CharSequence, Long> strings =
+                         ChronicleMapBuilder.of(CharSequence.class, Long.class)
+                                 .entries(1000).keyHashFunction(f).create();
+                 ChronicleMap<Long, Long> longs = ChronicleMapBuilder.of(Long.class, Long.class)
+                         .entries(1000).keyHashFunction(f).create()) {
+                for (long i = 0; i < 1000; i++) {
+                    strings.put("key" + i, i);
+                    longs.put(i, i);
+                }
+                Assert.assertEquals(1000, strings.size());
+                Assert.assertEquals(1000, longs.size());
+                for (long i = 0; i < 1000; i++) {
+                    Assert.assertEquals((Long) i, strings.get("key" + i));
+                    Assert.assertEquals((Long) i, longs.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKeyHashFunctionIsPersisted() throws IOException {
+        File file = ChronicleMapTest.getPersistenceFile();
+        try (ChronicleMap<CharSequence, Long> map =
+                     ChronicleMapBuilder.of(CharSequence.class, Long.class).entries(1000)
+                             .keyHashFunction(LongHashFunction.wyHash())
+                             .createPersistedTo(file)) {
+            for (long i = 0; i < 100; i++) {
+                map.put("key" + i, i);
+            }
+        }
+        // the function of the builder is ignored, the map uses the persisted one
+        try (ChronicleMap<CharSequence, Long> map =
+                     ChronicleMapBuilder.of(CharSequence.class, Long.class).entries(1000)
+                             .keyHashFunction(LongHashFunction.xx64())
+                             .createPersistedTo(file)) {
+            for (long i = 0; i < 100; i++) {
+                Assert.assertEquals((Long) i, map.get("key" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testSeededFunctions() throws IOException {
+        // reference wyhash vectors are computed with seeds 1 and 2
+        Assert.assertEquals(0x84508dc903c31551L,
+                LongHashFunction.wyHash().seeded(1L).hashBytes(bytes("a")));
+        Assert.assertEquals(0x0bc54887cfc9ecb1L,
+                LongHashFunction.wyHash().seeded(2L).hashBytes(bytes("abc")));
+        for (LongHashFunction f : FUNCTIONS) {
+            Assert.assertEquals(f.hashLong(42L), f.seeded(0L).hashLong(42L));
+            LongHashFunction seeded = f.seeded(42L);
+            Assert.assertNotEquals(f.hashLong(42L), seeded.hashLong(42L));
+            for (String input : VECTOR_INPUTS) {
+                Assert.assertNotEquals(f.hashBytes(bytes(input)), seeded.hashBytes(bytes(input)));
+            }
+            ByteBuffer bb = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+            bb.putLong(0, 42L);
+            Assert.assertEquals(seeded.hashBytes(bb.array()), seeded.hashLong(42L));
+        }
+    }
+
+    @Test
+    public void testSeededKeyHashing() throws IOException {
+        File file = ChronicleMapTest.getPersistenceFile();
+        LongHashFunction persistedFunction;
+        try (ChronicleMap<CharSequence, Long> map =
+                     ChronicleMapBuilder.of(CharSequence.class, Long.class).entries(1000)
+                             .seededKeyHashing(true).createPersistedTo(file);
+             ChronicleMap<CharSequence, Long> map2 =
+                     ChronicleMapBuilder.of(CharSequence.class, Long.class).entries(1000)
+                             .seededKeyHashing(true).create()) {
+            persistedFunction = ((VanillaChronicleMap) map).keyHashFunction();
+            LongHashFunction function2 = ((VanillaChronicleMap) map2).keyHashFunction();
+            Assert.assertTrue(
+                    persistedFunction.toString().startsWith("LongHashFunction.sipHash24"));
+            Assert.assertNotEquals(persistedFunction.hashLong(1L), function2.hashLong(1L));
+            for (long i = 0; i < 100; i++) {
+                map.put("key" + i, i);
+            }
+        }
+        try (ChronicleMap<CharSequence, Long> map =
+                     ChronicleMapBuilder.of(CharSequence.class, Long.class).entries(1000)
+                             .seededKeyHashing(true).createPersistedTo(file)) {
+            // the seed is read from the header, not generated again
+            Assert.assertEquals(persistedFunction.hashLong(1L),
+                    ((VanillaChronicleMap) map).keyHashFunction().hashLong(1L));
+            for (long i = 0; i < 100; i++) {
+                Assert.assertEquals((Long) i, map.get("key" + i));
+            }
+        }
+    }
+
+    private static byte[] sequence(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static byte[] bytes(String s) throws IOException {
+        return s.getBytes("ISO-8859-1");
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.locks.BackoffLockingStrategy;
+import net.openhft.chronicle.hash.locks.InterProcessLock;
+import net.openhft.chronicle.hash.locks.LockingStrategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LockingStrategyTest {
+
+    @Test
+    public void testLockTimeOut() throws Exception {
+        final AtomicInteger waits = new AtomicInteger();
+        LockingStrategy countingStrategy = new LockingStrategy() {
+            @Override
+            public void lock(InterProcessLock lock) {
+                BackoffLockingStrategy.DEFAULT.lock(lock);
+            }
+
+            @Override
+            public void waitBeforeNextAttempt(int failedAttempts) {
+                waits.incrementAndGet();
+                BackoffLockingStrategy.DEFAULT.waitBeforeNextAttempt(failedAttempts);
+            }
+        };
+        try (final ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(100).actualSegments(1)
+                .lockTimeOut(200, TimeUnit.MILLISECONDS)
+                .lockingStrategy(countingStrategy).create()) {
+            map.put(1, 1);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try (MapKeyContext<Integer> c = map.context(1)) {
+                c.writeLock().lock();
+                Future<?> reader = executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return map.get(1);
+                    }
+                });
+                try {
+                    reader.get(10, TimeUnit.SECONDS);
+                    Assert.fail("read lock shouldn't be acquired while write lock is held");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause().getMessage().startsWith("Dead lock"));
+                }
+            } finally {
+                executor.shutdown();
+            }
+            Assert.assertTrue(waits.get() > 0);
+            Assert.assertEquals((Integer) 1, map.get(1));
+        }
+    }
+
+    @Test
+    public void testBackoffLockingStrategy() {
+        LockingStrategy strategy =
+                new BackoffLockingStrategy(2, 2, TimeUnit.MICROSECONDS.toNanos(10));
+        long start = System.nanoTime();
+        for (int failedAttempts = 1; failedAttempts < 100; failedAttempts++) {
+            strategy.waitBeforeNextAttempt(failedAttempts);
+        }
+        // parks are bounded by 10 microseconds (plus the timer slack)
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLockTimeOut() {
+        ChronicleMapBuilder.of(Integer.class, Integer.class).lockTimeOut(-1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class OptimisticReadsTest {
+
+    private static String value(int length, char c) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void testWriteVersion() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMapBuilder
+                .of(Integer.class, Integer.class)
+                .entries(1000).actualSegments(1).optimisticReads(true).create()) {
+            VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?> vanillaMap =
+                    (VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?>) map;
+            Assert.assertEquals(64, vanillaMap.segmentHeaderSize);
+            long segmentHeaderAddress =
+                    vanillaMap.ms.address() + vanillaMap.segmentHeaderOffset(0);
+            long version = vanillaMap.segmentHeader.writeVersion(segmentHeaderAddress);
+            map.put(1, 1);
+            map.put(1, 2);
+            long versionAfterPut = vanillaMap.segmentHeader.writeVersion(segmentHeaderAddress);
+            Assert.assertTrue(versionAfterPut > version);
+            Assert.assertEquals(0L, versionAfterPut & 1L);
+            Assert.assertEquals((Integer) 2, map.get(1));
+            Assert.assertNull(map.get(2));
+            // reads don't touch the write version
+            Assert.assertEquals(versionAfterPut,
+                    vanillaMap.segmentHeader.writeVersion(segmentHeaderAddress));
+        }
+    }
+
+    @Test
+    public void testNoTornReads() throws Exception {
+        try (final ChronicleMap<Integer, String> map = ChronicleMapBuilder
+                .of(Integer.class, String.class)
+                .entries(100).averageValueSize(500).actualSegments(1)
+                .optimisticReads(true).create()) {
+            for (int i = 0; i < 10; i++) {
+                map.put(i, value(100, 'a'));
+            }
+            final AtomicBoolean stop = new AtomicBoolean();
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            Future<?> writer = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Random r = new Random(0);
+                    while (!stop.get()) {
+                        map.put(r.nextInt(10), value(1 + r.nextInt(900),
+                                (char) ('a' + r.nextInt(26))));
+                    }
+                }
+            });
+            Future<?>[] readers = new Future<?>[3];
+            for (int t = 0; t < readers.length; t++) {
+                readers[t] = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        Random r = new Random();
+                        for (int i = 0; i < 100000; i++) {
+                            String value = map.get(r.nextInt(10));
+                            Assert.assertNotNull(value);
+                            Assert.assertEquals(value(value.length(), value.charAt(0)), value);
+                        }
+                    }
+                });
+            }
+            for (Future<?> reader : readers) {
+                reader.get(60, TimeUnit.SECONDS);
+            }
+            stop.set(true);
+            writer.get(10, TimeUnit.SECONDS);
+            executor.shutdown();
+        }
+    }
+}
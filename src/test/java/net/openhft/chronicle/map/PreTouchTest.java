@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class PreTouchTest {
+
+    @Test
+    public void testPreTouchedMapIsFunctional() throws IOException {
+        File file = File.createTempFile("pre-touch", ".map");
+        file.deleteOnExit();
+        try {
+            ChronicleMapBuilder<Integer, Long> builder =
+                    ChronicleMapBuilder.of(Integer.class, Long.class).entries(10000);
+            try (ChronicleMap<Integer, Long> map = builder.createPersistedTo(file)) {
+                map.put(1, 1L);
+            }
+            try (ChronicleMap<Integer, Long> map = builder.preTouch(true).createPersistedTo(file)) {
+                Assert.assertEquals((Long) 1L, map.get(1));
+                VanillaChronicleMap vanillaMap = (VanillaChronicleMap) map;
+                Assert.assertEquals(vanillaMap.actualSegments * vanillaMap.segmentSize,
+                        vanillaMap.preTouch() - vanillaMap.actualSegments *
+                                (long) vanillaMap.segmentHeaderSize);
+            }
+        } finally {
+            file.delete();
+        }
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(10000).preTouch(true).create()) {
+            map.put(1, 1L);
+            Assert.assertEquals((Long) 1L, map.get(1));
+        }
+    }
+
+    @Test
+    public void testHugePagesConfiguration() {
+        long hugePageSize = HugePages.hugePageSize();
+        Assert.assertTrue(hugePageSize > 0L && (hugePageSize & (hugePageSize - 1L)) == 0L);
+        Assert.assertEquals(2L * hugePageSize, HugePages.roundUpToHugePage(hugePageSize + 1L,
+                hugePageSize));
+        Assert.assertNotNull(HugePages.transparentHugePagesMode());
+    }
+}
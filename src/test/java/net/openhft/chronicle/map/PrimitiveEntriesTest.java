@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+public class PrimitiveEntriesTest {
+
+    @Test
+    public void testLongLongMap() {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .inlinedPrimitiveEntries(true).entries(10000).create()) {
+            Assert.assertTrue(map instanceof ChronicleLongLongMap);
+            ChronicleLongLongMap longs = (ChronicleLongLongMap) map;
+            Assert.assertEquals(0L, longs.putLong(0L, 42L));
+            Assert.assertEquals(0L, longs.putLong(-1L, Long.MAX_VALUE));
+            Assert.assertTrue(longs.containsKey(0L));
+            Assert.assertEquals(42L, longs.getLong(0L));
+            Assert.assertEquals(Long.MAX_VALUE, longs.getLong(-1L));
+            Assert.assertEquals(-5L, longs.getLong(1L, -5L));
+            Assert.assertFalse(longs.containsKey(1L));
+            Assert.assertEquals(Long.valueOf(42L), map.get(0L));
+            Assert.assertNull(map.get(1L));
+            Assert.assertEquals(2, map.size());
+            Assert.assertEquals(42L, longs.removeLong(0L));
+            Assert.assertFalse(longs.containsKey(0L));
+            Assert.assertEquals(1, map.size());
+            Assert.assertEquals(10L, map.addAndGetLong(7L, 0L, 10L));
+            Assert.assertTrue(map.compareAndSwapLong(7L, 0L, 10L, 11L));
+            BiFunction<Long, Long, Long> sum = new BiFunction<Long, Long, Long>() {
+                @Override
+                public Long apply(Long a, Long b) {
+                    return a + b;
+                }
+            };
+            Assert.assertEquals(Long.valueOf(12L), map.mergeLocked(7L, 1L, sum));
+        }
+    }
+
+    @Test
+    public void testRandomOperationsAgainstHashMap() {
+        try (ChronicleMap<Integer, Integer> map =
+                     ChronicleMapBuilder.of(Integer.class, Integer.class)
+                             .inlinedPrimitiveEntries(true).entries(2000).actualSegments(4)
+                             .create()) {
+            ChronicleIntIntMap ints = (ChronicleIntIntMap) map;
+            Map<Integer, Integer> expected = new HashMap<>();
+            Random random = new Random(1);
+            for (int i = 0; i < 100000; i++) {
+                // small key range, so that removes shift back long probe chains
+                int key = random.nextInt(1000) - 10;
+                if (random.nextInt(3) == 0) {
+                    Integer removed = expected.remove(key);
+                    Assert.assertEquals(removed != null ? removed : 0, ints.removeInt(key));
+                } else {
+                    int value = random.nextInt();
+                    Integer prev = expected.put(key, value);
+                    Assert.assertEquals(prev != null ? prev : 0, ints.putInt(key, value));
+                }
+            }
+            Assert.assertEquals(expected, map);
+            Assert.assertEquals(expected, new HashMap<>(map));
+
+            for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator();
+                 it.hasNext(); ) {
+                Map.Entry<Integer, Integer> e = it.next();
+                if (e.getKey() % 2 == 0) {
+                    it.remove();
+                    expected.remove(e.getKey());
+                } else {
+                    int newValue = -e.getValue();
+                    e.setValue(newValue);
+                    expected.put(e.getKey(), newValue);
+                }
+            }
+            Assert.assertEquals(expected, map);
+            map.clear();
+            Assert.assertTrue(map.isEmpty());
+            Assert.assertFalse(ints.containsKey(0));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOnlyPrimitiveTypesSupported() {
+        ChronicleMapBuilder.of(Long.class, Integer.class).inlinedPrimitiveEntries(true).create();
+    }
+
+    @Test
+    public void testPersisted() throws IOException {
+        File file = File.createTempFile("primitive-entries", ".map");
+        file.deleteOnExit();
+        ChronicleMapBuilder<Long, Long> builder = ChronicleMapBuilder.of(Long.class, Long.class)
+                .inlinedPrimitiveEntries(true).entries(1000);
+        try (ChronicleMap<Long, Long> map = builder.createPersistedTo(file)) {
+            for (long i = 0; i < 500; i++) {
+                ((ChronicleLongLongMap) map).putLong(i, i * i);
+            }
+        }
+        // configuration of the builder is ignored for the existing file
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .createPersistedTo(file)) {
+            ChronicleLongLongMap longs = (ChronicleLongLongMap) map;
+            Assert.assertEquals(500, map.size());
+            for (long i = 0; i < 500; i++) {
+                Assert.assertEquals(i * i, longs.getLong(i));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
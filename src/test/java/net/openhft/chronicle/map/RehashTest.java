@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RehashTest {
+
+    @Test
+    public void rehashIntoLargerMap() throws IOException {
+        File smallFile = File.createTempFile("rehash-small", ".dat");
+        File largeFile = File.createTempFile("rehash-large", ".dat");
+        smallFile.deleteOnExit();
+        largeFile.deleteOnExit();
+        largeFile.delete();
+        ChronicleMap<Integer, Integer> small = ChronicleMapBuilder.of(Integer.class, Integer.class)
+                .entries(1000L).actualSegments(4).createPersistedTo(smallFile);
+        for (int i = 0; i < 1000; i++) {
+            small.put(i, i);
+        }
+        try (ChronicleMap<Integer, Integer> map =
+                     ChronicleMapBuilder.of(Integer.class, Integer.class)
+                             .entries(100000L).actualSegments(16)
+                             .createPersistedTo(largeFile, small)) {
+            // concurrent with the background migration
+            for (int i = 0; i < 1000; i++) {
+                assertEquals((Integer) i, map.get(i));
+            }
+            for (int i = 1000; i < 50000; i++) {
+                assertNull(map.put(i, i));
+            }
+            assertEquals((Integer) 0, map.remove(0));
+            assertEquals(49999, map.size());
+
+            int count = 0;
+            for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+                assertEquals(e.getKey(), e.getValue());
+                count++;
+            }
+            assertEquals(49999, count);
+            assertTrue(((RehashingChronicleMap) map).isRehashed());
+            assertEquals(0, small.size());
+        } finally {
+            smallFile.delete();
+            largeFile.delete();
+        }
+    }
+
+    @Test
+    public void resumeInterruptedRehash() throws IOException {
+        File smallFile = File.createTempFile("rehash-small", ".dat");
+        File largeFile = File.createTempFile("rehash-large", ".dat");
+        smallFile.deleteOnExit();
+        largeFile.deleteOnExit();
+        largeFile.delete();
+        ChronicleMapBuilder<Integer, Integer> smallBuilder =
+                ChronicleMapBuilder.of(Integer.class, Integer.class)
+                        .entries(1000L).actualSegments(4);
+        ChronicleMapBuilder<Integer, Integer> largeBuilder =
+                ChronicleMapBuilder.of(Integer.class, Integer.class)
+                        .entries(100000L).actualSegments(16);
+        try {
+            ChronicleMap<Integer, Integer> small = smallBuilder.createPersistedTo(smallFile);
+            for (int i = 0; i < 1000; i++) {
+                small.put(i, i);
+            }
+            RehashingChronicleMap<Integer, Integer> interrupted = new RehashingChronicleMap<>(
+                    (VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?>) small,
+                    (VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?>)
+                            largeBuilder.createPersistedTo(largeFile));
+            interrupted.migrateSegment(0);
+            interrupted.migrateSegment(1);
+            // writes go to the target map, migrating the segment of the key
+            interrupted.put(1000, 1000);
+            assertTrue(small.size() < 1000);
+            assertEquals(1001, interrupted.size());
+            interrupted.close();
+
+            small = smallBuilder.createPersistedTo(smallFile);
+            try (ChronicleMap<Integer, Integer> map =
+                         largeBuilder.createPersistedTo(largeFile, small)) {
+                assertEquals(1001, map.size());
+                for (int i = 0; i <= 1000; i++) {
+                    assertEquals((Integer) i, map.get(i));
+                }
+                ((RehashingChronicleMap) map).finishRehash();
+                assertEquals(0, small.size());
+            }
+        } finally {
+            smallFile.delete();
+            largeFile.delete();
+        }
+    }
+
+    @Test
+    public void accessMovesOnlyTheEntryOfTheKey() throws IOException {
+        File smallFile = File.createTempFile("rehash-small", ".dat");
+        File largeFile = File.createTempFile("rehash-large", ".dat");
+        smallFile.deleteOnExit();
+        largeFile.deleteOnExit();
+        largeFile.delete();
+        try {
+            ChronicleMap<Integer, Integer> small = ChronicleMapBuilder
+                    .of(Integer.class, Integer.class)
+                    .entries(1000L).actualSegments(4).createPersistedTo(smallFile);
+            for (int i = 0; i < 1000; i++) {
+                small.put(i, i);
+            }
+            try (RehashingChronicleMap<Integer, Integer> map = new RehashingChronicleMap<>(
+                    (VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?>) small,
+                    (VanillaChronicleMap<Integer, ?, ?, Integer, ?, ?>) ChronicleMapBuilder
+                            .of(Integer.class, Integer.class)
+                            .entries(100000L).actualSegments(16)
+                            .createPersistedTo(largeFile))) {
+                assertEquals((Integer) 5, map.get(5));
+                assertEquals(999, small.size());
+                assertEquals(1000, map.size());
+
+                // a chunk is migrated, the segment is not, entries are counted once
+                assertFalse(map.migrateChunk(0, 10));
+                assertEquals(989, small.size());
+                assertEquals(1000, map.size());
+
+                map.finishRehash();
+                assertEquals(0, small.size());
+                assertEquals(1000, map.size());
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals((Integer) i, map.get(i));
+                }
+            }
+        } finally {
+            smallFile.delete();
+            largeFile.delete();
+        }
+    }
+
+    @Test
+    public void closeWaitsForTheMigrationChunk() throws IOException {
+        File smallFile = File.createTempFile("rehash-small", ".dat");
+        File largeFile = File.createTempFile("rehash-large", ".dat");
+        smallFile.deleteOnExit();
+        largeFile.deleteOnExit();
+        largeFile.delete();
+        ChronicleMapBuilder<Integer, Integer> smallBuilder =
+                ChronicleMapBuilder.of(Integer.class, Integer.class)
+                        .entries(10000L).actualSegments(4);
+        ChronicleMapBuilder<Integer, Integer> largeBuilder =
+                ChronicleMapBuilder.of(Integer.class, Integer.class)
+                        .entries(100000L).actualSegments(16);
+        try {
+            ChronicleMap<Integer, Integer> small = smallBuilder.createPersistedTo(smallFile);
+            for (int i = 0; i < 10000; i++) {
+                small.put(i, i);
+            }
+            // closed concurrently with the background migration
+            largeBuilder.createPersistedTo(largeFile, small).close();
+
+            small = smallBuilder.createPersistedTo(smallFile);
+            try (ChronicleMap<Integer, Integer> map =
+                         largeBuilder.createPersistedTo(largeFile, small)) {
+                assertEquals(10000, map.size());
+                for (int i = 0; i < 10000; i++) {
+                    assertEquals((Integer) i, map.get(i));
+                }
+            }
+        } finally {
+            smallFile.delete();
+            largeFile.delete();
+        }
+    }
+}
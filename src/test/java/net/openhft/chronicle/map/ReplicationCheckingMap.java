@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 import org.junit.Assert;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -237,6 +238,104 @@ public class ReplicationCheckingMap<K, V> implements ChronicleMap<K, V> {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public V computeLocked(K key, @NotNull BiFunction<? super K, ? super V, ? extends V> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V computeIfAbsentLocked(K key, @NotNull Function<? super K, ? extends V> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V computeIfPresentLocked(
+            K key, @NotNull BiFunction<? super K, ? super V, ? extends V> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V mergeLocked(K key, @NotNull V value,
+                         @NotNull BiFunction<? super V, ? super V, ? extends V> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long addAndGetLong(K key, long fieldOffset, long delta) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getAndAddLong(K key, long fieldOffset, long delta) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean compareAndSwapLong(K key, long fieldOffset, long expected, long x) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int addAndGetInt(K key, long fieldOffset, int delta) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getAndAddInt(K key, long fieldOffset, int delta) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean compareAndSwapInt(K key, long fieldOffset, int expected, int x) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public KeyHandle<K> keyHandle(K key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MapKeyContext<V> context(KeyHandle<K> keyHandle) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V getUsing(KeyHandle<K> keyHandle, V usingValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V put(KeyHandle<K> keyHandle, V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V acquireUsing(KeyHandle<K> keyHandle, V usingValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void getAll(@NotNull Collection<? extends K> keys,
+                       @NotNull Map<? super K, ? super V> result) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(@NotNull Collection<? extends K> keys) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void parallelForEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public V newValueInstance() {
         throw new UnsupportedOperationException();
@@ -278,6 +377,22 @@ public class ReplicationCheckingMap<K, V> implements ChronicleMap<K, V> {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void checkpoint() throws IOException {
+        map1.checkpoint();
+        map2.checkpoint();
+    }
+
+    @Override
+    public void dumpTo(File toFile, boolean checksums) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void loadFrom(File fromFile) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void close() {
         map1.close();
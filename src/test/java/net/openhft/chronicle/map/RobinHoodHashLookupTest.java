@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import org.junit.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static net.openhft.lang.io.NativeBytes.UNSAFE;
+
+public class RobinHoodHashLookupTest {
+
+    static final int CAPACITY = 64;
+    static final int KEY_BITS = 16;
+    static final int VALUE_BITS = 16;
+    static long address;
+    HashLookup lookup = new HashLookup();
+    Multimap<Long, Long> referenceMap = HashMultimap.create();
+
+    @BeforeClass
+    public static void setUp() {
+        address = UNSAFE.allocateMemory(CAPACITY * 4L);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        UNSAFE.freeMemory(address);
+    }
+
+    @Before
+    public void clean() {
+        lookup.reuse(address, CAPACITY, 4, KEY_BITS, VALUE_BITS);
+        lookup.robinHood(true);
+        lookup.clear();
+        referenceMap.clear();
+    }
+
+    private void put(long k, long v) {
+        lookup.init0(k);
+        lookup.initSearch0();
+        while (lookup.nextPos() >= 0L)
+            ;
+        lookup.put(v);
+        lookup.closeSearch0();
+        lookup.close0();
+        referenceMap.put(k, v);
+    }
+
+    private void remove(long k, long value) {
+        lookup.init0(k);
+        lookup.initSearch0();
+        long v;
+        while ((v = lookup.nextPos()) >= 0L && v != value)
+            ;
+        Assert.assertEquals(value, v);
+        lookup.found();
+        lookup.remove();
+        lookup.closeSearch0();
+        lookup.close0();
+        referenceMap.remove(k, value);
+    }
+
+    private void checkAll() {
+        final int[] size = {0};
+        lookup.forEach(new HashLookup.EntryConsumer() {
+            @Override
+            public void accept(long key, long value) {
+                size[0]++;
+                Assert.assertTrue(referenceMap.containsEntry(key, value));
+            }
+        });
+        Assert.assertEquals(referenceMap.size(), size[0]);
+        for (Long k : referenceMap.keySet()) {
+            Set<Long> values = new HashSet<>();
+            lookup.init0(k);
+            lookup.initSearch0();
+            long v;
+            while ((v = lookup.nextPos()) >= 0L)
+                Assert.assertTrue(values.add(v));
+            lookup.closeSearch0();
+            lookup.close0();
+            Assert.assertEquals(new HashSet<>(referenceMap.get(k)), values);
+        }
+    }
+
+    @Test
+    public void testDisplacementAndBackwardShift() {
+        // keys 1, 2 and 3 have home slots 1, 2 and 3, five entries with home slot 1 displace them
+        put(2, 20);
+        put(3, 30);
+        for (long v = 10; v < 15; v++) {
+            put(1, v);
+        }
+        put(2, 21);
+        checkAll();
+        Assert.assertEquals(6, lookup.maxProbeLength());
+        remove(1, 12);
+        remove(1, 10);
+        checkAll();
+        remove(2, 20);
+        put(3, 31);
+        checkAll();
+    }
+
+    @Test
+    public void testPutAfterRemove() {
+        put(1, 10);
+        put(1, 11);
+        put(2, 20);
+        lookup.init0(1);
+        lookup.initSearch0();
+        while (lookup.nextPos() != 10L)
+            ;
+        lookup.found();
+        lookup.remove();
+        lookup.put(12);
+        lookup.closeSearch0();
+        lookup.close0();
+        referenceMap.remove(1L, 10L);
+        referenceMap.put(1L, 12L);
+        checkAll();
+    }
+
+    @Test
+    public void testRandomChurn() {
+        Random r = new Random(7);
+        long[] keys = new long[CAPACITY * 3 / 4];
+        long[] values = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 1 + r.nextInt((1 << KEY_BITS) - 1);
+            values[i] = i;
+            put(keys[i], values[i]);
+        }
+        checkAll();
+        for (int round = 0; round < 10000; round++) {
+            int i = r.nextInt(keys.length);
+            remove(keys[i], values[i]);
+            keys[i] = 1 + r.nextInt((1 << KEY_BITS) - 1);
+            put(keys[i], values[i]);
+            if (round % 1000 == 0)
+                checkAll();
+        }
+        checkAll();
+    }
+
+    @Test
+    public void testMapWithRobinHoodHashLookup() {
+        try (ChronicleMap<Long, Long> map = ChronicleMapBuilder.of(Long.class, Long.class)
+                .entries(10000L).hashLookupStrategy(HashLookupStrategy.ROBIN_HOOD).create()) {
+            for (long i = 0; i < 10000; i++) {
+                map.put(i, -i);
+            }
+            for (int round = 0; round < 5; round++) {
+                for (long i = round % 2; i < 10000; i += 2) {
+                    Assert.assertEquals((Long) (-i), map.remove(i));
+                }
+                for (long i = round % 2; i < 10000; i += 2) {
+                    map.put(i, -i);
+                }
+            }
+            Assert.assertEquals(10000, map.size());
+            for (long i = 0; i < 10000; i++) {
+                Assert.assertEquals((Long) (-i), map.get(i));
+            }
+            for (long maxProbeLength :
+                    ((VanillaChronicleMap) map).segmentMaxProbeLengths()) {
+                Assert.assertTrue(maxProbeLength > 0L);
+            }
+        }
+    }
+}
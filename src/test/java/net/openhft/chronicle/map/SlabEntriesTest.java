@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Higher Frequency Trading http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class SlabEntriesTest {
+
+    @Test
+    public void testConstantlySizedEntriesAreSlab() {
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(1000).create()) {
+            Assert.assertTrue(((VanillaChronicleMap) map).slabEntries);
+        }
+        try (ChronicleMap<Integer, CharSequence> map =
+                     ChronicleMapBuilder.of(Integer.class, CharSequence.class)
+                             .entries(1000).averageValueSize(10).create()) {
+            Assert.assertFalse(((VanillaChronicleMap) map).slabEntries);
+        }
+    }
+
+    @Test
+    public void testFreeSlotsAreReused() {
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(1000).actualSegments(1).create()) {
+            Map<Integer, Long> reference = new HashMap<>();
+            Random random = new Random(1);
+            // many more operations than slots in the segment, only slot reuse keeps it from
+            // overflowing
+            for (int i = 0; i < 200000; i++) {
+                int key = random.nextInt(500);
+                if (random.nextBoolean()) {
+                    Assert.assertEquals(reference.remove(key), map.remove(key));
+                } else {
+                    long value = random.nextLong();
+                    Assert.assertEquals(reference.put(key, value), map.put(key, value));
+                }
+            }
+            Assert.assertEquals(reference, map);
+            VanillaChronicleMap<Integer, ?, ?, Long, ?, ?> vanillaMap =
+                    (VanillaChronicleMap<Integer, ?, ?, Long, ?, ?>) map;
+            try (VanillaContext<Integer, ?, ?, Long, ?, ?> c = vanillaMap.mapContext()) {
+                c.segmentIndex = 0;
+                c.checkMultiMapsAndBitSetsConsistency();
+                Assert.assertTrue(c.freeSlots.highWaterMark() <= 500);
+            }
+            Assert.assertEquals(0.0, vanillaMap.segmentFragmentationRatios()[0], 0.0);
+        }
+    }
+
+    @Test
+    public void testRemoveAndPutInTheSameContext() {
+        try (ChronicleMap<Integer, Long> map = ChronicleMapBuilder.of(Integer.class, Long.class)
+                .entries(1000).create()) {
+            map.put(1, 1L);
+            try (MapKeyContext<Long> c = map.context(1)) {
+                c.updateLock().lock();
+                Assert.assertTrue(c.remove());
+                c.put(2L);
+            }
+            Assert.assertEquals(1, map.size());
+            Assert.assertEquals((Long) 2L, map.get(1));
+        }
+    }
+}
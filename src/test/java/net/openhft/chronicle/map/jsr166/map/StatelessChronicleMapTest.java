@@ -69,6 +69,21 @@ public class StatelessChronicleMapTest extends JSR166TestCase {
             return null;
         }
 
+        @Override
+        public void checkpoint() throws IOException {
+            d.checkpoint();
+        }
+
+        @Override
+        public void dumpTo(File toFile, boolean checksums) throws IOException {
+            d.dumpTo(toFile, checksums);
+        }
+
+        @Override
+        public void loadFrom(File fromFile) throws IOException {
+            d.loadFrom(fromFile);
+        }
+
         @Override
         public void close() {
             for (Closeable c : closeables) {
@@ -190,6 +205,105 @@ public class StatelessChronicleMapTest extends JSR166TestCase {
             d.putAll(fromFile);
         }
 
+        @Override
+        public V computeLocked(K key,
+                               @NotNull BiFunction<? super K, ? super V, ? extends V> function) {
+            return d.computeLocked(key, function);
+        }
+
+        @Override
+        public V computeIfAbsentLocked(K key, @NotNull Function<? super K, ? extends V> function) {
+            return d.computeIfAbsentLocked(key, function);
+        }
+
+        @Override
+        public V computeIfPresentLocked(
+                K key, @NotNull BiFunction<? super K, ? super V, ? extends V> function) {
+            return d.computeIfPresentLocked(key, function);
+        }
+
+        @Override
+        public V mergeLocked(K key, @NotNull V value,
+                             @NotNull BiFunction<? super V, ? super V, ? extends V> function) {
+            return d.mergeLocked(key, value, function);
+        }
+
+        @Override
+        public long addAndGetLong(K key, long fieldOffset, long delta) {
+            return d.addAndGetLong(key, fieldOffset, delta);
+        }
+
+        @Override
+        public long getAndAddLong(K key, long fieldOffset, long delta) {
+            return d.getAndAddLong(key, fieldOffset, delta);
+        }
+
+        @Override
+        public boolean compareAndSwapLong(K key, long fieldOffset, long expected, long x) {
+            return d.compareAndSwapLong(key, fieldOffset, expected, x);
+        }
+
+        @Override
+        public int addAndGetInt(K key, long fieldOffset, int delta) {
+            return d.addAndGetInt(key, fieldOffset, delta);
+        }
+
+        @Override
+        public int getAndAddInt(K key, long fieldOffset, int delta) {
+            return d.getAndAddInt(key, fieldOffset, delta);
+        }
+
+        @Override
+        public boolean compareAndSwapInt(K key, long fieldOffset, int expected, int x) {
+            return d.compareAndSwapInt(key, fieldOffset, expected, x);
+        }
+
+        @Override
+        public KeyHandle<K> keyHandle(K key) {
+            return d.keyHandle(key);
+        }
+
+        @Override
+        public MapKeyContext<V> context(KeyHandle<K> keyHandle) {
+            return d.context(keyHandle);
+        }
+
+        @Override
+        public V getUsing(KeyHandle<K> keyHandle, V usingValue) {
+            return d.getUsing(keyHandle, usingValue);
+        }
+
+        @Override
+        public V put(KeyHandle<K> keyHandle, V value) {
+            return d.put(keyHandle, value);
+        }
+
+        @Override
+        public V acquireUsing(KeyHandle<K> keyHandle, V usingValue) {
+            return d.acquireUsing(keyHandle, usingValue);
+        }
+
+        @Override
+        public void getAll(@NotNull Collection<? extends K> keys,
+                           @NotNull Map<? super K, ? super V> result) {
+            d.getAll(keys, result);
+        }
+
+        @Override
+        public boolean removeAll(@NotNull Collection<? extends K> keys) {
+            return d.removeAll(keys);
+        }
+
+        @Override
+        public void forEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+            d.forEachEntry(action);
+        }
+
+        @Override
+        public void parallelForEachEntry(@NotNull Consumer<? super MapKeyContext<V>> action) {
+            d.parallelForEachEntry(action);
+        }
+
         @Override
         public V newValueInstance() {
             throw new UnsupportedOperationException();
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Higher Frequency Trading
+ *
+ * http://www.higherfrequencytrading.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.xstream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+public class StreamingJsonTest {
+
+    @Test
+    public void testRoundTrip() {
+        StringWriter json = new StringWriter();
+        StreamingJsonWriter writer = new StreamingJsonWriter(json);
+        writer.startNode("cmap");
+        for (int i = 0; i < 2; i++) {
+            writer.startNode("entry");
+            writer.startNode("key");
+            writer.setValue("" + i);
+            writer.endNode();
+            writer.startNode("value");
+            writer.addAttribute("class", "java.util.HashMap");
+            writer.startNode("text");
+            writer.setValue("\"quoted\"\n\u0001");
+            writer.endNode();
+            writer.startNode("empty");
+            writer.endNode();
+            writer.endNode();
+            writer.endNode();
+        }
+        writer.endNode();
+        Assert.assertTrue(json.toString().startsWith(
+                "{\"cmap\":[{\"entry\":[{\"key\":\"0\"},{\"value\":[{\"@class\":"));
+
+        StreamingJsonReader reader = new StreamingJsonReader(new StringReader(json.toString()));
+        Assert.assertEquals("cmap", reader.getNodeName());
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(reader.hasMoreChildren());
+            reader.moveDown();
+            Assert.assertEquals("entry", reader.getNodeName());
+            reader.moveDown();
+            Assert.assertEquals("" + i, reader.getValue());
+            reader.moveUp();
+            reader.moveDown();
+            Assert.assertEquals("java.util.HashMap", reader.getAttribute("class"));
+            if (i == 0) {
+                reader.moveDown();
+                Assert.assertEquals("text", reader.getNodeName());
+                Assert.assertEquals("\"quoted\"\n\u0001", reader.getValue());
+                reader.moveUp();
+                reader.moveDown();
+                Assert.assertEquals("", reader.getValue());
+                Assert.assertFalse(reader.hasMoreChildren());
+                reader.moveUp();
+            }
+            // children of the second value are skipped
+            reader.moveUp();
+            Assert.assertFalse(reader.hasMoreChildren());
+            reader.moveUp();
+        }
+        Assert.assertFalse(reader.hasMoreChildren());
+    }
+
+    @Test
+    public void testEmptyRoot() {
+        StringWriter json = new StringWriter();
+        StreamingJsonWriter writer = new StreamingJsonWriter(json);
+        writer.startNode("cmap");
+        writer.endNode();
+        Assert.assertEquals("{\"cmap\":\"\"}", json.toString());
+        StreamingJsonReader reader = new StreamingJsonReader(new StringReader(json.toString()));
+        Assert.assertFalse(reader.hasMoreChildren());
+    }
+
+    @Test
+    public void testJettisonEmptyNode() {
+        StreamingJsonReader reader =
+                new StreamingJsonReader(new StringReader("{\"cmap\":[\"\"]}"));
+        Assert.assertEquals("cmap", reader.getNodeName());
+        Assert.assertFalse(reader.hasMoreChildren());
+    }
+
+    @Test
+    public void testLiteralsAndWhitespace() {
+        StreamingJsonReader reader = new StreamingJsonReader(new StringReader(
+                " {\n \"a\" : [ {\"@x\": \"1\"} , {\"b\" : 42}, {\"c\": true} ] }"));
+        Assert.assertEquals("1", reader.getAttribute("x"));
+        reader.moveDown();
+        Assert.assertEquals("42", reader.getValue());
+        reader.moveUp();
+        reader.moveDown();
+        Assert.assertEquals("true", reader.getValue());
+        reader.moveUp();
+        Assert.assertFalse(reader.hasMoreChildren());
+    }
+
+    @Test
+    public void testLayoutDetection() {
+        Assert.assertTrue(StreamingJsonReader.isStreamingLayout("{\"cmap\":[]}", false));
+        Assert.assertTrue(StreamingJsonReader.isStreamingLayout("{\"cmap\":[\"\"]}", false));
+        String streaming = "{\"cmap\":[{\"entry\":[{\"java.lang.Integer\":\"1\"}," +
+                "{\"java.lang.String\":\"one\"}]}]}";
+        Assert.assertTrue(StreamingJsonReader.isStreamingLayout(streaming, false));
+        // the first key doesn't end within the head
+        Assert.assertTrue(StreamingJsonReader.isStreamingLayout(
+                streaming.substring(0, streaming.indexOf("one")), true));
+        // Jettison layouts: nodes with children are objects
+        Assert.assertFalse(StreamingJsonReader.isStreamingLayout(
+                "{\"cmap\":[{\"entry\":[{\"java.lang.Integer\":1," +
+                        "\"java.lang.String\":\"one\"}]}]}", false));
+        Assert.assertFalse(StreamingJsonReader.isStreamingLayout(
+                "{\"cmap\":{\"entry\":{\"java.lang.Integer\":1," +
+                        "\"java.lang.String\":\"one\"}}}", true));
+    }
+}